@@ -0,0 +1,154 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.collections;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash based implementation of {@link Interner}, that only holds weak references to the interned values.
+ * Values that are not referenced any longer by anyone else are reclaimed by the garbage collector, and the
+ * corresponding entries are purged on subsequent calls. This makes it suitable for interning values with a
+ * limited lifetime, for example values in a cache that get evicted or expire.
+ * <p>
+ * Identity is determined via {@link #equals(Object)} and {@link #hashCode()}, like in {@link HashInterner}.
+ * Concurrent calls with equal values return the same instance.
+ *
+ * @author cesken
+ *
+ * @param <T> The type to intern
+ */
+public class WeakHashInterner<T> implements Interner<T>
+{
+	private final ConcurrentMap<WeakKey<T>, WeakKey<T>> interningMap;
+	private final ReferenceQueue<T> collectedValues = new ReferenceQueue<>();
+
+	/**
+	 * Creates an Interner with 100 expected elements as sizing hint for the underlying Map.
+	 */
+	public WeakHashInterner()
+	{
+		this(100);
+	}
+
+	/**
+	 * Creates an Interner with expectedElements as sizing hint for the underlying Map.
+	 *
+	 * @param expectedElements The expected number of elements
+	 */
+	public WeakHashInterner(int expectedElements)
+	{
+		interningMap = new ConcurrentHashMap<>(expectedElements);
+	}
+
+	@Override
+	public T get(T value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+
+		purgeCollected();
+
+		WeakKey<T> lookupKey = new WeakKey<>(value, null);
+		while (true)
+		{
+			WeakKey<T> existingKey = interningMap.get(lookupKey);
+			if (existingKey == null)
+			{
+				WeakKey<T> newKey = new WeakKey<>(value, collectedValues);
+				existingKey = interningMap.putIfAbsent(newKey, newKey);
+				if (existingKey == null)
+					return value;
+			}
+
+			T sharedValue = existingKey.get();
+			if (sharedValue != null)
+				return sharedValue;
+
+			// Collected, but not yet purged. Remove it and try again.
+			interningMap.remove(existingKey, existingKey);
+		}
+	}
+
+	/**
+	 * Removes the entries whose values have been collected by the garbage collector.
+	 */
+	private void purgeCollected()
+	{
+		Object collectedKey;
+		while ((collectedKey = collectedValues.poll()) != null)
+		{
+			interningMap.remove(collectedKey, collectedKey);
+		}
+	}
+
+	/**
+	 * @return Returns the number of elements this instance has interned. This may include values that have been collected,
+	 * but not yet purged.
+	 */
+	public int size()
+	{
+		purgeCollected();
+		return interningMap.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "WeakInterner " + this.hashCode() + " [" + size() + " elements]";
+	}
+
+	/**
+	 * A weak reference that uses the hashCode and equals of its referent. Once the referent is collected, the
+	 * reference is only equal to itself.
+	 */
+	static final class WeakKey<T> extends WeakReference<T>
+	{
+		private final int hash;
+
+		WeakKey(T value, ReferenceQueue<T> queue)
+		{
+			super(value, queue);
+			this.hash = value.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof WeakKey))
+				return false;
+
+			WeakKey<?> other = (WeakKey<?>)obj;
+			if (hash != other.hash)
+				return false;
+			T value = get();
+			return value != null && value.equals(other.get());
+		}
+	}
+}
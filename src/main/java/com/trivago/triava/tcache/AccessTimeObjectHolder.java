@@ -16,25 +16,27 @@
 
 package com.trivago.triava.tcache;
 
-import java.io.Serializable;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import javax.cache.CacheException;
 
+import com.trivago.triava.tcache.core.CacheSerializer;
 import com.trivago.triava.tcache.expiry.Constants;
 import com.trivago.triava.tcache.expiry.TCacheExpiryPolicy;
 import com.trivago.triava.tcache.util.SecondsOrMillis;
-import com.trivago.triava.tcache.util.Serializing;
+import com.trivago.triava.tcache.util.StandardSerializer;
 
 /**
  * Represents a Cache entry with associated metadata.
  * This cache entry is valid as long as data != null
+ * <p>
+ * Storages may subclass this, to use the holder as their hash table node. See {@link com.trivago.triava.tcache.core.HolderFactory}.
  * 
  * @param <V> The value type
  */
-public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
+public class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 {
 	private static final long serialVersionUID = 1774522368637513622L;
 
@@ -50,6 +52,7 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 	final static int STATE_INCOMPLETE = 0b0000_0000;
 	final static int STATE_COMPLETE = 0b0010_0000;
 	final static int STATE_RELEASED = 0b0100_0000;
+	final static int FLAG_REPLACED = 0b1000_0000;
 
 	// offset #field-size
 	// 0 #12
@@ -75,13 +78,30 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 	// 37
 	
 	/**
-	 * Construct a holder. The holder will be incomplete and not accessible by cache users, until you call {@link #complete(long, long)}
+	 * Construct a holder. The holder will be incomplete and not accessible by cache users, until you call {@link #complete(long, long)}.
+	 * If the value is serialized, the {@link StandardSerializer} is used.
 	 * 
 	 * @param value The value to store in this holder
 	 * @param writeMode The CacheWriteMode that defines how to serialize the data
 	 * @throws CacheException when there is a problem serializing the value
 	 */
 	public AccessTimeObjectHolder(V value, CacheWriteMode writeMode) throws CacheException
+	{
+		this(value, writeMode, StandardSerializer.<V>instance());
+	}
+
+	/**
+	 * Construct a holder. The holder will be incomplete and not accessible by cache users, until you call {@link #complete(long, long)}
+	 * <p>
+	 * The serializer is not kept, as this would grow every holder. {@link #peek()} deserializes with {@link #serializer()}, so
+	 * a holder for a serializer other than the {@link StandardSerializer} must be a subclass that returns it, see {@link ExtendedHolder}.
+	 * 
+	 * @param value The value to store in this holder
+	 * @param writeMode The CacheWriteMode that defines how to serialize the data
+	 * @param serializer The serializer for the value. It is only used if the writeMode serializes.
+	 * @throws CacheException when there is a problem serializing the value
+	 */
+	public AccessTimeObjectHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer) throws CacheException
 	{
 		try
 		{
@@ -94,16 +114,15 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 					this.data = value;
 					break;
 				case Serialize:
-					if (value instanceof Serializable)
-					{
-						flags = SERIALIZATION_SERIALIZABLE;
-						byte[] valueAsBytearray = Serializing.toBytearray(value);
-						this.data = valueAsBytearray;
-						break;
-					}
+				case SerializeCompressed: // The serializer compresses
+					flags = SERIALIZATION_SERIALIZABLE;
+					this.data = serializer.serialize(value);
+					break;
 				case Intern:
+					// The caller has already interned the value, see Cache.newHolder()
 					flags = SERIALIZATION_NONE;
-					//this.data = interner.get(value);
+					this.data = value;
+					break;
 				default:
 					throw new UnsupportedOperationException("CacheWriteMode not supported: " + writeMode);
 			}
@@ -170,6 +189,24 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 		}
 	}
 	
+	/**
+	 * Marks this holder as replaced by a newer holder for the same key. Unlike {@link #release()} the value stays readable,
+	 * as concurrent readers may still hold a reference to this holder.
+	 */
+	void markReplaced()
+	{
+		synchronized (this)
+		{
+			flags = (byte)(flags | FLAG_REPLACED);
+		}
+	}
+
+	@Override
+	public boolean isDetached()
+	{
+		return (flags & (STATE_RELEASED | FLAG_REPLACED)) != 0;
+	}
+
 	public void setMaxIdleTime(int idleTime, TimeUnit timeUnit)
 	{
 		maxIdleTime = SecondsOrMillis.fromMillisToInternal(timeUnit.toMillis(idleTime));
@@ -232,6 +269,63 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 	}
 
 
+	/**
+	 * Returns the time at which this holder expires, if it is not accessed or changed until then. It is consistent with
+	 * {@link #isInvalid()}, but does not check whether the holder is complete or released.
+	 * 
+	 * @return The first time in milliseconds at which the holder is expired, or Long.MAX_VALUE if it does not expire
+	 */
+	long expirationMillis()
+	{
+		long expirationMillis = Long.MAX_VALUE;
+		long expDurationMillis = SecondsOrMillis.fromInternalToMillis(maxCacheTime);
+		if (expDurationMillis > 0L && expDurationMillis != Long.MAX_VALUE)
+		{
+			expirationMillis = getCreationTime() + expDurationMillis + 1;
+		}
+
+		long idleDurationMillis = SecondsOrMillis.fromInternalToMillis(maxIdleTime);
+		if (idleDurationMillis == 0)
+		{
+			return 0; // Expired immediately
+		}
+		if (idleDurationMillis != Long.MAX_VALUE)
+		{
+			expirationMillis = Math.min(expirationMillis, getLastAccessTime() + idleDurationMillis + 1);
+		}
+		return expirationMillis;
+	}
+
+	/**
+	 * Returns whether the holder expired less than maxStalenessMillis ago, and was not released. Such a holder may still be
+	 * served as a stale value, see {@link com.trivago.triava.tcache.core.Builder#setMaxStaleness(int, TimeUnit)}.
+	 * 
+	 * @param maxStalenessMillis The grace period after the expiration, in milliseconds
+	 * @return true, if the holder is within the grace period
+	 */
+	boolean isServableStale(long maxStalenessMillis)
+	{
+		if (data == null || (flags & STATE_MASK) != STATE_COMPLETE)
+			return false;
+		long expirationMillis = expirationMillis();
+		return expirationMillis != Long.MAX_VALUE && currentTimeMillisEstimate() < expirationMillis + maxStalenessMillis;
+	}
+
+	/**
+	 * Returns whether the holder is invalid, and not within the grace period of stale serving either. Such a holder is
+	 * removed as expired.
+	 * 
+	 * @param maxStalenessMillis The grace period after the expiration, in milliseconds. 0, if there is no stale serving.
+	 * @return true, if the holder is invalid and cannot be served as a stale value. false for a holder that is not yet
+	 *   complete, as its writer has just stored it and is about to complete it.
+	 */
+	boolean isExpiredBeyondStaleness(long maxStalenessMillis)
+	{
+		if (data != null && (flags & STATE_MASK) != STATE_COMPLETE)
+			return false; // A write in progress, and not an expired entry
+		return isInvalid() && (maxStalenessMillis == 0 || !isServableStale(maxStalenessMillis));
+	}
+
 	@Override
 	public long getExpirationTime()
 	{
@@ -265,8 +359,8 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 				case SERIALIZATION_NONE:
 					return (V)data;
 				case SERIALIZATION_SERIALIZABLE:
-					Object dataRef = data; // defensive copy
-					return dataRef != null ? (V)Serializing.fromBytearray((byte[])(dataRef)) : null;
+					byte[] serialized = serializedData();
+					return serialized != null ? serializer().deserialize(serialized) : null;
 				case SERIALIZATION_EXTERNALIZABLE:
 				default:
 					throw new UnsupportedOperationException("Serialization type is not supported: " + serializationMode);
@@ -279,6 +373,50 @@ public final class AccessTimeObjectHolder<V> implements TCacheHolder<V>
 		}
 	}
 
+	/**
+	 * Returns the serializer for the serialized data of this holder. Subclasses that are created with a different serializer
+	 * must override this.
+	 * 
+	 * @return The serializer, the {@link StandardSerializer} by default
+	 */
+	protected CacheSerializer<V> serializer()
+	{
+		return StandardSerializer.instance();
+	}
+
+	/**
+	 * Returns the serialized data of this holder. Storages that move the serialized data out of the holder, e.g. to direct
+	 * memory, override this.
+	 * 
+	 * @return The serialized data, or null if it is not available any longer
+	 */
+	protected byte[] serializedData()
+	{
+		return (byte[])data;
+	}
+
+	/**
+	 * Returns whether this holder has serialized data, see {@link #serializedData()}.
+	 * 
+	 * @return true, if the data is serialized
+	 */
+	protected final boolean isSerialized()
+	{
+		return (flags & SERIALIZATION_MASK) == SERIALIZATION_SERIALIZABLE;
+	}
+
+	/**
+	 * Replaces the data reference of this holder. This is meant for storages that move the serialized data out of the holder,
+	 * and must only be called before the holder is published in the storage. The data must not be null, as a holder without
+	 * data is invalid.
+	 * 
+	 * @param data The new data reference
+	 */
+	protected final void setData(Object data)
+	{
+		this.data = data;
+	}
+
 	private void setLastAccessTime()
 	{
 		lastAccess = SecondsOrMillis.fromMillisToInternal(currentTimeMillisEstimate() - Cache.baseTimeMillis);
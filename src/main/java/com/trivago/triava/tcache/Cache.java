@@ -19,13 +19,25 @@ package com.trivago.triava.tcache;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.cache.configuration.Factory;
 import javax.cache.event.EventType;
@@ -35,16 +47,25 @@ import javax.cache.integration.CacheLoader;
 import javax.cache.integration.CacheLoaderException;
 import javax.cache.integration.CacheWriter;
 
+import com.trivago.triava.annotations.ObjectSizeCalculatorIgnore;
+import com.trivago.triava.collections.Interner;
+import com.trivago.triava.collections.WeakHashInterner;
 import com.trivago.triava.logging.TriavaLogger;
 import com.trivago.triava.logging.TriavaNullLogger;
 import com.trivago.triava.tcache.action.ActionContext;
+import com.trivago.triava.tcache.core.AsyncCacheLoader;
 import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.core.CacheSerializer;
 import com.trivago.triava.tcache.core.CacheWriterWrapper;
+import com.trivago.triava.tcache.core.HolderFactory;
+import com.trivago.triava.tcache.core.MaintenanceScheduler;
 import com.trivago.triava.tcache.core.Holders;
 import com.trivago.triava.tcache.core.NopCacheWriter;
-import com.trivago.triava.tcache.core.StorageBackend;
 import com.trivago.triava.tcache.core.TCacheHolderIterator;
 import com.trivago.triava.tcache.core.TriavaCacheConfiguration;
+import com.trivago.triava.tcache.core.Weigher;
+import com.trivago.triava.tcache.eviction.AccessRecorder;
+import com.trivago.triava.tcache.eviction.EvictionInterface;
 import com.trivago.triava.tcache.event.ListenerCollection;
 import com.trivago.triava.tcache.expiry.Constants;
 import com.trivago.triava.tcache.expiry.TCacheExpiryPolicy;
@@ -59,8 +80,10 @@ import com.trivago.triava.tcache.statistics.TCacheStatisticsInterface;
 import com.trivago.triava.tcache.statistics.TCacheStatisticsMBean;
 import com.trivago.triava.tcache.storage.ByteArray;
 import com.trivago.triava.tcache.storage.ConcurrentKeyDeserMap;
+import com.trivago.triava.tcache.storage.OffHeapConcurrentMap;
 import com.trivago.triava.tcache.util.CacheSizeInfo;
 import com.trivago.triava.tcache.util.ChangeStatus;
+import com.trivago.triava.tcache.util.CompressingSerializer;
 import com.trivago.triava.tcache.util.KeyValueUtil;
 import com.trivago.triava.tcache.util.ObjectSizeCalculatorInterface;
 import com.trivago.triava.tcache.util.TCacheConfigurationMBean;
@@ -108,6 +131,21 @@ import com.trivago.triava.time.TimeSource;
 public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionContext<K, V>
 {
     static long CLEANUP_LOG_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+	/**
+	 * The maximum interval of the CleanupThread, and thus the maximum tick of the {@link ExpirationWheel}. A run only touches
+	 * the entries that are due, so it is cheap even for huge caches. The interval also bounds how long the entries that
+	 * writers schedule wait before they are placed in the wheel, and thus how many of them are held at a time.
+	 */
+	final static long MAX_CLEANUP_INTERVAL_MILLIS = 1000;
+	/**
+	 * The number of threads of the own loader executor, which a Cache with a loader creates if no executor is configured.
+	 * See {@link Builder#setLoaderExecutor(Executor)}.
+	 */
+	final static int LOADER_THREADS = 4;
+	/**
+	 * The number of loads that may wait for a thread of the own loader executor. Further loads are rejected.
+	 */
+	final static int LOADER_QUEUE_SIZE = 1024;
     static TriavaLogger logger = new TriavaNullLogger();
 	
 	private final TCacheFactory factory;
@@ -124,14 +162,26 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	
 	
 	final protected ConcurrentMap<K,AccessTimeObjectHolder<V>> objects;
+	private final HolderFactory<V> holderFactory;
 	final Random random = new Random(System.currentTimeMillis());
 	
 //	@ObjectSizeCalculatorIgnore
-	private volatile transient CleanupThread cleaner = null;
+	private volatile transient CleanupThread cleaner = null; // Only used without maintenanceScheduler
+	private volatile transient CleanupTask cleanupTask = null; // Only used with maintenanceScheduler
+	@ObjectSizeCalculatorIgnore(reason="The scheduler is shared by all caches of the factory, and contains threads")
+	private final transient MaintenanceScheduler maintenanceScheduler; // null, if the Cache runs its own threads
 	// The expiration queue is for the cleaner, but it is independent from the cleaner instance
 	private volatile long cleanUpIntervalMillis;
+	private final ExpirationWheel<K, V> expirationWheel; // Fed by scheduleExpiration(), processed by cleanUp()
+	private volatile long expirationScanNanos = 0; // Only written by the CleanupThread
+	private int expiredSinceLog = 0; // Only used by the CleanupThread
+	private long nextExpirationLogMillis = System.currentTimeMillis() + CLEANUP_LOG_INTERVAL; // Only used by the CleanupThread
 
-	//final HashInterner<V> interner = new HashInterner<>(100);
+	private final Interner<V> interner; // only for CacheWriteMode.Intern, otherwise null
+	private final CacheSerializer<V> valueSerializer;
+	private final Weigher<K, V> weigher; // null if each entry weighs 1
+	private final WeighingMap<K, V> weighingMap; // null if there is no Weigher
+	final AccessRecorder<K, V> accessRecorder; // null, unless the eviction class wants to see all accesses
 
 	/**
 	 * Cache hit counter.
@@ -148,6 +198,17 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
 	protected final JamPolicy jamPolicy;
 	protected final CacheLoader<K, V> loader;
+	private final AsyncCacheLoader<K, V> asyncLoader; // null, if there is no loader
+	private final LoadCoalescer<K, V> loadCoalescer; // null, if there is no loader
+	final CacheLoader<K, V> coalescingLoader; // The loader for EntryProcessors. null, if there is no loader
+	private final long refreshAfterMillis; // 0, if there is no refresh-ahead
+	final long maxStalenessMillis; // 0, if there is no stale serving
+	private final Executor loaderExecutor;
+	private final ThreadPoolExecutor ownLoaderExecutor; // Used if no loader executor is configured. Shut down with the Cache.
+	private final ConcurrentMap<K, Boolean> refreshingKeys; // Keys with a reload in flight. null, if there are no asynchronous reloads
+	private final AtomicLong refreshCount = new AtomicLong();
+	private final AtomicLong staleHitCount = new AtomicLong();
+	private final AtomicLong expiredCount = new AtomicLong();
 
 	final ListenerCollection<K,V> listeners;
 
@@ -205,13 +266,14 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 			}
 		}
 		
-		// Cleaner should run often enough, but not too often. The chosen time is expiryIdleMillis / 10, but limited to 5min.
+		// Cleaner should run often enough, but not too often. The chosen time is expiryIdleMillis / 10, but limited to 1s.
+		// A run only touches the entries that are due, see ExpirationWheel, so running often is cheap even for huge caches.
 		if (expiryIdleMillis <= 0)
 		{
 			expiryIdleMillis = 600_000;
 		}
 		if (expiryIdleMillis > 10)
-			this.cleanUpIntervalMillis = Math.min(5 * 60_000, expiryIdleMillis / 10);
+			this.cleanUpIntervalMillis = Math.min(MAX_CLEANUP_INTERVAL_MILLIS, expiryIdleMillis / 10);
 		else
 			this.cleanUpIntervalMillis = 1;
 
@@ -222,14 +284,46 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		{
 			this.loader = lf.create();
 		}
-		else
+		else if (builder.getLoader() != null || builder.getAsyncLoader() == null)
 		{
 			this.loader = builder.getLoader();
 		}
+		else
+		{
+			this.loader = new BlockingLoader(builder.getAsyncLoader());
+		}
+		if (builder.getAsyncLoader() != null)
+		{
+			this.asyncLoader = builder.getAsyncLoader();
+		}
+		else if (this.loader != null)
+		{
+			this.asyncLoader = (key, executor) -> CompletableFuture.supplyAsync(() -> loader.load(key), executor);
+		}
+		else
+		{
+			this.asyncLoader = null;
+		}
 		if (this.loader == null && builder.isReadThrough())
 		{
 			throw new IllegalArgumentException("Builder has isReadThrough, but has no loader for cache: " + id);
 		}
+		this.refreshAfterMillis = builder.getRefreshAfterMillis();
+		if (this.loader == null && refreshAfterMillis > 0)
+		{
+			throw new IllegalArgumentException("Builder has refreshAfter, but has no loader for cache: " + id);
+		}
+		this.maxStalenessMillis = builder.getMaxStalenessMillis();
+		if (this.loader == null && maxStalenessMillis > 0)
+		{
+			throw new IllegalArgumentException("Builder has maxStaleness, but has no loader for cache: " + id);
+		}
+		Executor configuredExecutor = builder.getLoaderExecutor();
+		this.ownLoaderExecutor = configuredExecutor == null && asyncLoader != null ? createLoaderExecutor() : null;
+		this.loaderExecutor = configuredExecutor != null ? configuredExecutor : ownLoaderExecutor;
+		this.loadCoalescer = loader != null ? new LoadCoalescer<K, V>(id, builder.getLoadTimeoutMillis()) : null;
+		this.coalescingLoader = loader != null ? new CoalescingLoader() : null;
+		this.refreshingKeys = refreshAfterMillis > 0 || maxStalenessMillis > 0 ? new ConcurrentHashMap<K, Boolean>() : null;
 
 		Factory<CacheWriter<? super K, ? super V>> cwFactory = builder.getCacheWriterFactory();
 		if (cwFactory == null)
@@ -243,12 +337,27 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 			this.cacheWriter = cwWrapper;
 		}
 
-		objects = createBackingMap(builder);
+		interner = createInterner(builder);
+		valueSerializer = createValueSerializer(builder);
+		weigher = builder.getWeigher();
+		if (weigher != null && builder.getHashImplementation() == HashImplementation.LongKey)
+		{
+			throw new IllegalArgumentException("A Weigher is not supported with HashImplementation.LongKey in cache: " + id);
+		}
+
+		ConcurrentMap<K, ? extends TCacheHolder<V>> storageMap = builder.storageFactory().createMap(builder, evictionExtraSpace(builder));
+		holderFactory = createHolderFactory(storageMap);
+		ConcurrentMap<K, AccessTimeObjectHolder<V>> backingMap = createBackingMap(builder, storageMap);
+		weighingMap = weigher != null ? new WeighingMap<>(backingMap) : null;
+		objects = weighingMap != null ? weighingMap : backingMap;
+		accessRecorder = createAccessRecorder(builder);
 
 		enableStatistics(builder.getStatistics());
 		enableManagement(builder.isManagementEnabled());
 
 		activateTimeSource();
+		expirationWheel = new ExpirationWheel<>(cleanUpIntervalMillis, maxStalenessMillis, millisEstimator.millis());
+		maintenanceScheduler = factory.maintenanceScheduler();
 
 		listeners = new ListenerCollection<>(this, builder);
 
@@ -261,17 +370,15 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	}
 
 	@SuppressWarnings("unchecked") // Avoid warning for the "generics cast" in the last line
-	private ConcurrentMap<K, AccessTimeObjectHolder<V>> createBackingMap(Builder<K, V> builder)
+	private ConcurrentMap<K, AccessTimeObjectHolder<V>> createBackingMap(Builder<K, V> builder, ConcurrentMap<K, ? extends TCacheHolder<V>> map)
 	{
-		StorageBackend<K, V> storageFactory = builder.storageFactory();
-
-		ConcurrentMap<K, ? extends TCacheHolder<V>> map = storageFactory.createMap(builder, evictionExtraSpace(builder));
-
 		CacheWriteMode cacheWriteMode = builder.getCacheWriteMode();
-		if (cacheWriteMode.isStoreByValue())
+		// Primitive keys are always stored by value. Values are still serialized by the holders.
+		boolean primitiveKeys = builder.getHashImplementation() == HashImplementation.LongKey;
+		if (cacheWriteMode.isStoreByValue() && !primitiveKeys)
 		{
 			ConcurrentMap<ByteArray, AccessTimeObjectHolder<V>> castedMap = (ConcurrentMap<ByteArray, AccessTimeObjectHolder<V>>) map;
-			return new ConcurrentKeyDeserMap<K, AccessTimeObjectHolder<V>>(castedMap, cacheWriteMode);
+			return new ConcurrentKeyDeserMap<K, AccessTimeObjectHolder<V>>(castedMap, cacheWriteMode, builder.getKeySerializer());
 
 		}
 		else
@@ -282,6 +389,99 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
 	}
 
+	/**
+	 * Returns the interner for values in mode {@link CacheWriteMode#Intern}, which is the one from the Builder or a new
+	 * {@link WeakHashInterner} for this Cache. The interner holds values weakly, so evicted and expired values can be reclaimed.
+	 *
+	 * @param builder The builder
+	 * @return The interner, or null if values are not interned
+	 */
+	private static <K, V> Interner<V> createInterner(Builder<K, V> builder)
+	{
+		if (builder.getCacheWriteMode() != CacheWriteMode.Intern)
+			return null;
+		Interner<V> builderInterner = builder.getInterner();
+		return builderInterner != null ? builderInterner : new WeakHashInterner<V>();
+	}
+
+	/**
+	 * Returns the serializer for values. In mode {@link CacheWriteMode#SerializeCompressed} the serializer from the Builder is
+	 * wrapped, so that it compresses.
+	 *
+	 * @param builder The builder
+	 * @return The value serializer
+	 */
+	private static <K, V> CacheSerializer<V> createValueSerializer(Builder<K, V> builder)
+	{
+		if (builder.getCacheWriteMode() == CacheWriteMode.SerializeCompressed)
+			return new CompressingSerializer<V>(builder.getValueSerializer(), builder.getCompressionThreshold());
+		return builder.getValueSerializer();
+	}
+
+	/**
+	 * Returns the factory for holders. If the storage requires its own holder class, the storage map is the factory.
+	 * 
+	 * @param map The storage map
+	 * @return The HolderFactory
+	 */
+	@SuppressWarnings("unchecked")
+	private HolderFactory<V> createHolderFactory(ConcurrentMap<K, ? extends TCacheHolder<V>> map)
+	{
+		if (map instanceof HolderFactory)
+		{
+			return (HolderFactory<V>) map;
+		}
+		return (value, writeMode, serializer, weight) -> ExtendedHolder.isRequired(writeMode, serializer, weight)
+				? new ExtendedHolder<V>(value, writeMode, serializer, weight) : new AccessTimeObjectHolder<V>(value, writeMode, serializer);
+	}
+
+	/**
+	 * @return The storage map, if it keeps the data in direct memory. null otherwise.
+	 */
+	private OffHeapConcurrentMap<V> offHeapMap()
+	{
+		return holderFactory instanceof OffHeapConcurrentMap ? (OffHeapConcurrentMap<V>) holderFactory : null;
+	}
+
+	/**
+	 * Creates a new incomplete holder for the given value, that can be stored in the backing map.
+	 * If the Cache has a Weigher, the holder is created with the weight of the entry.
+	 * 
+	 * @param key The key. It is only used for weighing, and may be null if the Cache has no Weigher.
+	 * @param value The value
+	 * @return The holder
+	 */
+	final AccessTimeObjectHolder<V> newHolder(K key, V value)
+	{
+		V holderValue = interner == null ? value : interner.get(value);
+		int weight = 1;
+		if (weigher != null)
+		{
+			weight = weigher.weigh(key, value);
+			if (weight < 0)
+				throw new IllegalArgumentException("Weigher returned a negative weight=" + weight + " in cache: " + id);
+		}
+		return holderFactory.createHolder(holderValue, builder.getCacheWriteMode(), valueSerializer, weight);
+	}
+
+	@SuppressWarnings("unchecked")
+	private AccessRecorder<K, V> createAccessRecorder(Builder<K, V> builder)
+	{
+		EvictionInterface<K, V> evictionClass = builder.getEvictionClass();
+		return evictionClass instanceof AccessRecorder ? (AccessRecorder<K, V>)evictionClass : null;
+	}
+
+	/**
+	 * Returns the total weight of the entries in this Cache. Without a Weigher each entry weighs 1, so this is the number of entries.
+	 * With a Weigher, this is a running total and does not need to inspect the entries.
+	 * 
+	 * @return The total weight
+	 */
+	protected long currentWeight()
+	{
+		return weighingMap != null ? weighingMap.totalWeight() : objects.size();
+	}
+
 	/**
 	 * Returns a size factor for the map for the specific eviction strategy of this Cache. The default implementation
 	 * returns 0, as it does not use any extra space.
@@ -358,7 +558,17 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		enableStatistics(false);
 		enableManagement(false);
 		listeners.shutdown();
+		if (ownLoaderExecutor != null)
+		{
+			ownLoaderExecutor.shutdown(); // Running loads finish, but their values are dropped
+		}
 		String errorMsg = stopAndClear(MAX_SHUTDOWN_WAIT_MILLIS);
+		OffHeapConcurrentMap<V> offHeapMap = offHeapMap();
+		if (offHeapMap != null)
+		{
+			// Return the direct memory now, instead of when the map is garbage collected
+			offHeapMap.release();
+		}
 		if (errorMsg != null)
 		{
 			logger.error("Shutting down Cache " + id + " FAILED. Reason: " + errorMsg);
@@ -566,7 +776,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		if (holders == null)
 			return null;
 		if (holders.effectiveHolder != null)
-			holders.effectiveHolder.updateMaxIdleTime(idleTime);
+			updateMaxIdleTime(key, holders.effectiveHolder, idleTime);
 		AccessTimeObjectHolder<V> holderToReturn = returnEffectiveHolder ? holders.effectiveHolder : holders.oldHolder;
 		return gatedHolder(holderToReturn);
 	}
@@ -581,14 +791,8 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
 	Holders<V> putToMapI(K key, V data, long cacheTime, boolean putIfAbsent)
 	{
-		if (isClosed())
-		{
-			// We don't accept new entries if this Cache is shutting down
-			if (strictJSR107)
-				throw new IllegalStateException("Cache is closed:" + id);
-			else
-				return null;
-		}
+		if (!acceptsPut())
+			return null;
 
 		kvUtil.verifyKeyAndValueNotNull(key, data);
 		
@@ -598,15 +802,10 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 //			return null; // already expired
 //		}
 		
-		boolean hasCapacity = ensureFreeCapacity();
-		if (!hasCapacity)
-		{
-			statisticsCalculator.incrementDropCount();
+		if (!reserveCapacity())
 			return null;
-		}
 
-		if (cacheTime <= 0) // Future directions: Probably change this, to say: 0 or lower is already expired
-			cacheTime = this.maxCacheTime;
+		cacheTime = effectiveCacheTime(cacheTime); // Future directions: Probably change this, to say: 0 or lower is already expired
 
 		// if (idleTime <= 0 && cacheTime <= 0)
 		// {
@@ -622,7 +821,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		if (putIfAbsent)
 		{
 			// Always use expiryForCreation. Either it is correct, or we do not care(wrong but not added to cache) 
-			newHolder = new AccessTimeObjectHolder<V>(data, builder.getCacheWriteMode());
+			newHolder = newHolder(key, data);
 			oldHolder = this.objects.putIfAbsent(key, newHolder);
 			if (oldHolder != null && oldHolder.isInvalid())
 			{
@@ -667,23 +866,93 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		else
 		{
 			// Add entry initially with unlimited expiration, then update the idle from the existing holder
-			newHolder = new AccessTimeObjectHolder<>(data, builder.getCacheWriteMode());
+			newHolder = newHolder(key, data);
 			oldHolder = this.objects.put(key, newHolder);
 			if (oldHolder != null && oldHolder.isInvalid())
 			{
 				expireEntry(key,oldHolder); // SAE-190 Notify about expiration
 				oldHolder = null;
 			}
-			long calculatedIdleTime = newHolder.calculateMaxIdleTimeFromUpdateOrCreation(oldHolder != null, expiryPolicy, oldHolder);
+			else if (oldHolder != null)
+			{
+				oldHolder.markReplaced();
+			}
+			completePut(newHolder, oldHolder, cacheTime);
 			effectiveHolder = newHolder;
 			hasPut = true;
-			// We have to complete the entry as late as possible, to make sure it cannot be found in the Cache before it is complete.
-			// Additionally, inputDate and lastAccessTime must be as accurate as possible. There was an issue before, as the TCK
-			// tests used an ExpiryPolicy-Server that took 20-60 ms to process the ExpiryPolicy. At that point of time Elements with 20ms expiration
-			// were already expired. The TCK is correct. Test in the TCK is org.jsr107.tck.expiry.CacheExpiryTest.testCacheStatisticsRemoveAll()
-			newHolder.complete(calculatedIdleTime, cacheTime); 
 		}
 
+		if (accessRecorder != null)
+		{
+			if (hasPut)
+				accessRecorder.recordInsert(key, newHolder);
+			else
+				accessRecorder.recordAccess(key);
+		}
+		if (hasPut)
+			scheduleExpiration(key, newHolder);
+
+		return finishPut(newHolder, oldHolder, effectiveHolder, hasPut);
+	}
+
+	/**
+	 * Returns whether this Cache accepts new entries. If the Cache is closed, it throws IllegalStateException in strict JSR107 mode,
+	 * or returns false otherwise.
+	 * 
+	 * @return true, if new entries are accepted
+	 */
+	final boolean acceptsPut()
+	{
+		if (isClosed())
+		{
+			// We don't accept new entries if this Cache is shutting down
+			if (strictJSR107)
+				throw new IllegalStateException("Cache is closed:" + id);
+			else
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure there is capacity for one more entry. If not, the drop is counted in the statistics.
+	 * 
+	 * @return true, if there is capacity
+	 */
+	final boolean reserveCapacity()
+	{
+		boolean hasCapacity = ensureFreeCapacity();
+		if (!hasCapacity)
+		{
+			statisticsCalculator.incrementDropCount();
+		}
+		return hasCapacity;
+	}
+
+	/**
+	 * Completes a holder that was put in the backing map via put(), using the ExpiryPolicy for creation or update.
+	 * 
+	 * @param newHolder The holder that was put
+	 * @param oldHolder The valid holder that was replaced, or null
+	 * @param cacheTime The maximum cache time in milliseconds
+	 */
+	final void completePut(AccessTimeObjectHolder<V> newHolder, AccessTimeObjectHolder<V> oldHolder, long cacheTime)
+	{
+		long calculatedIdleTime = newHolder.calculateMaxIdleTimeFromUpdateOrCreation(oldHolder != null, expiryPolicy, oldHolder);
+		// We have to complete the entry as late as possible, to make sure it cannot be found in the Cache before it is complete.
+		// Additionally, inputDate and lastAccessTime must be as accurate as possible. There was an issue before, as the TCK
+		// tests used an ExpiryPolicy-Server that took 20-60 ms to process the ExpiryPolicy. At that point of time Elements with 20ms expiration
+		// were already expired. The TCK is correct. Test in the TCK is org.jsr107.tck.expiry.CacheExpiryTest.testCacheStatisticsRemoveAll()
+		newHolder.complete(calculatedIdleTime, cacheTime); 
+	}
+
+	/**
+	 * Updates the statistics after a put, and makes sure the cleaner is running.
+	 * 
+	 * @return The gated holders
+	 */
+	final Holders<V> finishPut(AccessTimeObjectHolder<V> newHolder, AccessTimeObjectHolder<V> oldHolder, AccessTimeObjectHolder<V> effectiveHolder, boolean hasPut)
+	{
 		AccessTimeObjectHolder<V> gatedEffectiveHolder = gatedHolder(effectiveHolder);
 		if (gatedEffectiveHolder != null)
 		{
@@ -695,6 +964,17 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		return new Holders<V>(gatedHolder(newHolder), gatedHolder(oldHolder), gatedEffectiveHolder);
 	}
 
+	/**
+	 * Returns the maximum cache time in milliseconds that applies to a put with the given cacheTime.
+	 * 
+	 * @param cacheTime The requested cache time in milliseconds. 0 or lower means to use the default.
+	 * @return The effective cache time
+	 */
+	final long effectiveCacheTime(long cacheTime)
+	{
+		return cacheTime <= 0 ? this.maxCacheTime : cacheTime;
+	}
+
 //	private void enqueueExpirationEvent(K key, AccessTimeObjectHolder<V> holder)
 //	{
 //		while (true)
@@ -725,8 +1005,17 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		kvUtil.verifyKeyAndValueNotNull(key, value);
 
 		AccessTimeObjectHolder<V> newHolder; // holder that was created via new.
-		newHolder = new AccessTimeObjectHolder<V>(value, Constants.EXPIRY_MAX, cacheTimeSpread(), builder.getCacheWriteMode());
-		AccessTimeObjectHolder<V> oldHolder = gatedHolder(this.objects.replace(key, newHolder));
+		newHolder = newHolder(key, value);
+		newHolder.complete(Constants.EXPIRY_MAX, cacheTimeSpread());
+		AccessTimeObjectHolder<V> replacedHolder = this.objects.replace(key, newHolder);
+		if (replacedHolder != null)
+		{
+			replacedHolder.markReplaced();
+			if (accessRecorder != null)
+				accessRecorder.recordInsert(key, newHolder);
+			scheduleExpiration(key, newHolder);
+		}
+		AccessTimeObjectHolder<V> oldHolder = gatedHolder(replacedHolder);
 
 		if (oldHolder != null)
 		{
@@ -734,7 +1023,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 			V oldValue = oldHolder.peek();
 			if (oldValue != null)
 			{
-				newHolder.updateMaxIdleTime(expiryPolicy.getExpiryForUpdate()); // OK
+				updateMaxIdleTime(key, newHolder, expiryPolicy.getExpiryForUpdate()); // OK
 			}
 			return oldValue;
 
@@ -755,16 +1044,23 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
 		if (! oldValue.equals(oldHolder.peek()))
 		{
-			oldHolder.updateMaxIdleTime(expiryPolicy.getExpiryForAccess());
+			updateMaxIdleTime(key, oldHolder, expiryPolicy.getExpiryForAccess());
 			return ChangeStatus.CAS_FAILED_EQUALS; // oldValue does not match => do not replace
 		}
 		
-		newHolder = new AccessTimeObjectHolder<V>(newValue, Constants.EXPIRY_MAX, cacheTimeSpread(), builder.getCacheWriteMode());
+		newHolder = newHolder(key, newValue);
+		newHolder.complete(Constants.EXPIRY_MAX, cacheTimeSpread());
 		boolean replaced = this.objects.replace(key, oldHolder, newHolder);
 		if (replaced)
-			newHolder.updateMaxIdleTime(expiryPolicy.getExpiryForUpdate());
+		{
+			oldHolder.markReplaced();
+			scheduleExpiration(key, newHolder);
+			updateMaxIdleTime(key, newHolder, expiryPolicy.getExpiryForUpdate());
+			if (accessRecorder != null)
+				accessRecorder.recordInsert(key, newHolder);
+		}
 		else
-			oldHolder.updateMaxIdleTime(expiryPolicy.getExpiryForAccess());
+			updateMaxIdleTime(key, oldHolder, expiryPolicy.getExpiryForAccess());
 
 		return replaced ? ChangeStatus.CHANGED : ChangeStatus.UNCHANGED;
 		
@@ -784,11 +1080,10 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
 	/**
 	 * Checks whether the cleaner is running. If not, the cleaner gets started.
-	 * @return The CleanupThread
 	 */
-	private Cache<K, V>.CleanupThread ensureCleanerIsRunning()
+	private void ensureCleanerIsRunning()
 	{
-		return startCleaner();
+		startCleaner();
 	}
 
 	/**
@@ -807,7 +1102,114 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	public V get(K key) throws RuntimeException
 	{
 		AccessTimeObjectHolder<V> holder = getFromMap(key, true);
-		return holder == null ? null : holder.get();
+		return holder == null ? null : valueOf(holder);
+	}
+
+	/**
+	 * Returns the values stored by the given keys. Keys that are in the Cache are handled like in {@link #get(Object)}.
+	 * If this Cache is read-through, all missing keys are loaded by a single call to
+	 * {@link javax.cache.integration.CacheLoader#loadAll(Iterable)}, and the loaded values are put in the Cache with
+	 * the expiration of a created entry. Unlike {@link #get(Object)}, this bulk load is not shared with concurrent loads
+	 * of the same keys.
+	 * 
+	 * @param keys The keys
+	 * @return The values. Keys without a value are not contained.
+	 * @throws CacheLoaderException if the loader threw an Exception. Values that were found in the Cache are not returned then.
+	 * @throws NullPointerException if keys or any key is null.
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) throws CacheLoaderException
+	{
+		throwISEwhenClosed();
+
+		Map<K, V> result = new HashMap<>(2 * keys.size());
+		Set<K> missingKeys = null;
+		for (K key : keys)
+		{
+			kvUtil.verifyKeyNotNull(key);
+
+			AccessTimeObjectHolder<V> holder = this.objects.get(key);
+			if (AccessTimeObjectHolder.isValid(holder))
+			{
+				result.put(key, valueOf(onGetHit(key, holder, true)));
+			}
+			else if (builder.isReadThrough() && !isServableStale(holder))
+			{
+				if (missingKeys == null)
+					missingKeys = new LinkedHashSet<>();
+				missingKeys.add(key);
+			}
+			else
+			{
+				holder = onGetMiss(key, holder);
+				if (holder != null)
+					result.put(key, valueOf(holder));
+			}
+		}
+
+		if (missingKeys != null)
+		{
+			loadAllAndPut(missingKeys, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Loads the values for the keys by one loadAll() call, and puts them in the Cache. Counts a miss for each loaded value,
+	 * like {@link #loadAndPut(Object)}. Values for keys that were not requested are dropped.
+	 *
+	 * @param keys The keys to load
+	 * @param result The Map to which the loaded values are added
+	 * @throws CacheLoaderException if the loader threw an Exception
+	 */
+	private void loadAllAndPut(Set<K> keys, Map<K, V> result)
+	{
+		Map<K, V> loadedEntries;
+		try
+		{
+			loadedEntries = loader.loadAll(keys);
+		}
+		catch (Exception exc)
+		{
+			// Wrap loader Exceptions in CacheLoaderExcpeption. See loadAndPut() for details.
+			String message = "CacheLoader " + id + " failed to load keys";
+			throw new CacheLoaderException(message + " This is a wrapped exception. See https://github.com/jsr107/jsr107tck/issues/99", exc);
+		}
+		if (loadedEntries == null)
+			return;
+
+		for (Map.Entry<K, V> entry : loadedEntries.entrySet())
+		{
+			K key = entry.getKey();
+			V loadedValue = entry.getValue();
+			if (key == null || loadedValue == null || !keys.contains(key))
+				continue;
+
+			AccessTimeObjectHolder<V> holder = putToMap(key, loadedValue, expiryPolicy.getExpiryForCreation(), cacheTimeSpread(), false, true);
+			statisticsCalculator.incrementMissCount(); // needed to load => increment miss count
+			if (holder == null || holder.isInvalid())
+			{
+				// Invalid right after the put, for example due to an ExpiryPolicy with zero duration
+				statisticsCalculator.incrementMissCount();
+				continue;
+			}
+			holder.incrementUseCount();
+			statisticsCalculator.incrementHitCount();
+			result.put(key, valueOf(holder));
+		}
+	}
+
+	/**
+	 * Returns the value of a holder that was returned by {@link #getFromMap(Object, boolean)}, and records the access.
+	 * The access of a stale holder is not recorded, as it would renew the idle time of the holder.
+	 *
+	 * @param holder The holder
+	 * @return The value
+	 */
+	final V valueOf(AccessTimeObjectHolder<V> holder)
+	{
+		if (maxStalenessMillis > 0 && holder.isInvalid())
+			return holder.peek();
+		return holder.get();
 	}
 
 	AccessTimeObjectHolder<V> getFromMap(K key) throws RuntimeException
@@ -821,40 +1223,184 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		kvUtil.verifyKeyNotNull(key);
 
 		AccessTimeObjectHolder<V> holder = this.objects.get(key);
+		if (AccessTimeObjectHolder.isValid(holder))
+		{
+			return onGetHit(key, holder, touch);
+		}
+		return onGetMiss(key, holder);
+	}
 
-		boolean loaded = false;
-		boolean holderWasValidBeforeApplyingExpiryPolicy = AccessTimeObjectHolder.isValid(holder);
-		if (holderWasValidBeforeApplyingExpiryPolicy && touch)
+	/**
+	 * Processes a get() for a holder that was valid when it was read from the backing map.
+	 * Applies the ExpiryPolicy and updates the statistics. If the holder is due for refresh-ahead, a reload is started.
+	 *
+	 * @param key The key
+	 * @param holder The valid holder
+	 * @param touch true, if the access time should be updated
+	 * @return The holder
+	 */
+	final AccessTimeObjectHolder<V> onGetHit(K key, AccessTimeObjectHolder<V> holder, boolean touch)
+	{
+		countHit(holder, touch);
+		if (accessRecorder != null)
+			accessRecorder.recordAccess(key);
+		if (isDueForRefresh(holder))
+		{
+			refreshAsync(key, holder);
+		}
+		return holder;
+	}
+
+	/**
+	 * The part of {@link #onGetHit(Object, AccessTimeObjectHolder, boolean)} that does not need the key: Applies the
+	 * ExpiryPolicy and updates the statistics.
+	 *
+	 * @param holder The valid holder
+	 * @param touch true, if the access time should be updated
+	 */
+	final void countHit(AccessTimeObjectHolder<V> holder, boolean touch)
+	{
+		if (touch)
 		{
 			holder.updateMaxIdleTime(expiryPolicy.getExpiryForAccess());
 		}
+		// debugLogger.debug("1lCache GET key:"+pKey.hashCode()+"; CACHE:hit");
+		holder.incrementUseCount();
+		statisticsCalculator.incrementHitCount();
+	}
+
+	/**
+	 * @param holder The valid holder
+	 * @return true, if the holder is old enough for refresh-ahead
+	 */
+	final boolean isDueForRefresh(AccessTimeObjectHolder<V> holder)
+	{
+		return refreshAfterMillis > 0 && millisEstimator.millis() - holder.getCreationTime() >= refreshAfterMillis;
+	}
+
+	/**
+	 * Returns whether a get() miss may load the value or serve a stale one. If not, {@link #onGetMiss(Object, AccessTimeObjectHolder)}
+	 * only counts the miss, which does not need the key.
+	 *
+	 * @return true, if this Cache is read-through or serves stale values
+	 */
+	final boolean loadsOnMiss()
+	{
+		return builder.isReadThrough() || maxStalenessMillis > 0;
+	}
 
-		if (!holderWasValidBeforeApplyingExpiryPolicy && builder.isReadThrough())
+	/**
+	 * Starts an asynchronous reload of the value for the given key on the loader executor, unless a reload for the key
+	 * is already running.
+	 *
+	 * @param key The key
+	 * @param holder The holder that is to be replaced
+	 */
+	void refreshAsync(final K key, final AccessTimeObjectHolder<V> holder)
+	{
+		if (refreshingKeys.putIfAbsent(key, Boolean.TRUE) != null)
+			return; // Already reloading
+
+		CompletableFuture<V> reload;
+		try
+		{
+			// The reload is not waited for, so a loader executor thread never blocks on another one
+			reload = asyncLoader.asyncLoad(key, loaderExecutor);
+		}
+		catch (RejectedExecutionException ree)
+		{
+			// Executor is shut down or saturated. The next get() tries again.
+			refreshingKeys.remove(key);
+			return;
+		}
+		catch (RuntimeException exc)
+		{
+			logger.error("CacheLoader " + id + " failed to refresh key=" + key, exc);
+			refreshingKeys.remove(key);
+			return;
+		}
+
+		reload.whenComplete((loadedValue, exc) ->
 		{
-			// Data not present, but can be loaded
 			try
 			{
-				// loader is never null here, as isReadThrough enforced that when the Cache was created
-				V loadedValue = loader.load(key);
-				if (loadedValue == null)
-				{
-					// JSR107 TCK requires that a loader will not fail with NPE, even though the value is null.
-					return null;
-				}
-
-				holder = putToMap(key, loadedValue, expiryPolicy.getExpiryForCreation(), cacheTimeSpread(), false, true);
-				loaded = true;
-				// ##LOADED_MISS_COUNT##
-				statisticsCalculator.incrementMissCount(); // needed to load => increment miss count
+				if (exc != null)
+					logger.error("CacheLoader " + id + " failed to refresh key=" + key, exc);
+				else
+					replaceRefreshed(key, holder, loadedValue);
 			}
-			catch (Exception exc)
+			finally
 			{
-				// Wrap loader Exceptions in CacheLoaderExcpeption. The TCK requires it, but it is possibly a TCK bug.
-				// For details, see https://github.com/jsr107/jsr107tck/issues/99
-				String message = "CacheLoader " + id + " failed to load key=" + key;
-				throw new CacheLoaderException(message + " This is a wrapped exception. See https://github.com/jsr107/jsr107tck/issues/99", exc);
+				refreshingKeys.remove(key);
 			}
+		});
+	}
 
+	/**
+	 * Replaces the holder with the reloaded value. If the holder was replaced or removed in the meantime, the loaded
+	 * value is dropped, as it could overwrite a newer value. The holder may be expired, which is the case for stale
+	 * serving. Like a load, the new holder gets the expiry for creation.
+	 *
+	 * @param key The key
+	 * @param oldHolder The holder that is to be replaced
+	 * @param loadedValue The reloaded value, or null if the loader has no value for the key
+	 */
+	private void replaceRefreshed(K key, AccessTimeObjectHolder<V> oldHolder, V loadedValue)
+	{
+		if (loadedValue == null || isClosed())
+			return;
+
+		AccessTimeObjectHolder<V> newHolder = newHolder(key, loadedValue);
+		newHolder.complete(expiryPolicy.getExpiryForCreation(), cacheTimeSpread());
+		if (this.objects.replace(key, oldHolder, newHolder))
+		{
+			oldHolder.markReplaced();
+			if (accessRecorder != null)
+				accessRecorder.recordInsert(key, newHolder);
+			scheduleExpiration(key, newHolder);
+			statisticsCalculator.incrementPutCount();
+			refreshCount.incrementAndGet();
+			if (listeners.hasListenerFor(EventType.UPDATED))
+				listeners.dispatchEvent(EventType.UPDATED, key, loadedValue, oldHolder.peek());
+		}
+	}
+
+	/**
+	 * Processes a get() for a key that was not found in the backing map, or whose holder was invalid.
+	 * Serves the holder as a stale value if it is within the grace period of stale serving. Otherwise it loads the value
+	 * if this Cache is read-through. Updates the statistics.
+	 *
+	 * @param key The key
+	 * @param holder The invalid holder, or null if the key was not found
+	 * @return The stale holder, the holder of the loaded value, or null
+	 * @throws RuntimeException if the loader threw an Exception.
+	 */
+	AccessTimeObjectHolder<V> onGetMiss(K key, AccessTimeObjectHolder<V> holder) throws RuntimeException
+	{
+		if (isServableStale(holder))
+		{
+			// Stale-while-revalidate: Serve the expired value, and reload in the background
+			holder.incrementUseCount();
+			statisticsCalculator.incrementHitCount();
+			staleHitCount.incrementAndGet();
+			refreshAsync(key, holder);
+			return holder;
+		}
+
+		boolean loaded = false;
+		if (builder.isReadThrough())
+		{
+			// Data not present, but can be loaded. Concurrent misses of the key share one load.
+			// loader is never null here, as isReadThrough enforced that when the Cache was created
+			boolean[] loadedHere = new boolean[1];
+			V loadedValue = loadCoalescer.load(key, k -> { loadedHere[0] = true; return loadAndPut(k); });
+			holder = loadedValue == null ? null : holderOfLoaded(key, loadedValue);
+			if (!loadedHere[0] && holder != null)
+			{
+				// Waited for the load of another thread
+				statisticsCalculator.incrementMissCount();
+			}
+			loaded = true;
 		}
 
 		if (holder == null)
@@ -871,7 +1417,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 			return null;
 		}
 
-		if (!holderWasValidBeforeApplyingExpiryPolicy && holder.isInvalid())
+		if (holder.isInvalid())
 		{
 			// Holder was neither valid before we applied the ExpirationPolicy, nor after (after = Updated or New Holder)
 
@@ -880,12 +1426,333 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 			statisticsCalculator.incrementMissCount();
 			return null;
 		}
-		// debugLogger.debug("1lCache GET key:"+pKey.hashCode()+"; CACHE:hit");
 		holder.incrementUseCount();
 		statisticsCalculator.incrementHitCount();
 		return holder;
 	}
 
+	/**
+	 * Creates the own loader executor of this Cache. It has {@value #LOADER_THREADS} threads, which are started on demand
+	 * and end when idle, and at most {@value #LOADER_QUEUE_SIZE} waiting loads.
+	 *
+	 * @return The executor
+	 */
+	private ThreadPoolExecutor createLoaderExecutor()
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(LOADER_QUEUE_SIZE), new ThreadFactory()
+				{
+					private final AtomicInteger threadSeqno = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "CacheLoaderThread-" + id + "-" + threadSeqno.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @return The Executor for asynchronous loads
+	 */
+	Executor loaderExecutor()
+	{
+		return loaderExecutor;
+	}
+
+	/**
+	 * Returns whether the invalid holder can be served as a stale value, see {@link Builder#setMaxStaleness(int, TimeUnit)}.
+	 *
+	 * @param holder The invalid holder, or null
+	 * @return true, if the holder can be served
+	 */
+	private boolean isServableStale(AccessTimeObjectHolder<V> holder)
+	{
+		return maxStalenessMillis > 0 && holder != null && holder.isServableStale(maxStalenessMillis);
+	}
+
+	/**
+	 * Returns a future for the value stored by the given key. If the value is in the Cache, the returned future is already
+	 * complete. Otherwise, if this Cache is read-through, the value is loaded asynchronously on the loader executor via the
+	 * {@link AsyncCacheLoader}, or via the CacheLoader if there is no AsyncCacheLoader. The loaded value is put in the Cache
+	 * with the expiration of a created entry. Concurrent loads of the same key, synchronous or asynchronous, share one load.
+	 * <p>
+	 * Unlike {@link #get(Object)}, this method does not block the caller for loading.
+	 * 
+	 * @param key The key
+	 * @return A future for the value. It completes with null if there is no value, or exceptionally with a
+	 *         CacheLoaderException if the load failed.
+	 * @throws NullPointerException if key is null.
+	 */
+	public CompletableFuture<V> getAsync(K key)
+	{
+		throwISEwhenClosed();
+		kvUtil.verifyKeyNotNull(key);
+
+		AccessTimeObjectHolder<V> holder = this.objects.get(key);
+		if (AccessTimeObjectHolder.isValid(holder))
+		{
+			return CompletableFuture.completedFuture(valueOf(onGetHit(key, holder, true)));
+		}
+		if (!builder.isReadThrough() || isServableStale(holder))
+		{
+			// Nothing to load, or stale serving. Neither blocks.
+			holder = onGetMiss(key, holder);
+			return CompletableFuture.completedFuture(holder == null ? null : valueOf(holder));
+		}
+
+		return loadCoalescer.loadAsync(key, this::loadAndPutAsync).thenApply(loadedValue ->
+		{
+			// Statistics like in get(): A miss for the load, and then a hit, or a second miss if the holder is invalid
+			if (loadedValue == null)
+				return null;
+			statisticsCalculator.incrementMissCount();
+			AccessTimeObjectHolder<V> loadedHolder = holderOfLoaded(key, loadedValue);
+			if (loadedHolder.isInvalid())
+			{
+				statisticsCalculator.incrementMissCount();
+				return null;
+			}
+			loadedHolder.incrementUseCount();
+			statisticsCalculator.incrementHitCount();
+			return loadedHolder.get();
+		});
+	}
+
+	/**
+	 * Returns a future for the values stored by the given keys. Each key is handled like in {@link #getAsync(Object)}.
+	 * The keys are loaded individually, so each of them is shared with concurrent loads of the same key.
+	 * 
+	 * @param keys The keys
+	 * @return A future for the values. Keys without a value are not contained. It completes exceptionally with a
+	 *         CacheLoaderException if any load failed.
+	 * @throws NullPointerException if keys or any key is null.
+	 */
+	public CompletableFuture<Map<K, V>> getAllAsync(Set<? extends K> keys)
+	{
+		final Map<K, CompletableFuture<V>> futures = new HashMap<>(keys.size());
+		for (K key : keys)
+		{
+			futures.put(key, getAsync(key));
+		}
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored ->
+		{
+			Map<K, V> values = new HashMap<>(futures.size());
+			for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet())
+			{
+				V value = entry.getValue().join();
+				if (value != null)
+					values.put(entry.getKey(), value);
+			}
+			return values;
+		});
+	}
+
+	/**
+	 * Loads the value for the key asynchronously, and puts it in the Cache before the returned future completes. The put
+	 * runs on the loader executor and not on the thread that completes the load, as it may block for eviction.
+	 *
+	 * @param key The key
+	 * @return A future for the loaded value. The value is null if the loader returned null or the value was not put. If
+	 *         the loader executor rejects the put, the future completes exceptionally with the RejectedExecutionException.
+	 */
+	private CompletableFuture<V> loadAndPutAsync(final K key)
+	{
+		return applyOnLoaderExecutor(asyncLoader.asyncLoad(key, loaderExecutor), loadedValue -> loadedValue == null
+				|| putToMap(key, loadedValue, expiryPolicy.getExpiryForCreation(), cacheTimeSpread(), false, true) == null ? null : loadedValue);
+	}
+
+	/**
+	 * Loads the values for the keys on the loader executor, and passes them to the given store action. If there is an
+	 * AsyncCacheLoader, it is used and not waited for inside a loader executor thread, like the BlockingLoader would. A
+	 * bounded executor could then run out of threads for the loads that are waited for.
+	 *
+	 * @param keys The keys
+	 * @param store The action that stores the loaded values. It runs on the loader executor.
+	 * @return A future that completes when the values are stored. It completes exceptionally if the load or the store failed.
+	 * @throws RejectedExecutionException if the loader executor rejects the load
+	 */
+	CompletableFuture<Void> loadAllAsync(final List<K> keys, final Consumer<Map<K, V>> store)
+	{
+		if (builder.getAsyncLoader() != null)
+		{
+			return applyOnLoaderExecutor(asyncLoader.asyncLoadAll(new LinkedHashSet<K>(keys), loaderExecutor), loadedValues ->
+			{
+				store.accept(loadedValues);
+				return null;
+			});
+		}
+		return CompletableFuture.runAsync(() -> store.accept(loader.loadAll(keys)), loaderExecutor);
+	}
+
+	/**
+	 * Applies the function to the result of the future on the loader executor, and not on the thread that completes the
+	 * future. Unlike with thenApplyAsync(), a rejection by the loader executor completes the returned future
+	 * exceptionally, instead of being thrown to the completing thread and leaving the returned future incomplete.
+	 *
+	 * @param future The future
+	 * @param function The function
+	 * @return A future for the result of the function. It completes exceptionally if the future or the function failed, or
+	 *         with the RejectedExecutionException if the loader executor rejected the function.
+	 */
+	private <T, R> CompletableFuture<R> applyOnLoaderExecutor(CompletableFuture<T> future, final Function<? super T, ? extends R> function)
+	{
+		final CompletableFuture<R> applied = new CompletableFuture<>();
+		future.whenComplete((value, exc) ->
+		{
+			if (exc != null)
+			{
+				applied.completeExceptionally(exc);
+				return;
+			}
+			try
+			{
+				loaderExecutor.execute(() ->
+				{
+					try
+					{
+						applied.complete(function.apply(value));
+					}
+					catch (Throwable functionExc)
+					{
+						applied.completeExceptionally(functionExc);
+					}
+				});
+			}
+			catch (RejectedExecutionException ree)
+			{
+				applied.completeExceptionally(ree);
+			}
+		});
+		return applied;
+	}
+
+	/**
+	 * Loads the value for the key, and puts it in the Cache. Counts a miss, if a value was loaded.
+	 *
+	 * @param key The key
+	 * @return The loaded value, or null if the loader returned null or the value was not put
+	 * @throws CacheLoaderException if the loader threw an Exception
+	 */
+	private V loadAndPut(K key)
+	{
+		try
+		{
+			V loadedValue = loader.load(key);
+			if (loadedValue == null)
+			{
+				// JSR107 TCK requires that a loader will not fail with NPE, even though the value is null.
+				return null;
+			}
+
+			AccessTimeObjectHolder<V> holder = putToMap(key, loadedValue, expiryPolicy.getExpiryForCreation(), cacheTimeSpread(), false, true);
+			// ##LOADED_MISS_COUNT##
+			statisticsCalculator.incrementMissCount(); // needed to load => increment miss count
+			return holder == null ? null : loadedValue;
+		}
+		catch (Exception exc)
+		{
+			// Wrap loader Exceptions in CacheLoaderExcpeption. The TCK requires it, but it is possibly a TCK bug.
+			// For details, see https://github.com/jsr107/jsr107tck/issues/99
+			String message = "CacheLoader " + id + " failed to load key=" + key;
+			throw new CacheLoaderException(message + " This is a wrapped exception. See https://github.com/jsr107/jsr107tck/issues/99", exc);
+		}
+	}
+
+	/**
+	 * Returns the holder for a value that a coalesced load returned. That is the holder that the load stored, or a newer
+	 * one. If there is no valid holder, one is created for the value. This is the case if the load did not store the value,
+	 * like the load of an EntryProcessor, or if it was removed or has expired in the meantime.
+	 *
+	 * @param key The key
+	 * @param loadedValue The loaded value
+	 * @return The holder
+	 */
+	private AccessTimeObjectHolder<V> holderOfLoaded(K key, V loadedValue)
+	{
+		AccessTimeObjectHolder<V> holder = this.objects.get(key);
+		if (AccessTimeObjectHolder.isValid(holder))
+			return holder;
+
+		holder = newHolder(key, loadedValue);
+		holder.complete(expiryPolicy.getExpiryForCreation(), cacheTimeSpread());
+		return holder;
+	}
+
+	/**
+	 * A loader that shares the loads with concurrent get() calls via the LoadCoalescer. The loaded values are not put in
+	 * the Cache, as the caller decides about that. Exceptions of the loader are passed on unchanged.
+	 */
+	private final class CoalescingLoader implements CacheLoader<K, V>
+	{
+		@Override
+		public V load(K key) throws CacheLoaderException
+		{
+			return loadCoalescer.load(key, k -> loader.load(k));
+		}
+
+		@Override
+		public Map<K, V> loadAll(Iterable<? extends K> keys) throws CacheLoaderException
+		{
+			return loader.loadAll(keys);
+		}
+	}
+
+	/**
+	 * A synchronous loader for a Cache that only has an AsyncCacheLoader. It waits for the asynchronous load. loadAll()
+	 * is passed to {@link AsyncCacheLoader#asyncLoadAll(Set, Executor)}, so that a bulk load stays one call.
+	 */
+	private final class BlockingLoader extends com.trivago.triava.tcache.core.CacheLoader<K, V>
+	{
+		private final AsyncCacheLoader<K, V> asyncLoader;
+
+		BlockingLoader(AsyncCacheLoader<K, V> asyncLoader)
+		{
+			this.asyncLoader = asyncLoader;
+		}
+
+		@Override
+		public V load(K key) throws CacheLoaderException
+		{
+			try
+			{
+				return asyncLoader.asyncLoad(key, loaderExecutor).join();
+			}
+			catch (CompletionException exc)
+			{
+				Throwable cause = exc.getCause() != null ? exc.getCause() : exc;
+				if (cause instanceof CacheLoaderException)
+					throw (CacheLoaderException)cause;
+				throw new CacheLoaderException("AsyncCacheLoader " + id + " failed to load key=" + key, cause);
+			}
+		}
+
+		@Override
+		public Map<K, V> loadAll(Iterable<? extends K> keys) throws CacheLoaderException
+		{
+			Set<K> keySet = new LinkedHashSet<>();
+			for (K key : keys)
+			{
+				keySet.add(key);
+			}
+			try
+			{
+				return asyncLoader.asyncLoadAll(keySet, loaderExecutor).join();
+			}
+			catch (CompletionException exc)
+			{
+				Throwable cause = exc.getCause() != null ? exc.getCause() : exc;
+				if (cause instanceof CacheLoaderException)
+					throw (CacheLoaderException)cause;
+				throw new CacheLoaderException("AsyncCacheLoader " + id + " failed to load keys", cause);
+			}
+		}
+	}
+
 	/**
 	 * Fills the given cache statistics object.
 	 * 
@@ -901,6 +1768,18 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		cacheStatistic.setPutCount(statisticsCalculator.getPutCount());
 		cacheStatistic.setRemoveCount(statisticsCalculator.getRemoveCount());
 		cacheStatistic.setDropCount(statisticsCalculator.getDropCount());
+		if (valueSerializer instanceof CompressingSerializer)
+		{
+			CompressingSerializer<V> compressingSerializer = (CompressingSerializer<V>)valueSerializer;
+			cacheStatistic.setCompressionRatio(compressingSerializer.compressionRatio());
+			cacheStatistic.setAverageCompressNanos(compressingSerializer.averageCompressNanos());
+			cacheStatistic.setAverageDecompressNanos(compressingSerializer.averageDecompressNanos());
+		}
+		cacheStatistic.setExpirationScanNanos(expirationScanNanos);
+		cacheStatistic.setRefreshCount(refreshCount.get());
+		cacheStatistic.setStaleHitCount(staleHitCount.get());
+		cacheStatistic.setCoalescedLoadCount(loadCoalescer != null ? loadCoalescer.coalescedWaits() : 0);
+		cacheStatistic.setExpiredCount(expiredCount.get());
 		return cacheStatistic;
 	}
 
@@ -982,11 +1861,18 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	{
 		String errorMsg = stopCleaner(millis);
 		this.objects.clear();
+		expirationWheel.clear();
 		return errorMsg;
 	}
 
-	private Cache<K, V>.CleanupThread startCleaner()
+	private void startCleaner()
 	{
+		if (maintenanceScheduler != null)
+		{
+			startCleanupTask();
+			return;
+		}
+
 		Cache<K, V>.CleanupThread cleanerRef = this.cleaner;
 		if (cleanerRef != null)
 		{
@@ -995,7 +1881,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		     * A lock would thus be a bottleneck in multi-threaded applications. The bottleneck has been confirmed in real-world
 		     * scenarios using YourKit, and also via throughput benchmarks.
 		     */
-			return cleanerRef;
+			return;
 		}
 
 		synchronized (this) {
@@ -1010,8 +1896,37 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		}
 
 		logger.info(this.id + " expiration started" + ", cleanupInterval=" + cleanUpIntervalMillis + "ms");
-		
-		return cleanerRef;
+	}
+
+	/**
+	 * Schedules the CleanupTask on the MaintenanceScheduler, if it is not yet scheduled. Like {@link #startCleaner()}, this
+	 * has a lock-free fast path, as it is called on every write.
+	 */
+	private void startCleanupTask()
+	{
+		if (cleanupTask != null)
+			return;
+
+		synchronized (this)
+		{
+			if (cleanupTask == null)
+			{
+				CleanupTask task = new CleanupTask();
+				cleanupTask = task;
+				maintenanceScheduler.schedulePeriodic(task, cleanUpIntervalMillis);
+				logger.info(this.id + " expiration scheduled" + ", cleanupInterval=" + cleanUpIntervalMillis + "ms");
+			}
+		}
+	}
+
+	/**
+	 * Returns the scheduler that runs the background work of this Cache. It is shared by all caches of the factory.
+	 * 
+	 * @return The scheduler, or null if the Cache runs its own threads, see {@link TCacheFactory#setMaintenanceThreads(int)}
+	 */
+	public MaintenanceScheduler maintenanceScheduler()
+	{
+		return maintenanceScheduler;
 	}
 
 	/**
@@ -1043,6 +1958,16 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	private synchronized String stopCleaner(long millis)
 	{
 		String errorMsg = null;
+		CleanupTask task = cleanupTask;
+		if (task != null)
+		{
+			if (!task.cancel(millis))
+			{
+				errorMsg = "Shutting down Cleanup Task FAILED";
+			}
+			cleanupTask = null;
+		}
+
 		Cache<K, V>.CleanupThread cleanerRef = cleaner;
 		if (cleanerRef != null)
 		{
@@ -1073,39 +1998,118 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		cleaner = null;
 	}
 
-	private int cleanUp()
+	/**
+	 * Adds the holder to the expiration index, if it expires. Must be called when a new holder was put in the Cache.
+	 * 
+	 * @param key The key
+	 * @param holder The holder, which must be complete
+	 */
+	final void scheduleExpiration(K key, AccessTimeObjectHolder<V> holder)
 	{
-		boolean expiryNotification = listeners.hasListenerFor(EventType.EXPIRED);
-		Map<K, V> evictedElements = expiryNotification ? new HashMap<K, V>() : null;
+		if (holder.expirationMillis() != Long.MAX_VALUE)
+			expirationWheel.schedule(key, holder);
+	}
 
-		// -1- Clean
+	/**
+	 * Updates the idle time of the holder, see {@link AccessTimeObjectHolder#updateMaxIdleTime(long)}. If the holder expires
+	 * earlier than before, it is scheduled again, so that the CleanupThread does not find it late. Prolonging needs no
+	 * scheduling, see {@link ExpirationWheel}.
+	 * 
+	 * @param key The key
+	 * @param holder The holder
+	 * @param idleTimeMillis The idle time
+	 */
+	final void updateMaxIdleTime(K key, AccessTimeObjectHolder<V> holder, long idleTimeMillis)
+	{
+		if (idleTimeMillis < 0)
+			return; // Constants.EXPIRY_NOCHANGE
+
+		long expirationBefore = holder.expirationMillis();
+		holder.updateMaxIdleTime(idleTimeMillis);
+		if (holder.expirationMillis() < expirationBefore)
+			scheduleExpiration(key, holder);
+	}
+
+	/**
+	 * Removes the expired entries, as found by the {@link ExpirationWheel}.
+	 */
+	private final class WheelExpirer implements ExpirationWheel.Expirer<K, V>
+	{
+		final Map<K, V> expiredElements;
 		int removedEntries = 0;
 
-		for (Iterator<Entry<K, AccessTimeObjectHolder<V>>> iter = this.objects.entrySet().iterator(); iter.hasNext();)
+		WheelExpirer(boolean expiryNotification)
+		{
+			expiredElements = expiryNotification ? new HashMap<K, V>() : null;
+		}
+
+		@Override
+		public void expire(K key, AccessTimeObjectHolder<V> holder)
 		{
-			Entry<K, AccessTimeObjectHolder<V>> entry = iter.next();
-			AccessTimeObjectHolder<V> holder = entry.getValue();
+			if (!objects.remove(key, holder))
+				return; // Removed or replaced before it expired
 
-			if (holder.isInvalid())
+			// Only read the value for the listeners. It may need to be deserialized.
+			V value = expiredElements != null ? holder.peek() : null;
+			if (holder.release()) // SAE-150 Verify removal
 			{
-				iter.remove();
-				V value = holder.peek();
-				boolean removed = holder.release();
-				if (removed) // SAE-150 Verify removal
-				{
-					++removedEntries;
-					if (evictedElements != null)
-						evictedElements.put(entry.getKey(), value);
-				}
+				++removedEntries;
+				if (expiredElements != null)
+					expiredElements.put(key, value);
 			}
 		}
+	}
+
+	/**
+	 * Counts entries that were removed, because they had expired
+	 * 
+	 * @param count The number of removed entries
+	 */
+	void countExpirations(int count)
+	{
+		if (count != 0)
+			expiredCount.addAndGet(count);
+	}
+
+	/**
+	 * Calls {@link #cleanUp()}, and logs the number of expired entries from time to time
+	 */
+	private void cleanUpAndLog()
+	{
+		expiredSinceLog += cleanUp();
+		if (expiredSinceLog != 0)
+		{
+			long now = millisEstimator.millis();
+			if (now > nextExpirationLogMillis)
+			{
+				logger.info(id() + " Cache has expired objects from Cache, count=" + expiredSinceLog);
+				expiredSinceLog = 0;
+				nextExpirationLogMillis = now + CLEANUP_LOG_INTERVAL;
+			}
+		}
+	}
+
+	private int cleanUp()
+	{
+		long startNanos = System.nanoTime();
+		WheelExpirer expirer = new WheelExpirer(listeners.hasListenerFor(EventType.EXPIRED));
+
+		// -1- Clean
+		expirationWheel.advance(millisEstimator.millis(), objects.size(), expirer);
+		expirationScanNanos += System.nanoTime() - startNanos;
 
 		// -2- Notify listeners
-		if (evictedElements != null)
-			listeners.dispatchEvents(evictedElements, EventType.EXPIRED, true);
+		if (expirer.expiredElements != null)
+			listeners.dispatchEvents(expirer.expiredElements, EventType.EXPIRED, true);
+		int removedEntries = expirer.removedEntries;
+		countExpirations(removedEntries);
+
+		// -3- Free the direct memory of removed off-heap values. Keep running until all of it is freed.
+		OffHeapConcurrentMap<V> offHeapMap = offHeapMap();
+		boolean retiredLeft = offHeapMap != null && offHeapMap.freeRetired();
 
-		// -3- Stop Thread if cache is empty
-		if (objects.isEmpty())
+		// -4- Stop Thread if cache is empty
+		if (objects.isEmpty() && !retiredLeft)
 		{
 			stopCleaner();
 		}
@@ -1189,6 +2193,18 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		AccessTimeObjectHolder<V> oldHolder = this.objects.remove(key);
 		return releaseHolder(oldHolder);
 	}
+
+	/**
+	 * Removes the mapping for the given key, if it is still mapped to the given holder, and releases the holder.
+	 * 
+	 * @param key The key
+	 * @param holder The holder that is expected to be mapped to the key
+	 * @return The value, if this call released the holder. Otherwise null.
+	 */
+	protected V removeAndRelease(K key, AccessTimeObjectHolder<V> holder)
+	{
+		return this.objects.remove(key, holder) ? releaseHolder(holder) : null;
+	}
 	
 	/**
 	 * Schedule the entry for the given key for expiration. The time will be chosen randomly
@@ -1446,7 +2462,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 	/**
 	 * Returns normally with no side effects if this cache is open. Throws IllegalStateException if it is closed.
 	 */
-	private void throwISEwhenClosed()
+	final void throwISEwhenClosed()
 	{
 		if (isClosed())
 			throw new IllegalStateException("Cache already closed: " + id());
@@ -1488,6 +2504,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 		boolean removed = holder.release();
 		if (removed) // SAE-150 Verify removal
 		{
+			countExpirations(1);
 			listeners.dispatchEvent(EventType.EXPIRED, key, value);
 		}
 		
@@ -1500,8 +2517,6 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
     public class CleanupThread extends Thread
     {
         private volatile boolean running; // volatile: modified via cancel() from a different thread
-        private int removedEntries = 0;
-        private long nextLogTimeMillis = System.currentTimeMillis() + CLEANUP_LOG_INTERVAL;
         
         CleanupThread(String cacheName)
         {
@@ -1523,17 +2538,7 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
                     // is stopped, the shutdown Thread will wait very long.
                     sleep(cleanUpIntervalMillis);
                     
-                    removedEntries += cleanUp();
-                    if (removedEntries != 0)
-                    {
-                        long now = millisEstimator.millis();
-                        if (now > nextLogTimeMillis)
-                        {
-                            logger.info(id() + " Cache has expired objects from Cache, count=" + removedEntries);
-                            removedEntries = 0;
-                            nextLogTimeMillis = now + CLEANUP_LOG_INTERVAL;
-                        }
-                    }
+                    cleanUpAndLog();
                     if (Thread.interrupted())
                     {
                         throw new InterruptedException();
@@ -1558,6 +2563,24 @@ public class Cache<K, V> implements Thread.UncaughtExceptionHandler, ActionConte
 
     }
 
+    /**
+     * Removes expired entries on the MaintenanceScheduler, in the cleanup interval. Used instead of the {@link CleanupThread}
+     * if the factory has a MaintenanceScheduler.
+     */
+    private final class CleanupTask extends MaintenanceScheduler.Task
+    {
+        CleanupTask()
+        {
+            super(maintenanceScheduler, id, builder.getMaintenancePriority(), MaintenanceScheduler.Kind.EXPIRATION);
+        }
+
+        @Override
+        protected void runTask()
+        {
+            cleanUpAndLog();
+        }
+    }
+
 	@Override
 	public String toString()
 	{
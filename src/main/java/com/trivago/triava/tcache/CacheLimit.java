@@ -19,6 +19,7 @@ package com.trivago.triava.tcache;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -26,19 +27,27 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.cache.event.EventType;
 
 import com.trivago.triava.annotations.ObjectSizeCalculatorIgnore;
 import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.core.MaintenanceScheduler;
 import com.trivago.triava.tcache.eviction.EvictionInterface;
+import com.trivago.triava.tcache.eviction.FreezingEvictor;
 import com.trivago.triava.tcache.eviction.HolderFreezer;
+import com.trivago.triava.tcache.eviction.VictimBuffer;
+import com.trivago.triava.tcache.eviction.VictimSelector;
 import com.trivago.triava.tcache.statistics.SlidingWindowCounter;
 import com.trivago.triava.tcache.statistics.TCacheStatisticsInterface;
 
 /**
  * A size limited Cache, that evicts elements asynchronously in the background.
  * The element to be evicted are chosen by the evictionClass, 
+ * <p>
+ * The size is either the number of elements, or the total weight of the elements if the Cache has a Weigher.
+ * All limits below are in these capacity units. Without a Weigher each element weighs 1.
  * 
  * @author cesken
  *
@@ -47,32 +56,65 @@ import com.trivago.triava.tcache.statistics.TCacheStatisticsInterface;
  */
 public class CacheLimit<K, V> extends Cache<K, V>
 {
-    private static final boolean INTERMEDIATE_NOTFULL_NOTIFICATION = false;
 	/**
-	 * FREE_PERCENTAGE defines how much elements to free.
-	 * Percentage relates to evictionStartAt. 
+	 * Bounds for the adaptive eviction space, in percent of userDataCapacity. See {@link Builder#setAdaptiveEvictionSpace(boolean)}
 	 */
-	private static final int FREE_PERCENTAGE = 10; // Future directions: Move to instance. Add to Builder.
-	private static final float EVICTION_SPACE_PERCENT = 15; // Future directions: Move to instance. Add to Builder.
-	
-	// --- FEATURE_ExtraParEvictionSpace START ----------
-	private static final boolean FEATURE_ExtraParEvictionSpace = false;
-	private static final int EVICTION_SPACE_PER_WRITER = 2500;
-	private static final int MAXIMUM_EVICTION_SPACE_FOR_WRITERS = 200000;
-	// --- FEATURE_ExtraParEvictionSpace END ----------
+	private static final int ADAPTIVE_SPACE_MIN_PERCENT = 1;
+	private static final int ADAPTIVE_SPACE_MAX_PERCENT = 100;
+	/**
+	 * The adaptive eviction space holds this many times the elements that are added while an eviction round is running
+	 */
+	private static final int ADAPTIVE_SPACE_SAFETY_FACTOR = 2;
+
+	/**
+	 * Number of evicted elements after which writers blocked in {@link #ensureFreeCapacity()} are released, if the Cache
+	 * is not overfull any longer. The rest of the eviction round continues in the background.
+	 */
+	private static final int EVICTION_CHUNK_SIZE = 1000;
+
+	/**
+	 * Maximum number of elements that are selected at once from an eviction class that selects its own victims, see {@link VictimSelector}
+	 */
+	private static final int VICTIM_BATCH_SIZE = 256;
+
+	/**
+	 * Limits how many candidates an exact eviction round selects, as a multiple of the amount it has to remove. Candidates
+	 * that are gone or were used since the scan are skipped, and more are selected instead. When many of them are gone,
+	 * for example evicted by writers with {@link JamPolicy#ASSIST}, the remaining ones are stale, and are left to the next round.
+	 */
+	private static final int MAX_RESELECTION_FACTOR = 2;
+
+	/**
+	 * Number of elements that a writer evicts itself with {@link JamPolicy#ASSIST}, before it adds its element
+	 */
+	private static final int ASSIST_BATCH_SIZE = 8;
+	/**
+	 * Number of entries that a writer inspects with {@link JamPolicy#ASSIST} for each element it evicts
+	 */
+	private static final int ASSIST_SAMPLE_SIZE = 8;
 
 	private static final boolean LOG_INTERNAL_DATA = true;
 	private static final boolean LOG_INTERNAL_EXTENDED_DATA = false;
 
 	protected EvictionInterface<K, V> evictionClass = null;
+	private final VictimSelector<K, V> victimSelector; // null, unless the eviction class selects its own victims
+	private final int evictionSampleSize;
+	private final int evictionParallelism; // 1, if the eviction thread scans alone
+	@ObjectSizeCalculatorIgnore(reason="The ForkJoinPool contains threads, which would lead to measuring the whole Heap")
+	private transient ParallelEvictionScan<K, V> parallelEviction = null; // Created on the first parallel round. Guarded by parallelEvictionLock
+	private final Object parallelEvictionLock = new Object();
 
 	@ObjectSizeCalculatorIgnore(reason="Thread contains a classloader, which would lead to measuring the whole Heap")
-	private volatile transient EvictionThread evictor = null;
+	private volatile transient Evictor evictor = null;
+	private final AssistEvictor assistEvictor; // null, unless JamPolicy.ASSIST
 	
 	protected final AtomicLong evictionCount  = new AtomicLong();	
 	private int counterEvictionsRounds = 0;
 	private AtomicInteger  counterEvictionsHalts = new AtomicInteger();
-	private SlidingWindowCounter evictionRateCounter = new SlidingWindowCounter(60, 1);
+	private final SlidingWindowCounter evictionRateCounter = new SlidingWindowCounter(60, 1);
+	// Written only by the eviction thread. See Evictor.evict()
+	private volatile long evictionScanNanos = 0;
+	private volatile long evictionSelectNanos = 0;
 	
 	private final Object evictionNotifierDone = new Object();
 	
@@ -88,26 +130,43 @@ public class CacheLimit<K, V> extends Cache<K, V>
 			throw new IllegalArgumentException("evictionClass must not be null in an evicting Cache");
 		}
 		this.evictionClass = builder.getEvictionClass();
+		this.evictionSampleSize = builder.getEvictionSampleSize();
+		this.victimSelector = createVictimSelector(evictionClass);
+		if (victimSelector != null)
+		{
+			victimSelector.claim();
+		}
+		this.evictionParallelism = builder.getEvictionParallelism();
+		this.assistEvictor = jamPolicy == JamPolicy.ASSIST ? new AssistEvictor() : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K, V> VictimSelector<K, V> createVictimSelector(EvictionInterface<K, V> evictionClass)
+	{
+		return evictionClass instanceof VictimSelector ? (VictimSelector<K, V>)evictionClass : null;
 	}
 
 	// *** VALUES BELOW ARE FIXED AT CONSTRUCTION. See evictionExtraSpace(builder) ************************  
-	private int userDataElements; // SET DURING  CONSTRUCTION
-	private int blockStartAt; // SET DURING  CONSTRUCTION
-	private int evictUntilAtLeast; // SET DURING  CONSTRUCTION
-	private int evictNormallyElements; // SET DURING  CONSTRUCTION
+	private long userDataCapacity; // SET DURING  CONSTRUCTION
+	private long capacityLimit; // SET DURING  CONSTRUCTION. Upper bound for blockStartAt
+	private boolean adaptiveEvictionSpace; // SET DURING  CONSTRUCTION
+	private long evictUntilAtLeast; // SET DURING  CONSTRUCTION
+	private long evictNormallyAmount; // SET DURING  CONSTRUCTION
+	private int evictionMapSize; // SET DURING  CONSTRUCTION. In elements, not in capacity units.
 	// *** VALUES ABOVE ARE FIXED AT CONSTRUCTION. See evictionExtraSpace(builder) ************************  
+	private volatile long blockStartAt; // SET DURING  CONSTRUCTION. Changed after each eviction round, if adaptiveEvictionSpace
 
 
 	/**
 	 * Returns whether the Cache is full. We declare the Cache full, when it has reached the number of
-	 * expected elements, even though there may be some extra eviction space available.
+	 * expected elements (or the maximum weight), even though there may be some extra eviction space available.
 	 * 
 	 * @return true, if the cache is full
 	 */
 	protected boolean isFull()
 	{
-		int size = objects.size();
-		boolean full = size >= userDataElements;
+		long size = currentWeight();
+		boolean full = size >= userDataCapacity;
 //		if (LOG_INTERNAL_DATA && LOG_INTERNAL_EXTENDED_DATA && full)
 //		{
 //			logger.info("isFull: size=" + size + ", userDataElements=" +  userDataElements);
@@ -124,7 +183,7 @@ public class CacheLimit<K, V> extends Cache<K, V>
 	protected boolean isOverfull()
 	{
 		// maxElements = expectedElements from the configuration. NOT how we sized the ConcurrentMap. 
-		int size = objects.size();
+		long size = currentWeight();
 		boolean full = size >= blockStartAt;
 		if (full)
 		{
@@ -147,14 +206,14 @@ public class CacheLimit<K, V> extends Cache<K, V>
 	 * can use that.
 	 * 
 	 * <p>
-	 * Internally this method calculates some more numbers:
+	 * Internally this method calculates some more numbers, in capacity units (elements or weight):
 	 * 
 	 *   0                               // Empty
-	 *   private int evictUntilAtLeast;  // Position below userDataElements
-	 *   private int userDataElements;   // Expected elements, as given by user
-	 *   private int blockStartAt;       // Block mark
+	 *   private long evictUntilAtLeast;  // Position below userDataCapacity
+	 *   private long userDataCapacity;   // Expected elements or maximum weight, as given by user
+	 *   private long blockStartAt;       // Block mark
 	 *   
-	 *   private int evictNormallyElements; // SET DURING  CONSTRUCTION
+	 *   private long evictNormallyAmount; // SET DURING  CONSTRUCTION
 	 *
 	 * 
 	 * @return The number of extra elements required in the storage Map.
@@ -162,75 +221,114 @@ public class CacheLimit<K, V> extends Cache<K, V>
 	@Override
 	protected int evictionExtraSpace(Builder<K, V> builder)
 	{
-		double factor = EVICTION_SPACE_PERCENT / 100D; //  20/100d = 0.2
-		userDataElements = builder.getMaxElements();
-		
-		final int parallelityEvictionSpace;
-		if (FEATURE_ExtraParEvictionSpace)
-		{
-			/**
-			 * This can take a significant amount of extra memory, especially for small sized caches which contain
-			 * big elements. Example would be a Session cache, with (e.g.) 2000 Elements, each sized 500KB => 1GB size.
-			 * If we would allow the below number, it would allow 2500*14 = 35000 more elements => 17,5GB.
-			 * This is clearly undesirable. Thus the feature is currently off.
-			 * 
-			 * It may likely be more desirable to let "factor" grow, e.g. by 1% per 5 Threads (max 20%) 
-			 */
-			int evictionSpacePerWriter = builder.getConcurrencyLevel() * EVICTION_SPACE_PER_WRITER;
-			parallelityEvictionSpace = Math.min(evictionSpacePerWriter, MAXIMUM_EVICTION_SPACE_FOR_WRITERS);
-		}
-		else
+		boolean weighted = builder.getWeigher() != null;
+		if (weighted != (builder.getMaxWeight() > 0))
 		{
-			parallelityEvictionSpace = 0;
+			throw new IllegalArgumentException("Weigher and maxWeight must be set together in cache: " + id()
+				+ ", weigher=" + builder.getWeigher() + ", maxWeight=" + builder.getMaxWeight());
 		}
 
-		long normalEvictionSpace = (long)(userDataElements * factor);
-		long extraEvictionSpace = Math.max(normalEvictionSpace, parallelityEvictionSpace);
-		long plannedSizeLong = userDataElements + extraEvictionSpace;
-		blockStartAt = (int)Math.min(plannedSizeLong, Integer.MAX_VALUE); 
+		double factor = builder.getEvictionSpacePercentage() / 100D; //  15/100d = 0.15
+		int freePercentage = builder.getEvictionFreePercentage();
+		int userDataElements = builder.getMaxElements();
+		userDataCapacity = weighted ? builder.getMaxWeight() : userDataElements;
+		capacityLimit = weighted ? Long.MAX_VALUE : Integer.MAX_VALUE;
+		adaptiveEvictionSpace = builder.isAdaptiveEvictionSpace();
+
+		long extraEvictionSpace = (long)(userDataCapacity * factor);
+		blockStartAt = Math.min(userDataCapacity + extraEvictionSpace, capacityLimit); 
 		
-		evictNormallyElements = (int)((double)userDataElements * FREE_PERCENTAGE / 100D);
-		evictNormallyElements = Math.max(1, evictNormallyElements); // evict always 1 or more
-		evictUntilAtLeast = userDataElements - evictNormallyElements;
+		evictNormallyAmount = (long)((double)userDataCapacity * freePercentage / 100D);
+		evictNormallyAmount = Math.max(1, evictNormallyAmount); // evict always 1 or more
+		evictUntilAtLeast = userDataCapacity - evictNormallyAmount;
+
+		// The storage Map and the eviction Map are sized in elements. With a Weigher, maxElements is the sizing hint.
+		// The adaptive eviction space can grow up to its maximum at runtime, so the maps are sized for that, and do not resize then.
+		double extraFactor = adaptiveEvictionSpace ? Math.max(factor, ADAPTIVE_SPACE_MAX_PERCENT / 100D) : factor;
+		long extraElementsLong = (long)(userDataElements * extraFactor);
+		int extraElements = (int)Math.min(extraElementsLong, Integer.MAX_VALUE - (long)userDataElements);
+		int evictNormallyElements = Math.max(1, (int)((double)userDataElements * freePercentage / 100D));
+		evictionMapSize = Math.max(evictNormallyElements, extraElements);
 		if (LOG_INTERNAL_DATA)
 		{
-			logger.info("Cache eviction tuning [" + id() +"]. Size=" + userDataElements + ", BLOCK=" + blockStartAt
-                        + ", evictToPos=" + evictUntilAtLeast + ", normal-evicting=" + evictNormallyElements
-                        + evictionConfigInfo());
+			logger.info("Cache eviction tuning [" + id() +"]. Size=" + userDataCapacity + ", BLOCK=" + blockStartAt
+                        + ", evictToPos=" + evictUntilAtLeast + ", normal-evicting=" + evictNormallyAmount
+                        + ", adaptive=" + adaptiveEvictionSpace + evictionConfigInfo());
 		}
 		
-		return blockStartAt - userDataElements;
+		return extraElements;
+	}
+
+	/**
+	 * Returns the eviction space, which is the amount that writers may add while the Cache is full, before they
+	 * act according to the {@link JamPolicy}.
+	 * 
+	 * @return The eviction space in capacity units
+	 */
+	long evictionSpace()
+	{
+		return blockStartAt - userDataCapacity;
 	}
 
 	/**
-	 * Determine how many elements to remove. The goal is to reach the interval
-	 * [ {@link #evictUntilAtLeast}, {@link #userDataElements}]. Typically we would try to
-	 * evict {@link #evictNormallyElements} elements.
+	 * Resizes the eviction space after an eviction round, see {@link Builder#setAdaptiveEvictionSpace(boolean)}.
+	 * <p>
+	 * While a round is running, writers add elements into the eviction space. If writers were blocked or had to assist,
+	 * the space was too small, and it is doubled. Otherwise the space is set to hold the elements that are added while
+	 * a round runs, with a safety factor. Shrinking is done slowly, so that a single fast round does not cause blocking
+	 * in the next one.
+	 * 
+	 * @param fillRate The amount added per second between the last two eviction rounds, in capacity units
+	 * @param roundNanos The duration of the eviction round
+	 * @param writersBlocked true, if writers have reached the end of the eviction space since the last round
+	 */
+	private void adaptEvictionSpace(double fillRate, long roundNanos, boolean writersBlocked)
+	{
+		long minSpace = Math.max(1, userDataCapacity * ADAPTIVE_SPACE_MIN_PERCENT / 100);
+		long maxSpace = Math.max(minSpace, userDataCapacity * ADAPTIVE_SPACE_MAX_PERCENT / 100);
+		long space = evictionSpace();
+		if (writersBlocked)
+		{
+			space = space * 2;
+		}
+		else
+		{
+			long needed = (long)(fillRate * roundNanos / 1_000_000_000D * ADAPTIVE_SPACE_SAFETY_FACTOR);
+			space = Math.max(needed, space - space / 10);
+		}
+		space = Math.max(minSpace, Math.min(maxSpace, space));
+		blockStartAt = Math.min(userDataCapacity + space, capacityLimit);
+	}
+
+	/**
+	 * Determine how much to remove, in capacity units. The goal is to reach the interval
+	 * [ {@link #evictUntilAtLeast}, {@link #userDataCapacity}]. Typically we would try to
+	 * evict {@link #evictNormallyAmount}.
 	 *
-	 * @return The number of elements to remove
+	 * @return The number of elements to remove, or the weight to remove if the Cache has a Weigher
 	 */
-	protected int elementsToRemove()
+	protected long amountToRemove()
 	{
-		int currentElements = objects.size();
-		if (currentElements < userDataElements)
+		long currentElements = currentWeight();
+		if (currentElements < userDataCapacity)
 		{
-			// [0, userDataElements-1] means: Not full. Nothing to evict.
+			// [0, userDataCapacity-1] means: Not full. Nothing to evict.
 			return 0;
 		}
 		
 		// ----------------------------------------------------------
 		
-		int removeTargetPos = currentElements - evictNormallyElements;
-		if (removeTargetPos > userDataElements)
+		long removeTargetPos = currentElements - evictNormallyAmount;
+		if (removeTargetPos > userDataCapacity)
 		{
-			// Evict will reach [userDataElements, MAX_INT] : Evicting not enough
-			removeTargetPos = userDataElements - evictNormallyElements;
+			// Evict will reach [userDataCapacity, MAX] : Evicting not enough
+			removeTargetPos = userDataCapacity - evictNormallyAmount;
 		}
 		
-		// removeTargetPos in now in the interval [-MAX_INT,  userDataElements-1]
+		// removeTargetPos in now in the interval [-MAX,  userDataCapacity-1]
 		if (removeTargetPos >= evictUntilAtLeast)
 		{
-			// Evict will reach [evictUntilAtLeast, userDataElements-1] : Good
+			// Evict will reach [evictUntilAtLeast, userDataCapacity-1] : Good
 		}
 		else
 		{
@@ -239,7 +337,7 @@ public class CacheLimit<K, V> extends Cache<K, V>
 		}
 
 		// else: Make sure we make room for at least until evictUntilAtLeast
-		int removeCount1 = currentElements - removeTargetPos;
+		long removeCount1 = currentElements - removeTargetPos;
 		if (removeCount1 < 0)
 		{
 			logger.error("Trying to evict a negative number of elements. id=" + id() + ", currentElements=" + currentElements + ", removeCount=" + removeCount1);
@@ -249,144 +347,478 @@ public class CacheLimit<K, V> extends Cache<K, V>
 	}
 
 	/**
-	 * Returns a reference to the EvictionThread, starting the thread if it is not running.
+	 * Returns a reference to the Evictor, starting its thread or creating its maintenance task if there is none.
 	 * 
-	 * @return A non null reference to the EvictionThread
+	 * @return A non null reference to the Evictor
 	 */
-	private EvictionThread ensureEvictionThreadIsRunning()
+	private Evictor ensureEvictorIsRunning()
 	{
-		EvictionThread eThread = evictor;
-		if (eThread != null)
+		Evictor evictorRef = evictor;
+		if (evictorRef != null)
 		{
-			// This is a fast path for the normal case. Eviction thread is running.
+			// This is a fast path for the normal case. Evictor is running.
 			// No locks are in this part.
 			// already running
-			return eThread;
+			return evictorRef;
 		}
 
 		synchronized (this)
 		{
 			if (evictor == null)
 			{
-				eThread = new EvictionThread("CacheEvictionThread-" + id());
-				eThread.setPriority(Thread.MIN_PRIORITY);
-				eThread.setDaemon(true);
-				eThread.setUncaughtExceptionHandler(eThread);
-				eThread.start();
-				evictor = eThread;
-				logger.info(id() + " Eviction Thread started");
+				evictorRef = new Evictor(maintenanceScheduler());
+				if (evictorRef.thread != null)
+				{
+					evictorRef.thread.start();
+					logger.info(id() + " Eviction Thread started");
+				}
+				evictor = evictorRef;
 			}
 			else
 			{
-				eThread = evictor;
+				evictorRef = evictor;
 			}
 		}
 
-		return eThread;
+		return evictorRef;
 	}
 
-	class EvictionThread extends Thread implements Thread.UncaughtExceptionHandler
+	/**
+	 * Waits for eviction requests, and runs an eviction round for each. Only used if the Cache has no
+	 * {@link MaintenanceScheduler}.
+	 */
+	private final class EvictionThread extends Thread
 	{
-		volatile boolean running = true;
-		volatile boolean evictionIsRunning = false;
-		
-		Map<K,V> evictedElements = new HashMap<>();
-		boolean expiryNotification = false;
-		
-		// Future directions: Pass a "Listener" down here, instead of the full tcache 
-		public EvictionThread(String name)
+		private final Evictor evictor;
+
+		EvictionThread(String name, Evictor evictor)
 		{
 			super(name);
+			this.evictor = evictor;
+			setPriority(Thread.MIN_PRIORITY);
+			setDaemon(true);
+			setUncaughtExceptionHandler(evictor);
 		}
 
 		@Override
 		public void run()
 		{
-			while (running)
+			while (evictor.running)
 			{
-
 				try
 				{
-					evictionIsRunning = false;
+					evictor.evictionIsRunning = false;
 					evictionNotifierQ.take();  // wait
 					evictionNotifierQ.clear();  // get rid of further notifications (if any)
 					// --- clear() must be before evictionIsRunning = true;  // TODO Explain why!!! There is a race condition when we do not do this. But it needs an explanation
-					evictionIsRunning = true;
-					
-					expiryNotification = listeners.hasListenerFor(EventType.EXPIRED);
-					if (expiryNotification && evictedElements == null)
-					{
-					    /**
-					     * The HashMap must not do internal resizing, as that is an expensive operation and
-					     * could finally lead to write stalls. Thus the Eviction Map is sized so big, that the evicted elements will fit, see elementsToRemove().
-					     * We allow overload with a loadFactor of 1.5, as we do only write once and read once using an iterator.
-					     * Iterating should not be problematic.
-					     */
-					        int evictionMapSize = Math.max(evictNormallyElements, blockStartAt - userDataElements);
-						evictedElements = new HashMap<K,V>(evictionMapSize, 1.5f);
-						// TODO We should use an ArrayList instead of a Map, as it is more efficient, especially with memory locality
-						// The ArrayList will hold: key1, value1, key2, value2, ... , keyN, valueN
-						// For the listeners we need to create a Map, but at that time victionNotifierDone.notifyAll() was already called resolving a possible write stall. 
-					}
-
-//					if (LOG_INTERNAL_DATA && logInternalExtendedData())
-//						System.out.println("Evicting");
-					evict();
-					
-					synchronized (evictionNotifierDone)
-					{
-						evictionIsRunning = false;
-						evictionNotifierDone.notifyAll();
-					}
-					
-					if (expiryNotification)
-					{
-						// Send "EXPIRED" notifications (this is EVICTION, but it is not documented in the JSR107 specs
-						// whether one should send "REMOVED" or "EXPIRED" for evictions.
-						listeners.dispatchEvents(evictedElements, EventType.EXPIRED, true);
-					}
+					evictor.evictionIsRunning = true;
+					evictor.evictRound();
 				}
 				catch (InterruptedException e)
 				{
 					logger.info(id() + " Eviction Thread interrupted");
 					// Ignore: If someone wants to cancel this thread, "running" will also be false
 				}
-				catch (Exception e)
+			} // while running
+
+			logger.info(id() + " Eviction Thread ended");
+		}
+	}
+
+	/**
+	 * Runs an eviction round on the {@link MaintenanceScheduler} of the factory, each time it is triggered.
+	 */
+	private final class EvictionTask extends MaintenanceScheduler.Task
+	{
+		private final Evictor evictor;
+
+		EvictionTask(MaintenanceScheduler scheduler, Evictor evictor)
+		{
+			super(scheduler, id(), builder.getMaintenancePriority(), MaintenanceScheduler.Kind.EVICTION);
+			this.evictor = evictor;
+		}
+
+		@Override
+		protected void runTask()
+		{
+			evictor.evictRound();
+		}
+
+		/**
+		 * No round will run any longer. Stops the Evictor, so that writers do not wait for a round.
+		 */
+		@Override
+		protected void rejected()
+		{
+			evictor.running = false;
+			synchronized (evictionNotifierDone)
+			{
+				evictor.evictionIsRunning = false;
+				evictionNotifierDone.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Evicts elements in rounds. The rounds run either on an own {@link EvictionThread}, or as {@link EvictionTask} on
+	 * the shared {@link MaintenanceScheduler}. Only one round runs at a time.
+	 */
+	class Evictor implements Thread.UncaughtExceptionHandler
+	{
+		volatile boolean running = true;
+		volatile boolean evictionIsRunning = false; // With an EvictionTask, this is also true while the task is queued
+		private final EvictionThread thread; // null, if there is an EvictionTask
+		private final EvictionTask task; // null, if there is an EvictionThread
+		
+		Map<K,V> evictedElements = new HashMap<>();
+		boolean expiryNotification = false;
+
+		/**
+		 * Chooses the victims for sampled eviction. The pool of candidates is kept across eviction rounds, so good
+		 * candidates found in one round are still used in the next.
+		 */
+		private final EvictionSampler<K, V> sampler = new EvictionSampler<>(objects, evictionClass, evictionSampleSize, maxStalenessMillis);
+
+		/**
+		 * Candidates for exact eviction by frozen value. Reused in each round.
+		 */
+		private final EvictionCandidates<K> candidates = new EvictionCandidates<>();
+
+		/**
+		 * Victims selected by a {@link VictimSelector}. Reused in each round.
+		 */
+		private final VictimBuffer<K, V> victims = new VictimBuffer<>(VICTIM_BATCH_SIZE);
+
+		private int chunkCountdown = EVICTION_CHUNK_SIZE; // See releaseWritersAfterChunk()
+		private long expiredAmount = 0; // Removed by expireIfInvalid() in the current round
+		private long roundScanNanos = 0; // Time spent in the full scan of the current round, if any
+
+		// Measurements of the last round, for adaptEvictionSpace()
+		private long lastRoundEndNanos = 0;
+		private long lastRoundEndWeight = 0;
+		private int lastRoundHalts = 0;
+		
+		/**
+		 * Creates an Evictor, which runs on the given scheduler. The EvictionThread is created but not started, if there
+		 * is no scheduler.
+		 * 
+		 * @param scheduler The scheduler, or null to use an own EvictionThread
+		 */
+		Evictor(MaintenanceScheduler scheduler)
+		{
+			if (scheduler != null)
+			{
+				thread = null;
+				task = new EvictionTask(scheduler, this);
+			}
+			else
+			{
+				thread = new EvictionThread("CacheEvictionThread-" + id(), this);
+				task = null;
+			}
+		}
+
+		/**
+		 * Runs one eviction round, and notifies the waiting writers and the listeners
+		 */
+		void evictRound()
+		{
+			try
+			{
+				evictionIsRunning = true;
+				expiryNotification = listeners.hasListenerFor(EventType.EXPIRED);
+				if (expiryNotification && evictedElements == null)
 				{
-					logger.error(id() + " Eviction Thread error", e);
+				    /**
+				     * The HashMap must not do internal resizing, as that is an expensive operation and
+				     * could finally lead to write stalls. Thus the Eviction Map is sized so big, that the evicted elements will fit, see amountToRemove().
+				     * We allow overload with a loadFactor of 1.5, as we do only write once and read once using an iterator.
+				     * Iterating should not be problematic.
+				     */
+					evictedElements = new HashMap<K,V>(evictionMapSize, 1.5f);
+					// TODO We should use an ArrayList instead of a Map, as it is more efficient, especially with memory locality
+					// The ArrayList will hold: key1, value1, key2, value2, ... , keyN, valueN
+					// For the listeners we need to create a Map, but at that time victionNotifierDone.notifyAll() was already called resolving a possible write stall. 
 				}
-				finally
+
+//				if (LOG_INTERNAL_DATA && logInternalExtendedData())
+//					System.out.println("Evicting");
+				evict();
+				
+				synchronized (evictionNotifierDone)
 				{
 					evictionIsRunning = false;
-					/**
-					 * In case of an Exception, there is no "evictionNotifierDone.notifyAll();".
-					 * Threads waiting on evictionNotifierDone may be stuck forever, or at least until the next
-					 * put() operation starts another eviction cycle via evictionNotifierQ. 
-					 * 
-					 * This behavior is wanted, as in presence of an Exception we cannot be sure whether elements were evicted at all.
-					 */
-					evictedElements.clear();
-                                        // We either want to clear the map or recreate it. The JMH GetPutBenchmark from Caffeine showed repeatedly 3-4% better performance for both
-                                        // read_only and readwrite, so we keep evictedElements.clear() for now. Future directions: HashMap might degrade over time, so recreate it from time to time.
-                                        //evictedElements = null;
+					evictionNotifierDone.notifyAll();
 				}
-
-			} // while running
-
-			logger.info(id() + " Eviction Thread ended");
+				
+				if (expiryNotification)
+				{
+					// Send "EXPIRED" notifications (this is EVICTION, but it is not documented in the JSR107 specs
+					// whether one should send "REMOVED" or "EXPIRED" for evictions.
+					listeners.dispatchEvents(evictedElements, EventType.EXPIRED, true);
+				}
+			}
+			catch (Exception e)
+			{
+				logger.error(id() + " Eviction Thread error", e);
+			}
+			finally
+			{
+				evictionIsRunning = false;
+				/**
+				 * In case of an Exception, there is no "evictionNotifierDone.notifyAll();".
+				 * Threads waiting on evictionNotifierDone may be stuck forever, or at least until the next
+				 * put() operation starts another eviction cycle via evictionNotifierQ. 
+				 * 
+				 * This behavior is wanted, as in presence of an Exception we cannot be sure whether elements were evicted at all.
+				 */
+				evictedElements.clear();
+                                    // We either want to clear the map or recreate it. The JMH GetPutBenchmark from Caffeine showed repeatedly 3-4% better performance for both
+                                    // read_only and readwrite, so we keep evictedElements.clear() for now. Future directions: HashMap might degrade over time, so recreate it from time to time.
+                                    //evictedElements = null;
+			}
 		}
 
 		/**
-		 * Evict overflow elements from this Cache. The number of elements is determined by elementsToRemove()
+		 * Evict overflow elements from this Cache. The number of elements (or their weight) is determined by amountToRemove()
 		 */
 		protected void evict()
 		{
 			counterEvictionsRounds++;
+			chunkCountdown = EVICTION_CHUNK_SIZE;
+			expiredAmount = 0;
+			roundScanNanos = 0;
+			long startNanos = System.nanoTime();
+			long startWeight = currentWeight();
 			evictionClass.beforeEviction();
-			evictWithFreezer();
+			if (victimSelector != null)
+				evictSelected(victimSelector);
+			else if (evictionSampleSize > 0)
+				evictSampled();
+			else if (evictionClass instanceof FreezingEvictor && ((FreezingEvictor<K, V>)evictionClass).hasStandardComparator())
+				evictBySelection();
+			else
+				evictWithFreezer();
 			evictionClass.afterEviction();
+			long endNanos = System.nanoTime();
+			evictionScanNanos += roundScanNanos;
+			evictionSelectNanos += endNanos - startNanos - roundScanNanos;
+
+			if (adaptiveEvictionSpace)
+			{
+				int halts = counterEvictionsHalts.get();
+				if (lastRoundEndNanos != 0)
+				{
+					// The fill rate is measured from the end of the last round to the start of this one
+					double fillRate = Math.max(0, startWeight - lastRoundEndWeight) * 1_000_000_000D / Math.max(1, startNanos - lastRoundEndNanos);
+					adaptEvictionSpace(fillRate, endNanos - startNanos, halts != lastRoundHalts);
+				}
+				lastRoundEndNanos = endNanos;
+				lastRoundEndWeight = currentWeight();
+				lastRoundHalts = halts;
+			}
 		}
-		
+
+		/**
+		 * Evict the victims that the eviction class selects from its own structure, for example the CLOCK ring. The work
+		 * is proportional to the number of victims, and not to the size of the Cache. The victims are selected in batches
+		 * of at most {@link CacheLimit#VICTIM_BATCH_SIZE}, each sized by the estimated number of entries that are still to be removed.
+		 * 
+		 * @param selector The eviction class
+		 */
+		protected void evictSelected(VictimSelector<K, V> selector)
+		{
+			long amountToRemove = amountToRemove();
+			if (amountToRemove <= 0)
+			{
+				// See evictWithFreezer() why checking this is important
+				return;
+			}
+
+			int size = objects.size();
+			double averageWeight = size == 0 ? 1 : Math.max(1, (double)currentWeight() / size);
+			int removedCount = 0;
+			long removedAmount = 0; // Equal to removedCount, unless the Cache has a Weigher
+			while (removedAmount + expiredAmount < amountToRemove)
+			{
+				victims.reset((int)Math.ceil((amountToRemove - removedAmount - expiredAmount) / averageWeight));
+				int victimCount = selector.selectVictims(victims);
+				if (victimCount == 0)
+				{
+					// No entries, or all entries were read recently
+					break;
+				}
+
+				// All selected victims are evicted, as the selector has dropped them
+				for (int i = 0; i < victimCount; i++)
+				{
+					K key = victims.key(i);
+					AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)victims.holder(i);
+					if (expireIfInvalid(key, holder))
+						continue;
+
+					V oldValue = removeAndRelease(key, holder);
+					if (oldValue != null)
+					{
+						++removedCount;
+						removedAmount += holder.getWeight();
+						releaseWritersAfterChunk();
+						if (expiryNotification)
+							evictedElements.put(key, oldValue);
+					}
+					// else: Removed or replaced in the meantime
+				}
+			}
+
+			victims.reset(0);
+			countEvictions(removedCount);
+		}
+
+		/**
+		 * Evict optimally according to eviction policy by inspecting ALL Cache entries, like {@link #evictWithFreezer()}.
+		 * This is for eviction classes that evict the smallest frozen values first. The frozen values are collected in
+		 * reused primitive arrays, and only the elements to evict are selected, instead of sorting all entries.
+		 * <p>
+		 * With an eviction parallelism, big caches are scanned and preselected on a ForkJoinPool, see {@link ParallelEvictionScan}.
+		 */
+		protected void evictBySelection()
+		{
+			if (amountToRemove() <= 0)
+			{
+				// See evictWithFreezer() why checking this is important
+				return;
+			}
+
+			long scanStartNanos = System.nanoTime();
+			int size = objects.size();
+			// Measured for all entries, as the parallel scan may collect only a part of the entries
+			double averageWeight = size == 0 ? 1 : Math.max(1, (double)currentWeight() / size);
+			ParallelEvictionScan<K, V> parallelScan = null;
+			if (evictionParallelism != 1 && ParallelEvictionScan.isWorthwhile(size, evictionParallelism))
+			{
+				parallelScan = parallelEviction();
+			}
+			if (parallelScan != null)
+			{
+				int expectedCount = (int)Math.min(size, (long)Math.ceil(amountToRemove() / averageWeight));
+				List<Entry<K, AccessTimeObjectHolder<V>>> invalidEntries = new ArrayList<>();
+				parallelScan.collect(objects, size, evictionClass, expectedCount, candidates, invalidEntries);
+				for (Entry<K, AccessTimeObjectHolder<V>> entry : invalidEntries)
+				{
+					expireIfInvalid(entry.getKey(), entry.getValue());
+				}
+			}
+			else
+			{
+				candidates.reset(size);
+				int scanned = 0;
+				for (Entry<K, AccessTimeObjectHolder<V>> entry : objects.entrySet())
+				{
+					if (scanned++ == size)
+					{
+						// Skip new elements that came in while iterating, like in evictWithFreezer()
+						break;
+					}
+					K key = entry.getKey();
+					AccessTimeObjectHolder<V> holder = entry.getValue();
+					if (!expireIfInvalid(key, holder))
+						candidates.add(key, evictionClass.getFreezeValue(key, holder));
+				}
+			}
+			roundScanNanos = System.nanoTime() - scanStartNanos;
+
+			int candidateCount = candidates.size();
+			int removedCount = 0;
+			long removedAmount = 0; // Equal to removedCount, unless the Cache has a Weigher
+			long amountToRemove = amountToRemove(); // Call again, see evictWithFreezer()
+			int start = 0;
+			// If many of the candidates are gone, the rest of them is stale. Selecting ever more of them would reach the
+			// entries that should be kept, as the new entries are not candidates. The next round collects fresh candidates.
+			long maxSelected = MAX_RESELECTION_FACTOR * (long)Math.ceil(amountToRemove / averageWeight);
+			while (removedAmount < amountToRemove && start < candidateCount && (start == 0 || (isFull() && start < maxSelected)))
+			{
+				// Select the estimated number of victims. If some of them were removed in the meantime, select more.
+				// But not if others have freed the space in the meantime, for example writers with JamPolicy.ASSIST.
+				int count = (int)Math.min(candidateCount - start, (long)Math.ceil((amountToRemove - removedAmount) / averageWeight));
+				candidates.selectSmallest(start, count);
+				int end = start + count;
+				for (int i = start; i < end && removedAmount < amountToRemove; i++)
+				{
+					K key = candidates.key(i);
+					AccessTimeObjectHolder<V> holder = objects.get(key);
+					if (holder == null || expireIfInvalid(key, holder))
+						continue;
+					if (evictionClass.getFreezeValue(key, holder) != candidates.frozenValue(i))
+					{
+						// Replaced or used since the scan. The candidates hold no holders, so this is how a stale candidate is detected.
+						continue;
+					}
+
+					V oldValue = removeAndRelease(key, holder);
+					if (oldValue != null)
+					{
+						++removedCount;
+						removedAmount += holder.getWeight();
+						releaseWritersAfterChunk();
+						if (expiryNotification)
+							evictedElements.put(key, oldValue);
+					}
+					// else: Removed or replaced in the meantime by some other means: delete API call, expiration, writers
+				}
+				start = end;
+			}
+
+			candidates.clear();
+			countEvictions(removedCount);
+		}
+
+		/**
+		 * Evict approximately according to eviction policy, by sampling. For each element to evict, the next
+		 * {@link #evictionSampleSize} entries are added to the candidate pool, and the worst candidate is evicted.
+		 * See {@link EvictionSampler}.
+		 */
+		protected void evictSampled()
+		{
+			long amountToRemove = amountToRemove();
+			if (amountToRemove <= 0)
+			{
+				// See evictWithFreezer() why checking this is important
+				return;
+			}
+
+			sampler.refresh();
+
+			int removedCount = 0;
+			long removedAmount = 0;
+			while (removedAmount + expiredAmount < amountToRemove)
+			{
+				HolderFreezer<K, V> candidate = sampler.nextVictim();
+				if (candidate == null)
+				{
+					// Cache is empty
+					break;
+				}
+
+				K key = candidate.getKey();
+				AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)candidate.getHolder();
+				if (expireIfInvalid(key, holder))
+					continue;
+
+				V oldValue = removeAndRelease(key, holder);
+				if (oldValue != null)
+				{
+					++removedCount;
+					removedAmount += holder.getWeight();
+					releaseWritersAfterChunk();
+					if (expiryNotification)
+						evictedElements.put(key, oldValue);
+				}
+				// else: Removed or replaced in the meantime
+			}
+
+			countEvictions(removedCount);
+		}
+
 		/**
 		 * Evict optimally according to eviction policy by inspecting ALL Cache entries.
 		 * The values to be compared are frozen, so that comparisons
@@ -394,7 +826,7 @@ public class CacheLimit<K, V> extends Cache<K, V>
 		 */
 		protected void evictWithFreezer()
 		{
-			int elemsToRemovePreCheck = elementsToRemove();
+			long elemsToRemovePreCheck = amountToRemove();
 			if (elemsToRemovePreCheck <= 0)
 			{
 				/**
@@ -414,6 +846,7 @@ public class CacheLimit<K, V> extends Cache<K, V>
 				return;
 			}
 			
+			long scanStartNanos = System.nanoTime();
 			int i=0;
 			Set<Entry<K, AccessTimeObjectHolder<V>>> entrySet = objects.entrySet();
 			// ###A###
@@ -429,31 +862,35 @@ public class CacheLimit<K, V> extends Cache<K, V>
 					break;
 				}
 
+				i++;
 				K key = entry.getKey();
 				AccessTimeObjectHolder<V> holder = entry.getValue();
+				if (expireIfInvalid(key, holder))
+					continue;
 				long frozenValue = evictionClass.getFreezeValue(key, holder);
 				HolderFreezer<K,V> frozen = new HolderFreezer<>(key, holder, frozenValue);
 
-				toCheckL.add(i, frozen);
-				i++;
+				toCheckL.add(frozen);
 			}
 			// ###B###
+			roundScanNanos = System.nanoTime() - scanStartNanos;
 
 			@SuppressWarnings("unchecked")
 			HolderFreezer<K, V>[] toCheck = toCheckL.toArray(new HolderFreezer[toCheckL.size()]);
 			Arrays.sort(toCheck, evictionClass.evictionComparator());
 
 			int removedCount = 0;
+			long removedAmount = 0; // Equal to removedCount, unless the Cache has a Weigher
 			
 			// Important note: We do not re-use the value elemsToRemovePreCheck. Other threads may have added
 			// elements or removed some (eviction + expiration thread). Even though the size is
 			// a moving goal, we want to be as close as possible to the true value. So lets call
-			// elementsToRemove() again.
-			int elemsToRemove = elementsToRemove();
-			int notifyCountdown = 1000;
+			// amountToRemove() again.
+			long elemsToRemove = amountToRemove();
 			for (HolderFreezer<K, V> entryToRemove : toCheck)
 			{
 				K key = entryToRemove.getKey();
+				int weight = entryToRemove.getHolder().getWeight();
 				V oldValue = removeAndRelease(key); // ###C###
 				if (oldValue != null)
 				{
@@ -465,55 +902,95 @@ public class CacheLimit<K, V> extends Cache<K, V>
 					 * the base class. Also if someone calls #remove(), the entry can disappear.
 					 */
 					++removedCount;
-					if (INTERMEDIATE_NOTFULL_NOTIFICATION)
-					{
-					    /**
-					     * This is an optimization to notify blocked writers asap instead of at the end of eviction.
-					     * This is (very likely) not fully thread safe, so the feature is disabled.
-					     * 
-					     * Blocked writer could miss notifications and be stuck forever. The order of events could be:
-					     * 1) A blocked writer Thread B is notified. B does not wait on the lock any longer
-					     * 2) Before B can write we run out of space
-					     * 3) Eviction thread is running and notifies. B does not see it, as it currently does not wait
-					     * 4) B calls evictionNotifierDone.wait() but missed the notify.
-					     * 
-					     * To test and reproduce: Use a test with a single writer thread. As no other thread writes there
-					     * will be no more eviction triggering via ensureFreeCapacity(). 
-					     * 
-					     * Future directions: replace lock object with a Condition object, just like it is done in many Queue implementations:
-					     * final Condition notFull  = lock1.newCondition();
-					     * final Condition full     = lock2.newCondition();
-					     * final Condition overfull = lock3.newCondition();
-					     */
-        					if (notifyCountdown-- == 0 && objects.size() < userDataElements) {
-        	                                       synchronized (evictionNotifierDone)
-        	                                        {
-        
-        	                                           evictionNotifierDone.notifyAll();
-        	                                        }
-        					    notifyCountdown = 1000;
-        					}
-					}
-					
+					removedAmount += weight;
+					releaseWritersAfterChunk();
 					if (expiryNotification)
 						evictedElements.put(key, oldValue);
-					if (removedCount >= elemsToRemove)
+					if (removedAmount >= elemsToRemove)
 						break;
 				}
 				// else: Removed in the meantime by some other means: delete API call, eviction, expiration
 			}
 			
-			evictionCount.addAndGet(removedCount);			
-			statisticsCalculator.incrementRemoveCount(removedCount);
-			evictionRateCounter.registerEvents(millisEstimator.seconds(), removedCount);
+			countEvictions(removedCount);
 		}
 
+		/**
+		 * Removes the entry, if its holder is invalid, for example because it has expired and the CleanupThread has not
+		 * removed it yet. Each eviction round drops such entries before ranking the live ones, so that no valid entry is
+		 * evicted while expired entries occupy the space. They are counted as expired, and not as evicted.
+		 * <p>
+		 * A holder that can still be served as a stale value is not removed here, see {@link Builder#setMaxStaleness(int, java.util.concurrent.TimeUnit)}.
+		 * It is ranked by the eviction policy like a valid one.
+		 * 
+		 * @param key The key
+		 * @param holder The holder that was stored for the key
+		 * @return true, if the holder is invalid. It is no eviction candidate then, even if another Thread removed it first.
+		 */
+		private boolean expireIfInvalid(K key, AccessTimeObjectHolder<V> holder)
+		{
+			if (!holder.isExpiredBeyondStaleness(maxStalenessMillis))
+				return false;
 
-		public void shutdown()
+			int weight = holder.getWeight();
+			V oldValue = removeAndRelease(key, holder);
+			if (oldValue != null)
+			{
+				expiredAmount += weight;
+				countExpirations(1);
+				releaseWritersAfterChunk();
+				if (expiryNotification)
+					evictedElements.put(key, oldValue);
+			}
+			return true;
+		}
+
+		/**
+		 * Called for each evicted element. At the end of each chunk of {@link #EVICTION_CHUNK_SIZE} elements, writers that
+		 * are blocked in {@link #ensureFreeCapacity()} are notified if the Cache is not overfull any longer. Thus they wait
+		 * for one chunk instead of the whole eviction round.
+		 * <p>
+		 * The notification is sent with the lock held, after the size has dropped. A writer checks the size again with the
+		 * lock held before it waits, so it cannot miss the notification.
+		 * <p>
+		 * This shortens the typical wait, but not the longest one: Nothing can be released while a round scans the Cache,
+		 * before its first chunk. Released writers fill the eviction space while the round is still removing, so the next
+		 * round starts with less space left, and a writer may block for its whole scan. On a single core the released
+		 * writers also take CPU time from the eviction thread. If this matters, use {@link Builder#setAdaptiveEvictionSpace(boolean)},
+		 * which grows the eviction space after a round that blocked writers.
+		 */
+		private void releaseWritersAfterChunk()
+		{
+			if (--chunkCountdown > 0)
+				return;
+
+			chunkCountdown = EVICTION_CHUNK_SIZE;
+			if (!isOverfull())
+			{
+				synchronized (evictionNotifierDone)
+				{
+					evictionNotifierDone.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Stops the Evictor. A running round is completed.
+		 * 
+		 * @param millis The maximum time to wait for a running round. 0 means not to wait.
+		 * @return true, if the Evictor has stopped
+		 */
+		boolean shutdown(long millis)
 		{
 			running = false;
 			evictionIsRunning = false;
-			this.interrupt();
+			if (task != null)
+			{
+				return task.cancel(millis);
+			}
+
+			thread.interrupt();
+			return millis <= 0 || joinSimple(thread, millis, 0);
 		}
 
 		/**
@@ -538,23 +1015,138 @@ public class CacheLimit<K, V> extends Cache<K, V>
 				return;
 			}
 			
-			evictionNotifierQ.offer(Boolean.TRUE);
+			if (task != null)
+			{
+				// Marked as running while queued, so that writers wait instead of triggering again and again
+				evictionIsRunning = true;
+				task.trigger();
+			}
+			else
+			{
+				evictionNotifierQ.offer(Boolean.TRUE);
+			}
+		}
+	}
+
+	private void countEvictions(int removedCount)
+	{
+		evictionCount.addAndGet(removedCount);			
+		statisticsCalculator.incrementRemoveCount(removedCount);
+		synchronized (evictionRateCounter)
+		{
+			// Writers evict concurrently with JamPolicy.ASSIST
+			evictionRateCounter.registerEvents(millisEstimator.seconds(), removedCount);
+		}
+	}
+
+	/**
+	 * Lets writers evict a batch of elements themselves with {@link JamPolicy#ASSIST}. With a {@link VictimSelector} the
+	 * writers take their victims from it, like the eviction thread. Otherwise all writers share one
+	 * {@link EvictionSampler}, so that the whole Cache is sampled evenly. Only selecting is done under a lock, the elements
+	 * are removed concurrently by the writers.
+	 */
+	private final class AssistEvictor
+	{
+		private final ReentrantLock lock = new ReentrantLock();
+		private final EvictionSampler<K, V> sampler; // null, if the victimSelector selects the victims
+
+		AssistEvictor()
+		{
+			sampler = victimSelector != null ? null : new EvictionSampler<>(objects, evictionClass, ASSIST_SAMPLE_SIZE, maxStalenessMillis);
+		}
+
+		/**
+		 * Evicts {@link CacheLimit#ASSIST_BATCH_SIZE} elements in the calling Thread.
+		 */
+		void evictBatch()
+		{
+			VictimBuffer<K, V> victims = new VictimBuffer<>(ASSIST_BATCH_SIZE);
+			victims.reset(ASSIST_BATCH_SIZE);
+			if (victimSelector != null)
+			{
+				victimSelector.selectVictims(victims); // The selector has its own lock
+			}
+			else
+			{
+				lock.lock();
+				try
+				{
+					sampler.refresh();
+					while (!victims.isFull())
+					{
+						HolderFreezer<K, V> victim = sampler.nextVictim();
+						if (victim == null)
+							break; // Cache is empty
+						victims.add(victim.getKey(), victim.getHolder());
+					}
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+
+			int victimCount = victims.size();
+			boolean notify = listeners.hasListenerFor(EventType.EXPIRED);
+			Map<K, V> evictedElements = notify ? new HashMap<K, V>(2 * ASSIST_BATCH_SIZE) : null;
+			int removedCount = 0;
+			int expiredCount = 0;
+			for (int i = 0; i < victimCount; i++)
+			{
+				K key = victims.key(i);
+				AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)victims.holder(i);
+				boolean expired = holder.isExpiredBeyondStaleness(maxStalenessMillis); // Counted as expired, see Evictor.expireIfInvalid()
+				V oldValue = removeAndRelease(key, holder);
+				if (oldValue != null)
+				{
+					if (expired)
+						++expiredCount;
+					else
+						++removedCount;
+					if (notify)
+						evictedElements.put(key, oldValue);
+				}
+				// else: Removed or replaced in the meantime
+			}
+
+			countEvictions(removedCount);
+			countExpirations(expiredCount);
+			if (notify && !evictedElements.isEmpty())
+			{
+				// EXPIRED, like for evictions by the eviction thread
+				listeners.dispatchEvents(evictedElements, EventType.EXPIRED, true);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ParallelEvictionScan, and creates it on the first call. Its ForkJoinPool is only created, once the Cache
+	 * is big enough for a parallel round, so small caches and caches that evict by sampling or by a {@link VictimSelector}
+	 * never start its threads.
+	 * 
+	 * @return The ParallelEvictionScan, or null if the Cache is closed
+	 */
+	private ParallelEvictionScan<K, V> parallelEviction()
+	{
+		synchronized (parallelEvictionLock)
+		{
+			if (isClosed())
+				return null; // shutdownCustomImpl() shuts down the pool, so it must not be created afterwards
+			if (parallelEviction == null)
+				parallelEviction = new ParallelEvictionScan<K, V>(evictionParallelism, id(), maxStalenessMillis);
+			return parallelEviction;
 		}
 	}
 
 	private synchronized String stopEvictor(long millis)
 	{
 		String errorMsg = null;
-		CacheLimit<K, V>.EvictionThread evictorRef = evictor;
+		Evictor evictorRef = evictor;
 		if ( evictorRef != null )
 		{
-			evictorRef.shutdown();
-			if (millis > 0)
+			if (! evictorRef.shutdown(millis) )
 			{
-				if (! joinSimple(evictorRef, millis, 0) )
-				{
-					errorMsg = "Shutting down Eviction Thread FAILED";
-				}
+				errorMsg = "Shutting down Evictor FAILED";
 			}
 		}
 		
@@ -570,6 +1162,13 @@ public class CacheLimit<K, V> extends Cache<K, V>
 		super.shutdownCustomImpl();
 		
 		String errorMsg = stopEvictor(MAX_SHUTDOWN_WAIT_MILLIS);
+		synchronized (parallelEvictionLock)
+		{
+			if (parallelEviction != null)
+			{
+				parallelEviction.shutdown();
+			}
+		}
 		if (errorMsg != null)
 		{
 			logger.error("Shutting down Evictor for Cache " + id() + " FAILED. Reason: " + errorMsg);
@@ -592,8 +1191,8 @@ public class CacheLimit<K, V> extends Cache<K, V>
 		if (!isFull())
 			return true;
 
-		EvictionThread evictionThread = ensureEvictionThreadIsRunning();
-		evictionThread.trigger();
+		Evictor evictorRef = ensureEvictorIsRunning();
+		evictorRef.trigger();
 		
 
 		if (isOverfull())
@@ -602,26 +1201,39 @@ public class CacheLimit<K, V> extends Cache<K, V>
 			if ( jamPolicy == JamPolicy.DROP)
 			{
 				// Even when dropping, make sure the evictor will make some space for the next put(). 
-				evictionThread = ensureEvictionThreadIsRunning();
-				evictionThread.trigger();
+				evictorRef = ensureEvictorIsRunning();
+				evictorRef.trigger();
 				return false;
 			}			
+			if (jamPolicy == JamPolicy.ASSIST)
+			{
+				// The writer makes some space itself. The eviction thread continues evicting in the background.
+				assistEvictor.evictBatch();
+				return true;
+			}
 		}
 		
 		// JamPolicy.WAIT
 		while (isOverfull())
 		{
+			if (!evictorRef.running)
+			{
+				// Shut down, no round will free space
+				return false;
+			}
 			try
 			{
 				synchronized (evictionNotifierDone)
 				{
-					if (evictionThread.evictionIsRunning)
+					// Check the size again with the lock held. The eviction thread notifies with the lock held after each
+					// chunk, so the waiter either sees the freed space here, or it is already waiting when notified.
+					if (evictorRef.evictionIsRunning && isOverfull())
 					{
 						evictionNotifierDone.wait();
 					}
 				}
-				evictionThread = ensureEvictionThreadIsRunning();
-				evictionThread.trigger();
+				evictorRef = ensureEvictorIsRunning();
+				evictorRef.trigger();
 			}
 			catch (InterruptedException e)
 			{
@@ -632,13 +1244,51 @@ public class CacheLimit<K, V> extends Cache<K, V>
 		return true;
 	}
 
+	/**
+	 * Waits until this Cache is not full, and no eviction round is running or pending. If the Cache is full and no
+	 * round is running, one is started. This lets tests inspect the Cache after eviction without sleeping.
+	 * 
+	 * @param timeoutMillis The maximum time to wait
+	 * @return true, if eviction has finished. false on timeout.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean awaitEviction(long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true)
+		{
+			Evictor evictorRef = evictor;
+			boolean running = evictorRef != null && (evictorRef.evictionIsRunning || !evictionNotifierQ.isEmpty());
+			if (!running)
+			{
+				if (!isFull())
+					return true;
+				ensureEvictorIsRunning().trigger();
+			}
+
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				return false;
+			synchronized (evictionNotifierDone)
+			{
+				// Notified after each chunk and at the end of each round. The timeout covers a round that ends before waiting here.
+				evictionNotifierDone.wait(Math.min(remaining, 10));
+			}
+		}
+	}
+
 	@Override
 	protected TCacheStatisticsInterface fillCacheStatistics(TCacheStatisticsInterface cacheStatistic)
 	{
 		cacheStatistic.setEvictionCount(evictionCount.get());
 		cacheStatistic.setEvictionRounds(counterEvictionsRounds);
 		cacheStatistic.setEvictionHalts(counterEvictionsHalts.get());
-		cacheStatistic.setEvictionRate(evictionRateCounter.getRateTotal(millisEstimator.seconds()));
+		cacheStatistic.setEvictionScanNanos(evictionScanNanos);
+		cacheStatistic.setEvictionSelectNanos(evictionSelectNanos);
+		synchronized (evictionRateCounter)
+		{
+			cacheStatistic.setEvictionRate(evictionRateCounter.getRateTotal(millisEstimator.seconds()));
+		}
 		
 		return super.fillCacheStatistics(cacheStatistic);
 	}
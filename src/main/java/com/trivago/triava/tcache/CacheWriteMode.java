@@ -31,6 +31,14 @@ public enum CacheWriteMode
 	 * Best-effort serialization, e.g. using Serializable or Externizable
 	 */
 	Serialize(true),
+	/**
+	 * Like {@link #Serialize}, but serialized values above a size threshold are compressed.
+	 * See {@link com.trivago.triava.tcache.core.Builder#setCompressionThreshold(int)}
+	 */
+	SerializeCompressed(true),
+	/**
+	 * Values are interned, so equal values in the cache share one instance. See {@link com.trivago.triava.tcache.core.Builder#setInterner(com.trivago.triava.collections.Interner)}
+	 */
 	Intern(false);
 	
 	final boolean jsr107compatibleStoreByValue;
@@ -53,7 +61,7 @@ public enum CacheWriteMode
 	
 	/**
 	 * Returns whether this CacheWriteMode is using store-by-value as defined by JSR107.
-	 * Only for {@link #Serialize} true is returned. Mode {@link #Identity} always shares Objects, and {@link #Intern} also most of the time.
+	 * Only for {@link #Serialize} and {@link #SerializeCompressed} true is returned. Mode {@link #Identity} always shares Objects, and {@link #Intern} also most of the time.
 	 * @return true, if the mode is to store by value
 	 */
 	public boolean isStoreByValue()
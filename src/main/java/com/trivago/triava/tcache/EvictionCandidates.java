@@ -0,0 +1,220 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The eviction candidates of an exact eviction round, as primitive frozen values and keys in parallel arrays.
+ * The arrays are reused in the next round, so an eviction round does not allocate an object per entry.
+ * The arrays cost 12 bytes per entry (with compressed oops), and are only shrunk if the Cache shrinks considerably.
+ * <p>
+ * Instead of sorting all candidates, {@link #selectSmallest(int, int)} moves only the candidates with the smallest
+ * frozen values to the front, using quickselect. This is O(n) on average, instead of O(n log n) for sorting.
+ * <p>
+ * This class is not thread-safe. It is only used by the eviction thread, or by one task of a parallel eviction round.
+ * 
+ * @author cesken
+ *
+ * @param <K> The key class
+ */
+class EvictionCandidates<K>
+{
+	private long[] frozenValues = new long[0];
+	private Object[] keys = new Object[0];
+	private int size = 0;
+
+	/**
+	 * Prepares the arrays for the given number of candidates, and removes all candidates.
+	 * 
+	 * @param expectedSize The expected number of candidates
+	 */
+	void reset(int expectedSize)
+	{
+		clear();
+		if (frozenValues.length < expectedSize || frozenValues.length > 2 * expectedSize + 1024)
+		{
+			// Some headroom, as entries may be added while collecting
+			int capacity = expectedSize + expectedSize / 8 + 16;
+			frozenValues = new long[capacity];
+			keys = new Object[capacity];
+		}
+	}
+
+	/**
+	 * Removes all candidates, so that the keys can be garbage collected.
+	 */
+	void clear()
+	{
+		Arrays.fill(keys, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Adds a candidate, if there is room for it.
+	 * 
+	 * @param key The key
+	 * @param frozenValue The frozen value. Candidates with smaller values are evicted first.
+	 * @return false, if there was no room for the candidate 
+	 */
+	boolean add(K key, long frozenValue)
+	{
+		if (size == keys.length)
+			return false;
+		frozenValues[size] = frozenValue;
+		keys[size] = key;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds a candidate, growing the arrays if needed. This is for collecting candidates in parallel, where the number of
+	 * candidates per task is not known beforehand.
+	 * 
+	 * @param key The key
+	 * @param frozenValue The frozen value
+	 */
+	void append(K key, long frozenValue)
+	{
+		if (size == keys.length)
+			grow(size + 1);
+		frozenValues[size] = frozenValue;
+		keys[size] = key;
+		size++;
+	}
+
+	/**
+	 * Adds the first count candidates of the other instance.
+	 * 
+	 * @param other The candidates to add
+	 * @param count The number of candidates to add
+	 */
+	void addAll(EvictionCandidates<K> other, int count)
+	{
+		if (size + count > keys.length)
+			grow(size + count);
+		System.arraycopy(other.frozenValues, 0, frozenValues, size, count);
+		System.arraycopy(other.keys, 0, keys, size, count);
+		size += count;
+	}
+
+	private void grow(int minCapacity)
+	{
+		int capacity = Math.max(minCapacity, keys.length + keys.length / 2 + 16);
+		frozenValues = Arrays.copyOf(frozenValues, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	long frozenValue(int index)
+	{
+		return frozenValues[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	K key(int index)
+	{
+		return (K)keys[index];
+	}
+
+	/**
+	 * Reorders the candidates from index start on, so that the count candidates with the smallest frozen values are at
+	 * the positions [start, start+count). They are not sorted among each other.
+	 * 
+	 * @param start The first index to consider
+	 * @param count The number of candidates to select
+	 */
+	void selectSmallest(int start, int count)
+	{
+		int lo = start;
+		int hi = size - 1;
+		int k = start + count - 1;
+		if (count <= 0 || k >= hi)
+			return;
+
+		while (hi > lo)
+		{
+			// Random pivots, as the iteration order of the Cache may correlate with the frozen values, e.g. keys inserted in LRU order
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			long pivot = medianOfThree(frozenValues[random.nextInt(lo, hi + 1)], frozenValues[random.nextInt(lo, hi + 1)],
+					frozenValues[random.nextInt(lo, hi + 1)]);
+
+			// 3-way partitioning, as frozen values often have many duplicates, like a use count of 0
+			int lt = lo;
+			int gt = hi;
+			int i = lo;
+			while (i <= gt)
+			{
+				long value = frozenValues[i];
+				if (value < pivot)
+					swap(lt++, i++);
+				else if (value > pivot)
+					swap(i, gt--);
+				else
+					i++;
+			}
+
+			// Now: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot
+			if (k < lt)
+				hi = lt - 1;
+			else if (k > gt)
+				lo = gt + 1;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Moves the candidates whose frozen value is at most threshold to the front. The order is not kept.
+	 * 
+	 * @param threshold The highest frozen value to move to the front
+	 * @return The number of candidates that were moved to the front
+	 */
+	int partitionAtMost(long threshold)
+	{
+		int lt = 0;
+		for (int i = 0; i < size; i++)
+		{
+			if (frozenValues[i] <= threshold)
+				swap(lt++, i);
+		}
+		return lt;
+	}
+
+	private void swap(int i, int j)
+	{
+		long value = frozenValues[i];
+		frozenValues[i] = frozenValues[j];
+		frozenValues[j] = value;
+		Object key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+	}
+
+	private static long medianOfThree(long a, long b, long c)
+	{
+		if (a < b)
+			return b < c ? b : (a < c ? c : a);
+		else
+			return a < c ? a : (b < c ? c : b);
+	}
+}
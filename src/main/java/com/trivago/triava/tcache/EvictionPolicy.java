@@ -18,5 +18,5 @@ package com.trivago.triava.tcache;
 
 public enum EvictionPolicy
 {
-	LFU, LRU, CLOCK, NONE, CUSTOM
+	LFU, LRU, CLOCK, NONE, CUSTOM, WTINYLFU
 }
\ No newline at end of file
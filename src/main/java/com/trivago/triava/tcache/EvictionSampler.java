@@ -0,0 +1,174 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+
+import com.trivago.triava.tcache.eviction.EvictionInterface;
+import com.trivago.triava.tcache.eviction.HolderFreezer;
+
+/**
+ * Chooses elements to evict by sampling, see {@link com.trivago.triava.tcache.core.Builder#setEvictionSampleSize(int)}.
+ * For each victim, the next sampleSize entries are added to a small pool of candidates, and the worst candidate in the pool
+ * is the victim. The pool is kept between victims, so good candidates found earlier are still used later.
+ * <p>
+ * The entries are sampled by a cursor that iterates the Cache, and continues where it stopped. The iteration order of a hash
+ * map is unrelated to use count and access time, so this is a random sample for the eviction policy. Unlike true random
+ * sampling it visits all entries before visiting one again. Similar keys may be neighbours in the hash map, which the pool
+ * makes up for.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+class EvictionSampler<K, V>
+{
+	/**
+	 * The maximum number of candidates kept in the pool
+	 */
+	private static final int POOL_SIZE = 16;
+
+	private final ConcurrentMap<K, AccessTimeObjectHolder<V>> map;
+	private final EvictionInterface<K, V> evictionClass;
+	private final int sampleSize;
+	private final long maxStalenessMillis;
+
+	/**
+	 * Candidates sorted by the eviction comparator. The first element is evicted first.
+	 */
+	private final ArrayList<HolderFreezer<K, V>> pool = new ArrayList<>(POOL_SIZE + 1);
+	private Iterator<Entry<K, AccessTimeObjectHolder<V>>> cursor = null;
+
+	/**
+	 * @param map The storage Map of the Cache
+	 * @param evictionClass The eviction class, which ranks the candidates
+	 * @param sampleSize The number of entries to sample per victim
+	 * @param maxStalenessMillis The grace period of stale serving. Holders within it are ranked like valid ones.
+	 */
+	EvictionSampler(ConcurrentMap<K, AccessTimeObjectHolder<V>> map, EvictionInterface<K, V> evictionClass, int sampleSize,
+			long maxStalenessMillis)
+	{
+		this.map = map;
+		this.evictionClass = evictionClass;
+		this.sampleSize = sampleSize;
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+
+	/**
+	 * Returns the next element to evict, and removes it from the pool. A sampled entry with an invalid holder, for example
+	 * an expired one, is returned immediately, unless it can still be served as a stale value.
+	 *
+	 * @return The next victim, or null if the Cache is empty
+	 */
+	HolderFreezer<K, V> nextVictim()
+	{
+		Comparator<? super HolderFreezer<K, V>> comparator = evictionClass.evictionComparator();
+		boolean restarted = false;
+		for (int i = 0; i < sampleSize; i++)
+		{
+			if (cursor == null || !cursor.hasNext())
+			{
+				if (restarted)
+				{
+					// The Cache has fewer entries than the sample size
+					break;
+				}
+				cursor = map.entrySet().iterator();
+				restarted = true;
+				if (!cursor.hasNext())
+					break;
+			}
+
+			Entry<K, AccessTimeObjectHolder<V>> entry = cursor.next();
+			AccessTimeObjectHolder<V> holder = entry.getValue();
+			if (holder.isExpiredBeyondStaleness(maxStalenessMillis))
+			{
+				// Expired entries go first, regardless of the eviction policy
+				return new HolderFreezer<>(entry.getKey(), holder, evictionClass.getFreezeValue(entry.getKey(), holder));
+			}
+			addToPool(entry.getKey(), holder, comparator);
+		}
+
+		return pool.isEmpty() ? null : pool.remove(0);
+	}
+
+	/**
+	 * Freezes the values of the candidates that were kept in the pool again, as they may have been used since, and sorts
+	 * the pool again. Candidates that are not valid or not stored any longer are dropped. The pool is updated in place.
+	 */
+	void refresh()
+	{
+		if (pool.isEmpty())
+			return;
+
+		int kept = 0;
+		int poolSize = pool.size();
+		for (int i = 0; i < poolSize; i++)
+		{
+			HolderFreezer<K, V> candidate = pool.get(i);
+			AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)candidate.getHolder();
+			if (holder.isDetached() || holder.isExpiredBeyondStaleness(maxStalenessMillis))
+				continue;
+
+			long frozenValue = evictionClass.getFreezeValue(candidate.getKey(), holder);
+			if (frozenValue != candidate.getFrozenValue())
+				candidate = new HolderFreezer<>(candidate.getKey(), holder, frozenValue);
+			pool.set(kept++, candidate);
+		}
+		for (int i = poolSize - 1; i >= kept; i--)
+		{
+			pool.remove(i);
+		}
+		pool.sort(evictionClass.evictionComparator()); // Small pool: Sorted by insertion, without allocating
+	}
+
+	/**
+	 * Adds the entry to the candidate pool, unless it is already in it. If the pool is full, the best candidate
+	 * is dropped from it.
+	 */
+	private void addToPool(K key, AccessTimeObjectHolder<V> holder, Comparator<? super HolderFreezer<K, V>> comparator)
+	{
+		HolderFreezer<K, V> candidate = new HolderFreezer<>(key, holder, evictionClass.getFreezeValue(key, holder));
+		int poolSize = pool.size();
+		if (poolSize == POOL_SIZE && comparator.compare(pool.get(poolSize - 1), candidate) <= 0)
+		{
+			// Fast path: Pool is full, and all candidates are worse
+			return;
+		}
+
+		int pos = Collections.binarySearch(pool, candidate, comparator);
+		if (pos < 0)
+			pos = -pos - 1;
+		for (int i = 0; i < poolSize; i++)
+		{
+			if (pool.get(i).getHolder() == holder)
+				return; // Already a candidate
+		}
+
+		pool.add(pos, candidate);
+		if (pool.size() > POOL_SIZE)
+			pool.remove(POOL_SIZE);
+	}
+}
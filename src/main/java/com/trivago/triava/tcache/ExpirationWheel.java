@@ -0,0 +1,387 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel that indexes the cache entries by their expiration time, so that the CleanupThread only
+ * touches the entries that are due, instead of scanning the whole Cache.
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #WHEEL_SIZE} buckets. A bucket on level 0 spans one tick, a bucket on level 1
+ * spans {@value #WHEEL_SIZE} ticks, and so on. When the wheel advances, the level 0 bucket of the tick is processed, and each
+ * time a level has completed a turn, the next bucket of the level above is cascaded down. Entries that are further in the
+ * future than the top level can hold are put into a top level bucket, and placed again when it is cascaded.
+ * <p>
+ * The expiration time is not stored, but read from the holder when its bucket is processed. An entry whose holder is invalid is
+ * passed to the {@link Expirer}. An entry whose holder is still valid was accessed or prolonged in the meantime, and it is placed
+ * again by its new expiration time. Thus reads never need to update the wheel. Only a change that makes a holder expire earlier
+ * must schedule it again, see {@link Cache#updateMaxIdleTime(Object, AccessTimeObjectHolder, long)}.
+ * <p>
+ * If the Cache serves stale values, an entry is only passed to the Expirer when the grace period after its expiration has passed.
+ * <p>
+ * Writers call {@link #schedule(Object, AccessTimeObjectHolder)}, which only appends to a pending array under a short lock,
+ * without allocating. The pending entries are drained and the wheel is modified only in {@link #advance(long, int, Expirer)},
+ * by the CleanupThread.
+ * <p>
+ * Entries whose holder was removed or replaced in the Cache ({@link AccessTimeObjectHolder#isDetached()}) are dropped
+ * whenever they are seen: When their bucket is processed, when the pending array is full, and on a purge. Thus an
+ * overwritten entry does not stay in the wheel until its old expiration time.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+class ExpirationWheel<K, V>
+{
+	private static final int BITS = 6;
+	static final int WHEEL_SIZE = 1 << BITS;
+	private static final int MASK = WHEEL_SIZE - 1;
+	static final int LEVELS = 6;
+	/**
+	 * Dead entries that are kept before a purge, on top of twice the Cache size. Entries are dead if their holder was removed
+	 * or replaced before it expired, or if they were scheduled again with an earlier expiration time.
+	 */
+	private static final int PURGE_SLACK = 1024;
+
+	/**
+	 * Removes expired entries from the Cache.
+	 *
+	 * @param <K> The key class
+	 * @param <V> The value class
+	 */
+	interface Expirer<K, V>
+	{
+		/**
+		 * Called for an entry whose holder is invalid. The holder may already be removed from the Cache.
+		 *
+		 * @param key The key
+		 * @param holder The holder that was stored for the key
+		 */
+		void expire(K key, AccessTimeObjectHolder<V> holder);
+	}
+
+	private final long tickMillis;
+	private final long graceMillis; // Time after the expiration, in which an entry is kept to be served stale
+
+	// Entries that are scheduled, but not yet placed: key1, holder1, key2, holder2, ...
+	private final Object scheduleLock = new Object();
+	private Object[] pending = new Object[16]; // Guarded by scheduleLock
+	private int pendingSize = 0; // Guarded by scheduleLock
+	private Object[] draining = new Object[16]; // The array that is swapped in by the next drain. Only accessed in advance().
+
+	// The wheel. Only accessed by the CleanupThread.
+	private final Object[][] buckets = new Object[LEVELS * WHEEL_SIZE][]; // key1, holder1, key2, holder2, ...
+	private final int[] bucketSizes = new int[LEVELS * WHEEL_SIZE];
+	private long currentTick; // The last processed tick
+	private int entryCount = 0;
+
+	/**
+	 * Creates an empty wheel.
+	 *
+	 * @param tickMillis The duration of a tick in milliseconds. It is the granularity of expiration.
+	 * @param graceMillis The time in milliseconds that entries are kept after their expiration. 0 means to expire them when due.
+	 * @param nowMillis The current time in milliseconds
+	 */
+	ExpirationWheel(long tickMillis, long graceMillis, long nowMillis)
+	{
+		this.tickMillis = Math.max(1, tickMillis);
+		this.graceMillis = graceMillis;
+		this.currentTick = nowMillis / this.tickMillis;
+	}
+
+	/**
+	 * Adds the entry to the wheel. This method is thread-safe.
+	 *
+	 * @param key The key
+	 * @param holder The holder, which must be complete
+	 */
+	void schedule(K key, AccessTimeObjectHolder<V> holder)
+	{
+		synchronized (scheduleLock)
+		{
+			if (pendingSize == pending.length)
+			{
+				pendingSize = dropDetached(pending, pendingSize);
+				if (pendingSize > pending.length * 3 / 4)
+				{
+					// Grow, so that each compaction frees at least a quarter of the array. This keeps scheduling at amortized constant time.
+					pending = Arrays.copyOf(pending, pending.length * 2);
+				}
+			}
+			pending[pendingSize] = key;
+			pending[pendingSize + 1] = holder;
+			pendingSize += 2;
+		}
+	}
+
+	/**
+	 * Advances the wheel to the given time, and passes all entries that have expired until then to the expirer.
+	 *
+	 * @param nowMillis The current time in milliseconds
+	 * @param cacheSize The number of entries in the Cache. Used to detect when dead entries should be purged.
+	 * @param expirer The expirer
+	 */
+	synchronized void advance(long nowMillis, int cacheSize, Expirer<K, V> expirer)
+	{
+		drainPending(expirer);
+
+		long nowTick = nowMillis / tickMillis;
+		if (nowTick - currentTick > WHEEL_SIZE * WHEEL_SIZE)
+		{
+			// Stepping tick by tick would take longer than placing all entries anew, for example after a long pause
+			rebuild(nowTick, expirer);
+		}
+		while (currentTick < nowTick)
+		{
+			currentTick++;
+			cascade(expirer);
+			processBucket(bucketIndex(0, currentTick), expirer);
+		}
+
+		if (entryCount > 2L * cacheSize + PURGE_SLACK)
+		{
+			purge(expirer);
+		}
+	}
+
+	/**
+	 * Removes all entries, for example when the Cache is cleared. Entries that are scheduled concurrently may stay.
+	 */
+	synchronized void clear()
+	{
+		synchronized (scheduleLock)
+		{
+			Arrays.fill(pending, 0, pendingSize, null);
+			pendingSize = 0;
+		}
+		Arrays.fill(buckets, null);
+		Arrays.fill(bucketSizes, 0);
+		entryCount = 0;
+	}
+
+	/**
+	 * @return The number of entries in the wheel, not counting the ones that are not yet drained from the pending array
+	 */
+	synchronized int size()
+	{
+		return entryCount;
+	}
+
+	/**
+	 * Places all pending entries. The pending array is swapped with an empty one, so that writers do not wait while the
+	 * entries are placed.
+	 */
+	private void drainPending(Expirer<K, V> expirer)
+	{
+		Object[] entries;
+		int size;
+		synchronized (scheduleLock)
+		{
+			entries = pending;
+			size = pendingSize;
+			pending = draining;
+			pendingSize = 0;
+		}
+		for (int i = 0; i < size; i += 2)
+		{
+			place(entries[i], entries[i + 1], expirer);
+		}
+		Arrays.fill(entries, 0, size, null);
+		draining = entries;
+	}
+
+	/**
+	 * Cascades the buckets of the levels that have completed a turn with the current tick. Higher levels are cascaded
+	 * first, as their entries may go to the bucket of a lower level that is cascaded in the same tick.
+	 */
+	private void cascade(Expirer<K, V> expirer)
+	{
+		int alignedLevels = 0;
+		while (alignedLevels < LEVELS - 1 && (currentTick & ((1L << (BITS * (alignedLevels + 1))) - 1)) == 0)
+		{
+			alignedLevels++;
+		}
+		for (int level = alignedLevels; level > 0; level--)
+		{
+			processBucket(bucketIndex(level, currentTick), expirer);
+		}
+	}
+
+	/**
+	 * Takes all entries from the bucket, and places them again. Entries that are due are expired on the way.
+	 */
+	private void processBucket(int bucket, Expirer<K, V> expirer)
+	{
+		Object[] entries = buckets[bucket];
+		int size = bucketSizes[bucket];
+		if (size == 0)
+			return;
+
+		buckets[bucket] = null;
+		bucketSizes[bucket] = 0;
+		entryCount -= size / 2;
+		for (int i = 0; i < size; i += 2)
+		{
+			place(entries[i], entries[i + 1], expirer);
+		}
+	}
+
+	/**
+	 * Places the entry in the bucket of its expiration time, or expires it if its holder is invalid. The entry is dropped
+	 * if its holder is detached, as the Cache no longer holds it.
+	 */
+	@SuppressWarnings("unchecked")
+	private void place(Object key, Object holderObject, Expirer<K, V> expirer)
+	{
+		AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)holderObject;
+		if (holder.isDetached())
+			return;
+		if (isDue(holder))
+		{
+			expirer.expire((K)key, holder);
+			return;
+		}
+
+		long expirationMillis = holder.expirationMillis();
+		if (expirationMillis == Long.MAX_VALUE)
+			return; // Does not expire any longer
+		expirationMillis += graceMillis;
+
+		long expirationTick = expirationMillis / tickMillis + 1; // The tick after the one that contains the expiration time
+		long delta = Math.max(1, expirationTick - currentTick); // Valid, but due by time: The time estimation lags behind
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+		{
+			level++;
+		}
+		add(bucketIndex(level, currentTick + delta), key, holder);
+	}
+
+	/**
+	 * Returns whether the holder is invalid, and not within the grace period of stale serving.
+	 */
+	private boolean isDue(AccessTimeObjectHolder<V> holder)
+	{
+		return holder.isExpiredBeyondStaleness(graceMillis);
+	}
+
+	private void add(int bucket, Object key, Object holder)
+	{
+		Object[] entries = buckets[bucket];
+		int size = bucketSizes[bucket];
+		if (entries == null)
+		{
+			entries = new Object[8];
+			buckets[bucket] = entries;
+		}
+		else if (size == entries.length)
+		{
+			entries = Arrays.copyOf(entries, size * 2);
+			buckets[bucket] = entries;
+		}
+		entries[size] = key;
+		entries[size + 1] = holder;
+		bucketSizes[bucket] = size + 2;
+		entryCount++;
+	}
+
+	private static int bucketIndex(int level, long tick)
+	{
+		return level * WHEEL_SIZE + (int)((tick >>> (BITS * level)) & MASK);
+	}
+
+	/**
+	 * Jumps to the given tick, and places all entries anew.
+	 */
+	private void rebuild(long nowTick, Expirer<K, V> expirer)
+	{
+		Object[][] oldBuckets = buckets.clone();
+		int[] oldSizes = bucketSizes.clone();
+		Arrays.fill(buckets, null);
+		Arrays.fill(bucketSizes, 0);
+		entryCount = 0;
+		currentTick = nowTick;
+		for (int bucket = 0; bucket < oldBuckets.length; bucket++)
+		{
+			for (int i = 0; i < oldSizes[bucket]; i += 2)
+			{
+				place(oldBuckets[bucket][i], oldBuckets[bucket][i + 1], expirer);
+			}
+		}
+	}
+
+	/**
+	 * Drops the entries whose holder is detached from all buckets, and expires the ones that are due. The purge is
+	 * triggered by dead entries: Holders that were removed or replaced before they expired, and holders that are also
+	 * in an earlier bucket.
+	 */
+	@SuppressWarnings("unchecked")
+	private void purge(Expirer<K, V> expirer)
+	{
+		for (int bucket = 0; bucket < buckets.length; bucket++)
+		{
+			Object[] entries = buckets[bucket];
+			int size = bucketSizes[bucket];
+			int kept = 0;
+			for (int i = 0; i < size; i += 2)
+			{
+				AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)entries[i + 1];
+				if (holder.isDetached())
+				{
+					entryCount--;
+				}
+				else if (isDue(holder))
+				{
+					expirer.expire((K)entries[i], holder);
+					entryCount--;
+				}
+				else
+				{
+					entries[kept] = entries[i];
+					entries[kept + 1] = holder;
+					kept += 2;
+				}
+			}
+			if (entries != null)
+				Arrays.fill(entries, kept, size, null);
+			bucketSizes[bucket] = kept;
+		}
+	}
+
+	/**
+	 * Removes the entries whose holder is detached from the given key/holder array, keeping the order.
+	 *
+	 * @return The new size of the array
+	 */
+	private static int dropDetached(Object[] entries, int size)
+	{
+		int kept = 0;
+		for (int i = 0; i < size; i += 2)
+		{
+			if (!((AccessTimeObjectHolder<?>)entries[i + 1]).isDetached())
+			{
+				entries[kept] = entries[i];
+				entries[kept + 1] = entries[i + 1];
+				kept += 2;
+			}
+		}
+		Arrays.fill(entries, kept, size, null);
+		return kept;
+	}
+}
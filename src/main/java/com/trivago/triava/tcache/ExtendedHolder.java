@@ -0,0 +1,80 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import javax.cache.CacheException;
+
+import com.trivago.triava.tcache.core.CacheSerializer;
+import com.trivago.triava.tcache.util.StandardSerializer;
+
+/**
+ * A holder for caches that serialize values with a custom {@link CacheSerializer}, or that weigh their entries. It keeps the
+ * serializer and the weight, which a plain {@link AccessTimeObjectHolder} does not, so that caches without these features
+ * do not pay for the fields.
+ *
+ * @author cesken
+ *
+ * @param <V> The value type
+ */
+public class ExtendedHolder<V> extends AccessTimeObjectHolder<V>
+{
+	private static final long serialVersionUID = 6142183502468350913L;
+
+	private final CacheSerializer<V> serializer;
+	private final int weight;
+
+	/**
+	 * Construct a holder. See {@link AccessTimeObjectHolder#AccessTimeObjectHolder(Object, CacheWriteMode, CacheSerializer)}.
+	 *
+	 * @param value The value to store in this holder
+	 * @param writeMode The CacheWriteMode that defines how to serialize the data
+	 * @param serializer The serializer for the value. It is only used if the writeMode serializes.
+	 * @param weight The weight of the entry
+	 * @throws CacheException when there is a problem serializing the value
+	 */
+	public ExtendedHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException
+	{
+		super(value, writeMode, serializer);
+		this.serializer = serializer;
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns whether holders for the given parameters must be an ExtendedHolder, or whether a plain AccessTimeObjectHolder suffices.
+	 *
+	 * @param writeMode The CacheWriteMode
+	 * @param serializer The serializer for the value
+	 * @param weight The weight of the entry
+	 * @return true, if an ExtendedHolder is required
+	 */
+	public static boolean isRequired(CacheWriteMode writeMode, CacheSerializer<?> serializer, int weight)
+	{
+		return weight != 1 || (writeMode.isStoreByValue() && serializer != StandardSerializer.instance());
+	}
+
+	@Override
+	protected CacheSerializer<V> serializer()
+	{
+		return serializer;
+	}
+
+	@Override
+	public int getWeight()
+	{
+		return weight;
+	}
+}
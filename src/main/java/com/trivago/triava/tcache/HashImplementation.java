@@ -24,4 +24,7 @@ public enum HashImplementation
 	// LocalCache always drops in case of a jam (like TCacheJamPolicy.DROP)
 //	PerfTestGuavaLocalCache, // com.google.common.cache.LocalCache  
 	HighscalelibNonBlockingHashMap, // org.cliffc.high_scale_lib.NonBlockingHashMap.java
+	OffHeap, // Keys and values in direct memory. Requires a CacheWriteMode that stores by value, e.g. Serialize
+	LongKey, // Primitive long keys in open addressing tables. Requires Long keys, see LongKeyCache
+	HolderNodeMap, // Hash table whose nodes are the holders. Saves one object per entry. Opt-in, as lookups are not faster
 }
\ No newline at end of file
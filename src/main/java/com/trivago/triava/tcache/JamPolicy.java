@@ -19,7 +19,7 @@ package com.trivago.triava.tcache;
 /**
  * The JamPolicy defines behavior when there is a jam in the cache.
  * A jam is the situation when the cache is (over)full and a new element should be put into the cache.
- * The Cache.put() method will either wait for free space (WAIT) or not add the new element (DROP).
+ * The Cache.put() method will either wait for free space (WAIT), not add the new element (DROP), or free space itself (ASSIST).
  * 
  * @author cesken
  *
@@ -29,5 +29,11 @@ public enum JamPolicy
 	/** Drop new element when adding an element and the cache is full */
 	DROP,
 	/** Wait for free space when adding an element and the cache is full */
-	WAIT
+	WAIT,
+	/**
+	 * Evict a small batch of elements in the adding Thread when the cache is full, and then add the element. The batch is
+	 * chosen by sampling, according to the eviction policy of the cache. This avoids waiting for the eviction thread, and
+	 * the eviction throughput grows with the number of writers.
+	 */
+	ASSIST
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.cache.integration.CacheLoaderException;
+
+/**
+ * Coalesces concurrent loads of the same key (single-flight). The first thread that loads a key runs the load, and
+ * threads that load the same key in the meantime wait for its result, instead of calling the loader again. Thus a hot
+ * key that expires leads to one load instead of one load per request.
+ * <p>
+ * A waiting thread gets the value of the load, or a CacheLoaderException if the load failed. Waiting can be limited
+ * by a timeout. The load itself is never interrupted, as it runs on the thread of its caller.
+ * <p>
+ * Asynchronous loads, see {@link #loadAsync(Object, AsyncLoad)}, are coalesced with the synchronous ones: Callers of
+ * either kind share the load that is in flight, no matter which kind started it.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+class LoadCoalescer<K, V>
+{
+	/**
+	 * A load, that may also store the loaded value in the Cache. A stored value must be stored before the method returns, so
+	 * that the waiting threads find it in the Cache. The waiting threads get the returned value in any case.
+	 *
+	 * @param <K> The key class
+	 * @param <V> The value class
+	 */
+	interface Load<K, V>
+	{
+		/**
+		 * @param key The key
+		 * @return The loaded value, or null
+		 */
+		V load(K key);
+	}
+
+	/**
+	 * An asynchronous load, that may also store the loaded value in the Cache. A stored value must be stored before the
+	 * returned future completes, so that the waiting threads find it in the Cache. The waiting threads get the value of the
+	 * future in any case.
+	 *
+	 * @param <K> The key class
+	 * @param <V> The value class
+	 */
+	interface AsyncLoad<K, V>
+	{
+		/**
+		 * @param key The key
+		 * @return A future for the loaded value. Its value may be null.
+		 */
+		CompletableFuture<V> load(K key);
+	}
+
+	private final ConcurrentMap<K, CompletableFuture<V>> loadsInFlight = new ConcurrentHashMap<>();
+	private final String cacheId;
+	private final long timeoutMillis;
+	private final AtomicLong coalescedWaits = new AtomicLong();
+
+	/**
+	 * @param cacheId The id of the Cache, used in exception messages
+	 * @param timeoutMillis The maximum time to wait for the load of another thread. 0 means to wait without a timeout.
+	 */
+	LoadCoalescer(String cacheId, long timeoutMillis)
+	{
+		this.cacheId = cacheId;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Runs the given load for the key, or waits for the load that is already running for the key.
+	 *
+	 * @param key The key
+	 * @param load The load. It is only called if no other thread is loading the key.
+	 * @return The loaded value, or null
+	 * @throws CacheLoaderException if the load of another thread failed, or waiting timed out or was interrupted.
+	 *         Exceptions of the given load are passed on unchanged.
+	 */
+	V load(K key, Load<K, V> load)
+	{
+		CompletableFuture<V> myLoad = new CompletableFuture<>();
+		CompletableFuture<V> runningLoad = loadsInFlight.putIfAbsent(key, myLoad);
+		if (runningLoad != null)
+		{
+			coalescedWaits.incrementAndGet();
+			return await(key, runningLoad);
+		}
+
+		try
+		{
+			V value = load.load(key);
+			myLoad.complete(value);
+			return value;
+		}
+		catch (Throwable exc)
+		{
+			myLoad.completeExceptionally(exc);
+			throw exc;
+		}
+		finally
+		{
+			loadsInFlight.remove(key, myLoad);
+		}
+	}
+
+	/**
+	 * Starts the given asynchronous load for the key, or joins the load that is already running for the key. This method
+	 * does not block.
+	 *
+	 * @param key The key
+	 * @param load The load. It is only called if no other load for the key is running.
+	 * @return A future for the loaded value. If the load fails, it completes exceptionally with a CacheLoaderException.
+	 */
+	CompletableFuture<V> loadAsync(final K key, AsyncLoad<K, V> load)
+	{
+		final CompletableFuture<V> myLoad = new CompletableFuture<>();
+		CompletableFuture<V> runningLoad = loadsInFlight.putIfAbsent(key, myLoad);
+		if (runningLoad != null)
+		{
+			coalescedWaits.incrementAndGet();
+			return dependentFuture(key, runningLoad);
+		}
+
+		CompletableFuture<V> loadFuture;
+		try
+		{
+			loadFuture = load.load(key);
+		}
+		catch (Throwable exc)
+		{
+			loadFuture = new CompletableFuture<>();
+			loadFuture.completeExceptionally(exc);
+		}
+		loadFuture.whenComplete((value, exc) ->
+		{
+			loadsInFlight.remove(key, myLoad);
+			if (exc != null)
+				myLoad.completeExceptionally(exc);
+			else
+				myLoad.complete(value);
+		});
+		return dependentFuture(key, myLoad);
+	}
+
+	/**
+	 * Returns a future that completes with the shared load, so that a caller cannot complete the shared load. A failure is
+	 * reported as CacheLoaderException.
+	 */
+	private CompletableFuture<V> dependentFuture(final K key, CompletableFuture<V> sharedLoad)
+	{
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		sharedLoad.whenComplete((value, exc) ->
+		{
+			if (exc == null)
+			{
+				future.complete(value);
+				return;
+			}
+			Throwable cause = exc instanceof CompletionException && exc.getCause() != null ? exc.getCause() : exc;
+			if (cause instanceof CacheLoaderException)
+				future.completeExceptionally(cause);
+			else
+				future.completeExceptionally(new CacheLoaderException("CacheLoader " + cacheId + " failed to load key=" + key, cause));
+		});
+		return future;
+	}
+
+	private V await(K key, CompletableFuture<V> runningLoad)
+	{
+		String message = "CacheLoader " + cacheId + " failed to load key=" + key;
+		try
+		{
+			return timeoutMillis > 0 ? runningLoad.get(timeoutMillis, TimeUnit.MILLISECONDS) : runningLoad.get();
+		}
+		catch (ExecutionException exc)
+		{
+			throw new CacheLoaderException(message + " in a coalesced load", exc.getCause());
+		}
+		catch (TimeoutException exc)
+		{
+			throw new CacheLoaderException(message + ". Timed out after " + timeoutMillis + "ms waiting for a coalesced load", exc);
+		}
+		catch (InterruptedException exc)
+		{
+			Thread.currentThread().interrupt();
+			throw new CacheLoaderException(message + ". Interrupted while waiting for a coalesced load", exc);
+		}
+	}
+
+	/**
+	 * @return The number of loads that waited for the load of another thread, instead of loading themselves
+	 */
+	long coalescedWaits()
+	{
+		return coalescedWaits.get();
+	}
+}
@@ -0,0 +1,82 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.concurrent.TimeUnit;
+
+import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.expiry.Constants;
+
+/**
+ * A size limited Cache with primitive long keys, that evicts elements asynchronously in the background. See {@link LongKeyCache} and {@link CacheLimit}.
+ * 
+ * @author cesken
+ *
+ * @param <V> The value type
+ */
+public class LongCacheLimit<V> extends CacheLimit<Long, V> implements LongKeyCache<V>
+{
+	private final LongKeyOperations<V> longKeyOperations;
+
+	public LongCacheLimit(TCacheFactory factory, Builder<Long, V> builder)
+	{
+		super(factory, builder);
+		this.longKeyOperations = new LongKeyOperations<>(this);
+	}
+
+	@Override
+	public V get(long key)
+	{
+		return longKeyOperations.get(key);
+	}
+
+	@Override
+	public void put(long key, V value)
+	{
+		longKeyOperations.put(key, value, Constants.EXPIRY_NOCHANGE, cacheTimeSpread());
+	}
+
+	@Override
+	public void put(long key, V value, int idleTime, int cacheTime, TimeUnit timeUnit)
+	{
+		longKeyOperations.put(key, value, timeUnit.toMillis(idleTime), timeUnit.toMillis(cacheTime));
+	}
+
+	@Override
+	public V getAndPut(long key, V value)
+	{
+		return longKeyOperations.getAndPut(key, value);
+	}
+
+	@Override
+	public V remove(long key)
+	{
+		return longKeyOperations.remove(key);
+	}
+
+	@Override
+	public boolean containsKey(long key)
+	{
+		return longKeyOperations.containsKey(key);
+	}
+
+	@Override
+	public Cache<Long, V> cache()
+	{
+		return this;
+	}
+}
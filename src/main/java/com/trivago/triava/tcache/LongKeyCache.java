@@ -0,0 +1,94 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.concurrent.TimeUnit;
+
+import com.trivago.triava.tcache.core.LongKeyBuilder;
+
+/**
+ * A Cache with primitive long keys. The keys are stored without boxing, see {@link HashImplementation#LongKey}.
+ * Expiration, eviction, listeners and statistics work like in a {@link Cache}.
+ * <p>
+ * Instances are created via {@link TCacheFactory#longKeyBuilder()} and {@link LongKeyBuilder#buildLongKeyCache()}.
+ * The methods of this interface do not box the key for hits, misses and puts. It is boxed for loading, for listeners, for
+ * the expiration index if the entry expires, and for eviction policies that keep keys like CLOCK or W-TinyLFU. All other
+ * operations are available via {@link #cache()}, and box the key.
+ * 
+ * @author cesken
+ *
+ * @param <V> The value type
+ */
+public interface LongKeyCache<V>
+{
+	/**
+	 * Gets the cached object for the given key. See {@link Cache#get(Object)}.
+	 * 
+	 * @param key The key
+	 * @return The value, or null if there is no mapping
+	 */
+	V get(long key);
+
+	/**
+	 * Add an object to the cache under the given key, using the default idle time and default cache time. See {@link Cache#put(Object, Object)}.
+	 * 
+	 * @param key The key
+	 * @param value The value
+	 */
+	void put(long key, V value);
+
+	/**
+	 * Add an object to the cache under the given key with the given idle and cache times. See {@link Cache#put(Object, Object, int, int, TimeUnit)}.
+	 * 
+	 * @param key The key
+	 * @param value The value
+	 * @param idleTime The idle time
+	 * @param cacheTime The cache time
+	 * @param timeUnit The TimeUnit for both idleTime and cacheTime
+	 */
+	void put(long key, V value, int idleTime, int cacheTime, TimeUnit timeUnit);
+
+	/**
+	 * Add an object to the cache, and return the previous value. See {@link Cache#getAndPut(Object, Object)}.
+	 * 
+	 * @param key The key
+	 * @param value The value
+	 * @return The previous value, or null
+	 */
+	V getAndPut(long key, V value);
+
+	/**
+	 * Removes the mapping for the given key. See {@link Cache#remove(Object)}.
+	 * 
+	 * @param key The key
+	 * @return The value that was stored for the given key or null
+	 */
+	V remove(long key);
+
+	/**
+	 * Returns true if this Cache contains a mapping for the specified key. See {@link Cache#containsKey(Object)}.
+	 * 
+	 * @param key The key
+	 * @return true if this Cache contains a mapping for the specified key
+	 */
+	boolean containsKey(long key);
+
+	/**
+	 * @return This Cache with boxed keys
+	 */
+	Cache<Long, V> cache();
+}
@@ -0,0 +1,177 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import javax.cache.event.EventType;
+
+import com.trivago.triava.tcache.core.Holders;
+import com.trivago.triava.tcache.storage.LongKeyConcurrentMap;
+
+/**
+ * Implements the {@link LongKeyCache} operations for a Cache, so they can be shared by {@link LongCache} and {@link LongCacheLimit}.
+ * The operations mirror the ones in {@link Cache}, but access the backing map with primitive keys. Hits, misses and
+ * puts do not box the key. It is only boxed where an object key is stored or passed on:
+ * <ul>
+ * <li>Loading a value, serving a stale value and refresh-ahead</li>
+ * <li>Notifying listeners</li>
+ * <li>Scheduling the expiration of an entry that expires, as the expiration index stores the key</li>
+ * <li>Recording accesses for an eviction policy that keeps keys, like CLOCK or W-TinyLFU</li>
+ * </ul>
+ * 
+ * @author cesken
+ *
+ * @param <V> The value type
+ */
+final class LongKeyOperations<V>
+{
+	private final Cache<Long, V> cache;
+	private final LongKeyConcurrentMap<AccessTimeObjectHolder<V>> map;
+
+	@SuppressWarnings("unchecked")
+	LongKeyOperations(Cache<Long, V> cache)
+	{
+		if (!(cache.objects instanceof LongKeyConcurrentMap))
+		{
+			throw new IllegalArgumentException("A LongKeyCache requires HashImplementation.LongKey, but has storeClass="
+					+ cache.objects.getClass().getName() + " in cache " + cache.id());
+		}
+		this.cache = cache;
+		this.map = (LongKeyConcurrentMap<AccessTimeObjectHolder<V>>) cache.objects;
+	}
+
+	V get(long key)
+	{
+		cache.throwISEwhenClosed();
+
+		AccessTimeObjectHolder<V> holder = map.get(key);
+		if (AccessTimeObjectHolder.isValid(holder))
+		{
+			onGetHit(key, holder);
+		}
+		else if (cache.loadsOnMiss())
+		{
+			holder = cache.onGetMiss(key, holder);
+		}
+		else
+		{
+			// Neither loaded nor stale. Counted like in Cache.onGetMiss().
+			cache.statisticsCalculator.incrementMissCount();
+			holder = null;
+		}
+		return holder == null ? null : cache.valueOf(holder);
+	}
+
+	/**
+	 * The equivalent of {@link Cache#onGetHit(Object, AccessTimeObjectHolder, boolean)}.
+	 */
+	private void onGetHit(long key, AccessTimeObjectHolder<V> holder)
+	{
+		cache.countHit(holder, true);
+		if (cache.accessRecorder != null)
+			cache.accessRecorder.recordAccess(key);
+		if (cache.isDueForRefresh(holder))
+			cache.refreshAsync(key, holder);
+	}
+
+	void put(long key, V value, long idleTime, long cacheTime)
+	{
+		Holders<V> holders = putToMap(key, value, cacheTime);
+		if (holders != null && holders.effectiveHolder != null && idleTime >= 0)
+			updateMaxIdleTime(key, holders.effectiveHolder, idleTime);
+	}
+
+	/**
+	 * The equivalent of {@link Cache#updateMaxIdleTime(Object, AccessTimeObjectHolder, long)}.
+	 */
+	private void updateMaxIdleTime(long key, AccessTimeObjectHolder<V> holder, long idleTimeMillis)
+	{
+		long expirationBefore = holder.expirationMillis();
+		holder.updateMaxIdleTime(idleTimeMillis);
+		if (holder.expirationMillis() < expirationBefore)
+			cache.scheduleExpiration(key, holder);
+	}
+
+	V getAndPut(long key, V value)
+	{
+		Holders<V> holders = putToMap(key, value, cache.cacheTimeSpread());
+		AccessTimeObjectHolder<V> oldHolder = holders != null ? holders.oldHolder : null;
+		return oldHolder != null ? oldHolder.peek() : null;
+	}
+
+	/**
+	 * Puts the value in the map. This is the equivalent of the put() part of {@link Cache#putToMapI(Object, Object, long, boolean)}.
+	 */
+	private Holders<V> putToMap(long key, V value, long cacheTime)
+	{
+		if (!cache.acceptsPut())
+			return null;
+
+		cache.kvUtil.verifyValueNotNull(value);
+
+		if (!cache.reserveCapacity())
+			return null;
+
+		cacheTime = cache.effectiveCacheTime(cacheTime);
+
+		AccessTimeObjectHolder<V> newHolder = cache.newHolder(null, value); // LongKey caches have no Weigher, see Cache constructor
+		AccessTimeObjectHolder<V> oldHolder = map.put(key, newHolder);
+		if (oldHolder != null && oldHolder.isInvalid())
+		{
+			expireEntry(key, oldHolder); // SAE-190 Notify about expiration
+			oldHolder = null;
+		}
+		else if (oldHolder != null)
+		{
+			oldHolder.markReplaced();
+		}
+		cache.completePut(newHolder, oldHolder, cacheTime);
+		if (cache.accessRecorder != null)
+			cache.accessRecorder.recordInsert(key, newHolder);
+		if (newHolder.expirationMillis() != Long.MAX_VALUE)
+			cache.scheduleExpiration(key, newHolder); // Boxes the key, but only if the entry expires
+		return cache.finishPut(newHolder, oldHolder, newHolder, true);
+	}
+
+	/**
+	 * The equivalent of {@link Cache#expireEntry(Object, AccessTimeObjectHolder)}. The key is only boxed for the listeners.
+	 */
+	private void expireEntry(long key, AccessTimeObjectHolder<V> holder)
+	{
+		boolean notify = cache.listeners.hasListenerFor(EventType.EXPIRED);
+		V value = notify ? holder.peek() : null;
+		if (holder.release()) // SAE-150 Verify removal
+		{
+			cache.countExpirations(1);
+			if (notify)
+				cache.listeners.dispatchEvent(EventType.EXPIRED, key, value);
+		}
+	}
+
+	V remove(long key)
+	{
+		AccessTimeObjectHolder<V> oldHolder = map.remove(key);
+		boolean validBeforeInvalidate = cache.gatedHolder(oldHolder) != null;
+		V releasedValue = cache.releaseHolder(oldHolder);
+		return validBeforeInvalidate ? releasedValue : null;
+	}
+
+	boolean containsKey(long key)
+	{
+		// We cannot rely on map.containsKey(), as the entry may be expired.
+		return cache.gatedHolder(map.get(key)) != null;
+	}
+}
@@ -0,0 +1,298 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.trivago.triava.tcache.eviction.EvictionInterface;
+
+/**
+ * Collects the candidates of an exact eviction round on a ForkJoinPool, see
+ * {@link com.trivago.triava.tcache.core.Builder#setEvictionParallelism(int)}.
+ * <p>
+ * The entries are split via the Spliterator of the storage Map. For a ConcurrentHashMap this splits the table by bins,
+ * so each task scans its own range of bins and calculates the frozen values of its entries. Then a threshold for the
+ * frozen values is estimated from a random sample, and each task drops its candidates above the threshold in parallel.
+ * Only the remaining candidates are handed to the eviction thread for the final selection.
+ * <p>
+ * The eviction class must be thread-safe in {@link EvictionInterface#getFreezeValue(Object, TCacheHolder)}.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+class ParallelEvictionScan<K, V>
+{
+	/**
+	 * Minimum number of entries per task. Smaller tasks cost more in forking than they gain.
+	 */
+	private static final int MIN_TASK_SIZE = 16384;
+	private static final int SAMPLE_SIZE = 4096;
+	/**
+	 * Extra candidates kept above the estimated threshold, to make up for the sampling error and for entries that are
+	 * removed while the round is running.
+	 */
+	private static final double THRESHOLD_HEADROOM = 1.1;
+
+	private final ForkJoinPool pool;
+	private final boolean ownPool;
+	private final long maxStalenessMillis;
+
+	/**
+	 * Creates an instance that uses the given parallelism.
+	 *
+	 * @param parallelism 0 for the common ForkJoinPool, or the number of threads of an own ForkJoinPool
+	 * @param cacheId The id of the Cache, used for the thread names
+	 * @param maxStalenessMillis The grace period of stale serving. Holders within it are candidates, and not invalid entries.
+	 */
+	ParallelEvictionScan(int parallelism, final String cacheId, long maxStalenessMillis)
+	{
+		this.maxStalenessMillis = maxStalenessMillis;
+		if (parallelism == 0)
+		{
+			pool = ForkJoinPool.commonPool();
+			ownPool = false;
+		}
+		else
+		{
+			final AtomicInteger threadCounter = new AtomicInteger();
+			ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = new ForkJoinPool.ForkJoinWorkerThreadFactory()
+			{
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool)
+				{
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+					thread.setName("CacheEvictionWorker-" + cacheId + "-" + threadCounter.incrementAndGet());
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			};
+			pool = new ForkJoinPool(parallelism, threadFactory, null, false);
+			ownPool = true;
+		}
+	}
+
+	/**
+	 * Returns whether a Cache of the given size is big enough to be scanned in parallel. This is checked before creating
+	 * an instance, so that the ForkJoinPool is only created when it is used.
+	 *
+	 * @param size The number of entries
+	 * @param parallelism The parallelism, as in {@link #ParallelEvictionScan(int, String, long)}
+	 * @return true, if splitting the scan pays off
+	 */
+	static boolean isWorthwhile(int size, int parallelism)
+	{
+		int threads = parallelism == 0 ? ForkJoinPool.getCommonPoolParallelism() : parallelism;
+		return size >= 2 * MIN_TASK_SIZE && threads > 1;
+	}
+
+	/**
+	 * Collects the candidates for eviction into the given candidates instance. It contains at least the count candidates
+	 * with the smallest frozen values, apart from entries that were added or removed in the meantime, and usually not many
+	 * more. If the threshold estimation misses, all entries are collected.
+	 *
+	 * @param map The storage Map of the Cache
+	 * @param size The number of entries in the Cache
+	 * @param evictionClass The eviction class that calculates the frozen values
+	 * @param count The number of entries that should be evicted
+	 * @param candidates The target. It is reset before collecting.
+	 * @param invalidEntries The target for the entries with an invalid holder, for example expired ones. They are no candidates.
+	 */
+	void collect(ConcurrentMap<K, AccessTimeObjectHolder<V>> map, int size, EvictionInterface<K, V> evictionClass, int count,
+			EvictionCandidates<K> candidates, Collection<Entry<K, AccessTimeObjectHolder<V>>> invalidEntries)
+	{
+		long taskSize = Math.max(MIN_TASK_SIZE, size / (pool.getParallelism() * 4L));
+		Queue<EvictionCandidates<K>> collected = new ConcurrentLinkedQueue<>();
+		Queue<Entry<K, AccessTimeObjectHolder<V>>> invalid = new ConcurrentLinkedQueue<>();
+		pool.invoke(new ScanTask(map.entrySet().spliterator(), taskSize, evictionClass, collected, invalid));
+		invalidEntries.addAll(invalid);
+
+		List<EvictionCandidates<K>> parts = new ArrayList<>(collected);
+		int total = 0;
+		for (EvictionCandidates<K> part : parts)
+		{
+			total += part.size();
+		}
+
+		final int[] selected = new int[parts.size()];
+		int selectedTotal = 0;
+		long threshold = estimateThreshold(parts, total, count);
+		if (threshold != Long.MAX_VALUE)
+		{
+			selectedTotal = partitionAll(parts, threshold, selected);
+		}
+		boolean filtered = selectedTotal >= count && threshold != Long.MAX_VALUE;
+
+		candidates.reset(filtered ? selectedTotal : total);
+		for (int i = 0; i < parts.size(); i++)
+		{
+			EvictionCandidates<K> part = parts.get(i);
+			candidates.addAll(part, filtered ? selected[i] : part.size());
+			part.clear();
+		}
+	}
+
+	/**
+	 * Estimates the frozen value, below which a bit more than count candidates are.
+	 *
+	 * @return The threshold, or Long.MAX_VALUE if filtering does not pay off
+	 */
+	private long estimateThreshold(List<EvictionCandidates<K>> parts, int total, int count)
+	{
+		if (total == 0 || count <= 0)
+			return Long.MAX_VALUE;
+
+		int sampleSize = Math.min(SAMPLE_SIZE, total);
+		int rank = (int)Math.ceil((double)count * THRESHOLD_HEADROOM * sampleSize / total);
+		if (rank >= sampleSize)
+			return Long.MAX_VALUE; // Nearly everything would be kept
+
+		long[] sample = new long[sampleSize];
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < sampleSize; i++)
+		{
+			int index = random.nextInt(total);
+			for (EvictionCandidates<K> part : parts)
+			{
+				if (index < part.size())
+				{
+					sample[i] = part.frozenValue(index);
+					break;
+				}
+				index -= part.size();
+			}
+		}
+		Arrays.sort(sample);
+		return sample[rank];
+	}
+
+	/**
+	 * Moves the candidates at or below the threshold to the front of each part, in parallel.
+	 *
+	 * @return The number of candidates at or below the threshold
+	 */
+	private int partitionAll(final List<EvictionCandidates<K>> parts, final long threshold, final int[] selected)
+	{
+		final List<RecursiveAction> tasks = new ArrayList<>(parts.size());
+		for (int i = 0; i < parts.size(); i++)
+		{
+			final int partIndex = i;
+			tasks.add(new RecursiveAction()
+			{
+				private static final long serialVersionUID = -2826352104934213566L;
+
+				@Override
+				protected void compute()
+				{
+					selected[partIndex] = parts.get(partIndex).partitionAtMost(threshold);
+				}
+			});
+		}
+		pool.invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1468023391373306255L;
+
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
+
+		int selectedTotal = 0;
+		for (int count : selected)
+		{
+			selectedTotal += count;
+		}
+		return selectedTotal;
+	}
+
+	/**
+	 * Shuts down the ForkJoinPool, if it is not the shared common pool.
+	 */
+	void shutdown()
+	{
+		if (ownPool)
+			pool.shutdown();
+	}
+
+	/**
+	 * Splits the entries until the parts are small enough, and collects the frozen values of each part.
+	 */
+	private final class ScanTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 6129532496386237113L;
+
+		private final Spliterator<Entry<K, AccessTimeObjectHolder<V>>> entries;
+		private final long taskSize;
+		private final EvictionInterface<K, V> evictionClass;
+		private final Queue<EvictionCandidates<K>> collected;
+		private final Queue<Entry<K, AccessTimeObjectHolder<V>>> invalid;
+
+		ScanTask(Spliterator<Entry<K, AccessTimeObjectHolder<V>>> entries, long taskSize, EvictionInterface<K, V> evictionClass,
+				Queue<EvictionCandidates<K>> collected, Queue<Entry<K, AccessTimeObjectHolder<V>>> invalid)
+		{
+			this.entries = entries;
+			this.taskSize = taskSize;
+			this.evictionClass = evictionClass;
+			this.collected = collected;
+			this.invalid = invalid;
+		}
+
+		@Override
+		protected void compute()
+		{
+			Spliterator<Entry<K, AccessTimeObjectHolder<V>>> split;
+			if (entries.estimateSize() > taskSize && (split = entries.trySplit()) != null)
+			{
+				invokeAll(new ScanTask(split, taskSize, evictionClass, collected, invalid),
+						new ScanTask(entries, taskSize, evictionClass, collected, invalid));
+				return;
+			}
+
+			final EvictionCandidates<K> part = new EvictionCandidates<>();
+			part.reset((int)Math.min(entries.estimateSize(), 2 * taskSize)); // The estimate may be unknown (Long.MAX_VALUE)
+			while (entries.tryAdvance(entry ->
+			{
+				K key = entry.getKey();
+				AccessTimeObjectHolder<V> holder = entry.getValue();
+				if (holder.isExpiredBeyondStaleness(maxStalenessMillis))
+					invalid.add(entry);
+				else
+					part.append(key, evictionClass.getFreezeValue(key, holder));
+			}))
+			{
+				// All work is done in the action
+			}
+			collected.add(part);
+		}
+	}
+}
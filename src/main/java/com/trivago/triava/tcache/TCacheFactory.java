@@ -35,6 +35,8 @@ import javax.cache.spi.CachingProvider;
 
 import com.trivago.triava.tcache.core.Builder;
 import com.trivago.triava.tcache.core.InternalBuilder;
+import com.trivago.triava.tcache.core.LongKeyBuilder;
+import com.trivago.triava.tcache.core.MaintenanceScheduler;
 import com.trivago.triava.tcache.core.TCacheProvider;
 import com.trivago.triava.tcache.util.CacheSizeInfo;
 import com.trivago.triava.tcache.util.ObjectSizeCalculatorInterface;
@@ -60,6 +62,8 @@ public class TCacheFactory implements Closeable, CacheManager
 	final ClassLoader classloader;
 	final Properties properties;
 	final TCacheProvider cachingProvider;
+	private int maintenanceThreads = MaintenanceScheduler.RECOMMENDED_THREADS;
+	private volatile MaintenanceScheduler maintenanceScheduler = null; // Created on demand, see maintenanceScheduler()
 
 	static TCacheFactory standardFactory = null;
 
@@ -104,6 +108,9 @@ public class TCacheFactory implements Closeable, CacheManager
 		this.uri = uri;
 		this.properties = new Properties(properties);
 		this.cachingProvider = cachingProvider;
+		String threads = this.properties.getProperty("maintenanceThreads");
+		if (threads != null)
+			setMaintenanceThreads(Integer.parseInt(threads));
 	}
 
 	/**
@@ -139,7 +146,73 @@ public class TCacheFactory implements Closeable, CacheManager
 	{
 		return new InternalBuilder<K,V>(this);
 	}
+
+	/**
+	 * Returns a Builder for a Cache with primitive long keys. See {@link LongKeyCache}.
+	 * @param <V> The Value type
+	 * @return A Builder
+	 */
+	public <V> LongKeyBuilder<V> longKeyBuilder()
+	{
+		return new LongKeyBuilder<V>(this);
+	}
 	
+	/**
+	 * Sets the number of threads that run the background work of all caches of this factory: expiration, eviction and
+	 * the notification of asynchronous listeners. The default is {@link MaintenanceScheduler#RECOMMENDED_THREADS}.
+	 * <p>
+	 * On a shared scheduler, the caches wait for each other: A long eviction round of one Cache or a slow listener delays
+	 * the background work of others. The order in which the background work of the caches is run can be influenced via
+	 * {@link Builder#setMaintenancePriority(int)}. With 0, each Cache starts its own threads instead: A CleanupThread for
+	 * expiration, an eviction thread if it is size limited, and a notifier thread per listener. This isolates the caches,
+	 * but adds up to many mostly idle threads if there are many caches. The number of threads can also be configured via
+	 * the CacheManager property "maintenanceThreads".
+	 * 
+	 * @param threads The number of threads, or 0 for own threads per Cache and listener
+	 * @throws IllegalStateException if a Cache was already created in this factory
+	 */
+	public void setMaintenanceThreads(int threads)
+	{
+		if (threads < 0)
+			throw new IllegalArgumentException("threads must not be negative: " + threads);
+
+		synchronized (factoryLock)
+		{
+			if (maintenanceScheduler != null || !CacheInstances.isEmpty())
+				throw new IllegalStateException("Maintenance threads must be set before creating caches in CacheManager " + uri);
+			maintenanceThreads = threads;
+		}
+	}
+
+	/**
+	 * @return The number of threads that run the background work of all caches. 0 means that each Cache has its own threads.
+	 */
+	public int getMaintenanceThreads()
+	{
+		return maintenanceThreads;
+	}
+
+	/**
+	 * Returns the scheduler for the background work of the caches of this factory. It is created on the first call.
+	 * 
+	 * @return The scheduler, or null if each Cache uses its own threads
+	 */
+	MaintenanceScheduler maintenanceScheduler()
+	{
+		MaintenanceScheduler scheduler = maintenanceScheduler;
+		if (scheduler != null || maintenanceThreads == 0)
+			return scheduler;
+
+		synchronized (factoryLock)
+		{
+			if (maintenanceScheduler == null)
+			{
+				maintenanceScheduler = new MaintenanceScheduler(maintenanceThreads, Cache.logger);
+			}
+			return maintenanceScheduler;
+		}
+	}
+
 	/**
 	 * Registers a Cache to this factory. Registered caches will be used for bulk operations like
 	 * {@link #close()}.
@@ -247,6 +320,11 @@ public class TCacheFactory implements Closeable, CacheManager
 			cache.close();
 		}
 		CacheInstances.clear();
+		MaintenanceScheduler scheduler = maintenanceScheduler;
+		if (scheduler != null)
+		{
+			scheduler.shutdown();
+		}
 		if (cachingProvider == null)
 		{
 			// Standalone, deprecated
@@ -71,4 +71,24 @@ public interface TCacheHolder<V> extends Serializable
 	 * @return true if it is invalid. This includes expired holders.
 	 */
 	boolean isInvalid();
+
+	/**
+	 * Returns whether this holder is no longer stored in the Cache, because it was removed or replaced by a newer holder.
+	 * Eviction and expiration structures that track holders drop detached holders.
+	 * @return true if the holder is detached
+	 */
+	default boolean isDetached()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns the weight of this holder, as calculated by the {@link com.trivago.triava.tcache.core.Weigher} of the Cache.
+	 * Holders that can have a weight other than 1 override this.
+	 * @return The weight. 1 if the Cache has no Weigher.
+	 */
+	default int getWeight()
+	{
+		return 1;
+	}
 }
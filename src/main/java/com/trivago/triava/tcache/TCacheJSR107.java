@@ -21,8 +21,12 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.cache.CacheException;
 import javax.cache.CacheManager;
@@ -143,17 +147,8 @@ public class TCacheJSR107<K, V> implements javax.cache.Cache<K, V>
 	{
 		throwISEwhenClosed();
 
-		Map<K, V> result = new HashMap<>(keys.size());
-		for (K key : keys)
-		{
-			V value = tcache.get(key);
-			if (value != null)
-			{
-				result.put(key, value);
-			}
-		}
-		
-		return result;
+		// Misses are loaded by one loadAll() call, if the Cache is read-through
+		return tcache.getAll(keys);
 	}
 
 	@Override
@@ -306,7 +301,7 @@ public class TCacheJSR107<K, V> implements javax.cache.Cache<K, V>
 		else
 			tcache.statisticsCalculator.incrementMissCount();
 		
-		CacheLoader<K, V> loader = tcache.builder.isReadThrough() ? tcache.loader : null;
+		CacheLoader<K, V> loader = tcache.builder.isReadThrough() ? tcache.coalescingLoader : null;
 		TCacheJSR107MutableEntry<K, V> me = new TCacheJSR107MutableEntry<K, V>(key, value, loader);
 		return me;
 	}
@@ -391,7 +386,7 @@ public class TCacheJSR107<K, V> implements javax.cache.Cache<K, V>
 				if (holder != null)
 				{
 					// JSR107 1.0 (p.63) mandates that we call getExpiryForAccess() if we read it (except if was loaded) 
-					holder.updateMaxIdleTime(tcache.expiryPolicy.getExpiryForAccess());
+					tcache.updateMaxIdleTime(key, holder, tcache.expiryPolicy.getExpiryForAccess());
 				}
 				break;
 			default:
@@ -452,87 +447,142 @@ public class TCacheJSR107<K, V> implements javax.cache.Cache<K, V>
 		return it;
 	}
 
-	// TODO #loadAll() must be implemented ASYNCHRONOUSLY according to JSR107 Spec
+	/**
+	 * Loads the keys asynchronously. This method returns immediately, and the listener is notified when all keys have been
+	 * loaded. The keys are split into chunks of {@link Builder#getLoadAllChunkSize()} keys, and the chunks are loaded in
+	 * parallel on the loader executor, see {@link Builder#setLoaderExecutor(java.util.concurrent.Executor)}. If loading
+	 * any chunk fails, the listener is notified with the exception of the first failed chunk, after all chunks are done.
+	 * Chunks that succeeded are stored nevertheless. Exceptions thrown by the listener are logged.
+	 */
 	@Override
-	public void loadAll(Set<? extends K> keys, boolean replaceExistingValues, CompletionListener listener)
+	public void loadAll(Set<? extends K> keys, final boolean replaceExistingValues, final CompletionListener listener)
 	{
 		throwISEwhenClosed();
 
+		// Only a single Thread may iterate keys (may be a not thread-safe Set), so copy them before going async
+		final List<K> keyList = new ArrayList<>(keys.size());
 		for (K key : keys) // implicit null check on keys => will throw NPE
 		{
 			kvUtil.verifyKeyNotNull(key);
+			keyList.add(key);
 		}
 		
-		CacheLoader<K, V> loader = tcache.loader;
-
-		if (loader == null)
+		if (tcache.loader == null)
 		{
 			if (listener != null)
 				listener.onException(new CacheException("Cache does not support loadAll as no CacheLoader is defined: " + this.getName()));
 			return;
 		}
 
-		try
+		int chunkSize = tcache.builder.getLoadAllChunkSize();
+		List<CompletableFuture<Void>> chunks = new ArrayList<>(keyList.size() / chunkSize + 1);
+		for (int start = 0; start < keyList.size(); start += chunkSize)
 		{
-			Map<K, V> loadedEntries = null;
+			List<K> chunkKeys = keyList.subList(start, Math.min(keyList.size(), start + chunkSize));
 			try
 			{
-				if (replaceExistingValues)
+				chunks.add(loadChunk(chunkKeys, replaceExistingValues));
+			}
+			catch (RejectedExecutionException ree)
+			{
+				CompletableFuture<Void> rejected = new CompletableFuture<>();
+				rejected.completeExceptionally(new CacheLoaderException("CacheLoader " + tcache.id() + " could not schedule loadAll", ree));
+				chunks.add(rejected);
+				break;
+			}
+			catch (RuntimeException exc)
+			{
+				// An AsyncCacheLoader that throws instead of returning a failed future
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(exc);
+				chunks.add(failed);
+				break;
+			}
+		}
+
+		CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[chunks.size()])).whenComplete((ignored, exc) ->
+		{
+			if (listener == null)
+				return;
+			try
+			{
+				if (exc == null)
 				{
-					loadedEntries = loader.loadAll(keys);
+					listener.onCompletion();
+					return;
 				}
-				else
+				Throwable cause = exc instanceof CompletionException && exc.getCause() != null ? exc.getCause() : exc;
+				if (!(cause instanceof CacheLoaderException))
 				{
-					final Set<K> finalKeys = new HashSet<>();
-					
-					// Only a single Thread may iterate keys (may be a not thread-safe Set)
-					for (K key : keys)
-					{
-						if (!containsKey(key))
-						{
-							finalKeys.add(key);
-						}
-					}
-	
-					loadedEntries = loader.loadAll(finalKeys);
+					// Wrap loader Exceptions in CacheLoaderExcpeption. The JSR107 Spec is a bit confusing on it, but we do it as
+					// the TCK requires it, and it was discussed on the bug tracker:
+					// https://github.com/jsr107/jsr107tck/issues/99
+					String message = "CacheLoader " + tcache.id() + " failed to load keys";
+					cause = new CacheLoaderException(message + " This is a wrapped exception. See https://github.com/jsr107/jsr107tck/issues/99", cause);
 				}
+				listener.onException((Exception)cause);
 			}
-			catch (Exception exc)
+			catch (RuntimeException listenerExc)
 			{
-				// Wrap loader Exceptions in CacheLoaderExcpeption. The JSR107 Spec is a bit confusing on it, but we do it as
-				// the TCK requires it, and it was discussed on the bug tracker:
-				// https://github.com/jsr107/jsr107tck/issues/99
-				String message = "CacheLoader " + tcache.id() + " failed to load keys";
-				throw new CacheLoaderException(message + " This is a wrapped exception. See https://github.com/jsr107/jsr107tck/issues/99", exc);
+				// Nobody else would see it, as it is thrown on a loader thread
+				Cache.logger.error("CompletionListener of loadAll() failed in cache " + tcache.id(), listenerExc);
 			}
-			
-			if (loadedEntries != null)
+		});
+	}
+
+	/**
+	 * Loads one chunk of {@link #loadAll(Set, boolean, CompletionListener)} on the loader executor, and stores the loaded
+	 * entries without write-through.
+	 * 
+	 * @param keys The keys of the chunk
+	 * @param replaceExistingValues Whether to load keys that are already in the Cache
+	 * @return A future that completes when the chunk is stored. It completes exceptionally if the loader fails.
+	 * @throws RejectedExecutionException if the loader executor rejects the chunk
+	 */
+	private CompletableFuture<Void> loadChunk(List<K> keys, boolean replaceExistingValues)
+	{
+		List<K> keysToLoad = keys;
+		if (!replaceExistingValues)
+		{
+			keysToLoad = new ArrayList<>(keys.size());
+			for (K key : keys)
 			{
-				Map<K, V> cleanedEntries = new HashMap<>(2*loadedEntries.size());
-				for (java.util.Map.Entry<K, V> entry: loadedEntries.entrySet())
+				if (!containsKey(key))
 				{
-					K key = entry.getKey();
-					V value = entry.getValue();
-					if (key == null || value == null)
-						continue; //invalid => do not load
-					
-					cleanedEntries.put(key, value);
+					keysToLoad.add(key);
 				}
-				
-				putAll(cleanedEntries, false);
 			}
-			
-			if (listener != null)
-				listener.onCompletion();
+
+			if (keysToLoad.isEmpty())
+				return CompletableFuture.completedFuture(null);
 		}
-		catch (Exception exc)
+
+		return tcache.loadAllAsync(keysToLoad, this::storeLoaded);
+	}
+
+	/**
+	 * Stores the entries that were loaded by {@link #loadAll(Set, boolean, CompletionListener)} without write-through.
+	 * Entries with a null key or value are skipped.
+	 * 
+	 * @param loadedEntries The loaded entries, or null
+	 */
+	private void storeLoaded(Map<K, V> loadedEntries)
+	{
+		if (loadedEntries != null)
 		{
-			if (listener != null)
-				listener.onException(exc);
+			Map<K, V> cleanedEntries = new HashMap<>(2*loadedEntries.size());
+			for (java.util.Map.Entry<K, V> entry: loadedEntries.entrySet())
+			{
+				K key = entry.getKey();
+				V value = entry.getValue();
+				if (key == null || value == null)
+					continue; //invalid => do not load
+				
+				cleanedEntries.put(key, value);
+			}
+			
+			putAll(cleanedEntries, false);
 		}
-		
-		
-
 	}
 
 	void putNoWriteThrough(K key, V value)
@@ -805,7 +855,7 @@ public class TCacheJSR107<K, V> implements javax.cache.Cache<K, V>
 			if (valueInCache != null && !mustWriteThrough)
 			{
 				// Value will not be removed, thus it is accessed
-				holder.updateMaxIdleTime(tcache.expiryPolicy.getExpiryForAccess());
+				tcache.updateMaxIdleTime(key, holder, tcache.expiryPolicy.getExpiryForAccess());
 			}
 		}
 		else
@@ -0,0 +1,210 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ConcurrentMap that keeps a running total of the weights of the holders it contains, see {@link TCacheHolder#getWeight()}.
+ * It is put in front of the storage map of a Cache that has a {@link com.trivago.triava.tcache.core.Weigher}.
+ * The total is updated with the exact holders that each operation inserted or removed, so reading it never requires a summation.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+class WeighingMap<K, V> extends AbstractMap<K, AccessTimeObjectHolder<V>> implements ConcurrentMap<K, AccessTimeObjectHolder<V>>
+{
+	private final ConcurrentMap<K, AccessTimeObjectHolder<V>> backingMap;
+	private final AtomicLong totalWeight = new AtomicLong();
+
+	WeighingMap(ConcurrentMap<K, AccessTimeObjectHolder<V>> backingMap)
+	{
+		this.backingMap = backingMap;
+	}
+
+	/**
+	 * @return The total weight of all holders in this map
+	 */
+	long totalWeight()
+	{
+		return totalWeight.get();
+	}
+
+	private void added(AccessTimeObjectHolder<V> newHolder, AccessTimeObjectHolder<V> oldHolder)
+	{
+		long delta = newHolder.getWeight() - (oldHolder == null ? 0 : oldHolder.getWeight());
+		if (delta != 0)
+			totalWeight.addAndGet(delta);
+	}
+
+	private void removed(Object holder)
+	{
+		if (holder != null)
+			totalWeight.addAndGet(-((AccessTimeObjectHolder<?>)holder).getWeight());
+	}
+
+	@Override
+	public int size()
+	{
+		return backingMap.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return backingMap.isEmpty();
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return backingMap.containsKey(key);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> get(Object key)
+	{
+		return backingMap.get(key);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> put(K key, AccessTimeObjectHolder<V> value)
+	{
+		AccessTimeObjectHolder<V> oldHolder = backingMap.put(key, value);
+		added(value, oldHolder);
+		return oldHolder;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> putIfAbsent(K key, AccessTimeObjectHolder<V> value)
+	{
+		AccessTimeObjectHolder<V> oldHolder = backingMap.putIfAbsent(key, value);
+		if (oldHolder == null)
+			added(value, null);
+		return oldHolder;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> remove(Object key)
+	{
+		AccessTimeObjectHolder<V> oldHolder = backingMap.remove(key);
+		removed(oldHolder);
+		return oldHolder;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		boolean removed = backingMap.remove(key, value);
+		if (removed)
+			removed(value);
+		return removed;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> replace(K key, AccessTimeObjectHolder<V> value)
+	{
+		AccessTimeObjectHolder<V> oldHolder = backingMap.replace(key, value);
+		if (oldHolder != null)
+			added(value, oldHolder);
+		return oldHolder;
+	}
+
+	@Override
+	public boolean replace(K key, AccessTimeObjectHolder<V> oldValue, AccessTimeObjectHolder<V> newValue)
+	{
+		boolean replaced = backingMap.replace(key, oldValue, newValue);
+		if (replaced)
+			added(newValue, oldValue);
+		return replaced;
+	}
+
+	/**
+	 * Removes all entries one by one, so that the total weight stays exact even with concurrent writers.
+	 */
+	@Override
+	public void clear()
+	{
+		Iterator<Entry<K, AccessTimeObjectHolder<V>>> iterator = entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	@Override
+	public Set<Entry<K, AccessTimeObjectHolder<V>>> entrySet()
+	{
+		return new AbstractSet<Entry<K, AccessTimeObjectHolder<V>>>()
+		{
+			@Override
+			public Iterator<Entry<K, AccessTimeObjectHolder<V>>> iterator()
+			{
+				final Iterator<Entry<K, AccessTimeObjectHolder<V>>> backingIterator = backingMap.entrySet().iterator();
+				return new Iterator<Entry<K, AccessTimeObjectHolder<V>>>()
+				{
+					Entry<K, AccessTimeObjectHolder<V>> current = null;
+
+					@Override
+					public boolean hasNext()
+					{
+						return backingIterator.hasNext();
+					}
+
+					@Override
+					public Entry<K, AccessTimeObjectHolder<V>> next()
+					{
+						current = backingIterator.next();
+						return current;
+					}
+
+					@Override
+					public void remove()
+					{
+						if (current == null)
+							throw new IllegalStateException("next() has not been called");
+						// Only count it if we removed the holder that we have seen. It may have been replaced concurrently.
+						WeighingMap.this.remove(current.getKey(), current.getValue());
+						current = null;
+					}
+				};
+			}
+
+			@Override
+			public Spliterator<Entry<K, AccessTimeObjectHolder<V>>> spliterator()
+			{
+				// A Spliterator cannot remove, so the one of the backing map can be used. It splits much better than one based on the iterator.
+				return backingMap.entrySet().spliterator();
+			}
+
+			@Override
+			public int size()
+			{
+				return backingMap.size();
+			}
+		};
+	}
+}
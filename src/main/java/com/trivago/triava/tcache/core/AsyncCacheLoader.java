@@ -0,0 +1,76 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A loader that loads values asynchronously, for example via a non-blocking client. It is used by
+ * {@link com.trivago.triava.tcache.Cache#getAsync(Object)} and {@link com.trivago.triava.tcache.Cache#getAllAsync(Set)},
+ * see {@link Builder#setAsyncLoader(AsyncCacheLoader)}.
+ * <p>
+ * Implementations should not block in {@link #asyncLoad(Object, Executor)}. Blocking work can be done on the given
+ * Executor, which is the loader executor of the Cache, see {@link Builder#setLoaderExecutor(Executor)}.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+public interface AsyncCacheLoader<K, V>
+{
+	/**
+	 * Starts loading the value for the given key.
+	 *
+	 * @param key The key
+	 * @param executor The loader executor of the Cache
+	 * @return A future for the value. The value may be null, if there is no value for the key.
+	 */
+	CompletableFuture<V> asyncLoad(K key, Executor executor);
+
+	/**
+	 * Starts loading the values for the given keys. The default implementation calls {@link #asyncLoad(Object, Executor)}
+	 * for each key. Implementations that can load multiple keys at once should override it.
+	 *
+	 * @param keys The keys
+	 * @param executor The loader executor of the Cache
+	 * @return A future for the values. Keys without a value are not contained.
+	 */
+	default CompletableFuture<Map<K, V>> asyncLoadAll(Set<? extends K> keys, Executor executor)
+	{
+		final Map<K, CompletableFuture<V>> futures = new HashMap<>();
+		for (K key : keys)
+		{
+			futures.put(key, asyncLoad(key, executor));
+		}
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored ->
+		{
+			Map<K, V> values = new HashMap<>();
+			for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet())
+			{
+				V value = entry.getValue().join();
+				if (value != null)
+					values.put(entry.getKey(), value);
+			}
+			return values;
+		});
+	}
+}
@@ -19,6 +19,7 @@ package com.trivago.triava.tcache.core;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -35,6 +36,7 @@ import javax.cache.expiry.TouchedExpiryPolicy;
 import javax.cache.integration.CacheWriter;
 
 import com.trivago.triava.annotations.Beta;
+import com.trivago.triava.collections.Interner;
 import com.trivago.triava.tcache.Cache;
 import com.trivago.triava.tcache.CacheWriteMode;
 import com.trivago.triava.tcache.EvictionPolicy;
@@ -42,7 +44,11 @@ import com.trivago.triava.tcache.HashImplementation;
 import com.trivago.triava.tcache.JamPolicy;
 import com.trivago.triava.tcache.eviction.EvictionInterface;
 import com.trivago.triava.tcache.storage.HighscalelibNonBlockingHashMap;
+import com.trivago.triava.tcache.storage.HolderNodeStorage;
 import com.trivago.triava.tcache.storage.JavaConcurrentHashMap;
+import com.trivago.triava.tcache.storage.LongKeyStorage;
+import com.trivago.triava.tcache.storage.OffHeapStorage;
+import com.trivago.triava.tcache.util.StandardSerializer;
 
 /**
  * A Builder to create Cache instances. A Builder instance must be retrieved via a TCacheFactory,
@@ -65,25 +71,44 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 	private long maxCacheTime = 3600_000; // In MILLISECONDS. 60 minutes
 	private long maxCacheTimeSpread = 0; // In MILLISECONDS. 0 seconds
 	private int expectedMapSize = 10000;
+	private long maxWeight = 0; // 0 = limited by expectedMapSize
+	private Weigher<K, V> weigher = null;
 	private int concurrencyLevel = 14;
 	private int mapConcurrencyLevel = 16;
 	private long cleanUpIntervalMillis = 0; // 0 = auto-tuning
+	private long refreshAfterMillis = 0; // 0 = no refresh-ahead
+	private long maxStalenessMillis = 0; // 0 = no stale serving
+	private long loadTimeoutMillis = 0; // 0 = wait for coalesced loads without a timeout
+	private int loadAllChunkSize = 1000;
 
 	private EvictionPolicy evictionPolicy = EvictionPolicy.LFU;
 	private EvictionInterface<K, V> evictionClass = null;
+	private int evictionSampleSize = 0; // 0 = exact eviction
+	private int evictionParallelism = 1; // 1 = eviction thread only
+	private int evictionFreePercentage = 10;
+	private int evictionSpacePercentage = 15;
+	private boolean adaptiveEvictionSpace = false;
 	private HashImplementation hashImplementation = HashImplementation.ConcurrentHashMap;
+	private int expectedEntryBytes = 0; // 0 = default of the StorageBackend
 	private JamPolicy jamPolicy = JamPolicy.WAIT;
+	private int maintenancePriority = 0;
 	private boolean statistics = false; // off by JSR107 default
 	private boolean management = false; // off by JSR107 default
 	private CacheWriteMode writeMode = CacheWriteMode.Identity;
+	private int compressionThreshold = 1024;
 	private Class<K> keyType = objectKeyType();
 	private Class<V> valueType = objectValueType();
+	private CacheSerializer<K> keySerializer = StandardSerializer.instance();
+	private CacheSerializer<V> valueSerializer = StandardSerializer.instance();
+	private transient Interner<V> interner = null; // Not part of the serializable configuration. null means: one per Cache
 	
 	private Collection<CacheEntryListenerConfiguration<K, V>> listenerConfigurations = new ArrayList<>(0);
 	private Factory<CacheWriter<? super K, ? super V>> writerFactory = null;
 	private Factory<ExpiryPolicy> expiryPolicyFactory = EternalExpiryPolicy.factoryOf();
 
 	private CacheLoader<K, V> loader = null;
+	private transient AsyncCacheLoader<K, V> asyncLoader = null; // Not part of the serializable configuration
+	private transient Executor loaderExecutor = null; // Not part of the serializable configuration. null means: An own executor per Cache
 	private Factory<javax.cache.integration.CacheLoader<K, V>> loaderFactory = null;
 	
 	private boolean writeThrough = false;
@@ -202,6 +227,109 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return this;
 	}
 
+	/**
+	 * Sets the age after which an entry is refreshed ahead of its expiration. When a get() finds a valid entry that is
+	 * older than refreshAfter, it returns the current value immediately, and reloads the value asynchronously via the
+	 * loader on the loader executor, see {@link #setLoaderExecutor(Executor)}. When the reload finishes, the new value
+	 * replaces the entry, unless the entry was changed or removed in the meantime. There is at most one reload per key
+	 * at a time. If the reload fails, the entry stays as it is, and the next get() tries again.
+	 * <p>
+	 * Frequently read keys are thus reloaded before they expire, and do not see a miss. refreshAfter should therefore be
+	 * shorter than the expiration time. Refresh-ahead requires a loader. The default is 0, which means no refresh-ahead.
+	 * 
+	 * @param refreshAfter The age after which an entry is refreshed. 0 disables refresh-ahead.
+	 * @param timeUnit The TimeUnit of refreshAfter
+	 * @return This Builder
+	 */
+	public Builder<K, V> setRefreshAfter(int refreshAfter, TimeUnit timeUnit)
+	{
+		if (refreshAfter < 0)
+			throw new IllegalArgumentException("Invalid refreshAfter: " + refreshAfter);
+		this.refreshAfterMillis = timeUnit.toMillis(refreshAfter);
+		return this;
+	}
+
+	@Override
+	public long getRefreshAfterMillis()
+	{
+		return refreshAfterMillis;
+	}
+
+	/**
+	 * Sets the maximum staleness of values that are served after their expiration (stale-while-revalidate). When a get()
+	 * finds an entry that has expired less than maxStaleness ago, it returns the stale value immediately, and reloads the
+	 * value asynchronously via the loader, like refresh-ahead does, see {@link #setRefreshAfter(int, TimeUnit)}.
+	 * Thus a slow or failing loader does not delay the callers, as long as the values are not older than allowed.
+	 * After the grace period, a get() loads the value synchronously, as without stale serving.
+	 * <p>
+	 * Expired entries are kept in the Cache during the grace period, so they still count towards the Cache size, and the
+	 * expiration listeners are notified after the grace period. Other operations like containsKey() and iteration see
+	 * expired entries as absent. Stale serving requires a loader. The default is 0, which means no stale serving.
+	 * 
+	 * @param maxStaleness The time after the expiration, during which a value may be served. 0 disables stale serving.
+	 * @param timeUnit The TimeUnit of maxStaleness
+	 * @return This Builder
+	 */
+	public Builder<K, V> setMaxStaleness(int maxStaleness, TimeUnit timeUnit)
+	{
+		if (maxStaleness < 0)
+			throw new IllegalArgumentException("Invalid maxStaleness: " + maxStaleness);
+		this.maxStalenessMillis = timeUnit.toMillis(maxStaleness);
+		return this;
+	}
+
+	@Override
+	public long getMaxStalenessMillis()
+	{
+		return maxStalenessMillis;
+	}
+
+	/**
+	 * Sets the maximum time that a get() waits for the load of another thread. Concurrent loads of the same key are
+	 * coalesced: Only the first thread calls the loader, and the other threads wait for its result. If the result
+	 * is not there within the load timeout, the waiting thread gets a CacheLoaderException. The thread that calls the
+	 * loader is not limited by the timeout. The default is 0, which means to wait without a timeout.
+	 * 
+	 * @param loadTimeout The maximum time to wait for a coalesced load. 0 means no timeout.
+	 * @param timeUnit The TimeUnit of loadTimeout
+	 * @return This Builder
+	 */
+	public Builder<K, V> setLoadTimeout(int loadTimeout, TimeUnit timeUnit)
+	{
+		if (loadTimeout < 0)
+			throw new IllegalArgumentException("Invalid loadTimeout: " + loadTimeout);
+		this.loadTimeoutMillis = timeUnit.toMillis(loadTimeout);
+		return this;
+	}
+
+	@Override
+	public long getLoadTimeoutMillis()
+	{
+		return loadTimeoutMillis;
+	}
+
+	/**
+	 * Sets the number of keys that are loaded together by the JSR107 loadAll(). The keys are split into chunks of this size,
+	 * and the chunks are loaded in parallel on the loader executor, see {@link #setLoaderExecutor(Executor)}. Each chunk
+	 * is loaded by one call to {@link javax.cache.integration.CacheLoader#loadAll(Iterable)}. The default is 1000.
+	 * 
+	 * @param loadAllChunkSize The number of keys per chunk, 1 or higher
+	 * @return This Builder
+	 */
+	public Builder<K, V> setLoadAllChunkSize(int loadAllChunkSize)
+	{
+		if (loadAllChunkSize < 1)
+			throw new IllegalArgumentException("Invalid loadAllChunkSize: " + loadAllChunkSize);
+		this.loadAllChunkSize = loadAllChunkSize;
+		return this;
+	}
+
+	@Override
+	public int getLoadAllChunkSize()
+	{
+		return loadAllChunkSize;
+	}
+
 	/**
 	 * @deprecated Use {@link #setMaxElements(int)}
 	 * @param maxElements See {@link #setMaxElements(int)}
@@ -221,6 +349,50 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return this;
 	}
 
+	/**
+	 * Sets the maximum total weight of the entries in the Cache. This requires a {@link Weigher}, see {@link #setWeigher(Weigher)}. If a
+	 * maximum weight is set, the Cache evicts when the total weight is reached, instead of when the number of elements is reached.
+	 * The number of elements from {@link #setMaxElements(int)} is then only used as sizing hint for the storage.
+	 * 
+	 * @param maxWeight The maximum total weight
+	 * @return This Builder
+	 */
+	public Builder<K,V> setMaxWeight(long maxWeight)
+	{
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("Invalid maxWeight: " + maxWeight);
+		this.maxWeight = maxWeight;
+		return this;
+	}
+
+	/**
+	 * @return The maximum total weight. 0 if the Cache is limited by the number of elements.
+	 */
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * Sets the Weigher, that calculates the weight of each entry. See {@link #setMaxWeight(long)}.
+	 * 
+	 * @param weigher The Weigher
+	 * @return This Builder
+	 */
+	public Builder<K,V> setWeigher(Weigher<K, V> weigher)
+	{
+		this.weigher = weigher;
+		return this;
+	}
+
+	/**
+	 * @return The Weigher. null if no Weigher is set.
+	 */
+	public Weigher<K, V> getWeigher()
+	{
+		return weigher;
+	}
+
 	@Override
 	public Builder<K,V> setConcurrencyLevel(int concurrencyLevel)
 	{
@@ -254,6 +426,145 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return evictionClass;
 	}
 
+	/**
+	 * Sets the number of candidates that are sampled for each evicted element. The default is 0, which means exact eviction:
+	 * Each eviction round inspects and sorts all entries, and evicts the worst ones according to the eviction policy.
+	 * <p>
+	 * With a sample size greater than 0 eviction is approximate: For each evicted element, the next sampleSize entries are
+	 * inspected and added to a small pool of candidates, and the worst candidate in the pool is evicted. The pool is kept
+	 * across eviction rounds. This avoids copying and sorting the whole Cache in each round, which is significant
+	 * for big caches. A sample size of 5 to 10 is usually close to exact eviction.
+	 * 
+	 * @param evictionSampleSize The sample size, or 0 for exact eviction
+	 * @return This Builder
+	 */
+	public Builder<K,V> setEvictionSampleSize(int evictionSampleSize)
+	{
+		if (evictionSampleSize < 0)
+			throw new IllegalArgumentException("evictionSampleSize must not be negative: " + evictionSampleSize);
+		this.evictionSampleSize = evictionSampleSize;
+		return this;
+	}
+
+	/**
+	 * @return The eviction sample size. 0 means exact eviction.
+	 */
+	public int getEvictionSampleSize()
+	{
+		return evictionSampleSize;
+	}
+
+	/**
+	 * Sets how many threads inspect the entries in an eviction round. The default is 1, which means that the eviction
+	 * thread of the Cache does all work alone.
+	 * <p>
+	 * For very big caches, the exact eviction round can run on a ForkJoinPool instead: The entries are scanned, their frozen
+	 * values are calculated, and the entries to evict are preselected in parallel. Use 0 to run on the shared
+	 * {@link java.util.concurrent.ForkJoinPool#commonPool()}, or a value greater than 1 to give the Cache its own ForkJoinPool
+	 * with that many threads. Small caches are always scanned by the eviction thread, as splitting does not pay off. The own
+	 * ForkJoinPool is created when the Cache first grows big enough for a parallel round.
+	 * <p>
+	 * The speedup of the parallel scan has not been measured on machines with many cores yet. Measure it for your Cache,
+	 * before setting this in production.
+	 * <p>
+	 * This applies to exact eviction of the standard eviction policies and of custom {@link com.trivago.triava.tcache.eviction.FreezingEvictor} classes with the
+	 * standard comparator. A custom eviction class must then calculate frozen values in a thread-safe way.
+	 * 
+	 * @param evictionParallelism The parallelism, 0 for the common ForkJoinPool, or 1 for no parallel eviction
+	 * @return This Builder
+	 */
+	public Builder<K,V> setEvictionParallelism(int evictionParallelism)
+	{
+		if (evictionParallelism < 0)
+			throw new IllegalArgumentException("evictionParallelism must not be negative: " + evictionParallelism);
+		this.evictionParallelism = evictionParallelism;
+		return this;
+	}
+
+	/**
+	 * @return The eviction parallelism. 0 means the common ForkJoinPool, 1 means no parallel eviction.
+	 */
+	public int getEvictionParallelism()
+	{
+		return evictionParallelism;
+	}
+
+	/**
+	 * Sets how much an eviction round frees, in percent of the maximum size. The default is 10. Higher values lead to
+	 * fewer eviction rounds, at the cost of a lower average fill level.
+	 * 
+	 * @param evictionFreePercentage The percentage, from 0 to 100. With 0 each round evicts a single element.
+	 * @return This Builder
+	 */
+	public Builder<K,V> setEvictionFreePercentage(int evictionFreePercentage)
+	{
+		if (evictionFreePercentage < 0 || evictionFreePercentage > 100)
+			throw new IllegalArgumentException("evictionFreePercentage must be between 0 and 100: " + evictionFreePercentage);
+		this.evictionFreePercentage = evictionFreePercentage;
+		return this;
+	}
+
+	/**
+	 * @return The percentage of the maximum size that an eviction round frees
+	 */
+	public int getEvictionFreePercentage()
+	{
+		return evictionFreePercentage;
+	}
+
+	/**
+	 * Sets the eviction space, in percent of the maximum size. The default is 15. Eviction starts when the Cache is full,
+	 * and writers may continue to add elements into the eviction space while the eviction round is running. When the
+	 * eviction space is used up, writers act according to the {@link JamPolicy}. Thus the Cache may temporarily hold this
+	 * many more elements (or weight) than its maximum size.
+	 * 
+	 * @param evictionSpacePercentage The percentage, 0 or higher
+	 * @return This Builder
+	 */
+	public Builder<K,V> setEvictionSpacePercentage(int evictionSpacePercentage)
+	{
+		if (evictionSpacePercentage < 0)
+			throw new IllegalArgumentException("evictionSpacePercentage must not be negative: " + evictionSpacePercentage);
+		this.evictionSpacePercentage = evictionSpacePercentage;
+		return this;
+	}
+
+	/**
+	 * @return The eviction space in percent of the maximum size
+	 */
+	public int getEvictionSpacePercentage()
+	{
+		return evictionSpacePercentage;
+	}
+
+	/**
+	 * Sets whether the eviction space is tuned at runtime. The default is false. If true, the Cache starts with the
+	 * eviction space from {@link #setEvictionSpacePercentage(int)}, and resizes it after each eviction round: It measures how
+	 * fast the Cache fills up and how long an eviction round takes, and keeps enough eviction space for the elements
+	 * added while a round is running. If writers still reach the end of the eviction space, it is doubled.
+	 * <p>
+	 * The eviction space stays between 1% and 100% of the maximum size. Small caches with fast writers usually get more
+	 * space, and huge caches usually get less space, which saves memory in the entries. The storage Map is sized for the
+	 * largest eviction space, so that it does not resize at runtime. Its table then takes about twice the memory as
+	 * without adaptive eviction space.
+	 * 
+	 * @param adaptiveEvictionSpace true, to tune the eviction space at runtime
+	 * @return This Builder
+	 */
+	public Builder<K,V> setAdaptiveEvictionSpace(boolean adaptiveEvictionSpace)
+	{
+		this.adaptiveEvictionSpace = adaptiveEvictionSpace;
+		return this;
+	}
+
+	/**
+	 * @return true, if the eviction space is tuned at runtime
+	 */
+	public boolean isAdaptiveEvictionSpace()
+	{
+		return adaptiveEvictionSpace;
+	}
+
 
 	/**
 	 * Set the StorageBackend for the underlying ConcurrentMap. If this method is not called,
@@ -270,9 +581,56 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return this;
 	}
 
+	/**
+	 * Sets the expected size of an entry in bytes, that is the serialized key plus the serialized value. It is only used as
+	 * a sizing hint by storages that allocate memory up front, like {@link HashImplementation#OffHeap}, which derives the size
+	 * of its direct memory slabs from it and {@link #setMaxElements(int)}. If this method is not called, the storage uses
+	 * its own default.
+	 * 
+	 * @param expectedEntryBytes The expected size of an entry in bytes
+	 * @return This Builder
+	 */
+	public Builder<K,V> setExpectedEntryBytes(int expectedEntryBytes)
+	{
+		if (expectedEntryBytes <= 0)
+			throw new IllegalArgumentException("Invalid expectedEntryBytes: " + expectedEntryBytes);
+		this.expectedEntryBytes = expectedEntryBytes;
+		return this;
+	}
+
+	/**
+	 * @return The expected size of an entry in bytes. 0 if the storage should use its default.
+	 */
+	public int getExpectedEntryBytes()
+	{
+		return expectedEntryBytes;
+	}
+
+	/**
+	 * Sets the priority of the background work of the Cache, like expiration and eviction. The priority is used when the
+	 * background work of all caches of the factory is run on a shared {@link MaintenanceScheduler}, see
+	 * {@link com.trivago.triava.tcache.TCacheFactory#setMaintenanceThreads(int)}. Work of caches with a higher priority
+	 * overtakes a bounded number of queued tasks of caches below it, so that they are delayed but not starved. Caches
+	 * with the same priority take turns. The default is 0.
+	 * 
+	 * @param maintenancePriority The priority. Higher values run first, negative values are allowed.
+	 * @return This Builder
+	 */
+	public Builder<K,V> setMaintenancePriority(int maintenancePriority)
+	{
+		this.maintenancePriority = maintenancePriority;
+		return this;
+	}
+
+	@Override
+	public int getMaintenancePriority()
+	{
+		return maintenancePriority;
+	}
+
 	/**
 	 * Sets the policy, how a Thread that calls put() will behave the cache is full.
-	 * Either the Thread will WAIT or DROP the element and not put it in the cache.
+	 * Either the Thread will WAIT, DROP the element and not put it in the cache, or ASSIST in evicting elements.
 	 * The default is WAIT. The {@link JamPolicy} has no effect on caches of unlimited size
 	 * {@link EvictionPolicy}}.NONE.
 	 * 
@@ -411,6 +769,12 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 //				return new GuavaLocalCache<K, V>();
 			case HighscalelibNonBlockingHashMap:
 				return new HighscalelibNonBlockingHashMap<K, V>();
+			case OffHeap:
+				return new OffHeapStorage<K, V>();
+			case LongKey:
+				return new LongKeyStorage<K, V>();
+			case HolderNodeMap:
+				return new HolderNodeStorage<K, V>();
 			default:
 				return null;
 		}
@@ -432,6 +796,53 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return this;
 	}
 
+	/**
+	 * Sets the loader for asynchronous loads via {@link Cache#getAsync(Object)} and {@link Cache#getAllAsync(java.util.Set)}.
+	 * If no AsyncCacheLoader is set, these methods run the loader of {@link #setLoader(CacheLoader)} on the loader executor.
+	 * If only an AsyncCacheLoader is set, synchronous loads wait for it. Like synchronous loads, asynchronous loads are
+	 * only done if the Cache is read-through, see {@link #setReadThrough(boolean)}.
+	 * 
+	 * @param asyncLoader The AsyncCacheLoader
+	 * @return This Builder
+	 */
+	public Builder<K, V> setAsyncLoader(AsyncCacheLoader<K, V> asyncLoader)
+	{
+		this.asyncLoader = asyncLoader;
+		return this;
+	}
+
+	/**
+	 * @return The AsyncCacheLoader, or null if none was set
+	 */
+	public AsyncCacheLoader<K, V> getAsyncLoader()
+	{
+		return asyncLoader;
+	}
+
+	/**
+	 * Sets the Executor that runs asynchronous loads, for example the reloads of refresh-ahead, see
+	 * {@link #setRefreshAfter(int, TimeUnit)}. If no Executor is set, each Cache with a loader gets its own bounded
+	 * executor. Its threads are started on demand and end when idle. Loads that find it saturated are rejected: A
+	 * refresh is then skipped, and tried again by the next get(). An Executor that is set here is not shut down with
+	 * the Cache.
+	 * 
+	 * @param loaderExecutor The Executor
+	 * @return This Builder
+	 */
+	public Builder<K, V> setLoaderExecutor(Executor loaderExecutor)
+	{
+		this.loaderExecutor = loaderExecutor;
+		return this;
+	}
+
+	/**
+	 * @return The Executor for asynchronous loads, or null if none was set and each Cache uses its own
+	 */
+	public Executor getLoaderExecutor()
+	{
+		return loaderExecutor;
+	}
+
 	@Override
 	public Factory<javax.cache.integration.CacheLoader<K, V>> getCacheLoaderFactory()
 	{
@@ -480,6 +891,90 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		return this;
 	}
 
+	/**
+	 * Sets the size threshold for compressing values in mode {@link CacheWriteMode#SerializeCompressed}. Serialized values bigger
+	 * than the threshold are compressed. The default is 1024 bytes.
+	 * 
+	 * @param compressionThreshold The threshold in bytes
+	 * @return This Builder
+	 */
+	public Builder<K, V> setCompressionThreshold(int compressionThreshold)
+	{
+		if (compressionThreshold < 0)
+			throw new IllegalArgumentException("compressionThreshold must not be negative: " + compressionThreshold);
+		this.compressionThreshold = compressionThreshold;
+		return this;
+	}
+
+	public int getCompressionThreshold()
+	{
+		return compressionThreshold;
+	}
+
+	/**
+	 * Sets the serializer for keys. It is used if the CacheWriteMode stores by value. The default is the {@link StandardSerializer},
+	 * which has a compact format for String, the primitive wrappers and byte[], and uses Java serialization for everything else.
+	 * 
+	 * @param keySerializer The key serializer
+	 * @return This Builder
+	 */
+	public Builder<K, V> setKeySerializer(CacheSerializer<K> keySerializer)
+	{
+		if (keySerializer == null)
+			throw new NullPointerException("keySerializer must not be null");
+		this.keySerializer = keySerializer;
+		return this;
+	}
+
+	public CacheSerializer<K> getKeySerializer()
+	{
+		return keySerializer;
+	}
+
+	/**
+	 * Sets the serializer for values. It is used if the CacheWriteMode stores by value. The default is the {@link StandardSerializer},
+	 * which has a compact format for String, the primitive wrappers and byte[], and uses Java serialization for everything else.
+	 * 
+	 * @param valueSerializer The value serializer
+	 * @return This Builder
+	 */
+	public Builder<K, V> setValueSerializer(CacheSerializer<V> valueSerializer)
+	{
+		if (valueSerializer == null)
+			throw new NullPointerException("valueSerializer must not be null");
+		this.valueSerializer = valueSerializer;
+		return this;
+	}
+
+	public CacheSerializer<V> getValueSerializer()
+	{
+		return valueSerializer;
+	}
+
+	/**
+	 * Sets the interner for values. It is used if the CacheWriteMode is {@link CacheWriteMode#Intern}. Setting the same
+	 * interner on multiple Builders shares the values between the caches. If no interner is set, each Cache uses its own
+	 * {@link com.trivago.triava.collections.WeakHashInterner}.
+	 * <p>
+	 * The interner should not hold values strongly, as otherwise evicted values cannot be reclaimed.
+	 * 
+	 * @param interner The interner
+	 * @return This Builder
+	 */
+	public Builder<K, V> setInterner(Interner<V> interner)
+	{
+		this.interner = interner;
+		return this;
+	}
+
+	/**
+	 * @return The interner for values. null if each Cache uses its own interner
+	 */
+	public Interner<V> getInterner()
+	{
+		return interner;
+	}
+
 	/**
 	 * Returns a representation of the Configuration as Properties.
 	 * The returned properties are a private copy for the caller and thus not shared amongst different callers.
@@ -500,14 +995,36 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		props.setProperty("maxCacheTime", Long.toString(maxCacheTime));
 		props.setProperty("maxCacheTimeSpread", Long.toString(maxCacheTimeSpread));
 		props.setProperty("expectedMapSize", Integer.toString(expectedMapSize));
+		if (maxWeight > 0)
+			props.setProperty("maxWeight", Long.toString(maxWeight));
 		props.setProperty("concurrencyLevel", Integer.toString(concurrencyLevel));
 		props.setProperty("evictionPolicy", evictionPolicy.toString());
+		if (evictionSampleSize > 0)
+			props.setProperty("evictionSampleSize", Integer.toString(evictionSampleSize));
+		if (evictionParallelism != 1)
+			props.setProperty("evictionParallelism", Integer.toString(evictionParallelism));
+		props.setProperty("evictionFreePercentage", Integer.toString(evictionFreePercentage));
+		props.setProperty("evictionSpacePercentage", Integer.toString(evictionSpacePercentage));
+		props.setProperty("adaptiveEvictionSpace", Boolean.toString(adaptiveEvictionSpace));
 		props.setProperty("hashMapClass", hashImplementation.toString());
+		if (expectedEntryBytes > 0)
+			props.setProperty("expectedEntryBytes", Integer.toString(expectedEntryBytes));
 		props.setProperty("jamPolicy", jamPolicy.toString());
+		if (maintenancePriority != 0)
+			props.setProperty("maintenancePriority", Integer.toString(maintenancePriority));
+		if (refreshAfterMillis > 0)
+			props.setProperty("refreshAfter", Long.toString(refreshAfterMillis));
+		if (maxStalenessMillis > 0)
+			props.setProperty("maxStaleness", Long.toString(maxStalenessMillis));
+		if (loadTimeoutMillis > 0)
+			props.setProperty("loadTimeout", Long.toString(loadTimeoutMillis));
+		props.setProperty("loadAllChunkSize", Integer.toString(loadAllChunkSize));
 		props.setProperty("statistics", Boolean.toString(statistics));
 		if (propsForCache)
 			props.setProperty("cacheLoaderClass", loader == null ? "null" : loader.getClass().getName());
 		props.setProperty("writeMode", writeMode.toString());
+		if (writeMode == CacheWriteMode.SerializeCompressed)
+			props.setProperty("compressionThreshold", Integer.toString(compressionThreshold));
 		
 		return props;
 	}
@@ -537,6 +1054,9 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 			target.maxCacheTimeSpread = sourceB.maxCacheTimeSpread;
 			this.cleanUpIntervalMillis = sourceB.cleanUpIntervalMillis;
 			target.expectedMapSize = sourceB.expectedMapSize;
+			target.maxWeight = sourceB.maxWeight;
+			if (sourceB.weigher != null)
+				target.weigher = sourceB.weigher;
 			target.concurrencyLevel = sourceB.concurrencyLevel;
 			if (sourceB.evictionPolicy != null)
 				target.evictionPolicy = sourceB.evictionPolicy;
@@ -544,10 +1064,27 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 				target.evictionClass = sourceB.evictionClass;			
 			if (sourceB.hashImplementation != null)
 				target.hashImplementation = sourceB.hashImplementation;
+			target.expectedEntryBytes = sourceB.expectedEntryBytes;
 			if (sourceB.jamPolicy != null)
 				target.jamPolicy = sourceB.jamPolicy;
+			target.maintenancePriority = sourceB.maintenancePriority;
 			if (sourceB.loader != null)
 				target.loader = sourceB.loader; // loader vs loaderFactory
+			target.refreshAfterMillis = sourceB.refreshAfterMillis;
+			target.maxStalenessMillis = sourceB.maxStalenessMillis;
+			target.loadTimeoutMillis = sourceB.loadTimeoutMillis;
+			target.loadAllChunkSize = sourceB.loadAllChunkSize;
+			target.asyncLoader = sourceB.asyncLoader;
+			target.loaderExecutor = sourceB.loaderExecutor;
+			target.evictionSampleSize = sourceB.evictionSampleSize;
+			target.evictionParallelism = sourceB.evictionParallelism;
+			target.evictionFreePercentage = sourceB.evictionFreePercentage;
+			target.evictionSpacePercentage = sourceB.evictionSpacePercentage;
+			target.adaptiveEvictionSpace = sourceB.adaptiveEvictionSpace;
+			target.compressionThreshold = sourceB.compressionThreshold;
+			target.keySerializer = sourceB.keySerializer;
+			target.valueSerializer = sourceB.valueSerializer;
+			target.interner = sourceB.interner;
 
 			tcacheWriteMode = sourceB.writeMode;
 		}
@@ -595,14 +1132,30 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + concurrencyLevel;
+		result = prime * result + compressionThreshold;
 		result = prime * result + ((evictionClass == null) ? 0 : evictionClass.hashCode());
 		result = prime * result + ((evictionPolicy == null) ? 0 : evictionPolicy.hashCode());
+		result = prime * result + evictionSampleSize;
+		result = prime * result + evictionParallelism;
+		result = prime * result + evictionFreePercentage;
+		result = prime * result + evictionSpacePercentage;
+		result = prime * result + (adaptiveEvictionSpace ? 1231 : 1237);
 		result = prime * result + expectedMapSize;
+		result = prime * result + (int) (maxWeight ^ (maxWeight >>> 32));
+		result = prime * result + ((weigher == null) ? 0 : weigher.hashCode());
 		result = prime * result + ((hashImplementation == null) ? 0 : hashImplementation.hashCode());
+		result = prime * result + expectedEntryBytes;
 		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		result = prime * result + ((jamPolicy == null) ? 0 : jamPolicy.hashCode());
+		result = prime * result + maintenancePriority;
 		result = prime * result + ((keyType == null) ? 0 : keyType.hashCode());
+		result = prime * result + keySerializer.hashCode();
+		result = prime * result + valueSerializer.hashCode();
 		result = prime * result + ((loader == null) ? 0 : loader.hashCode());
+		result = prime * result + (int) (refreshAfterMillis ^ (refreshAfterMillis >>> 32));
+		result = prime * result + (int) (maxStalenessMillis ^ (maxStalenessMillis >>> 32));
+		result = prime * result + (int) (loadTimeoutMillis ^ (loadTimeoutMillis >>> 32));
+		result = prime * result + loadAllChunkSize;
 		result = prime * result + mapConcurrencyLevel;
 		result = prime * result + (int) (maxCacheTime ^ (maxCacheTime >>> 32));
 		result = prime * result + (int) (maxCacheTimeSpread ^ (maxCacheTimeSpread >>> 32));
@@ -629,6 +1182,18 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		Builder<?,?> other = (Builder<?,?>) obj;
 		if (concurrencyLevel != other.concurrencyLevel)
 			return false;
+		if (compressionThreshold != other.compressionThreshold)
+			return false;
+		if (evictionSampleSize != other.evictionSampleSize)
+			return false;
+		if (evictionParallelism != other.evictionParallelism)
+			return false;
+		if (evictionFreePercentage != other.evictionFreePercentage)
+			return false;
+		if (evictionSpacePercentage != other.evictionSpacePercentage)
+			return false;
+		if (adaptiveEvictionSpace != other.adaptiveEvictionSpace)
+			return false;
 		if (evictionClass == null)
 		{
 			if (other.evictionClass != null)
@@ -640,8 +1205,19 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 			return false;
 		if (expectedMapSize != other.expectedMapSize)
 			return false;
+		if (maxWeight != other.maxWeight)
+			return false;
+		if (weigher == null)
+		{
+			if (other.weigher != null)
+				return false;
+		}
+		else if (!weigher.equals(other.weigher))
+			return false;
 		if (hashImplementation != other.hashImplementation)
 			return false;
+		if (expectedEntryBytes != other.expectedEntryBytes)
+			return false;
 		if (id == null)
 		{
 			if (other.id != null)
@@ -651,6 +1227,8 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 			return false;
 		if (jamPolicy != other.jamPolicy)
 			return false;
+		if (maintenancePriority != other.maintenancePriority)
+			return false;
 		if (keyType == null)
 		{
 			if (other.keyType != null)
@@ -658,6 +1236,10 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		}
 		else if (!keyType.equals(other.keyType))
 			return false;
+		if (!keySerializer.equals(other.keySerializer))
+			return false;
+		if (!valueSerializer.equals(other.valueSerializer))
+			return false;
 		if (loader == null)
 		{
 			if (other.loader != null)
@@ -665,6 +1247,14 @@ public class Builder<K,V>  implements TriavaCacheConfiguration<K, V, Builder<K,V
 		}
 		else if (!loader.equals(other.loader))
 			return false;
+		if (refreshAfterMillis != other.refreshAfterMillis)
+			return false;
+		if (maxStalenessMillis != other.maxStalenessMillis)
+			return false;
+		if (loadTimeoutMillis != other.loadTimeoutMillis)
+			return false;
+		if (loadAllChunkSize != other.loadAllChunkSize)
+			return false;
 		if (mapConcurrencyLevel != other.mapConcurrencyLevel)
 			return false;
 		if (maxCacheTime != other.maxCacheTime)
@@ -0,0 +1,74 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Converts keys or values to byte arrays and back, for caches that store by value, for example with
+ * {@link com.trivago.triava.tcache.CacheWriteMode#Serialize}. It can be set on the Builder via
+ * {@link Builder#setKeySerializer(CacheSerializer)} and {@link Builder#setValueSerializer(CacheSerializer)}.
+ * If no serializer is set, {@link com.trivago.triava.tcache.util.StandardSerializer} is used.
+ * <p>
+ * Implementations must be thread-safe, as one instance is used by all Threads that access the cache. Keys are compared by their
+ * serialized form, so a key serializer must always produce the same bytes for equal keys.
+ * <p>
+ * Any CacheSerializer implementation must be Serializable, as it is part of the cache configuration.
+ *
+ * @author cesken
+ *
+ * @param <T> The class of the objects to serialize
+ */
+public interface CacheSerializer<T> extends Serializable
+{
+	/**
+	 * Serializes the given object.
+	 *
+	 * @param object The object, never null
+	 * @return The serialized form. The caller owns the returned array, so it must not be reused by the serializer.
+	 * @throws IOException If the object cannot be serialized
+	 */
+	byte[] serialize(T object) throws IOException;
+
+	/**
+	 * Deserializes an object that was serialized by {@link #serialize(Object)}.
+	 *
+	 * @param serialized The serialized form
+	 * @return The object
+	 * @throws IOException If the data cannot be deserialized
+	 * @throws ClassNotFoundException If the class of the serialized object cannot be found
+	 */
+	T deserialize(byte[] serialized) throws IOException, ClassNotFoundException;
+
+	/**
+	 * Deserializes an object that was serialized by {@link #serialize(Object)}, and is stored at the end of the given array
+	 * starting at offset. This is used by serializers that wrap other serializers and prepend a header. The default
+	 * implementation copies the data. Implementations should override this if they can read the data in place.
+	 *
+	 * @param serialized An array that contains the serialized form from offset to its end
+	 * @param offset The offset of the serialized form
+	 * @return The object
+	 * @throws IOException If the data cannot be deserialized
+	 * @throws ClassNotFoundException If the class of the serialized object cannot be found
+	 */
+	default T deserialize(byte[] serialized, int offset) throws IOException, ClassNotFoundException
+	{
+		return deserialize(offset == 0 ? serialized : Arrays.copyOfRange(serialized, offset, serialized.length));
+	}
+}
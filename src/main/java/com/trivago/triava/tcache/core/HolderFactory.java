@@ -0,0 +1,45 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import javax.cache.CacheException;
+
+import com.trivago.triava.tcache.AccessTimeObjectHolder;
+import com.trivago.triava.tcache.CacheWriteMode;
+
+/**
+ * Creates the holders that a Cache puts in its storage. A storage whose map can only store its own holder
+ * class implements this interface on its map, and the Cache will then use it for creating all holders.
+ * 
+ * @author cesken
+ *
+ * @param <V> The value class
+ */
+public interface HolderFactory<V>
+{
+	/**
+	 * Creates an incomplete holder for the given value.
+	 * 
+	 * @param value The value
+	 * @param writeMode The CacheWriteMode that defines how to serialize the data
+	 * @param serializer The serializer for the value. It is only used if the writeMode serializes.
+	 * @param weight The weight of the entry, see {@link Weigher}. It is 1 if the Cache has no Weigher.
+	 * @return The holder
+	 * @throws CacheException when there is a problem serializing the value
+	 */
+	AccessTimeObjectHolder<V> createHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException;
+}
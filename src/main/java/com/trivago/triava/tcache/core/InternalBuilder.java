@@ -22,8 +22,10 @@ import javax.cache.configuration.Configuration;
 import com.trivago.triava.tcache.Cache;
 import com.trivago.triava.tcache.CacheLimit;
 import com.trivago.triava.tcache.TCacheFactory;
+import com.trivago.triava.tcache.eviction.ClockEviction;
 import com.trivago.triava.tcache.eviction.LFUEviction;
 import com.trivago.triava.tcache.eviction.LRUEviction;
+import com.trivago.triava.tcache.eviction.WTinyLFUEviction;
 
 /**
  * A Builder that additionally stores the TCacheFactory. The TCacheFactory is only used for internal purposes in the {@link #build()} call. It cannot
@@ -66,29 +68,33 @@ public class InternalBuilder<K, V> extends Builder<K, V>
 		final Cache<K, V> cache;
 		if (getEvictionClass() != null)
 		{
-			cache = new CacheLimit<>(factory, this);
+			cache = createCache(factory, true);
 		}
 		else
 		{
 			switch (getEvictionPolicy())
 			{
 				case LFU:
-					cache = new CacheLimit<>(factory, this.setEvictionClass(new LFUEviction<K,V>()));
+					this.setEvictionClass(new LFUEviction<K,V>());
+					cache = createCache(factory, true);
 					break;
 				case LRU:
-					cache = new CacheLimit<>(factory, this.setEvictionClass(new LRUEviction<K,V>()));
+					this.setEvictionClass(new LRUEviction<K,V>());
+					cache = createCache(factory, true);
+					break;
+				case WTINYLFU:
+					this.setEvictionClass(new WTinyLFUEviction<K,V>(getMaxElements()));
+					cache = createCache(factory, true);
+					break;
+				case CLOCK:
+					this.setEvictionClass(new ClockEviction<K,V>());
+					cache = createCache(factory, true);
 					break;
-//				case CLOCK:
-//					throw new UnsupportedOperationException("Experimental option is not activated: eviciton.CLOCK");
-//					break;
-//					// ClockEviction requires a TimeSource, but it may not be active yet (or even worse will change)
-//					// => either we need to activate the TimeSource here, or introduce an "Expiration Context" that provides the TimeSource
-//					cache = new CacheLimit<>(this.setEvictionClass(new ClockEviction<K,V>()));
 				case CUSTOM:
-					cache = new CacheLimit<>(factory, this);
+					cache = createCache(factory, true);
 					break;
 				case NONE:
-					cache = new Cache<>(factory, this);
+					cache = createCache(factory, false);
 					break;
 				default:
 					throw new IllegalArgumentException("Invalid evictionPolicy=" + getEvictionPolicy());
@@ -98,5 +104,17 @@ public class InternalBuilder<K, V> extends Builder<K, V>
 		return cache;
 	}
 
+	/**
+	 * Creates the Cache instance. Subclasses can override this to create specialized Cache classes.
+	 * 
+	 * @param factory The factory in which the Cache will be registered
+	 * @param limited true, if the Cache is size limited and must evict. In that case the eviction class is already set in this Builder.
+	 * @return The Cache
+	 */
+	protected Cache<K, V> createCache(TCacheFactory factory, boolean limited)
+	{
+		return limited ? new CacheLimit<>(factory, this) : new Cache<>(factory, this);
+	}
+
 
 }
@@ -0,0 +1,64 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import com.trivago.triava.tcache.Cache;
+import com.trivago.triava.tcache.HashImplementation;
+import com.trivago.triava.tcache.LongCache;
+import com.trivago.triava.tcache.LongCacheLimit;
+import com.trivago.triava.tcache.LongKeyCache;
+import com.trivago.triava.tcache.TCacheFactory;
+
+/**
+ * A Builder for Caches with primitive long keys. It uses {@link HashImplementation#LongKey}, and all Caches it builds implement {@link LongKeyCache}.
+ * <pre>
+ * LongKeyBuilder&lt;String&gt; builder = factory.longKeyBuilder();
+ * builder.setMaxElements(100_000);
+ * LongKeyCache&lt;String&gt; cache = builder.buildLongKeyCache();
+ * </pre>
+ * 
+ * @author cesken
+ *
+ * @param <V> The value class
+ */
+public class LongKeyBuilder<V> extends InternalBuilder<Long, V>
+{
+	private static final long serialVersionUID = -2914476620151352409L;
+
+	public LongKeyBuilder(TCacheFactory factory)
+	{
+		super(factory);
+		setHashImplementation(HashImplementation.LongKey);
+	}
+
+	@Override
+	protected Cache<Long, V> createCache(TCacheFactory factory, boolean limited)
+	{
+		return limited ? new LongCacheLimit<>(factory, this) : new LongCache<>(factory, this);
+	}
+
+	/**
+	 * Builds the Cache. This is the same as {@link #build()}, but with the {@link LongKeyCache} return type.
+	 * 
+	 * @return The Cache
+	 */
+	@SuppressWarnings("unchecked")
+	public LongKeyCache<V> buildLongKeyCache()
+	{
+		return (LongKeyCache<V>) build();
+	}
+}
@@ -0,0 +1,437 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.trivago.triava.logging.TriavaLogger;
+
+/**
+ * Runs the background work of all caches of a {@link com.trivago.triava.tcache.TCacheFactory} on a small pool of worker
+ * threads: expiration and eviction rounds, and the dispatch of events to asynchronous listeners. Without it, each Cache runs
+ * a CleanupThread, each size limited Cache an eviction thread, and each listener a notifier thread. It is used by default,
+ * and can be disabled via {@link com.trivago.triava.tcache.TCacheFactory#setMaintenanceThreads(int)}.
+ * <p>
+ * The work is done by {@link Task} instances. A Task is triggered when there is work for it, and it is queued at most once,
+ * no matter how often it is triggered. Each Task does a bounded amount of work per run, for example one eviction round,
+ * and is queued again if there is more to do. The queue is first-come first-served, but a Task gets a head start of
+ * {@value #PRIORITY_HEAD_START} queue positions per level of the maintenance priority of its Cache, see
+ * {@link Builder#setMaintenancePriority(int)}, and eviction gets a head start of {@value #EVICTION_HEAD_START} positions
+ * over expiration, as writers may wait for it. Thus a busy Cache of a higher priority delays the caches below it, but
+ * cannot starve them.
+ * <p>
+ * Each listener has a bounded event queue, and writers wait while it is full, so a slow listener slows down the writers
+ * of its Cache instead of growing the queue. A listener task sends a bounded number of events per run, so that a slow
+ * listener delays the other tasks by at most one run. A worker that produces events for a full queue, for example in an
+ * expiration round, does not wait but sends the queued events itself, see {@link #isWorkerThread()}. Thus the workers
+ * cannot block each other. Listener code that blocks still holds a worker until it returns.
+ *
+ * @author cesken
+ */
+public class MaintenanceScheduler
+{
+	/**
+	 * A good number of worker threads for a shared scheduler: The number of CPU cores, but at least 2 and at most 4
+	 */
+	public static final int RECOMMENDED_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * The number of queue positions that a Task overtakes per level of maintenance priority
+	 */
+	static final int PRIORITY_HEAD_START = 64;
+
+	/**
+	 * The number of queue positions that an eviction Task overtakes, compared to an expiration Task
+	 */
+	static final int EVICTION_HEAD_START = 16;
+
+	/**
+	 * The kind of work that a Task does
+	 */
+	public enum Kind
+	{
+		EVICTION, EXPIRATION, LISTENER
+	}
+
+	private static final AtomicInteger schedulerSeqno = new AtomicInteger();
+
+	private final int threads;
+	private final TriavaLogger logger;
+	private final ThreadPoolExecutor workers;
+	private final ScheduledThreadPoolExecutor timer; // Only triggers periodic tasks, the work runs on the workers
+	private final AtomicLong taskSeqno = new AtomicLong();
+	private final AtomicLong tasksRun = new AtomicLong();
+
+	/**
+	 * Creates a scheduler with the given number of worker threads. The threads are daemon threads, and are started on demand.
+	 *
+	 * @param threads The number of worker threads, 1 or higher
+	 * @param logger The logger for failed tasks
+	 */
+	public MaintenanceScheduler(int threads, TriavaLogger logger)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be 1 or higher: " + threads);
+
+		this.threads = threads;
+		this.logger = logger;
+		int seqno = schedulerSeqno.incrementAndGet();
+		workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new NamedThreadFactory("tCache-Maintenance-" + seqno + "-", this));
+		timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("tCache-MaintenanceTimer-" + seqno + "-", null));
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @return The number of worker threads
+	 */
+	public int threads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Returns whether the current Thread is a worker thread of this scheduler. Code that runs on a worker must not wait for
+	 * other tasks of the scheduler, as they may wait for a free worker.
+	 *
+	 * @return true, if the current Thread is a worker thread of this scheduler
+	 */
+	public boolean isWorkerThread()
+	{
+		Thread current = Thread.currentThread();
+		return current instanceof WorkerThread && ((WorkerThread)current).scheduler == this;
+	}
+
+	/**
+	 * @return The number of times that a Task has run
+	 */
+	public long tasksRun()
+	{
+		return tasksRun.get();
+	}
+
+	/**
+	 * Stops all threads. Queued and periodic tasks are not run any longer.
+	 */
+	public void shutdown()
+	{
+		timer.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Runs the task in fixed intervals, until it is cancelled.
+	 *
+	 * @param task The task
+	 * @param intervalMillis The interval in milliseconds
+	 */
+	public void schedulePeriodic(final Task task, long intervalMillis)
+	{
+		if (task.scheduler != this)
+			throw new IllegalArgumentException("Task " + task + " belongs to a different scheduler");
+
+		try
+		{
+			ScheduledFuture<?> periodic = timer.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					task.trigger();
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+			task.setPeriodic(periodic);
+		}
+		catch (RejectedExecutionException ree)
+		{
+			// Shut down. Like a Thread that cannot be started any longer.
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MaintenanceScheduler [threads=" + threads + ", queued=" + workers.getQueue().size() + ", tasksRun=" + tasksRun + "]";
+	}
+
+	/**
+	 * A unit of background work of a Cache. Subclasses implement {@link #runTask()}, which must do a bounded amount of
+	 * work and return. If there is more work to do, it should call {@link #trigger()} again.
+	 * <p>
+	 * A task runs on at most one worker thread at a time. Triggering it while it runs queues it again after the run.
+	 */
+	public static abstract class Task implements Runnable, Comparable<Task>
+	{
+		private static final int IDLE = 0;
+		private static final int QUEUED = 1;
+		private static final int RUNNING = 2;
+		private static final int RUNNING_TRIGGERED = 3; // Running, and must be queued again after the run
+		private static final int CANCELLED = 4;
+
+		private final MaintenanceScheduler scheduler;
+		private final String name;
+		private final int priority;
+		private final Kind kind;
+		private final AtomicInteger state = new AtomicInteger(IDLE);
+		private volatile long rank; // Position in the queue, see compareTo()
+		private volatile ScheduledFuture<?> periodic = null;
+		private volatile boolean running = false; // true while runTask() is executing, even after cancel()
+
+		/**
+		 * Creates a Task. It does not run until it is triggered or scheduled periodically.
+		 *
+		 * @param scheduler The scheduler that runs this task
+		 * @param name The name, for example the Cache id. Used for logging.
+		 * @param priority The maintenance priority of the Cache. Higher values run first.
+		 * @param kind The kind of work
+		 */
+		protected Task(MaintenanceScheduler scheduler, String name, int priority, Kind kind)
+		{
+			this.scheduler = scheduler;
+			this.name = name;
+			this.priority = priority;
+			this.kind = kind;
+		}
+
+		/**
+		 * Does the work of this task. Exceptions are logged, and do not stop the task from being triggered again.
+		 *
+		 * @throws Exception on any error in the work
+		 */
+		protected abstract void runTask() throws Exception;
+
+		/**
+		 * Queues this task to run as soon as a worker thread is free. The call returns immediately. If the task is
+		 * already queued, this call has no effect. If the scheduler is shut down, the task is cancelled, and
+		 * {@link #rejected()} is called.
+		 */
+		public final void trigger()
+		{
+			while (true)
+			{
+				int current = state.get();
+				switch (current)
+				{
+					case IDLE:
+						if (state.compareAndSet(IDLE, QUEUED))
+						{
+							enqueue();
+							return;
+						}
+						break;
+					case RUNNING:
+						if (state.compareAndSet(RUNNING, RUNNING_TRIGGERED))
+							return;
+						break;
+					default:
+						return; // QUEUED, RUNNING_TRIGGERED or CANCELLED
+				}
+			}
+		}
+
+		/**
+		 * @return true if the task is queued or running, false if it is idle or cancelled
+		 */
+		public final boolean isActive()
+		{
+			int current = state.get();
+			return current == QUEUED || current == RUNNING || current == RUNNING_TRIGGERED;
+		}
+
+		/**
+		 * Cancels the task. It is not run any longer, and triggering it has no effect. If it is currently running,
+		 * this method waits for the run to end, but not longer than the given time.
+		 *
+		 * @param millis The maximum time to wait for a running task. 0 means not to wait.
+		 * @return false if the task is still running after waiting, true otherwise
+		 */
+		public final boolean cancel(long millis)
+		{
+			state.set(CANCELLED);
+			ScheduledFuture<?> periodicRef = periodic;
+			if (periodicRef != null)
+				periodicRef.cancel(false);
+			scheduler.workers.remove(this);
+
+			if (millis <= 0)
+				return true;
+			long deadline = System.currentTimeMillis() + millis;
+			synchronized (this)
+			{
+				long remaining;
+				while (running && (remaining = deadline - System.currentTimeMillis()) > 0)
+				{
+					try
+					{
+						wait(remaining);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				return !running;
+			}
+		}
+
+		@Override
+		public final void run()
+		{
+			if (!state.compareAndSet(QUEUED, RUNNING))
+				return; // Cancelled while queued
+
+			running = true;
+			try
+			{
+				scheduler.tasksRun.incrementAndGet();
+				runTask();
+			}
+			catch (Throwable exc)
+			{
+				scheduler.logger.error("Maintenance task " + this + " failed", exc);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					running = false;
+					notifyAll();
+				}
+			}
+
+			while (true)
+			{
+				int current = state.get();
+				if (current == RUNNING)
+				{
+					if (state.compareAndSet(RUNNING, IDLE))
+						return;
+				}
+				else if (current == RUNNING_TRIGGERED)
+				{
+					if (state.compareAndSet(RUNNING_TRIGGERED, QUEUED))
+					{
+						enqueue();
+						return;
+					}
+				}
+				else
+				{
+					return; // CANCELLED
+				}
+			}
+		}
+
+		/**
+		 * Called when this task cannot be queued, because the scheduler is shut down. The task is cancelled then.
+		 * Subclasses can override this to release threads that wait for the task.
+		 */
+		protected void rejected()
+		{
+		}
+
+		private void enqueue()
+		{
+			long headStart = (long)priority * PRIORITY_HEAD_START + (kind == Kind.EVICTION ? EVICTION_HEAD_START : 0);
+			rank = scheduler.taskSeqno.incrementAndGet() - headStart;
+			try
+			{
+				scheduler.workers.execute(this);
+			}
+			catch (RejectedExecutionException ree)
+			{
+				// The scheduler is shut down
+				state.set(CANCELLED);
+				rejected();
+			}
+		}
+
+		private void setPeriodic(ScheduledFuture<?> periodic)
+		{
+			this.periodic = periodic;
+			if (state.get() == CANCELLED)
+				periodic.cancel(false); // Cancelled concurrently
+		}
+
+		/**
+		 * Orders by the rank, which is the sequence number of the trigger minus the head start of the priority and kind.
+		 * The rank is fixed when the task is queued, so a task that waits is overtaken by a bounded number of later tasks.
+		 */
+		@Override
+		public int compareTo(Task other)
+		{
+			return Long.compare(rank, other.rank);
+		}
+
+		@Override
+		public String toString()
+		{
+			return kind + ":" + name;
+		}
+	}
+
+	/**
+	 * Creates daemon threads with a name prefix and a sequence number
+	 */
+	private static final class NamedThreadFactory implements ThreadFactory
+	{
+		private final String prefix;
+		private final MaintenanceScheduler scheduler;
+		private final AtomicInteger threadSeqno = new AtomicInteger();
+
+		/**
+		 * @param prefix The prefix of the thread names
+		 * @param scheduler The scheduler whose workers are created, or null for other threads
+		 */
+		NamedThreadFactory(String prefix, MaintenanceScheduler scheduler)
+		{
+			this.prefix = prefix;
+			this.scheduler = scheduler;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new WorkerThread(runnable, prefix + threadSeqno.incrementAndGet(), scheduler);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * A thread of a scheduler, that knows the scheduler it belongs to
+	 */
+	private static final class WorkerThread extends Thread
+	{
+		private final MaintenanceScheduler scheduler;
+
+		WorkerThread(Runnable runnable, String name, MaintenanceScheduler scheduler)
+		{
+			super(runnable, name);
+			this.scheduler = scheduler;
+		}
+	}
+}
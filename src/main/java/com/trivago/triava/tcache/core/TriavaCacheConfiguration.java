@@ -263,6 +263,46 @@ public interface TriavaCacheConfiguration<K,V,B extends TriavaCacheConfiguration
 
 	JamPolicy getJamPolicy();
 
+	/**
+	 * @return the priority of the background work of the Cache on a shared {@link MaintenanceScheduler}
+	 */
+	default int getMaintenancePriority()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the age in milliseconds after which an entry is reloaded asynchronously. 0 means no refresh-ahead.
+	 */
+	default long getRefreshAfterMillis()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the time in milliseconds after the expiration, during which a stale value is served. 0 means no stale serving.
+	 */
+	default long getMaxStalenessMillis()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds to wait for a coalesced load of another thread. 0 means no timeout.
+	 */
+	default long getLoadTimeoutMillis()
+	{
+		return 0;
+	}
+
+	/**
+	 * @return the number of keys per chunk in the JSR107 loadAll(). The chunks are loaded in parallel.
+	 */
+	default int getLoadAllChunkSize()
+	{
+		return 1000;
+	}
+
 	@Override // JSR107
 	Class<K> getKeyType();
 
@@ -0,0 +1,45 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.core;
+
+import java.io.Serializable;
+
+/**
+ * Calculates the weight of cache entries. A size limited Cache with a Weigher is limited by the total weight of its entries,
+ * see {@link Builder#setMaxWeight(long)}, instead of by the number of entries. A typical weight is the estimated size in bytes.
+ * <p>
+ * The weight is calculated once when the entry is put in the Cache, and must not change afterwards. Implementations must be
+ * thread-safe and fast, as they are called on every put.
+ * <p>
+ * Any Weigher implementation must be Serializable, as it is part of the cache configuration.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+public interface Weigher<K, V> extends Serializable
+{
+	/**
+	 * Returns the weight of the entry.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return The weight. Must be 0 or higher.
+	 */
+	int weigh(K key, V value);
+}
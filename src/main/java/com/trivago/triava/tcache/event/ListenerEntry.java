@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.cache.configuration.CacheEntryListenerConfiguration;
 import javax.cache.configuration.Factory;
@@ -33,6 +34,7 @@ import javax.cache.event.CacheEntryUpdatedListener;
 import javax.cache.event.EventType;
 
 import com.trivago.triava.tcache.Cache;
+import com.trivago.triava.tcache.core.MaintenanceScheduler;
 
 /**
  * Holds a CacheEntryListenerConfiguration, and the objects created from it: CacheEntryEventFilter and
@@ -51,6 +53,15 @@ import com.trivago.triava.tcache.Cache;
  */
 final class ListenerEntry<K,V>
 {
+	/**
+	 * The maximum number of event collections that a {@link DispatchTask} sends per run
+	 */
+	private static final int MAX_BATCHES_PER_RUN = 16;
+	/**
+	 * The time after which a {@link DispatchTask} ends its run, even if it has not sent {@link #MAX_BATCHES_PER_RUN} yet
+	 */
+	private static final long MAX_NANOS_PER_RUN = TimeUnit.MILLISECONDS.toNanos(10);
+
 	private final CacheEntryListenerConfiguration<K, V> config;
 
 	private CacheEntryEventFilter<? super K, ? super V> filter = null;
@@ -61,7 +72,11 @@ final class ListenerEntry<K,V>
 	private final CacheEventManager<K,V> eventManager;
 	private final DispatchMode dispatchMode;
 	private final BlockingQueue<TCacheEntryEventCollection<K,V>> dispatchQueue;
+	private final Object dispatchLock = new Object(); // Held while sending queued events, so the listener is called serially
+	private final MaintenanceScheduler scheduler; // null, if the events are sent by the own DispatchRunnable thread
+	private final DispatchTask dispatchTask;
 	private DispatchRunnable dispatchThread = null;
+	private volatile boolean shutdown = false;
 
 	/**
 	 * Creates a ListenerEntry from the factories in CacheEntryListenerConfiguration.
@@ -103,14 +118,24 @@ final class ListenerEntry<K,V>
          * expiration and eviction.
          */
         this.dispatchQueue = new ArrayBlockingQueue<TCacheEntryEventCollection<K, V>>(1024);
-        /**
-         * Future directions: Starting the listener in the constructor is problematic. If this class would be
-         * subclassed, the Thread would start too early. Right now it cannot happen, as this class is final.
-         * Second, we possibly want a Thread restart mechanism anyhow, like we have with the expiration and
-         * eviction threads. For the latter, there should be a dedicated "BackgroundThreadController<T>" class
-         * that controls/restarts background threads.
-         */
-        dispatchThread = ensureListenerThreadIsRunning();
+        this.scheduler = tcache.maintenanceScheduler();
+        if (scheduler != null)
+        {
+            // The events are sent by the shared workers of the factory, see DispatchTask
+            dispatchTask = new DispatchTask(scheduler, tcache.id(), tcache.configuration().getMaintenancePriority());
+        }
+        else
+        {
+            dispatchTask = null;
+            /**
+             * Future directions: Starting the listener in the constructor is problematic. If this class would be
+             * subclassed, the Thread would start too early. Right now it cannot happen, as this class is final.
+             * Second, we possibly want a Thread restart mechanism anyhow, like we have with the expiration and
+             * eviction threads. For the latter, there should be a dedicated "BackgroundThreadController<T>" class
+             * that controls/restarts background threads.
+             */
+            dispatchThread = ensureListenerThreadIsRunning();
+        }
     }
 	
 	CacheEntryListenerConfiguration<K, V> getConfig()
@@ -203,7 +228,7 @@ final class ListenerEntry<K,V>
 		{
 			try
 			{
-				dispatchQueue.put(createSingleEvent(event));
+				enqueue(createSingleEvent(event));
 			}
 			catch (InterruptedException e)
 			{
@@ -254,7 +279,7 @@ final class ListenerEntry<K,V>
 		{
 			try
 			{
-				dispatchQueue.put(eventColl);
+				enqueue(eventColl);
 			}
 			catch (InterruptedException e)
 			{
@@ -276,6 +301,73 @@ final class ListenerEntry<K,V>
 		}
 	}
 	
+	/**
+	 * Queues the events for asynchronous sending. If the queue is full, the caller waits until there is space, so that
+	 * writers are slowed down to the pace of the listener. A worker of the shared scheduler does not wait, but sends
+	 * queued events itself, as the DispatchTask that would free space may be waiting for a worker. After
+	 * {@link #shutdown()}, events that do not fit into the queue are dropped.
+	 * 
+	 * @param eventColl The events
+	 * @throws InterruptedException If interrupted while waiting for space in the queue
+	 */
+	private void enqueue(TCacheEntryEventCollection<K, V> eventColl) throws InterruptedException
+	{
+		if (dispatchTask == null)
+		{
+			dispatchQueue.put(eventColl);
+			return;
+		}
+
+		while (!dispatchQueue.offer(eventColl))
+		{
+			if (shutdown)
+				return;
+			if (scheduler.isWorkerThread())
+			{
+				sendQueuedEvents(1, MAX_NANOS_PER_RUN);
+			}
+			else
+			{
+				dispatchTask.trigger();
+				if (dispatchQueue.offer(eventColl, 100, TimeUnit.MILLISECONDS))
+					break;
+			}
+		}
+		dispatchTask.trigger();
+	}
+
+	/**
+	 * Sends queued events to the listener, until the queue is empty, maxBatches event collections are sent, or maxNanos have
+	 * passed. Only one Thread sends at a time, so the listener is called serially and in queue order.
+	 * 
+	 * @param maxBatches The maximum number of event collections to send
+	 * @param maxNanos The time after which no further event collection is sent
+	 */
+	private void sendQueuedEvents(int maxBatches, long maxNanos)
+	{
+		@SuppressWarnings("unchecked")
+		CacheEntryListener<K, V> listenerRef = (CacheEntryListener<K, V>) listener;
+
+		synchronized (dispatchLock)
+		{
+			long startNanos = System.nanoTime();
+			for (int i = 0; i < maxBatches && System.nanoTime() - startNanos < maxNanos; i++)
+			{
+				TCacheEntryEventCollection<K, V> eventColl = dispatchQueue.poll();
+				if (eventColl == null)
+					return;
+				try
+				{
+					sendEvents(eventColl, listenerRef);
+				}
+				catch (Exception exc)
+				{
+					// Likely an issue in the user provided Listener code. Like the DispatchRunnable, ignore it and continue.
+				}
+			}
+		}
+	}
+
 	private void sendEvent(CacheEntryEvent<? extends K, ? extends V> event, CacheEntryListener<K, V> listener)
 	{
 //		System.out.println("sendEvent: 1 (single)");
@@ -347,6 +439,11 @@ final class ListenerEntry<K,V>
 
 	void shutdown()
 	{
+		shutdown = true;
+		if (dispatchTask != null)
+		{
+			dispatchTask.cancel(0);
+		}
 		DispatchRunnable runnable = dispatchThread;
 		if (runnable != null)
 		{
@@ -425,6 +522,27 @@ final class ListenerEntry<K,V>
 
 	}
 	
+	/**
+	 * Sends queued events on the shared {@link MaintenanceScheduler}, instead of an own DispatchRunnable thread. Each run
+	 * sends a bounded number of events, and triggers the task again if more are queued, so that a busy listener
+	 * does not hold a worker for long.
+	 */
+	private final class DispatchTask extends MaintenanceScheduler.Task
+	{
+		DispatchTask(MaintenanceScheduler scheduler, String cacheId, int priority)
+		{
+			super(scheduler, cacheId, priority, MaintenanceScheduler.Kind.LISTENER);
+		}
+
+		@Override
+		protected void runTask()
+		{
+			sendQueuedEvents(MAX_BATCHES_PER_RUN, MAX_NANOS_PER_RUN);
+			if (!dispatchQueue.isEmpty())
+				trigger();
+		}
+	}
+
 	/**
 	 * Starts the DispatchRunnable thread
 	 * 
@@ -0,0 +1,49 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+import com.trivago.triava.tcache.TCacheHolder;
+
+/**
+ * An eviction implementation that wants to see all accesses to the Cache, not only the entries that are present
+ * at eviction time. If the eviction class of a Cache implements this interface, the Cache reports each read and
+ * write to it. Both methods are called on the hot path of get() and put(), so they must be fast and must not block.
+ * 
+ * @author cesken
+ *
+ * @param <K> Key class
+ * @param <V> Value class
+ */
+public interface AccessRecorder<K, V>
+{
+	/**
+	 * Records a read of the key that hit a valid entry. This is also called for a putIfAbsent() that did not write.
+	 * Misses are not recorded. A key that is loaded or put after a miss is recorded by {@link #recordInsert(Object, TCacheHolder)}.
+	 * 
+	 * @param key The key
+	 */
+	void recordAccess(K key);
+
+	/**
+	 * Records that a new holder was stored for the key. This is called when the key was added to the Cache, and
+	 * when the value of an existing key was replaced.
+	 * 
+	 * @param key The key
+	 * @param holder The new holder
+	 */
+	void recordInsert(K key, TCacheHolder<V> holder);
+}
@@ -16,53 +16,129 @@
 
 package com.trivago.triava.tcache.eviction;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.trivago.triava.tcache.TCacheHolder;
-import com.trivago.triava.time.TimeSource;
 
 /**
- * Clock eviction based on last access time.
+ * CLOCK (second-chance) eviction. All entries of the Cache are kept in a ring, and a hand sweeps over the ring.
+ * An entry that was read since the hand passed it the last time gets a second chance: The hand clears its reference
+ * bit, and moves on. An entry that was not read is evicted. New entries start with the reference bit cleared.
+ * <p>
+ * The reference bit is derived from the use count of the holder, which is incremented by each get(). The hand remembers
+ * the use count it has seen, so the read path does not need to do anything in addition.
+ * <p>
+ * The ring is a FIFO queue whose head is the position of the hand. The hand evicts at the head, and moves entries that get
+ * a second chance to the tail. New entries are added at the tail, which is directly behind the hand like in a circular
+ * buffer. The work of an eviction round is proportional to the number of entries the hand passes, not to the size of the Cache.
+ * <p>
+ * {@link #recordInsert(Object, TCacheHolder)} adds new entries directly to the ring, under a short lock. Entries that were
+ * removed or replaced ({@link TCacheHolder#isDetached()}) are dropped when the hand reaches them, and whenever the ring
+ * is full before it grows. Thus the ring holds at most about twice the number of entries of the Cache.
+ * <p>
+ * The hand is moved by {@link #selectVictims(VictimBuffer)}, which is used by the eviction thread and by writers that
+ * evict themselves with JamPolicy.ASSIST. An instance holds the ring of one Cache, so it must not be shared between caches.
  * 
  * @author cesken
  *
  * @param <K> Key class
  * @param <V> Value class 
  */
-public class ClockEviction<K,V> extends FreezingEvictor<K,V> 
+public class ClockEviction<K,V> extends FreezingEvictor<K,V> implements VictimSelector<K, V>
 {
 	private static final long serialVersionUID = 6871216638625966432L;
 
-	long lastTimestamp;
-	TimeSource timeSource;
-	
-	
-	/**
-	 * @param timeSource A non-null TimeSource
-	 * @throws NullPointerException If timeSource is null 
-	 */
-	ClockEviction(TimeSource timeSource)
+	private transient AtomicBoolean inUse = new AtomicBoolean();
+	private transient Object lock = new Object();
+	private transient HolderQueue ring = new HolderQueue(); // Guarded by lock
+
+	@Override
+	public void claim()
 	{
-		this.timeSource = timeSource;
-		lastTimestamp = timeSource.millis();
+		if (!inUse.compareAndSet(false, true))
+			throw new IllegalStateException("A ClockEviction instance must not be shared between caches");
 	}
-	
+
 	@Override
-	public void afterEviction()
+	public void recordAccess(K key)
 	{
-		lastTimestamp = timeSource.millis();
+		// The reference bit is taken from the use count of the holder
 	}
-	
+
+	@Override
+	public void recordInsert(K key, TCacheHolder<V> holder)
+	{
+		synchronized (lock)
+		{
+			ring.add(key, holder, holder.getUseCount()); // New entries are unreferenced, until they are read
+		}
+	}
+
 	/**
-	 * @return A negative value if the entry was not used, a positive if it was used since the last eviction run.
+	 * Moves the hand over the ring, and adds each entry that was not read since the last pass or is invalid to the
+	 * victims. If the hand has given all entries a second chance, it evicts the entries whose reference bit it has cleared.
 	 */
 	@Override
-	public long getFreezeValue(K key, TCacheHolder<V> holder)
+	@SuppressWarnings("unchecked")
+	public int selectVictims(VictimBuffer<K, V> victims)
 	{
-		long lastAccess = holder.getLastAccessTime();
-		if (lastAccess >= lastTimestamp)
+		synchronized (lock)
 		{
-			// Was used => Sort back
-			return 1;
+			int secondChances = ring.size();
+			while (!victims.isFull() && !ring.isEmpty())
+			{
+				TCacheHolder<V> holder = (TCacheHolder<V>)ring.headHolder();
+				if (holder.isDetached())
+				{
+					// Removed or replaced. The Cache does not hold the entry any longer.
+					ring.removeHead();
+					continue;
+				}
+
+				int useCount = holder.getUseCount();
+				if (useCount != ring.headSeenUseCount() && !holder.isInvalid() && secondChances-- > 0)
+				{
+					// Referenced: Second chance
+					ring.moveHeadToTail(useCount);
+					continue;
+				}
+
+				// Not referenced, or expired
+				victims.add(ring.headKey(), holder);
+				ring.removeHead();
+			}
+			return victims.size();
 		}
-		return -1; // Not used => Sort front
+	}
+
+	/**
+	 * @return The number of entries in the ring, including those that were removed from the Cache and not yet dropped
+	 */
+	public int ringSize()
+	{
+		synchronized (lock)
+		{
+			return ring.size();
+		}
+	}
+
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		inUse = new AtomicBoolean();
+		lock = new Object();
+		ring = new HolderQueue();
+	}
+
+	/**
+	 * Returns the last access time, so that this class also works when the Cache evicts by frozen values.
+	 * Regular eviction uses {@link #selectVictims(VictimBuffer)}.
+	 * 
+	 * @return The last access time
+	 */
+	@Override
+	public long getFreezeValue(K key, TCacheHolder<V> holder)
+	{
+		return holder.getLastAccessTime();
 	}
 }
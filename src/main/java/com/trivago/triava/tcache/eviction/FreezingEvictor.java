@@ -47,6 +47,17 @@ abstract public class FreezingEvictor<K, V> implements EvictionInterface<K, V>
 		return comparator;
 	}
 
+	/**
+	 * Returns whether this evictor uses the standard comparator, which evicts smaller frozen values first. A Cache can
+	 * then select the elements to evict by their frozen values alone, without creating a {@link HolderFreezer} per element.
+	 * 
+	 * @return true, if {@link #evictionComparator()} is not overridden
+	 */
+	public boolean hasStandardComparator()
+	{
+		return evictionComparator() == comparator;
+	}
+
 	/**
 	 * Default implementation for {@link EvictionInterface#beforeEviction()}. It does nothing.
 	 */
@@ -0,0 +1,178 @@
+/*********************************************************************************
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Derived from com.github.benmanes.caffeine.cache.FrequencySketch of Caffeine,
+ * https://github.com/ben-manes/caffeine . Modified by trivago GmbH, see the class documentation.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch that estimates the access frequency of keys, using 4 bit counters. Each key is counted in 4 counters,
+ * and the estimate is the minimum of them. Each long in the table holds 16 counters. The table has one long per expected element,
+ * which is 8 bytes per element.
+ * <p>
+ * The counters are aged: After a sample of 10 times the number of expected elements has been counted, all counters are halved.
+ * This lets keys that were popular in the past lose their frequency, so that new popular keys can take their place.
+ * <p>
+ * Thread safety: The counters are updated by compare-and-set, as this is called on every hit from many threads. The halving
+ * is also done by compare-and-set on each long, so it is not lost if it races with increments. Only one Thread halves at
+ * a time, while the others continue counting.
+ * 
+ * This is a port of the FrequencySketch of Caffeine by Ben Manes, licensed under the Apache License, Version 2.0. The seeds,
+ * the counter masks and the index mixing are taken from it unchanged. Changes: The table is an AtomicLongArray that is
+ * updated by compare-and-set instead of plain writes under the eviction lock, and the halving runs concurrently to counting.
+ * 
+ * @author cesken
+ */
+final class FrequencySketch implements Serializable
+{
+	private static final long serialVersionUID = -4536738516409117350L;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int SAMPLE_FACTOR = 10;
+
+	private final AtomicLongArray table;
+	private final int tableMask;
+	private final int sampleSize;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicBoolean resetting = new AtomicBoolean();
+
+	/**
+	 * Creates a sketch for the given number of elements.
+	 * 
+	 * @param expectedElements The number of elements in the Cache
+	 */
+	FrequencySketch(int expectedElements)
+	{
+		int maximum = Math.min(Math.max(expectedElements, 16), 1 << 30);
+		table = new AtomicLongArray(ceilingPowerOfTwo(maximum));
+		tableMask = table.length() - 1;
+		sampleSize = (int)Math.min((long)SAMPLE_FACTOR * maximum, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the estimated frequency of the key with the given hash code.
+	 * 
+	 * @param hashCode The hash code of the key
+	 * @return The estimated frequency, between 0 and 15
+	 */
+	int frequency(int hashCode)
+	{
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++)
+		{
+			int index = indexOf(hash, i);
+			int count = (int)((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the frequency of the key with the given hash code, if it is not already at the maximum.
+	 * 
+	 * @param hashCode The hash code of the key
+	 */
+	void increment(int hashCode)
+	{
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+
+		boolean added = false;
+		for (int i = 0; i < 4; i++)
+		{
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+
+		if (added && size.incrementAndGet() >= sampleSize && resetting.compareAndSet(false, true))
+		{
+			try
+			{
+				reset();
+			}
+			finally
+			{
+				resetting.set(false);
+			}
+		}
+	}
+
+	private boolean incrementAt(int index, int counter)
+	{
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		while (true)
+		{
+			long value = table.get(index);
+			if ((value & mask) == mask)
+				return false; // Saturated
+			if (table.compareAndSet(index, value, value + (1L << offset)))
+				return true;
+		}
+	}
+
+	/**
+	 * Halves all counters. The sample size is adjusted by the counts that got lost due to integer division.
+	 * Increments that happen concurrently are kept, either before or after the halving of their long.
+	 */
+	private void reset()
+	{
+		int sizeBefore = size.get();
+		int oddCounters = 0;
+		int length = table.length();
+		for (int i = 0; i < length; i++)
+		{
+			long value;
+			do
+			{
+				value = table.get(i);
+			}
+			while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+			oddCounters += Long.bitCount(value & ONE_MASK);
+		}
+		int sizeAfter = Math.max(0, (sizeBefore >>> 1) - (oddCounters >>> 2));
+		size.addAndGet(sizeAfter - sizeBefore); // Keeps the increments that were counted meanwhile
+	}
+
+	private int indexOf(int hash, int i)
+	{
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int)h) & tableMask;
+	}
+
+	private static int spread(int x)
+	{
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x)
+	{
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+}
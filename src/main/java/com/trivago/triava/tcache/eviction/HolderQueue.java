@@ -0,0 +1,175 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+import com.trivago.triava.tcache.TCacheHolder;
+
+/**
+ * A FIFO queue of Cache entries, as keys, holders and the use count seen at the last visit in parallel circular arrays.
+ * Entries are added at the tail, and inspected and removed at the head. Entries whose holder is detached (removed or
+ * replaced in the Cache) are dropped when the queue is full, before it grows. Thus the queue holds at most about twice
+ * the number of its live entries, and adding does not allocate, apart from growing.
+ * <p>
+ * This class is not thread-safe. The owner guards it with a lock. It is the ring of {@link ClockEviction}, and the segments
+ * of {@link WTinyLFUEviction}.
+ * 
+ * @author cesken
+ */
+final class HolderQueue
+{
+	private Object[] keys;
+	private Object[] holders;
+	private int[] seenUseCounts;
+	private int mask;
+	private int head = 0;
+	private int size = 0;
+
+	HolderQueue()
+	{
+		allocate(16);
+	}
+
+	/**
+	 * @return The number of entries, including the detached entries that were not dropped yet
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Adds an entry at the tail
+	 * 
+	 * @param key The key
+	 * @param holder The holder
+	 * @param seenUseCount The use count of the holder, as seen now
+	 */
+	void add(Object key, TCacheHolder<?> holder, int seenUseCount)
+	{
+		if (size == keys.length)
+		{
+			compact();
+			if (size > keys.length * 3 / 4)
+			{
+				// Grow, so that each compaction frees at least a quarter of the queue. This keeps adding at amortized constant time.
+				grow();
+			}
+		}
+
+		int index = (head + size) & mask;
+		keys[index] = key;
+		holders[index] = holder;
+		seenUseCounts[index] = seenUseCount;
+		size++;
+	}
+
+	Object headKey()
+	{
+		return keys[head];
+	}
+
+	TCacheHolder<?> headHolder()
+	{
+		return (TCacheHolder<?>)holders[head];
+	}
+
+	int headSeenUseCount()
+	{
+		return seenUseCounts[head];
+	}
+
+	/**
+	 * Removes the entry at the head. The queue must not be empty.
+	 */
+	void removeHead()
+	{
+		keys[head] = null;
+		holders[head] = null;
+		head = (head + 1) & mask;
+		size--;
+	}
+
+	/**
+	 * Moves the entry at the head to the tail, remembering the given use count. The queue must not be empty.
+	 * 
+	 * @param seenUseCount The use count of the holder, as seen now
+	 */
+	void moveHeadToTail(int seenUseCount)
+	{
+		Object key = keys[head];
+		TCacheHolder<?> holder = (TCacheHolder<?>)holders[head];
+		removeHead();
+		add(key, holder, seenUseCount);
+	}
+
+	/**
+	 * Removes the detached entries, keeping the order of the queue
+	 */
+	private void compact()
+	{
+		int kept = 0;
+		for (int i = 0; i < size; i++)
+		{
+			int from = (head + i) & mask;
+			if (!((TCacheHolder<?>)holders[from]).isDetached())
+			{
+				int to = (head + kept) & mask;
+				keys[to] = keys[from];
+				holders[to] = holders[from];
+				seenUseCounts[to] = seenUseCounts[from];
+				kept++;
+			}
+		}
+		for (int i = kept; i < size; i++)
+		{
+			int index = (head + i) & mask;
+			keys[index] = null;
+			holders[index] = null;
+		}
+		size = kept;
+	}
+
+	private void grow()
+	{
+		Object[] oldKeys = keys;
+		Object[] oldHolders = holders;
+		int[] oldSeenUseCounts = seenUseCounts;
+		int oldMask = mask;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < size; i++)
+		{
+			int from = (head + i) & oldMask;
+			keys[i] = oldKeys[from];
+			holders[i] = oldHolders[from];
+			seenUseCounts[i] = oldSeenUseCounts[from];
+		}
+		head = 0;
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new Object[capacity];
+		holders = new Object[capacity];
+		seenUseCounts = new int[capacity];
+		mask = capacity - 1;
+	}
+}
@@ -0,0 +1,113 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+import java.util.Arrays;
+
+import com.trivago.triava.tcache.TCacheHolder;
+
+/**
+ * The victims that an eviction policy selects from its own structure, as keys and holders in parallel arrays. See
+ * {@link VictimSelector#selectVictims(VictimBuffer)}. The buffer is reused, so selecting victims does not allocate.
+ * <p>
+ * This class is not thread-safe. Each evicting Thread uses its own buffer.
+ * 
+ * @author cesken
+ *
+ * @param <K> Key class
+ * @param <V> Value class 
+ */
+public final class VictimBuffer<K, V>
+{
+	private final Object[] keys;
+	private final Object[] holders;
+	private int limit = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a buffer
+	 * 
+	 * @param capacity The maximum number of victims per selection
+	 */
+	public VictimBuffer(int capacity)
+	{
+		keys = new Object[capacity];
+		holders = new Object[capacity];
+	}
+
+	/**
+	 * Removes all victims, and sets the number of victims for the next selection.
+	 * 
+	 * @param limit The number of victims to select. It is capped at the capacity.
+	 */
+	public void reset(int limit)
+	{
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(holders, 0, size, null);
+		size = 0;
+		this.limit = Math.min(limit, keys.length);
+	}
+
+	/**
+	 * Adds a victim
+	 * 
+	 * @param key The key
+	 * @param holder The holder that was stored for the key
+	 */
+	public void add(Object key, TCacheHolder<?> holder)
+	{
+		keys[size] = key;
+		holders[size] = holder;
+		size++;
+	}
+
+	/**
+	 * @return true, if the limit is reached
+	 */
+	public boolean isFull()
+	{
+		return size >= limit;
+	}
+
+	/**
+	 * @return The number of victims
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The maximum number of victims per selection
+	 */
+	public int capacity()
+	{
+		return keys.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public K key(int index)
+	{
+		return (K)keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public TCacheHolder<V> holder(int index)
+	{
+		return (TCacheHolder<V>)holders[index];
+	}
+}
@@ -0,0 +1,50 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+/**
+ * An eviction implementation that keeps its own structure of the Cache entries, and selects the victims from it, instead
+ * of letting the Cache inspect its entries. The work of an eviction round is then proportional to the number of victims,
+ * not to the size of the Cache. The structure is fed via {@link AccessRecorder}, which such a class also implements.
+ * <p>
+ * An instance holds the structure of one Cache, so it must not be shared between caches.
+ * 
+ * @author cesken
+ *
+ * @param <K> Key class
+ * @param <V> Value class 
+ */
+public interface VictimSelector<K, V> extends AccessRecorder<K, V>
+{
+	/**
+	 * Claims this instance for a Cache. 
+	 * 
+	 * @throws IllegalStateException if this instance is already used by another Cache
+	 */
+	void claim();
+
+	/**
+	 * Selects victims until the victims are full, or there is no more victim. Entries whose holder is invalid, for example
+	 * expired, are selected regardless of the policy. The selected entries are removed from the structure, so the caller must evict all of them.
+	 * <p>
+	 * The victims can be selected by the eviction thread and by writers concurrently. Each of them gets other victims.
+	 * 
+	 * @param victims The buffer for the victims. It is filled up to its limit.
+	 * @return The number of victims
+	 */
+	int selectVictims(VictimBuffer<K, V> victims);
+}
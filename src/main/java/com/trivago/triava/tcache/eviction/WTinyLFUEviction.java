@@ -0,0 +1,301 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.eviction;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.trivago.triava.tcache.TCacheHolder;
+
+/**
+ * W-TinyLFU eviction. The access frequency of all keys, including keys that were evicted, is estimated by a
+ * {@link FrequencySketch} whose counters are halved periodically, so that entries that were only popular in the past do
+ * not stay forever.
+ * <p>
+ * The entries are kept in three segments, each of them a queue in approximate LRU order:
+ * <ul>
+ * <li>Window (1% of the Cache size): New entries start here. This gives them a chance to build up frequency.</li>
+ * <li>Probation: Entries that have left the window, and were not read since then.</li>
+ * <li>Protected (80% of the main space): Entries that were read while on probation. If the protected segment is full,
+ * its least recently used entry is demoted to probation.</li>
+ * </ul>
+ * When an entry leaves the window, the TinyLFU admission decides between it and the least recently used entry on
+ * probation: The more frequent of both stays in the Cache, and the other one is evicted. If the window is empty,
+ * entries are evicted from probation first, then from protected.
+ * <p>
+ * The LRU order is approximated with the second-chance rule: An entry at the head of a segment that was read since it
+ * was queued is moved to the tail. Reads are detected via the use count of the holder, so the read path only updates the
+ * sketch. The segments are only reordered while selecting victims, see {@link #selectVictims(VictimBuffer)}.
+ * <p>
+ * This class must see all hits and writes of the Cache, which is done via the {@link AccessRecorder} interface. An
+ * instance holds the segments of one Cache, so it must not be shared between caches.
+ * 
+ * @author cesken
+ *
+ * @param <K> Key class
+ * @param <V> Value class 
+ */
+public class WTinyLFUEviction<K,V> extends FreezingEvictor<K,V> implements VictimSelector<K, V>
+{
+	private static final long serialVersionUID = -2394710867542364101L;
+
+	private static final int WINDOW_PERCENT = 1;
+	private static final int PROTECTED_PERCENT = 80;
+	private static final int FREQUENCY_SHIFT = 58; // 4 bits: 58-61
+	private static final int PROTECTED_SHIFT = 57;
+	private static final long ACCESS_TIME_MASK = (1L << PROTECTED_SHIFT) - 1;
+
+	private final FrequencySketch sketch;
+	private final int windowMax;
+	private final int mainMax;
+	private final int protectedMax;
+
+	private transient AtomicBoolean inUse = new AtomicBoolean();
+	private transient Object lock = new Object();
+	// The segments. Guarded by lock.
+	private transient HolderQueue window = new HolderQueue();
+	private transient HolderQueue probation = new HolderQueue();
+	private transient HolderQueue protectedSegment = new HolderQueue();
+	private transient boolean mainSpaceFilled = false; // true, after the main space was full for the first time
+
+	/**
+	 * Creates a W-TinyLFU eviction for a Cache of the given size.
+	 * 
+	 * @param maxElements The maximum number of elements in the Cache
+	 */
+	public WTinyLFUEviction(int maxElements)
+	{
+		sketch = new FrequencySketch(maxElements);
+		windowMax = Math.max(1, (int)((long)maxElements * WINDOW_PERCENT / 100));
+		mainMax = Math.max(1, maxElements - windowMax);
+		protectedMax = (int)((long)mainMax * PROTECTED_PERCENT / 100);
+	}
+
+	@Override
+	public void claim()
+	{
+		if (!inUse.compareAndSet(false, true))
+			throw new IllegalStateException("A WTinyLFUEviction instance must not be shared between caches");
+	}
+
+	@Override
+	public void recordAccess(K key)
+	{
+		sketch.increment(key.hashCode());
+	}
+
+	@Override
+	public void recordInsert(K key, TCacheHolder<V> holder)
+	{
+		sketch.increment(key.hashCode());
+		synchronized (lock)
+		{
+			window.add(key, holder, holder.getUseCount());
+		}
+	}
+
+	/**
+	 * Selects the victims. Each victim is decided by the admission between the least recently used entry of the window and
+	 * the probation victim. The window may drop below its size here, as the Cache evicts more than the entries that were
+	 * added since the last eviction round. Only if the window is empty, the victims are taken from probation, then from protected.
+	 */
+	@Override
+	public int selectVictims(VictimBuffer<K, V> victims)
+	{
+		synchronized (lock)
+		{
+			if (!mainSpaceFilled)
+			{
+				// The window only overflows while selecting victims, so it holds all entries when the Cache gets full for the
+				// first time. They fill the main space without an admission decision. Later the main space is below its size
+				// after each eviction round, as the Cache evicts more than the entries added since the last round. It is not
+				// filled up again from the window, as that would bypass the admission.
+				while (window.size() > windowMax && probation.size() + protectedSegment.size() < mainMax && prepareWindowHead())
+				{
+					TCacheHolder<?> holder = window.headHolder();
+					probation.add(window.headKey(), holder, holder.getUseCount());
+					window.removeHead();
+				}
+				mainSpaceFilled = true;
+			}
+
+			while (!victims.isFull())
+			{
+				if (prepareWindowHead())
+				{
+					Object candidateKey = window.headKey();
+					TCacheHolder<?> candidate = window.headHolder();
+					window.removeHead();
+					if (candidate.isInvalid())
+					{
+						victims.add(candidateKey, candidate);
+					}
+					else if (!prepareProbationHead())
+					{
+						// Main space is empty
+						probation.add(candidateKey, candidate, candidate.getUseCount());
+					}
+					else if (probation.headHolder().isInvalid() || admit(candidateKey, probation.headKey()))
+					{
+						victims.add(probation.headKey(), probation.headHolder());
+						probation.removeHead();
+						probation.add(candidateKey, candidate, candidate.getUseCount());
+					}
+					else
+					{
+						victims.add(candidateKey, candidate);
+					}
+				}
+				else if (prepareProbationHead())
+				{
+					victims.add(probation.headKey(), probation.headHolder());
+					probation.removeHead();
+				}
+				else
+				{
+					break; // No entries
+				}
+			}
+			return victims.size();
+		}
+	}
+
+	/**
+	 * The TinyLFU admission: The candidate is only admitted to the main space, if it was used more often than the victim.
+	 * 
+	 * @param candidateKey The key of the entry leaving the window
+	 * @param victimKey The key of the entry at the head of probation
+	 * @return true, if the candidate replaces the victim
+	 */
+	private boolean admit(Object candidateKey, Object victimKey)
+	{
+		return sketch.frequency(candidateKey.hashCode()) > sketch.frequency(victimKey.hashCode());
+	}
+
+	/**
+	 * Drops detached entries from the head of the window, and moves entries that were read to the tail.
+	 * 
+	 * @return true, if the window is not empty. Its head is the least recently used entry, then.
+	 */
+	private boolean prepareWindowHead()
+	{
+		int secondChances = window.size();
+		while (!window.isEmpty())
+		{
+			TCacheHolder<?> holder = window.headHolder();
+			if (holder.isDetached())
+			{
+				window.removeHead();
+				continue;
+			}
+			int useCount = holder.getUseCount();
+			if (useCount != window.headSeenUseCount() && !holder.isInvalid() && secondChances-- > 0)
+			{
+				window.moveHeadToTail(useCount);
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Drops detached entries from the head of probation, and promotes entries that were read to the protected segment.
+	 * If probation is empty, an entry is demoted from the protected segment.
+	 * 
+	 * @return true, if the main space is not empty. The head of probation is the main victim, then.
+	 */
+	private boolean prepareProbationHead()
+	{
+		int promotions = probation.size() + protectedSegment.size();
+		while (!probation.isEmpty() || demote())
+		{
+			TCacheHolder<?> holder = probation.headHolder();
+			if (holder.isDetached())
+			{
+				probation.removeHead();
+				continue;
+			}
+			int useCount = holder.getUseCount();
+			if (useCount != probation.headSeenUseCount() && !holder.isInvalid() && promotions-- > 0)
+			{
+				Object key = probation.headKey();
+				probation.removeHead();
+				protectedSegment.add(key, holder, useCount);
+				if (protectedSegment.size() > protectedMax)
+					demote();
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the least recently used entry of the protected segment to the tail of probation. Detached entries are dropped,
+	 * and entries that were read are moved to the tail of the protected segment.
+	 * 
+	 * @return true, if an entry was demoted. false, if the protected segment is empty.
+	 */
+	private boolean demote()
+	{
+		int secondChances = protectedSegment.size();
+		while (!protectedSegment.isEmpty())
+		{
+			TCacheHolder<?> holder = protectedSegment.headHolder();
+			if (holder.isDetached())
+			{
+				protectedSegment.removeHead();
+				continue;
+			}
+			int useCount = holder.getUseCount();
+			if (useCount != protectedSegment.headSeenUseCount() && !holder.isInvalid() && secondChances-- > 0)
+			{
+				protectedSegment.moveHeadToTail(useCount);
+				continue;
+			}
+			Object key = protectedSegment.headKey();
+			protectedSegment.removeHead();
+			probation.add(key, holder, useCount);
+			return true;
+		}
+		return false;
+	}
+
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		inUse = new AtomicBoolean();
+		lock = new Object();
+		window = new HolderQueue();
+		probation = new HolderQueue();
+		protectedSegment = new HolderQueue();
+	}
+
+	/**
+	 * Returns the frequency, the protected flag (read at least once) and the last access time, in this order of significance.
+	 * This is only used when the Cache evicts by frozen values. Regular eviction uses {@link #selectVictims(VictimBuffer)}.
+	 * 
+	 * @return The frozen value
+	 */
+	@Override
+	public long getFreezeValue(K key, TCacheHolder<V> holder)
+	{
+		long frequency = sketch.frequency(key.hashCode());
+		long protectedFlag = holder.getUseCount() > 0 ? 1 : 0;
+		return (frequency << FREQUENCY_SHIFT) | (protectedFlag << PROTECTED_SHIFT) | (holder.getLastAccessTime() & ACCESS_TIME_MASK);
+	}
+}
@@ -42,6 +42,16 @@ public class TCacheStatistics implements TCacheStatisticsInterface, Serializable
 	private long evictionRounds;
 	private long evictionHalts;
 	private long evictionRate;
+	private float compressionRatio = 1.0f;
+	private long averageCompressNanos;
+	private long averageDecompressNanos;
+	private long expirationScanNanos;
+	private long evictionScanNanos;
+	private long evictionSelectNanos;
+	private long refreshCount;
+	private long staleHitCount;
+	private long coalescedLoadCount;
+	private long expiredCount;
 
 
 	/**
@@ -182,6 +192,26 @@ public class TCacheStatistics implements TCacheStatisticsInterface, Serializable
 		builder.append(evictionHalts);
 		builder.append(", elementCount=");
 		builder.append(elementCount);
+		builder.append(", compressionRatio=");
+		builder.append(compressionRatio);
+		builder.append(", averageCompressNanos=");
+		builder.append(averageCompressNanos);
+		builder.append(", averageDecompressNanos=");
+		builder.append(averageDecompressNanos);
+		builder.append(", expirationScanNanos=");
+		builder.append(expirationScanNanos);
+		builder.append(", evictionScanNanos=");
+		builder.append(evictionScanNanos);
+		builder.append(", evictionSelectNanos=");
+		builder.append(evictionSelectNanos);
+		builder.append(", refreshCount=");
+		builder.append(refreshCount);
+		builder.append(", staleHitCount=");
+		builder.append(staleHitCount);
+		builder.append(", coalescedLoadCount=");
+		builder.append(coalescedLoadCount);
+		builder.append(", expiredCount=");
+		builder.append(expiredCount);
 		builder.append("]");
 		return builder.toString();
 	}
@@ -214,6 +244,147 @@ public class TCacheStatistics implements TCacheStatisticsInterface, Serializable
 		return evictionHalts;
 	}
 
+	/**
+	 * @return The compression ratio for values, as uncompressed size divided by stored size. 1.0 if values are not compressed.
+	 */
+	public float getCompressionRatio()
+	{
+		return compressionRatio;
+	}
+
+	@Override
+	public void setCompressionRatio(float ratio)
+	{
+		this.compressionRatio = ratio;
+	}
+
+	/**
+	 * @return The average time in nanoseconds for compressing a value
+	 */
+	public long getAverageCompressNanos()
+	{
+		return averageCompressNanos;
+	}
+
+	@Override
+	public void setAverageCompressNanos(long nanos)
+	{
+		this.averageCompressNanos = nanos;
+	}
+
+	/**
+	 * @return The average time in nanoseconds for decompressing a value
+	 */
+	public long getAverageDecompressNanos()
+	{
+		return averageDecompressNanos;
+	}
+
+	@Override
+	public void setAverageDecompressNanos(long nanos)
+	{
+		this.averageDecompressNanos = nanos;
+	}
+
+	/**
+	 * @return The total time in nanoseconds that the CleanupThread spent expiring entries
+	 */
+	public long getExpirationScanNanos()
+	{
+		return expirationScanNanos;
+	}
+
+	@Override
+	public void setExpirationScanNanos(long nanos)
+	{
+		this.expirationScanNanos = nanos;
+	}
+
+	/**
+	 * @return The total time in nanoseconds that eviction rounds spent scanning all entries, for removing expired entries and collecting candidates
+	 */
+	public long getEvictionScanNanos()
+	{
+		return evictionScanNanos;
+	}
+
+	@Override
+	public void setEvictionScanNanos(long nanos)
+	{
+		this.evictionScanNanos = nanos;
+	}
+
+	/**
+	 * @return The total time in nanoseconds that eviction rounds spent selecting and removing the victims
+	 */
+	public long getEvictionSelectNanos()
+	{
+		return evictionSelectNanos;
+	}
+
+	@Override
+	public void setEvictionSelectNanos(long nanos)
+	{
+		this.evictionSelectNanos = nanos;
+	}
+
+	/**
+	 * @return The number of entries that were replaced by an asynchronous reload, see refresh-ahead in {@link com.trivago.triava.tcache.core.Builder#setRefreshAfter(int, java.util.concurrent.TimeUnit)}
+	 */
+	public long getRefreshCount()
+	{
+		return refreshCount;
+	}
+
+	@Override
+	public void setRefreshCount(long count)
+	{
+		this.refreshCount = count;
+	}
+
+	/**
+	 * @return The number of gets that were served with an expired value, see stale serving in {@link com.trivago.triava.tcache.core.Builder#setMaxStaleness(int, java.util.concurrent.TimeUnit)}. They are also counted as hits.
+	 */
+	public long getStaleHitCount()
+	{
+		return staleHitCount;
+	}
+
+	@Override
+	public void setStaleHitCount(long count)
+	{
+		this.staleHitCount = count;
+	}
+
+	/**
+	 * @return The number of loads that waited for a concurrent load of the same key, instead of calling the loader themselves
+	 */
+	public long getCoalescedLoadCount()
+	{
+		return coalescedLoadCount;
+	}
+
+	@Override
+	public void setCoalescedLoadCount(long count)
+	{
+		this.coalescedLoadCount = count;
+	}
+
+	/**
+	 * @return The number of entries that were removed because they had expired. Expired entries removed by an eviction
+	 * round or by writers with {@link com.trivago.triava.tcache.JamPolicy#ASSIST} are counted here, and not as evictions.
+	 */
+	public long getExpiredCount()
+	{
+		return expiredCount;
+	}
+
+	@Override
+	public void setExpiredCount(long count)
+	{
+		this.expiredCount = count;
+	}
+
 	public String getId()
 	{
 		return id;
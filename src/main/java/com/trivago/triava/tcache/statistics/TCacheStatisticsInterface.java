@@ -41,4 +41,14 @@ public interface TCacheStatisticsInterface
 	void setHitRatio(float count);
 	void setElementCount(long count);
 	void setDropCount(long dropCount);
+	default void setCompressionRatio(float ratio) {}
+	default void setAverageCompressNanos(long nanos) {}
+	default void setAverageDecompressNanos(long nanos) {}
+	default void setExpirationScanNanos(long nanos) {}
+	default void setEvictionScanNanos(long nanos) {}
+	default void setEvictionSelectNanos(long nanos) {}
+	default void setRefreshCount(long count) {}
+	default void setStaleHitCount(long count) {}
+	default void setCoalescedLoadCount(long count) {}
+	default void setExpiredCount(long count) {}
 }
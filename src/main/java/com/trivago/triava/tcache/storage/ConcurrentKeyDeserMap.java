@@ -17,9 +17,12 @@
 package com.trivago.triava.tcache.storage;
 
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -27,7 +30,7 @@ import java.util.concurrent.ConcurrentMap;
 import javax.cache.CacheException;
 
 import com.trivago.triava.tcache.CacheWriteMode;
-import com.trivago.triava.tcache.util.Serializing;
+import com.trivago.triava.tcache.core.CacheSerializer;
 
 /**
  * A concurrent Map that serializes and de-serializes keys. You should only instanciate this if you need serialized keys.
@@ -44,11 +47,13 @@ public class ConcurrentKeyDeserMap<K,V> implements ConcurrentMap<K, V>
 {
 	final ConcurrentMap<ByteArray,V> backingMap;
 	final CacheWriteMode writeMode;
+	final CacheSerializer<K> keySerializer;
 	
-	public ConcurrentKeyDeserMap(ConcurrentMap<ByteArray,V> backingMap, CacheWriteMode writeMode)
+	public ConcurrentKeyDeserMap(ConcurrentMap<ByteArray,V> backingMap, CacheWriteMode writeMode, CacheSerializer<K> keySerializer)
 	{
 		this.backingMap = backingMap;
 		this.writeMode = writeMode;
+		this.keySerializer = keySerializer;
 	}
 	
 	
@@ -129,18 +134,47 @@ public class ConcurrentKeyDeserMap<K,V> implements ConcurrentMap<K, V>
 	}
 
 	/**
-	 * Note that this method is quite inefficient. It creates a whole new Map and then returns the entrySet from it.
+	 * Returns a view of the entries. Keys are deserialized lazily while iterating, which is still quite inefficient.
+	 * Removing entries via the Iterator removes them from the backing map.
 	 */
 	@Override
 	public Set<java.util.Map.Entry<K, V>> entrySet()
 	{
-		Map<K, V> map = new HashMap<>(backingMap.size()); 
-		for (java.util.Map.Entry<ByteArray, V> entry : backingMap.entrySet())
+		return new AbstractSet<java.util.Map.Entry<K, V>>()
 		{
-			map.put(deserialize(entry.getKey()), entry.getValue());
-		}
-		
-		return map.entrySet();
+			@Override
+			public Iterator<java.util.Map.Entry<K, V>> iterator()
+			{
+				final Iterator<java.util.Map.Entry<ByteArray, V>> backingIterator = backingMap.entrySet().iterator();
+				return new Iterator<java.util.Map.Entry<K, V>>()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return backingIterator.hasNext();
+					}
+
+					@Override
+					public java.util.Map.Entry<K, V> next()
+					{
+						java.util.Map.Entry<ByteArray, V> entry = backingIterator.next();
+						return new AbstractMap.SimpleImmutableEntry<>(deserialize(entry.getKey()), entry.getValue());
+					}
+
+					@Override
+					public void remove()
+					{
+						backingIterator.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return backingMap.size();
+			}
+		};
 	}
 
 	@Override
@@ -172,9 +206,7 @@ public class ConcurrentKeyDeserMap<K,V> implements ConcurrentMap<K, V>
 	{
 		try
 		{
-			@SuppressWarnings("unchecked")
-			K fromBytearray = (K)Serializing.fromBytearray((byte[])(key.bytes));
-			return fromBytearray;
+			return keySerializer.deserialize(key.bytes);
 		}
 		catch (ClassNotFoundException | IOException e)
 		{
@@ -183,6 +215,10 @@ public class ConcurrentKeyDeserMap<K,V> implements ConcurrentMap<K, V>
 		}
 	}
 	
+	/**
+	 * Serializes the key. A ClassCastException from a typed key serializer is reported like any other serialization problem.
+	 */
+	@SuppressWarnings("unchecked")
 	private ByteArray serialize(Object key)
 	{
 		if (key == null)
@@ -192,9 +228,9 @@ public class ConcurrentKeyDeserMap<K,V> implements ConcurrentMap<K, V>
 
 		try
 		{
-			return new ByteArray(Serializing.toBytearray(key));
+			return new ByteArray(keySerializer.serialize((K)key));
 		}
-		catch (IOException e)
+		catch (IOException | ClassCastException e)
 		{
 			throw new CacheException("Cannot serialize key class of type: " + key.getClass().getName() , e);
 		}
@@ -0,0 +1,613 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+import javax.cache.CacheException;
+
+import com.trivago.triava.tcache.AccessTimeObjectHolder;
+import com.trivago.triava.tcache.CacheWriteMode;
+import com.trivago.triava.tcache.ExtendedHolder;
+import com.trivago.triava.tcache.core.CacheSerializer;
+import com.trivago.triava.tcache.core.HolderFactory;
+
+/**
+ * A ConcurrentMap whose hash table nodes are the holders. Each node is an {@link AccessTimeObjectHolder} that additionally
+ * carries the key, the hash and the link to the next node in the bucket. Compared to a ConcurrentHashMap this saves one object
+ * per entry, and one pointer chase on each lookup.
+ * <p>
+ * As a consequence the map can only store holders that it has created itself via {@link #createHolder(Object, CacheWriteMode, CacheSerializer, int)}, and each
+ * holder can only be stored once. The Cache takes care of this, as it creates all holders via the {@link HolderFactory} of its storage.
+ * <p>
+ * The map is split into segments, each being a chained hash table. Writes lock the segment. Reads do not lock, but use an optimistic
+ * read and only fall back to locking if a write happened concurrently in the same segment. Iterators are weakly consistent: Each segment
+ * is copied when the iterator reaches it.
+ * <p>
+ * This map is not the default storage. It saves memory per entry, but lookups are slower than with a ConcurrentHashMap.
+ * One run of HolderNodeMapBenchmark (1 million Integer entries, 100 million get() calls in key order from a single Thread,
+ * JDK 17.0.9 with -Xms2g -Xmx2g on 1 CPU) measured 81 instead of 97 heap bytes per entry, and 36.5ns instead of 27.5ns per
+ * get(). The bytes per entry were the same in a repeated run, the get() times varied by up to 20%.
+ *
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+public class HolderNodeMap<K, V> extends AbstractMap<K, AccessTimeObjectHolder<V>>
+		implements ConcurrentMap<K, AccessTimeObjectHolder<V>>, HolderFactory<V>
+{
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final Segment<K, V>[] segments;
+	private final int segmentMask;
+
+	/**
+	 * Creates a map with the given total capacity and a number of segments suitable for the given concurrency level.
+	 *
+	 * @param capacity The expected number of elements
+	 * @param concurrencyLevel The expected number of concurrent writers. The number of segments is derived from it.
+	 */
+	public HolderNodeMap(int capacity, int concurrencyLevel)
+	{
+		int segmentCount = nextPowerOfTwo(Math.max(16, concurrencyLevel * 4));
+		this.segmentMask = segmentCount - 1;
+		int segmentBits = Integer.numberOfTrailingZeros(segmentCount);
+		@SuppressWarnings("unchecked")
+		Segment<K, V>[] segmentArray = (Segment<K, V>[])new Segment<?, ?>[segmentCount];
+		this.segments = segmentArray;
+		int segmentCapacity = nextPowerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, (int)(capacity / segmentCount / LOAD_FACTOR) + 1));
+		for (int i = 0; i < segmentCount; i++)
+		{
+			segments[i] = new Segment<>(segmentCapacity, segmentBits);
+		}
+	}
+
+	private static int nextPowerOfTwo(int value)
+	{
+		int highestOneBit = Integer.highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	/**
+	 * Spreads the higher bits of the hash code to the lower ones, like ConcurrentHashMap does. The hash is not scrambled further,
+	 * so sequential keys like IDs keep their locality.
+	 */
+	private static int spread(int hashCode)
+	{
+		return hashCode ^ (hashCode >>> 16);
+	}
+
+	/**
+	 * Returns the segment for the hash. The lowest bits select the segment, the bits above select the bucket within the segment.
+	 */
+	private Segment<K, V> segmentFor(int hash)
+	{
+		return segments[hash & segmentMask];
+	}
+
+	private static void checkKey(Object key)
+	{
+		if (key == null)
+			throw new NullPointerException("key must not be null");
+	}
+
+	/**
+	 * Returns the given holder as a Node that can be inserted in this map.
+	 *
+	 * @throws IllegalArgumentException if the holder was not created by this map, or is already stored
+	 */
+	private static <K, V> Node<K, V> insertableNode(AccessTimeObjectHolder<V> holder)
+	{
+		if (holder == null)
+			throw new NullPointerException("value must not be null");
+		if (!(holder instanceof Node))
+			throw new IllegalArgumentException("Holder was not created by this map: " + holder.getClass().getName());
+		@SuppressWarnings("unchecked")
+		Node<K, V> node = (Node<K, V>)holder;
+		if (node.key != null)
+			throw new IllegalArgumentException("Holder is already stored and cannot be stored again");
+		return node;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> createHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException
+	{
+		if (ExtendedHolder.isRequired(writeMode, serializer, weight))
+			return new ExtendedNode<K, V>(value, writeMode, serializer, weight);
+		return new Node<K, V>(value, writeMode, serializer);
+	}
+
+	@Override
+	public int size()
+	{
+		long size = 0;
+		for (Segment<K, V> segment : segments)
+		{
+			size += segment.count;
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		for (Segment<K, V> segment : segments)
+		{
+			if (segment.count != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return get(key) != null;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> get(Object key)
+	{
+		checkKey(key);
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).get(key, hash);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> put(K key, AccessTimeObjectHolder<V> value)
+	{
+		checkKey(key);
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).put(key, hash, insertableNode(value), false);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> putIfAbsent(K key, AccessTimeObjectHolder<V> value)
+	{
+		checkKey(key);
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).put(key, hash, insertableNode(value), true);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> remove(Object key)
+	{
+		checkKey(key);
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		checkKey(key);
+		if (value == null)
+			return false;
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> replace(K key, AccessTimeObjectHolder<V> value)
+	{
+		checkKey(key);
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).replace(key, hash, null, insertableNode(value));
+	}
+
+	@Override
+	public boolean replace(K key, AccessTimeObjectHolder<V> oldValue, AccessTimeObjectHolder<V> newValue)
+	{
+		checkKey(key);
+		if (oldValue == null)
+			throw new NullPointerException("oldValue must not be null");
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).replace(key, hash, oldValue, insertableNode(newValue)) != null;
+	}
+
+	@Override
+	public void clear()
+	{
+		for (Segment<K, V> segment : segments)
+		{
+			segment.clear();
+		}
+	}
+
+	@Override
+	public Set<Entry<K, AccessTimeObjectHolder<V>>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	/**
+	 * A holder that is also a hash table node. The key, hash and next fields are written while holding the segment
+	 * write lock, before the node gets reachable from the table.
+	 */
+	static class Node<K, V> extends AccessTimeObjectHolder<V>
+	{
+		private static final long serialVersionUID = -4629315390425087453L;
+
+		transient K key;
+		transient int hash;
+		transient Node<K, V> next;
+
+		Node(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer) throws CacheException
+		{
+			super(value, writeMode, serializer);
+		}
+	}
+
+	/**
+	 * A Node for a custom value serializer or a weight, see {@link ExtendedHolder}
+	 */
+	static final class ExtendedNode<K, V> extends Node<K, V>
+	{
+		private static final long serialVersionUID = 3902617719315226024L;
+
+		private final CacheSerializer<V> serializer;
+		private final int weight;
+
+		ExtendedNode(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException
+		{
+			super(value, writeMode, serializer);
+			this.serializer = serializer;
+			this.weight = weight;
+		}
+
+		@Override
+		protected CacheSerializer<V> serializer()
+		{
+			return serializer;
+		}
+
+		@Override
+		public int getWeight()
+		{
+			return weight;
+		}
+	}
+
+	/**
+	 * One segment of the map. The fields must only be written while holding the write lock. {@link #count} may be read
+	 * without lock for size estimations.
+	 */
+	@SuppressWarnings("serial") // Segments are never serialized
+	private static final class Segment<K, V> extends StampedLock
+	{
+		Node<K, V>[] table;
+		int threshold;
+		volatile int count;
+		final int segmentBits;
+
+		Segment(int capacity, int segmentBits)
+		{
+			this.segmentBits = segmentBits;
+			allocate(capacity);
+		}
+
+		private static int indexFor(int hash, int segmentBits, int length)
+		{
+			return (hash >>> segmentBits) & (length - 1);
+		}
+
+		private void allocate(int capacity)
+		{
+			@SuppressWarnings("unchecked")
+			Node<K, V>[] newTable = (Node<K, V>[])new Node<?, ?>[capacity];
+			table = newTable;
+			threshold = (int)(capacity * LOAD_FACTOR);
+		}
+
+		Node<K, V> get(Object key, int hash)
+		{
+			long stamp = tryOptimisticRead();
+			if (stamp != 0)
+			{
+				Node<K, V> node = find(table, key, hash, segmentBits);
+				if (validate(stamp))
+					return node;
+			}
+
+			// A writer is or was active in this segment. Read again under the read lock.
+			stamp = readLock();
+			try
+			{
+				return find(table, key, hash, segmentBits);
+			}
+			finally
+			{
+				unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * Returns the node for the given key. The nodes may be inconsistent when reading optimistically, so the
+		 * traversal is limited to the table length, and the result must be validated by the caller. When holding a lock
+		 * the limit is never reached, as the number of entries is always lower than the table length.
+		 */
+		private static <K, V> Node<K, V> find(Node<K, V>[] table, Object key, int hash, int segmentBits)
+		{
+			int maxSteps = table.length;
+			Node<K, V> node = table[indexFor(hash, segmentBits, table.length)];
+			for (int steps = 0; node != null && steps < maxSteps; steps++)
+			{
+				if (node.hash == hash && (node.key == key || key.equals(node.key)))
+					return node;
+				node = node.next;
+			}
+			return null;
+		}
+
+		Node<K, V> put(K key, int hash, Node<K, V> node, boolean onlyIfAbsent)
+		{
+			long stamp = writeLock();
+			try
+			{
+				Node<K, V>[] tab = table;
+				int index = indexFor(hash, segmentBits, tab.length);
+				Node<K, V> previous = null;
+				for (Node<K, V> current = tab[index]; current != null; previous = current, current = current.next)
+				{
+					if (current.hash == hash && (current.key == key || key.equals(current.key)))
+					{
+						if (!onlyIfAbsent)
+							link(tab, index, previous, node, key, hash, current.next);
+						return current;
+					}
+				}
+
+				link(tab, index, null, node, key, hash, tab[index]);
+				int newCount = count + 1;
+				count = newCount;
+				if (newCount > threshold)
+					rehash();
+				return null;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Removes the node for the key. If expectedValue is not null, the node is only removed if it is expectedValue.
+		 *
+		 * @return The removed node, or null if nothing was removed
+		 */
+		Node<K, V> remove(Object key, int hash, Object expectedValue)
+		{
+			long stamp = writeLock();
+			try
+			{
+				Node<K, V>[] tab = table;
+				int index = indexFor(hash, segmentBits, tab.length);
+				Node<K, V> previous = null;
+				for (Node<K, V> current = tab[index]; current != null; previous = current, current = current.next)
+				{
+					if (current.hash == hash && (current.key == key || key.equals(current.key)))
+					{
+						if (expectedValue != null && current != expectedValue)
+							return null;
+						if (previous == null)
+							tab[index] = current.next;
+						else
+							previous.next = current.next;
+						count = count - 1;
+						return current;
+					}
+				}
+				return null;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Replaces the node for the key. If expectedValue is not null, the node is only replaced if it is expectedValue.
+		 *
+		 * @return The replaced node, or null if nothing was replaced
+		 */
+		Node<K, V> replace(K key, int hash, Object expectedValue, Node<K, V> node)
+		{
+			long stamp = writeLock();
+			try
+			{
+				Node<K, V>[] tab = table;
+				int index = indexFor(hash, segmentBits, tab.length);
+				Node<K, V> previous = null;
+				for (Node<K, V> current = tab[index]; current != null; previous = current, current = current.next)
+				{
+					if (current.hash == hash && (current.key == key || key.equals(current.key)))
+					{
+						if (expectedValue != null && current != expectedValue)
+							return null;
+						link(tab, index, previous, node, key, hash, current.next);
+						return current;
+					}
+				}
+				return null;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		private static <K, V> void link(Node<K, V>[] tab, int index, Node<K, V> previous, Node<K, V> node, K key, int hash, Node<K, V> next)
+		{
+			node.key = key;
+			node.hash = hash;
+			node.next = next;
+			if (previous == null)
+				tab[index] = node;
+			else
+				previous.next = node;
+		}
+
+		/**
+		 * Doubles the table. The nodes are the holders and must keep their identity, so they are relinked instead of copied.
+		 */
+		private void rehash()
+		{
+			Node<K, V>[] oldTable = table;
+			allocate(oldTable.length * 2);
+			Node<K, V>[] newTable = table;
+			for (Node<K, V> node : oldTable)
+			{
+				while (node != null)
+				{
+					Node<K, V> next = node.next;
+					int index = indexFor(node.hash, segmentBits, newTable.length);
+					node.next = newTable[index];
+					newTable[index] = node;
+					node = next;
+				}
+			}
+		}
+
+		void clear()
+		{
+			long stamp = writeLock();
+			try
+			{
+				allocate(table.length);
+				count = 0;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Copies the nodes of this segment into the iterator buffer.
+		 *
+		 * @return The number of copied nodes
+		 */
+		int copyTo(EntryIterator<K, V> target)
+		{
+			long stamp = readLock();
+			try
+			{
+				int size = count;
+				if (target.nodes.length < size)
+				{
+					@SuppressWarnings("unchecked")
+					Node<K, V>[] nodes = (Node<K, V>[])new Node<?, ?>[size];
+					target.nodes = nodes;
+				}
+				int copied = 0;
+				for (Node<K, V> node : table)
+				{
+					for (; node != null; node = node.next)
+					{
+						target.nodes[copied++] = node;
+					}
+				}
+				return copied;
+			}
+			finally
+			{
+				unlockRead(stamp);
+			}
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<K, AccessTimeObjectHolder<V>>>
+	{
+		@Override
+		public Iterator<Entry<K, AccessTimeObjectHolder<V>>> iterator()
+		{
+			return new EntryIterator<>(HolderNodeMap.this);
+		}
+
+		@Override
+		public int size()
+		{
+			return HolderNodeMap.this.size();
+		}
+
+		@Override
+		public void clear()
+		{
+			HolderNodeMap.this.clear();
+		}
+	}
+
+	/**
+	 * Weakly consistent iterator. Each segment is copied when the iterator reaches it.
+	 */
+	private static final class EntryIterator<K, V> implements Iterator<Entry<K, AccessTimeObjectHolder<V>>>
+	{
+		final HolderNodeMap<K, V> map;
+		int segmentIndex = 0;
+		@SuppressWarnings("unchecked")
+		Node<K, V>[] nodes = (Node<K, V>[])new Node<?, ?>[0];
+		int available = 0;
+		int position = 0;
+		Node<K, V> lastReturned = null;
+
+		EntryIterator(HolderNodeMap<K, V> map)
+		{
+			this.map = map;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while (position == available)
+			{
+				if (segmentIndex == map.segments.length)
+					return false;
+				available = map.segments[segmentIndex++].copyTo(this);
+				position = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public Entry<K, AccessTimeObjectHolder<V>> next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			lastReturned = nodes[position];
+			nodes[position] = null;
+			position++;
+			return new SimpleImmutableEntry<K, AccessTimeObjectHolder<V>>(lastReturned.key, lastReturned);
+		}
+
+		@Override
+		public void remove()
+		{
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			map.remove(lastReturned.key, lastReturned);
+			lastReturned = null;
+		}
+	}
+}
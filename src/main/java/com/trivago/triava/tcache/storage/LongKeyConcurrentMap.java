@@ -0,0 +1,636 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A ConcurrentMap with primitive long keys. Keys are stored in a long[] with open addressing and linear probing, so there
+ * are no boxed keys and no per-entry map nodes. Probing runs over the contiguous key array, which is cache friendly.
+ * <p>
+ * The map is split into segments. Writes lock the segment. Reads via {@link #get(long)} do not lock, but use an optimistic
+ * read and only fall back to locking if a write happened concurrently in the same segment.
+ * <p>
+ * The methods from the {@link ConcurrentMap} interface are supported, but box the keys. Performance critical code should
+ * use the methods with primitive keys like {@link #get(long)} and {@link #put(long, Object)}. Iterators are weakly consistent:
+ * Each segment is copied when the iterator reaches it.
+ *
+ * @author cesken
+ *
+ * @param <V> The value class
+ */
+public class LongKeyConcurrentMap<V> extends AbstractMap<Long, V> implements ConcurrentMap<Long, V>
+{
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final Segment<V>[] segments;
+	private final int segmentShift;
+
+	/**
+	 * Creates a map with the given total capacity and a number of segments suitable for the given concurrency level.
+	 *
+	 * @param capacity The expected number of elements
+	 * @param concurrencyLevel The expected number of concurrent writers. The number of segments is derived from it.
+	 */
+	public LongKeyConcurrentMap(int capacity, int concurrencyLevel)
+	{
+		int segmentCount = nextPowerOfTwo(Math.max(16, concurrencyLevel * 4));
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+		@SuppressWarnings("unchecked")
+		Segment<V>[] segmentArray = (Segment<V>[])new Segment<?>[segmentCount];
+		this.segments = segmentArray;
+		int segmentCapacity = nextPowerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, (int)(capacity / segmentCount / LOAD_FACTOR) + 1));
+		for (int i = 0; i < segmentCount; i++)
+		{
+			segments[i] = new Segment<>(segmentCapacity);
+		}
+	}
+
+	private static int nextPowerOfTwo(int value)
+	{
+		int highestOneBit = Integer.highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	private Segment<V> segmentFor(int hash)
+	{
+		return segments[hash >>> segmentShift];
+	}
+
+	private static void checkValue(Object value)
+	{
+		if (value == null)
+			throw new NullPointerException("value must not be null");
+	}
+
+	// --- Methods with primitive keys ----------------------------------------------------------------
+
+	/**
+	 * Returns the value for the given key, or null if there is no mapping for it.
+	 *
+	 * @param key The key
+	 * @return The value, or null
+	 */
+	public V get(long key)
+	{
+		int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * @param key The key
+	 * @return true, if there is a mapping for the key
+	 */
+	public boolean containsKey(long key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps the key to the given value.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return The previous value, or null if there was no mapping
+	 */
+	public V put(long key, V value)
+	{
+		checkValue(value);
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	/**
+	 * Maps the key to the given value, if there is no mapping for the key yet.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return The present value, or null if there was no mapping
+	 */
+	public V putIfAbsent(long key, V value)
+	{
+		checkValue(value);
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	/**
+	 * Removes the mapping for the given key.
+	 *
+	 * @param key The key
+	 * @return The removed value, or null if there was no mapping
+	 */
+	public V remove(long key)
+	{
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	/**
+	 * Removes the mapping for the given key, if it is currently mapped to the given value. Values are compared by identity.
+	 *
+	 * @param key The key
+	 * @param value The expected value
+	 * @return true, if the mapping was removed
+	 */
+	public boolean remove(long key, Object value)
+	{
+		if (value == null)
+			return false;
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	/**
+	 * Replaces the value for the given key, if there is a mapping for it.
+	 *
+	 * @param key The key
+	 * @param value The new value
+	 * @return The previous value, or null if there was no mapping
+	 */
+	public V replace(long key, V value)
+	{
+		checkValue(value);
+		int hash = hash(key);
+		return segmentFor(hash).replace(key, hash, null, value);
+	}
+
+	/**
+	 * Replaces the value for the given key, if it is currently mapped to oldValue. Values are compared by identity.
+	 *
+	 * @param key The key
+	 * @param oldValue The expected value
+	 * @param newValue The new value
+	 * @return true, if the value was replaced
+	 */
+	public boolean replace(long key, V oldValue, V newValue)
+	{
+		checkValue(oldValue);
+		checkValue(newValue);
+		int hash = hash(key);
+		return segmentFor(hash).replace(key, hash, oldValue, newValue) != null;
+	}
+
+	// --- Methods from ConcurrentMap ----------------------------------------------------------------
+
+	private static long unbox(Object key)
+	{
+		if (key == null)
+			throw new NullPointerException("key must not be null");
+		return (Long)key;
+	}
+
+	@Override
+	public int size()
+	{
+		long size = 0;
+		for (Segment<V> segment : segments)
+		{
+			size += segment.count;
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		for (Segment<V> segment : segments)
+		{
+			if (segment.count != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return key instanceof Long ? containsKey(unbox(key)) : false;
+	}
+
+	@Override
+	public V get(Object key)
+	{
+		return key instanceof Long ? get(unbox(key)) : null;
+	}
+
+	@Override
+	public V put(Long key, V value)
+	{
+		return put(unbox(key), value);
+	}
+
+	@Override
+	public V putIfAbsent(Long key, V value)
+	{
+		return putIfAbsent(unbox(key), value);
+	}
+
+	@Override
+	public V remove(Object key)
+	{
+		return key instanceof Long ? remove(unbox(key)) : null;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		return key instanceof Long ? remove(unbox(key), value) : false;
+	}
+
+	@Override
+	public V replace(Long key, V value)
+	{
+		return replace(unbox(key), value);
+	}
+
+	@Override
+	public boolean replace(Long key, V oldValue, V newValue)
+	{
+		return replace(unbox(key), oldValue, newValue);
+	}
+
+	@Override
+	public void clear()
+	{
+		for (Segment<V> segment : segments)
+		{
+			segment.clear();
+		}
+	}
+
+	@Override
+	public Set<Entry<Long, V>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	/**
+	 * One segment of the map. The fields must only be written while holding the write lock. {@link #count} may be read
+	 * without lock for size estimations.
+	 */
+	@SuppressWarnings("serial") // Segments are never serialized
+	private static final class Segment<V> extends StampedLock
+	{
+		long[] keys;
+		Object[] values;
+		int threshold;
+		volatile int count;
+
+		Segment(int capacity)
+		{
+			allocate(capacity);
+		}
+
+		private void allocate(int capacity)
+		{
+			keys = new long[capacity];
+			values = new Object[capacity];
+			threshold = (int)(capacity * LOAD_FACTOR);
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(long key, int hash)
+		{
+			long stamp = tryOptimisticRead();
+			if (stamp != 0)
+			{
+				Object value = probe(keys, values, key, hash);
+				if (validate(stamp))
+					return (V)value;
+			}
+
+			// A writer is or was active in this segment. Read again under the read lock.
+			stamp = readLock();
+			try
+			{
+				return (V)probe(keys, values, key, hash);
+			}
+			finally
+			{
+				unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * Returns the value for the given key. The arrays may be inconsistent when reading optimistically, so
+		 * the probe is limited to the array length, and the result must be validated by the caller.
+		 */
+		private static Object probe(long[] keys, Object[] values, long key, int hash)
+		{
+			int length = values.length;
+			if (keys.length != length)
+				return null;
+			int mask = length - 1;
+			int slot = hash & mask;
+			for (int i = 0; i < length; i++)
+			{
+				Object value = values[slot];
+				if (value == null)
+					return null;
+				if (keys[slot] == key)
+					return value;
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the slot of the given key. If the key is not present, the returned value is (-insertionSlot - 1).
+		 * Must be called while holding the write lock.
+		 */
+		private int find(long key, int hash)
+		{
+			int mask = values.length - 1;
+			int slot = hash & mask;
+			while (true)
+			{
+				if (values[slot] == null)
+					return -slot - 1;
+				if (keys[slot] == key)
+					return slot;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		V put(long key, int hash, V value, boolean onlyIfAbsent)
+		{
+			long stamp = writeLock();
+			try
+			{
+				int slot = find(key, hash);
+				if (slot >= 0)
+				{
+					V oldValue = (V)values[slot];
+					if (!onlyIfAbsent)
+						values[slot] = value;
+					return oldValue;
+				}
+
+				slot = -slot - 1;
+				keys[slot] = key;
+				values[slot] = value;
+				int newCount = count + 1;
+				count = newCount;
+				if (newCount > threshold)
+					rehash(values.length * 2);
+				return null;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Removes the mapping for the key. If expectedValue is not null, the mapping is only removed if it maps to expectedValue.
+		 *
+		 * @return The removed value, or null if nothing was removed
+		 */
+		@SuppressWarnings("unchecked")
+		V remove(long key, int hash, Object expectedValue)
+		{
+			long stamp = writeLock();
+			try
+			{
+				int slot = find(key, hash);
+				if (slot < 0)
+					return null;
+				V oldValue = (V)values[slot];
+				if (expectedValue != null && oldValue != expectedValue)
+					return null;
+				delete(slot);
+				return oldValue;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Replaces the mapping for the key. If expectedValue is not null, the mapping is only replaced if it maps to expectedValue.
+		 *
+		 * @return The replaced value, or null if nothing was replaced
+		 */
+		@SuppressWarnings("unchecked")
+		V replace(long key, int hash, Object expectedValue, V newValue)
+		{
+			long stamp = writeLock();
+			try
+			{
+				int slot = find(key, hash);
+				if (slot < 0)
+					return null;
+				V oldValue = (V)values[slot];
+				if (expectedValue != null && oldValue != expectedValue)
+					return null;
+				values[slot] = newValue;
+				return oldValue;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Deletes the entry in the given slot. Uses backward shift deletion, so no tombstones are required.
+		 */
+		private void delete(int slot)
+		{
+			count = count - 1;
+			int mask = values.length - 1;
+			int free = slot;
+			int next = slot;
+			while (true)
+			{
+				next = (next + 1) & mask;
+				if (values[next] == null)
+					break;
+				int home = hash(keys[next]) & mask;
+				// The entry at next may move to free, if its home slot is not cyclically within (free, next]
+				boolean movable = (free <= next) ? (home <= free || home > next) : (home <= free && home > next);
+				if (movable)
+				{
+					keys[free] = keys[next];
+					values[free] = values[next];
+					free = next;
+				}
+			}
+			keys[free] = 0;
+			values[free] = null;
+		}
+
+		private void rehash(int newCapacity)
+		{
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			allocate(newCapacity);
+			int mask = newCapacity - 1;
+			for (int i = 0; i < oldValues.length; i++)
+			{
+				if (oldValues[i] == null)
+					continue;
+				int slot = hash(oldKeys[i]) & mask;
+				while (values[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+
+		void clear()
+		{
+			long stamp = writeLock();
+			try
+			{
+				allocate(values.length);
+				count = 0;
+			}
+			finally
+			{
+				unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Copies the keys and values of this segment into new arrays.
+		 *
+		 * @return The number of copied entries
+		 */
+		int copyTo(EntryIterator<V> target)
+		{
+			long stamp = readLock();
+			try
+			{
+				int size = count;
+				if (target.keys.length < size)
+				{
+					target.keys = new long[size];
+					target.values = new Object[size];
+				}
+				int copied = 0;
+				for (int i = 0; i < values.length; i++)
+				{
+					if (values[i] != null)
+					{
+						target.keys[copied] = keys[i];
+						target.values[copied] = values[i];
+						copied++;
+					}
+				}
+				return copied;
+			}
+			finally
+			{
+				unlockRead(stamp);
+			}
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<Long, V>>
+	{
+		@Override
+		public Iterator<Entry<Long, V>> iterator()
+		{
+			return new EntryIterator<>(LongKeyConcurrentMap.this);
+		}
+
+		@Override
+		public int size()
+		{
+			return LongKeyConcurrentMap.this.size();
+		}
+
+		@Override
+		public void clear()
+		{
+			LongKeyConcurrentMap.this.clear();
+		}
+	}
+
+	/**
+	 * Weakly consistent iterator. Each segment is copied when the iterator reaches it.
+	 */
+	private static final class EntryIterator<V> implements Iterator<Entry<Long, V>>
+	{
+		final LongKeyConcurrentMap<V> map;
+		int segmentIndex = 0;
+		long[] keys = new long[0];
+		Object[] values = new Object[0];
+		int available = 0;
+		int position = 0;
+		Entry<Long, V> lastReturned = null;
+
+		EntryIterator(LongKeyConcurrentMap<V> map)
+		{
+			this.map = map;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while (position == available)
+			{
+				if (segmentIndex == map.segments.length)
+					return false;
+				available = map.segments[segmentIndex++].copyTo(this);
+				position = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public Entry<Long, V> next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			@SuppressWarnings("unchecked")
+			V value = (V)values[position];
+			lastReturned = new SimpleImmutableEntry<>(keys[position], value);
+			values[position] = null;
+			position++;
+			return lastReturned;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			map.remove(lastReturned.getKey().longValue(), lastReturned.getValue());
+			lastReturned = null;
+		}
+	}
+}
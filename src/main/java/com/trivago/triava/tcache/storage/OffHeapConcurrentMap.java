@@ -0,0 +1,677 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.cache.CacheException;
+
+import com.trivago.triava.tcache.AccessTimeObjectHolder;
+import com.trivago.triava.tcache.CacheWriteMode;
+import com.trivago.triava.tcache.ExtendedHolder;
+import com.trivago.triava.tcache.core.CacheSerializer;
+import com.trivago.triava.tcache.core.HolderFactory;
+
+/**
+ * A ConcurrentMap for serialized keys, that stores the key bytes and the serialized values in direct memory.
+ * Only a compact index is kept on the heap: Per entry a hash (int), the off-heap key address (long) and the
+ * holder reference. There are no per-entry key objects or map nodes. The map can only store holders that it has created
+ * itself via {@link #createHolder(Object, CacheWriteMode, CacheSerializer, int)}. Their serialized value data is moved to
+ * direct memory when they are stored, and the holder keeps only the address and stamp of the block.
+ * <p>
+ * The map is split into segments, each being an open addressing hash table with linear probing. All operations on a segment,
+ * including reads, lock the segment. The number of segments is derived from the concurrency level, to keep contention low.
+ * <p>
+ * The direct memory of holders that are removed or replaced is retired, and freed after a grace period, see
+ * {@link OffHeapSlabAllocator#retire(long, int)}. Threads that still hold a reference to such a holder can read its value
+ * until then, and read null afterwards. Iterators are weakly consistent: Each segment is copied when the iterator reaches it.
+ *
+ * @author cesken
+ *
+ * @param <V> The value type of the holders
+ */
+public class OffHeapConcurrentMap<V> extends AbstractMap<ByteArray, AccessTimeObjectHolder<V>>
+		implements ConcurrentMap<ByteArray, AccessTimeObjectHolder<V>>, HolderFactory<V>
+{
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final OffHeapSlabAllocator allocator;
+	private final Segment[] segments;
+	private final int segmentShift;
+
+	/**
+	 * Creates a map with the given total capacity and number of segments.
+	 *
+	 * @param allocator The allocator for the direct memory
+	 * @param capacity The expected number of elements
+	 * @param concurrencyLevel The expected number of concurrent writers. The number of segments is derived from it.
+	 */
+	public OffHeapConcurrentMap(OffHeapSlabAllocator allocator, int capacity, int concurrencyLevel)
+	{
+		this.allocator = allocator;
+		int segmentCount = nextPowerOfTwo(Math.max(16, concurrencyLevel * 4));
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+		@SuppressWarnings("unchecked")
+		Segment[] segmentArray = (Segment[])Array.newInstance(Segment.class, segmentCount);
+		this.segments = segmentArray;
+		int segmentCapacity = nextPowerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, (int)(capacity / segmentCount / LOAD_FACTOR) + 1));
+		for (int i = 0; i < segmentCount; i++)
+		{
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	private static int nextPowerOfTwo(int value)
+	{
+		int highestOneBit = Integer.highestOneBit(value);
+		return highestOneBit == value ? value : highestOneBit << 1;
+	}
+
+	private static int spread(int hashCode)
+	{
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private Segment segmentFor(int hash)
+	{
+		return segments[hash >>> segmentShift];
+	}
+
+	private static ByteArray checkKey(Object key)
+	{
+		if (key == null)
+			throw new NullPointerException("key must not be null");
+		return (ByteArray)key;
+	}
+
+	private static void checkValue(Object value)
+	{
+		if (value == null)
+			throw new NullPointerException("value must not be null");
+	}
+
+	private static <V> OffHeapHolder<V> offHeapHolder(AccessTimeObjectHolder<V> holder)
+	{
+		checkValue(holder);
+		if (!(holder instanceof OffHeapHolder))
+			throw new IllegalArgumentException("Holder was not created by this map: " + holder.getClass().getName());
+		return (OffHeapHolder<V>)holder;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> createHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException
+	{
+		if (ExtendedHolder.isRequired(writeMode, serializer, weight))
+			return new ExtendedOffHeapHolder<V>(value, writeMode, serializer, weight);
+		return new OffHeapHolder<V>(value, writeMode, serializer);
+	}
+
+	@Override
+	public int size()
+	{
+		long size = 0;
+		for (Segment segment : segments)
+		{
+			size += segment.count;
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		for (Segment segment : segments)
+		{
+			if (segment.count != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return get(key) != null;
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> get(Object key)
+	{
+		if (!(key instanceof ByteArray))
+		{
+			checkKey(key);
+			return null;
+		}
+		ByteArray byteArray = (ByteArray)key;
+		int hash = spread(byteArray.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, byteArray.bytes);
+			return slot >= 0 ? segment.values[slot] : null;
+		}
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> put(ByteArray key, AccessTimeObjectHolder<V> value)
+	{
+		return put(checkKey(key), value, false);
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> putIfAbsent(ByteArray key, AccessTimeObjectHolder<V> value)
+	{
+		return put(checkKey(key), value, true);
+	}
+
+	private AccessTimeObjectHolder<V> put(ByteArray key, AccessTimeObjectHolder<V> value, boolean onlyIfAbsent)
+	{
+		OffHeapHolder<V> holder = offHeapHolder(value);
+		int hash = spread(key.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, key.bytes);
+			if (slot >= 0)
+			{
+				OffHeapHolder<V> oldValue = segment.values[slot];
+				if (!onlyIfAbsent)
+				{
+					holder.moveDataOffHeap(allocator);
+					segment.values[slot] = holder;
+					oldValue.retireData();
+				}
+				return oldValue;
+			}
+
+			long keyAddress = allocator.store(key.bytes);
+			if (keyAddress == OffHeapSlabAllocator.NO_ADDRESS)
+				throw new IllegalArgumentException("Serialized key is too big for off-heap storage: length=" + key.bytes.length);
+			holder.moveDataOffHeap(allocator);
+			segment.insert(-slot - 1, hash, keyAddress, holder);
+			return null;
+		}
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> remove(Object key)
+	{
+		if (!(key instanceof ByteArray))
+		{
+			checkKey(key);
+			return null;
+		}
+		ByteArray byteArray = (ByteArray)key;
+		int hash = spread(byteArray.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, byteArray.bytes);
+			if (slot < 0)
+				return null;
+			OffHeapHolder<V> oldValue = segment.values[slot];
+			segment.delete(slot);
+			oldValue.retireData();
+			return oldValue;
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		if (!(key instanceof ByteArray) || value == null)
+		{
+			checkKey(key);
+			return false;
+		}
+		ByteArray byteArray = (ByteArray)key;
+		int hash = spread(byteArray.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, byteArray.bytes);
+			if (slot < 0 || segment.values[slot] != value)
+				return false;
+			OffHeapHolder<V> oldValue = segment.values[slot];
+			segment.delete(slot);
+			oldValue.retireData();
+			return true;
+		}
+	}
+
+	@Override
+	public boolean replace(ByteArray key, AccessTimeObjectHolder<V> oldValue, AccessTimeObjectHolder<V> newValue)
+	{
+		checkKey(key);
+		checkValue(oldValue);
+		OffHeapHolder<V> holder = offHeapHolder(newValue);
+		int hash = spread(key.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, key.bytes);
+			if (slot < 0 || segment.values[slot] != oldValue)
+				return false;
+			holder.moveDataOffHeap(allocator);
+			segment.values[slot].retireData();
+			segment.values[slot] = holder;
+			return true;
+		}
+	}
+
+	@Override
+	public AccessTimeObjectHolder<V> replace(ByteArray key, AccessTimeObjectHolder<V> value)
+	{
+		checkKey(key);
+		OffHeapHolder<V> holder = offHeapHolder(value);
+		int hash = spread(key.hashCode());
+		Segment segment = segmentFor(hash);
+		synchronized (segment)
+		{
+			int slot = segment.find(hash, key.bytes);
+			if (slot < 0)
+				return null;
+			OffHeapHolder<V> oldValue = segment.values[slot];
+			holder.moveDataOffHeap(allocator);
+			segment.values[slot] = holder;
+			oldValue.retireData();
+			return oldValue;
+		}
+	}
+
+	/**
+	 * Removes all entries and frees their direct memory immediately, without a grace period. Threads that still hold a
+	 * reference to a removed holder will read null from it.
+	 */
+	@Override
+	public void clear()
+	{
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	@Override
+	public Set<Entry<ByteArray, AccessTimeObjectHolder<V>>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	/**
+	 * Frees the direct memory of removed and replaced values whose grace period has passed, see
+	 * {@link OffHeapSlabAllocator#freeRetired()}. To be called periodically by the owner of the map.
+	 *
+	 * @return true, if there is retired direct memory left that a later call will free
+	 */
+	public boolean freeRetired()
+	{
+		return allocator.freeRetired();
+	}
+
+	/**
+	 * Removes all entries and returns the direct memory to the JVM, see {@link OffHeapSlabAllocator#release()}. To be called
+	 * when the map is not used anymore.
+	 */
+	public void release()
+	{
+		clear();
+		allocator.release();
+	}
+
+	/**
+	 * @return The allocator that holds the direct memory of this map
+	 */
+	public OffHeapSlabAllocator allocator()
+	{
+		return allocator;
+	}
+
+	/**
+	 * One segment of the map. All fields must only be accessed while holding the lock on the segment, except for
+	 * {@link #count} which may be read without lock for size estimations.
+	 */
+	private final class Segment
+	{
+		int[] hashes;
+		long[] keyAddresses;
+		OffHeapHolder<V>[] values;
+		int mask;
+		int threshold;
+		volatile int count;
+
+		Segment(int capacity)
+		{
+			allocate(capacity);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void allocate(int capacity)
+		{
+			hashes = new int[capacity];
+			keyAddresses = new long[capacity];
+			values = (OffHeapHolder<V>[])new OffHeapHolder<?>[capacity];
+			mask = capacity - 1;
+			threshold = (int)(capacity * LOAD_FACTOR);
+		}
+
+		/**
+		 * Returns the slot of the given key. If the key is not present, the returned value is (-insertionSlot - 1).
+		 */
+		int find(int hash, byte[] key)
+		{
+			int slot = hash & mask;
+			while (true)
+			{
+				if (values[slot] == null)
+					return -slot - 1;
+				if (hashes[slot] == hash && allocator.contentEquals(keyAddresses[slot], key))
+					return slot;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		void insert(int slot, int hash, long keyAddress, OffHeapHolder<V> value)
+		{
+			hashes[slot] = hash;
+			keyAddresses[slot] = keyAddress;
+			values[slot] = value;
+			int newCount = count + 1;
+			count = newCount;
+			if (newCount > threshold)
+				rehash(values.length * 2);
+		}
+
+		/**
+		 * Deletes the entry in the given slot and frees the key. Uses backward shift deletion, so no tombstones are required.
+		 */
+		void delete(int slot)
+		{
+			allocator.free(keyAddresses[slot]);
+			count = count - 1;
+
+			int free = slot;
+			int next = slot;
+			while (true)
+			{
+				next = (next + 1) & mask;
+				if (values[next] == null)
+					break;
+				int home = hashes[next] & mask;
+				// The entry at next may move to free, if its home slot is not cyclically within (free, next]
+				boolean movable = (free <= next) ? (home <= free || home > next) : (home <= free && home > next);
+				if (movable)
+				{
+					hashes[free] = hashes[next];
+					keyAddresses[free] = keyAddresses[next];
+					values[free] = values[next];
+					free = next;
+				}
+			}
+			hashes[free] = 0;
+			keyAddresses[free] = 0;
+			values[free] = null;
+		}
+
+		private void rehash(int newCapacity)
+		{
+			int[] oldHashes = hashes;
+			long[] oldKeyAddresses = keyAddresses;
+			OffHeapHolder<V>[] oldValues = values;
+			allocate(newCapacity);
+			for (int i = 0; i < oldValues.length; i++)
+			{
+				if (oldValues[i] == null)
+					continue;
+				int slot = oldHashes[i] & mask;
+				while (values[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = oldHashes[i];
+				keyAddresses[slot] = oldKeyAddresses[i];
+				values[slot] = oldValues[i];
+			}
+		}
+
+		void clear()
+		{
+			for (int i = 0; i < values.length; i++)
+			{
+				OffHeapHolder<V> value = values[i];
+				if (value != null)
+				{
+					allocator.free(keyAddresses[i]);
+					value.freeData();
+				}
+			}
+			allocate(values.length);
+			count = 0;
+		}
+
+		/**
+		 * Copies the keys and values of this segment. Keys are read from direct memory.
+		 *
+		 * @param keys The target array for the keys. Must have at least the size of {@link #count}
+		 * @param holders The target array for the values. Must have at least the size of {@link #count}
+		 * @return The number of copied entries
+		 */
+		int copyTo(ByteArray[] keys, Object[] holders)
+		{
+			int copied = 0;
+			for (int i = 0; i < values.length; i++)
+			{
+				if (values[i] != null)
+				{
+					keys[copied] = new ByteArray(allocator.readUnchecked(keyAddresses[i]));
+					holders[copied] = values[i];
+					copied++;
+				}
+			}
+			return copied;
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<ByteArray, AccessTimeObjectHolder<V>>>
+	{
+		@Override
+		public Iterator<Entry<ByteArray, AccessTimeObjectHolder<V>>> iterator()
+		{
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return OffHeapConcurrentMap.this.size();
+		}
+
+		@Override
+		public void clear()
+		{
+			OffHeapConcurrentMap.this.clear();
+		}
+	}
+
+	/**
+	 * Weakly consistent iterator. Each segment is copied when the iterator reaches it.
+	 */
+	private final class EntryIterator implements Iterator<Entry<ByteArray, AccessTimeObjectHolder<V>>>
+	{
+		int segmentIndex = 0;
+		ByteArray[] keys = new ByteArray[0];
+		Object[] holders = new Object[0];
+		int available = 0;
+		int position = 0;
+		Entry<ByteArray, AccessTimeObjectHolder<V>> lastReturned = null;
+
+		@Override
+		public boolean hasNext()
+		{
+			while (position == available)
+			{
+				if (segmentIndex == segments.length)
+					return false;
+				Segment segment = segments[segmentIndex++];
+				synchronized (segment)
+				{
+					int count = segment.count;
+					if (keys.length < count)
+					{
+						keys = new ByteArray[count];
+						holders = new Object[count];
+					}
+					available = segment.copyTo(keys, holders);
+				}
+				position = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public Entry<ByteArray, AccessTimeObjectHolder<V>> next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			@SuppressWarnings("unchecked")
+			AccessTimeObjectHolder<V> holder = (AccessTimeObjectHolder<V>)holders[position];
+			lastReturned = new SimpleImmutableEntry<>(keys[position], holder);
+			keys[position] = null;
+			holders[position] = null;
+			position++;
+			return lastReturned;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			OffHeapConcurrentMap.this.remove(lastReturned.getKey(), lastReturned.getValue());
+			lastReturned = null;
+		}
+	}
+
+	/**
+	 * The holder of this map. Its serialized data is moved to direct memory when the holder is stored, and then only the
+	 * address and stamp of the block are kept on the heap.
+	 */
+	static class OffHeapHolder<V> extends AccessTimeObjectHolder<V>
+	{
+		private static final long serialVersionUID = 2285601127389457105L;
+		// The data reference of the holder while its data is in direct memory
+		private static final byte[] OFF_HEAP = new byte[0];
+
+		private transient OffHeapSlabAllocator allocator;
+		private transient int stamp;
+		// Written last when moving the data, so that reading it publishes allocator and stamp
+		private transient volatile long address = OffHeapSlabAllocator.NO_ADDRESS;
+
+		OffHeapHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer) throws CacheException
+		{
+			super(value, writeMode, serializer);
+		}
+
+		/**
+		 * Moves the serialized data to direct memory. Data that is too big for the allocator stays on the heap. Must be called
+		 * before the holder is published in the map.
+		 *
+		 * @param allocator The allocator for the direct memory
+		 */
+		void moveDataOffHeap(OffHeapSlabAllocator allocator)
+		{
+			if (!isSerialized() || address != OffHeapSlabAllocator.NO_ADDRESS)
+				return;
+			long blockAddress = allocator.store(super.serializedData());
+			if (blockAddress == OffHeapSlabAllocator.NO_ADDRESS)
+				return; // Too big. Keep it on the heap.
+
+			this.allocator = allocator;
+			this.stamp = allocator.stamp(blockAddress);
+			this.address = blockAddress;
+			setData(OFF_HEAP);
+		}
+
+		@Override
+		protected byte[] serializedData()
+		{
+			long blockAddress = address;
+			return blockAddress == OffHeapSlabAllocator.NO_ADDRESS ? super.serializedData() : allocator.read(blockAddress, stamp);
+		}
+
+		/**
+		 * Frees the direct memory after the grace period of the allocator. To be called when the holder is removed from the map.
+		 */
+		void retireData()
+		{
+			long blockAddress = address;
+			if (blockAddress != OffHeapSlabAllocator.NO_ADDRESS)
+				allocator.retire(blockAddress, stamp);
+		}
+
+		/**
+		 * Frees the direct memory immediately. Afterwards {@link #peek()} returns null.
+		 */
+		void freeData()
+		{
+			long blockAddress = address;
+			if (blockAddress != OffHeapSlabAllocator.NO_ADDRESS)
+				allocator.free(blockAddress, stamp);
+		}
+	}
+
+	/**
+	 * An OffHeapHolder for a custom value serializer or a weight, see {@link ExtendedHolder}
+	 */
+	static final class ExtendedOffHeapHolder<V> extends OffHeapHolder<V>
+	{
+		private static final long serialVersionUID = -7730346826468413398L;
+
+		private final CacheSerializer<V> serializer;
+		private final int weight;
+
+		ExtendedOffHeapHolder(V value, CacheWriteMode writeMode, CacheSerializer<V> serializer, int weight) throws CacheException
+		{
+			super(value, writeMode, serializer);
+			this.serializer = serializer;
+			this.weight = weight;
+		}
+
+		@Override
+		protected CacheSerializer<V> serializer()
+		{
+			return serializer;
+		}
+
+		@Override
+		public int getWeight()
+		{
+			return weight;
+		}
+	}
+}
@@ -0,0 +1,761 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Allocates variable sized blocks in direct memory. Memory is requested from the JVM in slabs of a fixed size,
+ * and blocks are carved out of the slabs. Freed blocks are kept in free lists per size class and are reused
+ * for later allocations. Slabs are only returned to the JVM by {@link #release()}, so until then the off-heap footprint
+ * is the high-water mark of the stored data.
+ * <p>
+ * Each block starts with a header of {@link #HEADER_SIZE} bytes: An int stamp and the int payload length. The stamp
+ * is changed whenever a block is allocated or freed. Readers that hold the address and stamp of a block that may be freed
+ * concurrently use the stamp to detect that, see {@link #read(long, int)}.
+ * <p>
+ * Addresses are encoded as (slabIndex &lt;&lt; 32 | offset). The allocator is split into arenas, each owning its own slabs,
+ * free lists and lock. A Thread allocates from the arena chosen by its id, and a block is always freed to the arena that
+ * owns its slab. Reading payloads does not lock.
+ * <p>
+ * Blocks of removed entries are not freed immediately, but retired via {@link #retire(long, int)}. They are freed after a
+ * grace period of {@link #RETIRE_GRACE_MILLIS}, so that Threads which have just removed or replaced an entry can still read
+ * the old value without copying it back to the heap first. Retired blocks are freed on later calls to {@link #store(byte[])}
+ * and {@link #retire(long, int)} of the same arena, and on {@link #freeRetired()}, which the owner should call periodically.
+ *
+ * @author cesken
+ */
+public class OffHeapSlabAllocator
+{
+	static final int HEADER_SIZE = 8;
+	/**
+	 * The address that denotes "no block"
+	 */
+	static final long NO_ADDRESS = -1L;
+	/**
+	 * The time after which a retired block is freed
+	 */
+	static final long RETIRE_GRACE_MILLIS = 1000;
+	private static final long RETIRE_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(RETIRE_GRACE_MILLIS);
+	/**
+	 * The maximum number of retired blocks per arena. If more blocks are retired within the grace period, the oldest are
+	 * freed early. This bounds the heap used for tracking retired blocks to about 1 MiB per arena.
+	 */
+	static final int MAX_RETIRED = 65536;
+	private static final int MIN_BLOCK_SIZE = 32;
+	/**
+	 * Number of size classes per power of two. With 4 classes the internal fragmentation is at most 25%.
+	 */
+	private static final int CLASSES_PER_POW2 = 4;
+	private static final int MIN_BLOCK_POW2 = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+
+	// Frees the direct memory of released slabs after the grace period. Created on first use, its Thread ends when idle.
+	private static ScheduledThreadPoolExecutor releaseExecutor = null;
+
+	private final int slabSize;
+	private final int maxBlockSize;
+	private final Arena[] arenas;
+	private final int arenaMask;
+
+	// Guarded by synchronized(slabs)
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private final List<StampedLock> slabLocks = new ArrayList<>();
+	private final List<Arena> slabOwners = new ArrayList<>();
+	// Published copies of slabs, slabLocks and slabOwners for lock-free readers. Replaced on each new slab.
+	private volatile ByteBuffer[] slabsView = new ByteBuffer[0];
+	private volatile StampedLock[] slabLocksView = new StampedLock[0];
+	private volatile Arena[] slabOwnersView = new Arena[0];
+
+	private volatile long allocatedBytes = 0;
+
+	/**
+	 * Creates an allocator that requests direct memory from the JVM in chunks of slabSize bytes.
+	 * Blocks larger than the slab size cannot be allocated. The number of arenas is derived from the number of CPUs.
+	 *
+	 * @param slabSize The size of each slab in bytes
+	 */
+	public OffHeapSlabAllocator(int slabSize)
+	{
+		this(slabSize, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an allocator that requests direct memory from the JVM in chunks of slabSize bytes.
+	 * Blocks larger than the slab size cannot be allocated. Each arena requests its own slabs, so the minimum footprint
+	 * is one slab per arena that is used.
+	 *
+	 * @param slabSize The size of each slab in bytes
+	 * @param arenaCount The number of arenas. It is rounded up to the next power of two.
+	 */
+	public OffHeapSlabAllocator(int slabSize, int arenaCount)
+	{
+		if (slabSize < 4096)
+			throw new IllegalArgumentException("slabSize must be at least 4096: " + slabSize);
+		if (arenaCount < 1)
+			throw new IllegalArgumentException("arenaCount must be at least 1: " + arenaCount);
+		this.slabSize = slabSize;
+		this.maxBlockSize = classSize(sizeClass(slabSize)) <= slabSize ? slabSize : classSize(sizeClass(slabSize) - 1);
+		int classes = sizeClass(maxBlockSize) + 1;
+
+		int highestOneBit = Integer.highestOneBit(arenaCount);
+		int arenaArraySize = highestOneBit == arenaCount ? arenaCount : highestOneBit << 1;
+		arenas = new Arena[arenaArraySize];
+		arenaMask = arenaArraySize - 1;
+		for (int i = 0; i < arenaArraySize; i++)
+		{
+			arenas[i] = new Arena(classes);
+		}
+	}
+
+	/**
+	 * Returns the size class for the given block size. The block size includes the header.
+	 *
+	 * @param blockSize The requested block size
+	 * @return The size class
+	 */
+	static int sizeClass(int blockSize)
+	{
+		if (blockSize <= MIN_BLOCK_SIZE)
+			return 0;
+		int pow2 = 31 - Integer.numberOfLeadingZeros(blockSize - 1); // floor(log2(blockSize-1))
+		int base = 1 << pow2;
+		int step = base / CLASSES_PER_POW2;
+		int sub = (blockSize - 1 - base) / step; // 0 .. CLASSES_PER_POW2-1
+		return (pow2 - MIN_BLOCK_POW2) * CLASSES_PER_POW2 + sub + 1;
+	}
+
+	/**
+	 * Returns the block size of the given size class. This is the inverse of {@link #sizeClass(int)}, returning
+	 * the biggest block size that maps to the class.
+	 *
+	 * @param sizeClass The size class
+	 * @return The block size in bytes, including the header
+	 */
+	static int classSize(int sizeClass)
+	{
+		if (sizeClass == 0)
+			return MIN_BLOCK_SIZE;
+		int pow2 = (sizeClass - 1) / CLASSES_PER_POW2 + MIN_BLOCK_POW2;
+		int sub = (sizeClass - 1) % CLASSES_PER_POW2;
+		int base = 1 << pow2;
+		return base + (sub + 1) * (base / CLASSES_PER_POW2);
+	}
+
+	/**
+	 * Returns whether a payload of the given length can be stored by this allocator.
+	 *
+	 * @param length The payload length
+	 * @return true if the payload fits into a slab
+	 */
+	public boolean fits(int length)
+	{
+		return length >= 0 && length <= maxBlockSize - HEADER_SIZE;
+	}
+
+	/**
+	 * Allocates a block and copies the given payload into it. The stamp of the new block can be retrieved via
+	 * {@link #stamp(long)}.
+	 *
+	 * @param payload The data to store
+	 * @return The address of the block, or {@link #NO_ADDRESS} if the payload is too big for this allocator
+	 */
+	long store(byte[] payload)
+	{
+		if (!fits(payload.length))
+			return NO_ADDRESS;
+
+		int sizeClass = sizeClass(payload.length + HEADER_SIZE);
+		Arena arena = arenas[(int)Thread.currentThread().getId() & arenaMask];
+		synchronized (arena)
+		{
+			if (arena.retiredCount > 0)
+				arena.freeRetired(System.nanoTime());
+			long address = arena.allocate(sizeClass);
+			int slabIndex = slabIndex(address);
+			int offset = offset(address);
+			int stamp = arena.nextStamp();
+
+			StampedLock lock = slabLocksView[slabIndex];
+			long writeStamp = lock.writeLock();
+			try
+			{
+				ByteBuffer slab = slabsView[slabIndex];
+				slab.putInt(offset, stamp);
+				slab.putInt(offset + 4, payload.length);
+				ByteBuffer dup = slab.duplicate();
+				dup.position(offset + HEADER_SIZE);
+				dup.put(payload);
+			}
+			finally
+			{
+				lock.unlockWrite(writeStamp);
+			}
+			arena.usedBytes += classSize(sizeClass);
+			return address;
+		}
+	}
+
+	/**
+	 * Returns the current stamp of the block at the given address. The caller must guarantee that the block is not
+	 * freed concurrently, for example by having just stored it.
+	 *
+	 * @param address The block address
+	 * @return The stamp
+	 */
+	int stamp(long address)
+	{
+		return slabsView[slabIndex(address)].getInt(offset(address));
+	}
+
+	/**
+	 * Frees the block with the given address and stamp. Freeing a block that was already freed has no effect.
+	 * Threads that read the block concurrently or later will read null.
+	 *
+	 * @param address The block address
+	 * @param stamp The stamp of the block
+	 * @return true, if this call has freed the block
+	 */
+	boolean free(long address, int stamp)
+	{
+		Arena arena = slabOwnersView[slabIndex(address)];
+		synchronized (arena)
+		{
+			return arena.freeIfStampMatches(address, stamp);
+		}
+	}
+
+	/**
+	 * Frees the block at the given address. The caller must guarantee that the block is currently allocated and
+	 * that it is freed only once, for example by owning the only reference to it.
+	 *
+	 * @param address The block address
+	 */
+	void free(long address)
+	{
+		Arena arena = slabOwnersView[slabIndex(address)];
+		synchronized (arena)
+		{
+			ByteBuffer slab = slabsView[slabIndex(address)];
+			if (slab != null)
+				arena.freeBlock(address, slab.getInt(offset(address) + 4));
+		}
+	}
+
+	/**
+	 * Frees the block with the given address and stamp after the grace period of {@link #RETIRE_GRACE_MILLIS}. Until then
+	 * the block can still be read. Retiring a block that is freed meanwhile by other means has no effect.
+	 *
+	 * @param address The block address
+	 * @param stamp The stamp of the block
+	 */
+	void retire(long address, int stamp)
+	{
+		Arena arena = slabOwnersView[slabIndex(address)];
+		long now = System.nanoTime();
+		synchronized (arena)
+		{
+			arena.freeRetired(now);
+			arena.addRetired(address, stamp, now);
+		}
+	}
+
+	/**
+	 * Frees the retired blocks of all arenas whose grace period has passed. Without calling this method, retired blocks
+	 * are only freed by later allocations in the same arena.
+	 *
+	 * @return true, if there are retired blocks left that are still within their grace period
+	 */
+	public boolean freeRetired()
+	{
+		boolean retiredLeft = false;
+		for (Arena arena : arenas)
+		{
+			synchronized (arena)
+			{
+				if (arena.retiredCount > 0)
+				{
+					arena.freeRetired(System.nanoTime());
+					retiredLeft |= arena.retiredCount > 0;
+				}
+			}
+		}
+		return retiredLeft;
+	}
+
+	/**
+	 * Returns all slabs to the JVM. All blocks are freed, including retired blocks, and reading them returns null afterwards.
+	 * The direct memory itself is freed after the grace period of {@link #RETIRE_GRACE_MILLIS}, so that Threads which are
+	 * currently reading a block do not access freed memory. The allocator stays usable, and requests new slabs
+	 * on the next allocation.
+	 */
+	public void release()
+	{
+		List<ByteBuffer> released = new ArrayList<>();
+		for (Arena arena : arenas)
+		{
+			synchronized (arena)
+			{
+				arena.reset();
+				synchronized (slabs)
+				{
+					for (int i = 0; i < slabs.size(); i++)
+					{
+						if (slabOwners.get(i) == arena && slabs.get(i) != null)
+						{
+							released.add(slabs.get(i));
+							slabs.set(i, null); // Keep the index, so that addresses of released slabs are never reused
+							allocatedBytes -= slabSize;
+						}
+					}
+					slabsView = slabs.toArray(new ByteBuffer[slabs.size()]);
+				}
+			}
+		}
+		if (!released.isEmpty())
+			scheduleFreeDirectMemory(released);
+	}
+
+	private static synchronized void scheduleFreeDirectMemory(final List<ByteBuffer> buffers)
+	{
+		if (releaseExecutor == null)
+		{
+			releaseExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "tCache-OffHeapRelease");
+				thread.setDaemon(true);
+				return thread;
+			});
+			releaseExecutor.setKeepAliveTime(RETIRE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+			releaseExecutor.allowCoreThreadTimeOut(true);
+		}
+		releaseExecutor.schedule(() -> {
+			for (ByteBuffer buffer : buffers)
+			{
+				freeDirectMemory(buffer);
+			}
+		}, RETIRE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Frees the direct memory of the given buffer immediately. The buffer must not be accessed afterwards. If the JVM does not
+	 * allow this, the memory is freed when the buffer is garbage collected.
+	 */
+	static void freeDirectMemory(ByteBuffer buffer)
+	{
+		try
+		{
+			// Java 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		}
+		catch (NoSuchMethodException e)
+		{
+			// Java 8: Use the Cleaner of the DirectByteBuffer below
+		}
+		catch (Exception e)
+		{
+			return; // Not accessible. The garbage collector frees the memory.
+		}
+
+		try
+		{
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+			{
+				Method clean = cleaner.getClass().getMethod("clean");
+				clean.setAccessible(true);
+				clean.invoke(cleaner);
+			}
+		}
+		catch (Exception e)
+		{
+			// Not accessible. The garbage collector frees the memory.
+		}
+	}
+
+	/**
+	 * Reads the payload of the block with the given address and stamp. Returns null if the block has been freed. This
+	 * method can be called concurrently to {@link #free(long, int)}, and will never return data of a block that was
+	 * reused for other data.
+	 *
+	 * @param address The block address
+	 * @param stamp The stamp of the block
+	 * @return The payload, or null if the block was freed
+	 */
+	byte[] read(long address, int stamp)
+	{
+		int slabIndex = slabIndex(address);
+		int offset = offset(address);
+		ByteBuffer slab = slabsView[slabIndex];
+		if (slab == null)
+			return null; // released
+		StampedLock lock = slabLocksView[slabIndex];
+
+		long optimisticStamp = lock.tryOptimisticRead();
+		if (optimisticStamp != 0)
+		{
+			byte[] payload = copyIfStampMatches(slab, offset, stamp);
+			if (lock.validate(optimisticStamp))
+				return payload;
+		}
+
+		// Fallback: A writer was active in the same slab. Read again under the read lock.
+		long readStamp = lock.readLock();
+		try
+		{
+			return copyIfStampMatches(slab, offset, stamp);
+		}
+		finally
+		{
+			lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * Copies the payload at the given offset, if the block has the given stamp. Without the read lock the result is only
+	 * meaningful after the optimistic stamp of the slab has been validated.
+	 */
+	private byte[] copyIfStampMatches(ByteBuffer slab, int offset, int stamp)
+	{
+		if (slab.getInt(offset) != stamp)
+			return null;
+		int length = slab.getInt(offset + 4);
+		if (!fits(length))
+			return null; // Torn read of a block that is being reused. The caller validates and retries.
+		byte[] payload = new byte[length];
+		ByteBuffer dup = slab.duplicate();
+		dup.position(offset + HEADER_SIZE);
+		dup.get(payload);
+		return payload;
+	}
+
+	/**
+	 * Compares the payload of the block at the given address with the given bytes. The caller must guarantee that
+	 * the block is not freed concurrently.
+	 *
+	 * @param address The block address
+	 * @param other The bytes to compare with
+	 * @return true if the payload is equal to other
+	 */
+	boolean contentEquals(long address, byte[] other)
+	{
+		ByteBuffer slab = slabsView[slabIndex(address)];
+		int offset = offset(address);
+		if (slab == null || slab.getInt(offset + 4) != other.length)
+			return false;
+		int pos = offset + HEADER_SIZE;
+		for (int i = 0; i < other.length; i++)
+		{
+			if (slab.get(pos + i) != other[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the payload at the given address. The caller must guarantee that the block is not freed concurrently.
+	 *
+	 * @param address The block address
+	 * @return The payload
+	 */
+	byte[] readUnchecked(long address)
+	{
+		ByteBuffer slab = slabsView[slabIndex(address)];
+		int offset = offset(address);
+		byte[] payload = new byte[slab.getInt(offset + 4)];
+		ByteBuffer dup = slab.duplicate();
+		dup.position(offset + HEADER_SIZE);
+		dup.get(payload);
+		return payload;
+	}
+
+	/**
+	 * Adds a new slab that is owned by the given arena.
+	 *
+	 * @return The index of the new slab
+	 */
+	private int addSlab(Arena owner)
+	{
+		ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+		synchronized (slabs)
+		{
+			slabs.add(slab);
+			slabLocks.add(new StampedLock());
+			slabOwners.add(owner);
+			slabsView = slabs.toArray(new ByteBuffer[slabs.size()]);
+			slabLocksView = slabLocks.toArray(new StampedLock[slabLocks.size()]);
+			slabOwnersView = slabOwners.toArray(new Arena[slabOwners.size()]);
+			allocatedBytes += slabSize;
+			return slabs.size() - 1;
+		}
+	}
+
+	private static long address(int slabIndex, int offset)
+	{
+		return ((long)slabIndex << 32) | offset;
+	}
+
+	private static int slabIndex(long address)
+	{
+		return (int)(address >>> 32);
+	}
+
+	private static int offset(long address)
+	{
+		return (int)address;
+	}
+
+	/**
+	 * @return The number of bytes currently allocated for blocks, including headers, size class rounding and retired blocks
+	 */
+	public long usedBytes()
+	{
+		long usedBytes = 0;
+		for (Arena arena : arenas)
+		{
+			usedBytes += arena.usedBytes;
+		}
+		return usedBytes;
+	}
+
+	/**
+	 * @return The number of bytes of direct memory that this allocator has requested from the JVM
+	 */
+	public long allocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "OffHeapSlabAllocator [slabSize=" + slabSize + ", arenas=" + arenas.length + ", slabs=" + slabsView.length
+				+ ", usedBytes=" + usedBytes() + ", allocatedBytes=" + allocatedBytes + "]";
+	}
+
+	/**
+	 * An arena owns a set of slabs, and the free lists and retired blocks of these slabs. All methods must be called
+	 * while holding the lock on the arena. {@link #usedBytes} may be read without lock.
+	 */
+	private final class Arena
+	{
+		private final long[][] freeLists;
+		private final int[] freeListSizes;
+
+		private int currentSlab = -1;
+		private int currentOffset = 0;
+		// Stamps only need to be unique per block address, and each address belongs to exactly one arena
+		private int stampGenerator = 1;
+
+		// Ring buffer of retired blocks, ordered by retire time
+		private long[] retiredAddresses = new long[16];
+		private int[] retiredStamps = new int[16];
+		private long[] retiredNanos = new long[16];
+		private int retiredHead = 0;
+		private int retiredCount = 0;
+
+		volatile long usedBytes = 0;
+
+		Arena(int classes)
+		{
+			freeLists = new long[classes][];
+			freeListSizes = new int[classes];
+			for (int i = 0; i < classes; i++)
+			{
+				freeLists[i] = new long[16];
+			}
+		}
+
+		/**
+		 * Allocates a raw block of the given size class.
+		 */
+		long allocate(int sizeClass)
+		{
+			int size = freeListSizes[sizeClass];
+			if (size > 0)
+			{
+				freeListSizes[sizeClass] = size - 1;
+				return freeLists[sizeClass][size - 1];
+			}
+
+			int blockSize = classSize(sizeClass);
+			if (currentSlab < 0 || currentOffset + blockSize > slabSize)
+			{
+				// Recycle the tail of the current slab, then start a new slab
+				if (currentSlab >= 0)
+					carveRemainder();
+				currentSlab = addSlab(this);
+				currentOffset = 0;
+			}
+
+			long address = address(currentSlab, currentOffset);
+			currentOffset += blockSize;
+			return address;
+		}
+
+		/**
+		 * Puts the unused tail of the current slab into the free lists, largest blocks first.
+		 */
+		private void carveRemainder()
+		{
+			ByteBuffer slab = slabsView[currentSlab];
+			while (slabSize - currentOffset >= MIN_BLOCK_SIZE)
+			{
+				int remaining = slabSize - currentOffset;
+				int sizeClass = sizeClass(remaining);
+				if (classSize(sizeClass) > remaining)
+					sizeClass--;
+				slab.putInt(currentOffset, nextStamp()); // Not a valid stamp of any stored block
+				pushFree(sizeClass, address(currentSlab, currentOffset));
+				currentOffset += classSize(sizeClass);
+			}
+		}
+
+		boolean freeIfStampMatches(long address, int stamp)
+		{
+			ByteBuffer slab = slabsView[slabIndex(address)];
+			if (slab == null || slab.getInt(offset(address)) != stamp)
+				return false; // already freed or released
+			freeBlock(address, slab.getInt(offset(address) + 4));
+			return true;
+		}
+
+		/**
+		 * Invalidates the stamp of the block and puts it on the free list.
+		 */
+		void freeBlock(long address, int length)
+		{
+			int slabIndex = slabIndex(address);
+			int sizeClass = sizeClass(length + HEADER_SIZE);
+			StampedLock lock = slabLocksView[slabIndex];
+			long writeStamp = lock.writeLock();
+			try
+			{
+				slabsView[slabIndex].putInt(offset(address), nextStamp());
+			}
+			finally
+			{
+				lock.unlockWrite(writeStamp);
+			}
+			pushFree(sizeClass, address);
+			usedBytes -= classSize(sizeClass);
+		}
+
+		/**
+		 * Forgets all blocks and retired blocks, after the slabs of this arena have been released
+		 */
+		void reset()
+		{
+			Arrays.fill(freeListSizes, 0);
+			currentSlab = -1;
+			currentOffset = 0;
+			retiredHead = 0;
+			retiredCount = 0;
+			usedBytes = 0;
+		}
+
+		/**
+		 * Frees all retired blocks whose grace period has passed.
+		 */
+		void freeRetired(long nowNanos)
+		{
+			while (retiredCount > 0 && nowNanos - retiredNanos[retiredHead] >= RETIRE_GRACE_NANOS)
+			{
+				freeOldestRetired();
+			}
+		}
+
+		void addRetired(long address, int stamp, long nowNanos)
+		{
+			if (retiredCount == retiredAddresses.length)
+			{
+				if (retiredCount == MAX_RETIRED)
+					freeOldestRetired();
+				else
+					growRetired();
+			}
+			int tail = (retiredHead + retiredCount) & (retiredAddresses.length - 1);
+			retiredAddresses[tail] = address;
+			retiredStamps[tail] = stamp;
+			retiredNanos[tail] = nowNanos;
+			retiredCount++;
+		}
+
+		private void freeOldestRetired()
+		{
+			freeIfStampMatches(retiredAddresses[retiredHead], retiredStamps[retiredHead]);
+			retiredHead = (retiredHead + 1) & (retiredAddresses.length - 1);
+			retiredCount--;
+		}
+
+		/**
+		 * Doubles the capacity of the retired ring, moving the entries to the start of the new arrays.
+		 */
+		private void growRetired()
+		{
+			int capacity = retiredAddresses.length;
+			long[] addresses = new long[capacity * 2];
+			int[] stamps = new int[capacity * 2];
+			long[] nanos = new long[capacity * 2];
+			for (int i = 0; i < retiredCount; i++)
+			{
+				int index = (retiredHead + i) & (capacity - 1);
+				addresses[i] = retiredAddresses[index];
+				stamps[i] = retiredStamps[index];
+				nanos[i] = retiredNanos[index];
+			}
+			retiredAddresses = addresses;
+			retiredStamps = stamps;
+			retiredNanos = nanos;
+			retiredHead = 0;
+		}
+
+		private void pushFree(int sizeClass, long address)
+		{
+			int size = freeListSizes[sizeClass];
+			long[] list = freeLists[sizeClass];
+			if (size == list.length)
+			{
+				list = Arrays.copyOf(list, size * 2);
+				freeLists[sizeClass] = list;
+			}
+			list[size] = address;
+			freeListSizes[sizeClass] = size + 1;
+		}
+
+		int nextStamp()
+		{
+			int stamp = stampGenerator++;
+			if (stamp == 0)
+				stamp = stampGenerator++; // 0 is the stamp of never written memory
+			return stamp;
+		}
+	}
+}
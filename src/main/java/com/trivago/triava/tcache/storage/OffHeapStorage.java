@@ -0,0 +1,117 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.trivago.triava.tcache.TCacheHolder;
+import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.core.StorageBackend;
+
+/**
+ * Implements a storage that keeps the serialized keys and values in direct memory, see {@link OffHeapConcurrentMap}.
+ * Only caches that store by value can use this storage, as only serialized data can be moved off-heap.
+ * <p>
+ * The size of the direct memory slabs and the number of arenas are derived from the expected amount of data, that is
+ * {@link Builder#getMaxElements()} times {@link Builder#getExpectedEntryBytes()}. The direct memory is returned to the JVM
+ * when the Cache is closed.
+ *  
+ * @author cesken
+ *
+ * @param <K> The key class
+ * @param <V> The value class
+ */
+public class OffHeapStorage<K,V> implements StorageBackend<K, V>
+{
+	/**
+	 * The maximum size of the direct memory chunks that are requested from the JVM
+	 */
+	public static final int MAX_SLAB_SIZE = 32 * 1024 * 1024;
+	/**
+	 * The minimum size of the direct memory chunks. Keys bigger than the slab size cannot be stored, and values bigger than it
+	 * stay on the heap.
+	 */
+	public static final int MIN_SLAB_SIZE = 64 * 1024;
+	/**
+	 * The expected entry size, if {@link Builder#setExpectedEntryBytes(int)} is not set
+	 */
+	public static final int DEFAULT_EXPECTED_ENTRY_BYTES = 256;
+	/**
+	 * The expected data of an arena is spread over this many slabs, so that the partly used last slab of an arena wastes at
+	 * most about 1/SLABS_PER_ARENA of it.
+	 */
+	private static final int SLABS_PER_ARENA = 4;
+	/**
+	 * Caches with less expected data than this per arena use fewer arenas, as each used arena holds at least one slab
+	 */
+	private static final long MIN_BYTES_PER_ARENA = 1024 * 1024;
+
+	@Override
+	public ConcurrentMap<K, TCacheHolder<V>> createMap(Builder<K,V> builder, double evictionMapSizeFactor)
+	{
+		if (!builder.getCacheWriteMode().isStoreByValue())
+		{
+			throw new IllegalArgumentException("HashImplementation=" + builder.getHashImplementation()
+				+ " requires a CacheWriteMode that stores by value, but is " + builder.getCacheWriteMode());
+		}
+
+		int requiredMapSize = (int) (builder.getMaxElements() + evictionMapSizeFactor);
+		int entryBytes = builder.getExpectedEntryBytes() > 0 ? builder.getExpectedEntryBytes() : DEFAULT_EXPECTED_ENTRY_BYTES;
+		long expectedBytes = (long)builder.getMaxElements() * entryBytes;
+		// Each arena allocates its own slabs, so do not use more arenas than Threads that can write concurrently
+		int maxArenas = Math.min(Runtime.getRuntime().availableProcessors(), builder.getConcurrencyLevel());
+		int arenaCount = arenaCount(expectedBytes, maxArenas);
+		OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(slabSize(expectedBytes, arenaCount), arenaCount);
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ConcurrentMap<K, TCacheHolder<V>> map = (ConcurrentMap) new OffHeapConcurrentMap<V>(allocator, requiredMapSize,
+				builder.getMapConcurrencyLevel());
+		return map;
+	}
+
+	/**
+	 * Returns the number of arenas for the given amount of expected data. Small caches use a single arena.
+	 * 
+	 * @param expectedBytes The expected amount of data in bytes
+	 * @param maxArenas The maximum number of arenas
+	 * @return The number of arenas, between 1 and maxArenas
+	 */
+	static int arenaCount(long expectedBytes, int maxArenas)
+	{
+		return (int) Math.max(1, Math.min(maxArenas, expectedBytes / MIN_BYTES_PER_ARENA));
+	}
+
+	/**
+	 * Returns the slab size for the given amount of expected data and number of arenas. The result is a power of two between
+	 * {@link #MIN_SLAB_SIZE} and {@link #MAX_SLAB_SIZE}.
+	 * 
+	 * @param expectedBytes The expected amount of data in bytes
+	 * @param arenaCount The number of arenas
+	 * @return The slab size in bytes
+	 */
+	static int slabSize(long expectedBytes, int arenaCount)
+	{
+		long bytesPerSlab = expectedBytes / arenaCount / SLABS_PER_ARENA;
+		if (bytesPerSlab <= MIN_SLAB_SIZE)
+			return MIN_SLAB_SIZE;
+		if (bytesPerSlab >= MAX_SLAB_SIZE)
+			return MAX_SLAB_SIZE;
+		int slabSize = Integer.highestOneBit((int)bytesPerSlab);
+		return slabSize == bytesPerSlab ? slabSize : slabSize << 1;
+	}
+
+}
@@ -0,0 +1,254 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.util;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.trivago.triava.tcache.core.CacheSerializer;
+
+/**
+ * A {@link CacheSerializer} that deflates the output of another serializer, if it is bigger than a threshold. It is used for
+ * {@link com.trivago.triava.tcache.CacheWriteMode#SerializeCompressed}. Deflater and Inflater instances are reused per Thread.
+ * <p>
+ * The first byte of the serialized form tells whether the data is compressed. Compressed data continues with the uncompressed length
+ * as 4 byte big-endian int, followed by the deflated data. Data that does not get smaller by compressing is stored uncompressed.
+ * Uncompressed data is copied once when serializing, and read in place when deserializing, see
+ * {@link CacheSerializer#deserialize(byte[], int)}.
+ * <p>
+ * The serializer counts the bytes and time spent on compression, see {@link #compressionRatio()}.
+ *
+ * @author cesken
+ *
+ * @param <T> The class of the objects to serialize
+ */
+public class CompressingSerializer<T> implements CacheSerializer<T>
+{
+	private static final long serialVersionUID = 3318047785230953219L;
+
+	static final byte FORMAT_PLAIN = 0;
+	static final byte FORMAT_DEFLATED = 1;
+	private static final int DEFLATED_HEADER_SIZE = 5;
+	private static final int MAX_REUSED_BUFFER_SIZE = 256 * 1024;
+
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater();
+		}
+	};
+
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+	{
+		@Override
+		protected Inflater initialValue()
+		{
+			return new Inflater();
+		}
+	};
+
+	private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>()
+	{
+		@Override
+		protected byte[] initialValue()
+		{
+			return new byte[4096];
+		}
+	};
+
+	private final CacheSerializer<T> delegate;
+	private final int threshold;
+
+	private final LongAdder uncompressedBytes = new LongAdder();
+	private final LongAdder storedBytes = new LongAdder();
+	private final LongAdder compressCount = new LongAdder();
+	private final LongAdder compressNanos = new LongAdder();
+	private final LongAdder decompressCount = new LongAdder();
+	private final LongAdder decompressNanos = new LongAdder();
+
+	/**
+	 * Creates a compressing serializer
+	 *
+	 * @param delegate The serializer that converts the objects to bytes
+	 * @param threshold The size in bytes above which the serialized data is compressed
+	 */
+	public CompressingSerializer(CacheSerializer<T> delegate, int threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+		this.delegate = delegate;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public byte[] serialize(T object) throws IOException
+	{
+		byte[] serialized = delegate.serialize(object);
+		byte[] stored = null;
+		if (serialized.length > threshold)
+		{
+			long start = System.nanoTime();
+			stored = deflate(serialized);
+			compressNanos.add(System.nanoTime() - start);
+			compressCount.increment();
+		}
+		if (stored == null)
+		{
+			stored = new byte[serialized.length + 1];
+			stored[0] = FORMAT_PLAIN;
+			System.arraycopy(serialized, 0, stored, 1, serialized.length);
+		}
+
+		uncompressedBytes.add(serialized.length);
+		storedBytes.add(stored.length);
+		return stored;
+	}
+
+	@Override
+	public T deserialize(byte[] stored) throws IOException, ClassNotFoundException
+	{
+		if (stored.length == 0)
+			throw new StreamCorruptedException("Serialized data is empty");
+
+		switch (stored[0])
+		{
+			case FORMAT_PLAIN:
+				return delegate.deserialize(stored, 1);
+			case FORMAT_DEFLATED:
+				long start = System.nanoTime();
+				byte[] serialized = inflate(stored);
+				decompressNanos.add(System.nanoTime() - start);
+				decompressCount.increment();
+				return delegate.deserialize(serialized);
+			default:
+				throw new StreamCorruptedException("Unknown compression format: " + stored[0]);
+		}
+	}
+
+	/**
+	 * Deflates the data.
+	 *
+	 * @param data The data to deflate
+	 * @return The stored form, or null if compressing does not make the data smaller
+	 */
+	private static byte[] deflate(byte[] data)
+	{
+		int maxLength = data.length + DEFLATED_HEADER_SIZE - 1; // Must be smaller than the plain format
+		byte[] buffer = buffers.get();
+		if (buffer.length < maxLength)
+		{
+			buffer = new byte[maxLength];
+			if (maxLength <= MAX_REUSED_BUFFER_SIZE)
+				buffers.set(buffer);
+		}
+
+		Deflater deflater = deflaters.get();
+		try
+		{
+			deflater.setInput(data);
+			deflater.finish();
+			int length = DEFLATED_HEADER_SIZE;
+			while (!deflater.finished() && length < maxLength)
+			{
+				length += deflater.deflate(buffer, length, maxLength - length);
+			}
+			if (!deflater.finished())
+				return null; // Not compressible
+
+			buffer[0] = FORMAT_DEFLATED;
+			buffer[1] = (byte)(data.length >>> 24);
+			buffer[2] = (byte)(data.length >>> 16);
+			buffer[3] = (byte)(data.length >>> 8);
+			buffer[4] = (byte)data.length;
+			return Arrays.copyOf(buffer, length);
+		}
+		finally
+		{
+			deflater.reset();
+		}
+	}
+
+	private static byte[] inflate(byte[] stored) throws IOException
+	{
+		if (stored.length < DEFLATED_HEADER_SIZE)
+			throw new StreamCorruptedException("Invalid length for compressed data: " + stored.length);
+		int length = ((stored[1] & 0xFF) << 24) | ((stored[2] & 0xFF) << 16) | ((stored[3] & 0xFF) << 8) | (stored[4] & 0xFF);
+		byte[] data = new byte[length];
+
+		Inflater inflater = inflaters.get();
+		try
+		{
+			inflater.setInput(stored, DEFLATED_HEADER_SIZE, stored.length - DEFLATED_HEADER_SIZE);
+			int inflated = 0;
+			while (inflated < length && !inflater.finished())
+			{
+				int count = inflater.inflate(data, inflated, length - inflated);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				inflated += count;
+			}
+			if (inflated != length)
+				throw new StreamCorruptedException("Compressed data is truncated: expected=" + length + ", inflated=" + inflated);
+			return data;
+		}
+		catch (DataFormatException exc)
+		{
+			throw new IOException("Cannot inflate compressed data", exc);
+		}
+		finally
+		{
+			inflater.reset();
+		}
+	}
+
+	/**
+	 * Returns the compression ratio of all data serialized so far, as uncompressed size divided by stored size. For example 4.0
+	 * means that the stored data takes a quarter of the space. Data below the threshold is included, so this is the overall effect.
+	 *
+	 * @return The compression ratio, or 1.0 if nothing was serialized yet
+	 */
+	public float compressionRatio()
+	{
+		long stored = storedBytes.sum();
+		return stored == 0 ? 1.0f : (float)((double)uncompressedBytes.sum() / stored);
+	}
+
+	/**
+	 * @return The average time in nanoseconds for compressing a value, or 0 if no value was compressed yet
+	 */
+	public long averageCompressNanos()
+	{
+		long count = compressCount.sum();
+		return count == 0 ? 0 : compressNanos.sum() / count;
+	}
+
+	/**
+	 * @return The average time in nanoseconds for decompressing a value, or 0 if no value was decompressed yet
+	 */
+	public long averageDecompressNanos()
+	{
+		long count = decompressCount.sum();
+		return count == 0 ? 0 : decompressNanos.sum() / count;
+	}
+}
@@ -25,44 +25,79 @@ import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 
 /**
- * Methods that help serializing and deserializing.
+ * Methods that help serializing and deserializing. Serializing reuses a per-thread output buffer, so only the resulting
+ * byte array is allocated.
  * @author cesken
  *
  */
 public class Serializing
 {
+	private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<ReusableOutputStream> outputStreams = new ThreadLocal<ReusableOutputStream>()
+	{
+		@Override
+		protected ReusableOutputStream initialValue()
+		{
+			return new ReusableOutputStream();
+		}
+	};
+
 	public static byte[] toBytearray(Object obj) throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		ObjectOutput out = null;
+		return toBytearray(obj, null);
+	}
+
+	/**
+	 * Serializes the given object via Java serialization. The result starts with the given prefix, followed by the serialized object.
+	 * 
+	 * @param obj The object to serialize
+	 * @param prefix The prefix. null is treated like an empty prefix.
+	 * @return The prefix and the serialized object
+	 * @throws IOException If the object cannot be serialized
+	 */
+	public static byte[] toBytearray(Object obj, byte[] prefix) throws IOException
+	{
+		ReusableOutputStream bos = outputStreams.get();
+		if (bos.inUse)
+		{
+			// Reentrant call, e.g. from a writeObject() method that serializes itself into another cache
+			bos = new ReusableOutputStream();
+		}
+
+		bos.inUse = true;
 		try
 		{
-		  out = new ObjectOutputStream(bos);   
-		  out.writeObject(obj);
-		  return bos.toByteArray();
+			if (prefix != null)
+				bos.write(prefix);
+			ObjectOutput out = new ObjectOutputStream(bos);
+			out.writeObject(obj);
+			out.flush();
+			return bos.toByteArray();
 		}
 		finally
 		{
-		  try
-		  {
-		    if (out != null)
-		    {
-		      out.close();
-		    }
-		  }
-		  catch (IOException ex) {}
-
-		  try
-		  {
-		    bos.close();
-		  }
-		  catch (IOException ex) {}
+			bos.release();
 		}
 	}
 	
 	public static Object fromBytearray(byte[] serialized) throws IOException, ClassNotFoundException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(serialized);
+		return fromBytearray(serialized, 0);
+	}
+
+	/**
+	 * Deserializes an object via Java serialization.
+	 * 
+	 * @param serialized The serialized data
+	 * @param offset The offset in serialized, where the serialized object starts
+	 * @return The deserialized object
+	 * @throws IOException If the data cannot be deserialized
+	 * @throws ClassNotFoundException If the class of the serialized object cannot be found
+	 */
+	public static Object fromBytearray(byte[] serialized, int offset) throws IOException, ClassNotFoundException
+	{
+		ByteArrayInputStream bis = new ByteArrayInputStream(serialized, offset, serialized.length - offset);
 		ObjectInput in = null;
 		try {
 		  in = new ObjectInputStream(bis);
@@ -70,12 +105,6 @@ public class Serializing
 		}
 		finally
 		{
-		  try
-		  {
-		    bis.close();
-		  }
-		  catch (IOException ex) {}
-		  
 		  try
 		  {
 		    if (in != null)
@@ -87,5 +116,24 @@ public class Serializing
 		}
 	}
 
+	/**
+	 * A ByteArrayOutputStream that can be reused by one Thread. Closing it has no effect, and too big buffers are not kept.
+	 */
+	private static final class ReusableOutputStream extends ByteArrayOutputStream
+	{
+		boolean inUse = false;
+
+		ReusableOutputStream()
+		{
+			super(256);
+		}
 
+		void release()
+		{
+			if (buf.length > MAX_REUSED_BUFFER_SIZE)
+				buf = new byte[256];
+			reset();
+			inUse = false;
+		}
+	}
 }
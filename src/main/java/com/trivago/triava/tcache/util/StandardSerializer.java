@@ -0,0 +1,224 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.util;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.trivago.triava.tcache.core.CacheSerializer;
+
+/**
+ * The default {@link CacheSerializer}. String, the primitive wrappers and byte[] are written in a compact binary format
+ * without the stream header and class descriptors of Java serialization. All other objects are serialized via Java serialization,
+ * see {@link Serializing}.
+ * <p>
+ * The first byte of the serialized form is a tag that identifies the format. Strings are written with one byte per char if all
+ * chars fit in ISO-8859-1, otherwise with two bytes per char. Numbers are written big-endian. Float and Double NaN values are written in
+ * their canonical form, so that equal keys always give equal bytes.
+ *
+ * @author cesken
+ */
+public final class StandardSerializer implements CacheSerializer<Object>
+{
+	private static final long serialVersionUID = -2950134627563014795L;
+
+	private static final StandardSerializer INSTANCE = new StandardSerializer();
+
+	static final byte TAG_JAVA = 0;
+	static final byte TAG_STRING_LATIN1 = 1;
+	static final byte TAG_STRING_UTF16 = 2;
+	static final byte TAG_INTEGER = 3;
+	static final byte TAG_LONG = 4;
+	static final byte TAG_SHORT = 5;
+	static final byte TAG_BYTE = 6;
+	static final byte TAG_CHARACTER = 7;
+	static final byte TAG_BOOLEAN = 8;
+	static final byte TAG_FLOAT = 9;
+	static final byte TAG_DOUBLE = 10;
+	static final byte TAG_BYTE_ARRAY = 11;
+
+	private static final byte[] JAVA_PREFIX = { TAG_JAVA };
+
+	private StandardSerializer()
+	{
+	}
+
+	/**
+	 * Returns the StandardSerializer, typed for the caller.
+	 *
+	 * @param <T> The class of the objects to serialize
+	 * @return The StandardSerializer
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CacheSerializer<T> instance()
+	{
+		return (CacheSerializer<T>)(CacheSerializer<?>)INSTANCE;
+	}
+
+	@Override
+	public byte[] serialize(Object object) throws IOException
+	{
+		Class<?> clazz = object.getClass();
+		if (clazz == String.class)
+			return serializeString((String)object);
+		if (clazz == Integer.class)
+			return writeLong(TAG_INTEGER, (Integer)object, 4);
+		if (clazz == Long.class)
+			return writeLong(TAG_LONG, (Long)object, 8);
+		if (clazz == byte[].class)
+		{
+			byte[] bytes = (byte[])object;
+			byte[] serialized = new byte[bytes.length + 1];
+			serialized[0] = TAG_BYTE_ARRAY;
+			System.arraycopy(bytes, 0, serialized, 1, bytes.length);
+			return serialized;
+		}
+		if (clazz == Short.class)
+			return writeLong(TAG_SHORT, (Short)object, 2);
+		if (clazz == Byte.class)
+			return writeLong(TAG_BYTE, (Byte)object, 1);
+		if (clazz == Character.class)
+			return writeLong(TAG_CHARACTER, (Character)object, 2);
+		if (clazz == Boolean.class)
+			return writeLong(TAG_BOOLEAN, (Boolean)object ? 1 : 0, 1);
+		if (clazz == Float.class)
+			return writeLong(TAG_FLOAT, Float.floatToIntBits((Float)object), 4);
+		if (clazz == Double.class)
+			return writeLong(TAG_DOUBLE, Double.doubleToLongBits((Double)object), 8);
+
+		return Serializing.toBytearray(object, JAVA_PREFIX);
+	}
+
+	@Override
+	public Object deserialize(byte[] serialized) throws IOException, ClassNotFoundException
+	{
+		return deserialize(serialized, 0);
+	}
+
+	@Override
+	public Object deserialize(byte[] serialized, int offset) throws IOException, ClassNotFoundException
+	{
+		if (serialized.length <= offset)
+			throw new StreamCorruptedException("Serialized data is empty");
+
+		switch (serialized[offset])
+		{
+			case TAG_STRING_LATIN1:
+				return new String(serialized, offset + 1, serialized.length - offset - 1, StandardCharsets.ISO_8859_1);
+			case TAG_STRING_UTF16:
+				return deserializeUtf16(serialized, offset);
+			case TAG_INTEGER:
+				return (int)readLong(serialized, offset, 4);
+			case TAG_LONG:
+				return readLong(serialized, offset, 8);
+			case TAG_BYTE_ARRAY:
+				return Arrays.copyOfRange(serialized, offset + 1, serialized.length);
+			case TAG_SHORT:
+				return (short)readLong(serialized, offset, 2);
+			case TAG_BYTE:
+				return (byte)readLong(serialized, offset, 1);
+			case TAG_CHARACTER:
+				return (char)readLong(serialized, offset, 2);
+			case TAG_BOOLEAN:
+				return readLong(serialized, offset, 1) != 0;
+			case TAG_FLOAT:
+				return Float.intBitsToFloat((int)readLong(serialized, offset, 4));
+			case TAG_DOUBLE:
+				return Double.longBitsToDouble(readLong(serialized, offset, 8));
+			case TAG_JAVA:
+				return Serializing.fromBytearray(serialized, offset + 1);
+			default:
+				throw new StreamCorruptedException("Unknown serialization tag: " + serialized[offset]);
+		}
+	}
+
+	private static byte[] serializeString(String string)
+	{
+		int length = string.length();
+		byte[] serialized = new byte[length + 1];
+		serialized[0] = TAG_STRING_LATIN1;
+		for (int i = 0; i < length; i++)
+		{
+			char c = string.charAt(i);
+			if (c > 0xFF)
+				return serializeUtf16(string);
+			serialized[i + 1] = (byte)c;
+		}
+		return serialized;
+	}
+
+	private static byte[] serializeUtf16(String string)
+	{
+		int length = string.length();
+		byte[] serialized = new byte[2 * length + 1];
+		serialized[0] = TAG_STRING_UTF16;
+		for (int i = 0, pos = 1; i < length; i++, pos += 2)
+		{
+			char c = string.charAt(i);
+			serialized[pos] = (byte)(c >>> 8);
+			serialized[pos + 1] = (byte)c;
+		}
+		return serialized;
+	}
+
+	private static String deserializeUtf16(byte[] serialized, int offset) throws StreamCorruptedException
+	{
+		int length = serialized.length - offset;
+		if ((length & 1) == 0)
+			throw new StreamCorruptedException("Invalid length for UTF-16 String: " + length);
+		char[] chars = new char[(length - 1) / 2];
+		for (int i = 0, pos = offset + 1; i < chars.length; i++, pos += 2)
+		{
+			chars[i] = (char)(((serialized[pos] & 0xFF) << 8) | (serialized[pos + 1] & 0xFF));
+		}
+		return new String(chars);
+	}
+
+	private static byte[] writeLong(byte tag, long value, int bytes)
+	{
+		byte[] serialized = new byte[bytes + 1];
+		serialized[0] = tag;
+		for (int pos = bytes; pos > 0; pos--)
+		{
+			serialized[pos] = (byte)value;
+			value >>>= 8;
+		}
+		return serialized;
+	}
+
+	private static long readLong(byte[] serialized, int offset, int bytes) throws StreamCorruptedException
+	{
+		int length = serialized.length - offset;
+		if (length != bytes + 1)
+			throw new StreamCorruptedException("Invalid length for tag " + serialized[offset] + ": " + length);
+		long value = 0;
+		for (int pos = offset + 1; pos <= offset + bytes; pos++)
+		{
+			value = (value << 8) | (serialized[pos] & 0xFF);
+		}
+		// Sign-extend to the original width
+		int shift = 64 - 8 * bytes;
+		return (value << shift) >> shift;
+	}
+
+	private Object readResolve()
+	{
+		return INSTANCE;
+	}
+}
@@ -0,0 +1,65 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the WeakHashInterner
+ * 
+ * @author cesken
+ *
+ */
+public class WeakHashInternerTest
+{
+	@Test
+	public void testInterning()
+	{
+		WeakHashInterner<String> interner = new WeakHashInterner<>();
+		String first = new String("EUR");
+		String second = new String("EUR");
+		assertNotSame(first, second);
+
+		assertSame(first, interner.get(first));
+		assertSame(first, interner.get(second));
+		assertEquals(null, interner.get(null));
+		assertEquals(1, interner.size());
+	}
+
+	@Test
+	public void testCollectedValuesArePurged() throws InterruptedException
+	{
+		WeakHashInterner<String> interner = new WeakHashInterner<>();
+		for (int i = 0; i < 1000; i++)
+		{
+			interner.get(new String("value" + i));
+		}
+
+		// Nobody references the values, so the GC can reclaim them
+		for (int attempt = 0; attempt < 50 && interner.size() > 0; attempt++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue("Values not purged, size=" + interner.size(), interner.size() < 1000);
+	}
+}
@@ -20,6 +20,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
@@ -29,9 +35,15 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import com.trivago.triava.tcache.EvictionPolicy;
+import com.trivago.triava.tcache.JamPolicy;
 import com.trivago.triava.tcache.TCacheFactory;
 import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.core.CacheLoader;
+import com.trivago.triava.tcache.eviction.ClockEviction;
 import com.trivago.triava.tcache.eviction.FreezingEvictor;
+import com.trivago.triava.tcache.eviction.VictimBuffer;
+import com.trivago.triava.tcache.eviction.VictimSelector;
+import com.trivago.triava.tcache.statistics.TCacheStatistics;
 
 /**
  * Tests covering LFU eviction
@@ -175,6 +187,692 @@ public class CacheLimitLFUTest
 		}
 	}
 
+	/**
+	 * Tests that a Cache with a Weigher is limited by the total weight, and not by the number of elements
+	 */
+	@Test
+	public void weightLimit() throws InterruptedException
+	{
+		int maxWeight = 10000;
+		Builder<String, Integer> builder = cacheBuilder("weightLimit", 60, 60, 1000, null);
+		builder.setWeigher((key, value) -> value % 100 + 1).setMaxWeight(maxWeight);
+		Cache<String, Integer> weightCache = builder.build();
+		try
+		{
+			for (int i = 0; i < 5000; i++)
+			{
+				weightCache.put(String.valueOf(i), i);
+			}
+			Thread.sleep(200);
+
+			long totalWeight = weightCache.currentWeight();
+			long expectedWeight = 0;
+			for (AccessTimeObjectHolder<Integer> holder : weightCache.objects.values())
+			{
+				expectedWeight += holder.getWeight();
+			}
+			assertEquals("Running weight total differs from the sum of weights", expectedWeight, totalWeight);
+			// Like with element limits, writes are only blocked at 15% eviction extra space
+			assertTrue("Cache exceeds the maximum weight: " + totalWeight, totalWeight <= maxWeight * 115 / 100);
+			assertTrue("Too few elements in Cache: " + weightCache.size(), weightCache.size() > maxWeight / 100);
+			assertTrue("Cache must evict by weight", weightCache.statistics().getEvictionCount() > 0);
+
+			weightCache.clear();
+			assertEquals(0, weightCache.currentWeight());
+		}
+		finally
+		{
+			weightCache.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void weigherWithoutMaxWeight()
+	{
+		Builder<String, Integer> builder = cacheBuilder("weigherWithoutMaxWeight", 60, 60, 1000, null);
+		builder.setWeigher((key, value) -> 1);
+		builder.build();
+	}
+
+	/**
+	 * Tests that W-TinyLFU adapts when the popular keys change. 70% of the requests go to 800 hot keys, which fit in the Cache.
+	 * After the hot keys change, plain LFU keeps the old hot keys because of their high use count.
+	 */
+	@Test
+	public void wTinyLfuAdaptsToNewHotKeys()
+	{
+		Builder<Integer, Integer> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("wTinyLfuAdaptsToNewHotKeys").setMaxElements(1000).setEvictionPolicy(EvictionPolicy.WTINYLFU);
+		Cache<Integer, Integer> tinyLfuCache = builder.build();
+		try
+		{
+			Random random = new Random(42);
+			hitRate(tinyLfuCache, random, 0, 200000);
+			double hitRate = hitRate(tinyLfuCache, random, 100000, 200000);
+			assertTrue("Hit rate too low after the hot keys changed: " + hitRate, hitRate > 0.5);
+		}
+		finally
+		{
+			tinyLfuCache.close();
+		}
+	}
+
+	/**
+	 * Tests the TinyLFU admission: A scan of keys that are used only once must not displace the frequently used keys.
+	 */
+	@Test
+	public void wTinyLfuIsScanResistant()
+	{
+		Builder<Integer, Integer> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("wTinyLfuIsScanResistant").setMaxElements(1000).setEvictionPolicy(EvictionPolicy.WTINYLFU);
+		Cache<Integer, Integer> tinyLfuCache = builder.build();
+		try
+		{
+			for (int i = 0; i < 500; i++)
+			{
+				tinyLfuCache.put(i, i);
+			}
+			for (int round = 0; round < 5; round++)
+			{
+				for (int i = 0; i < 500; i++)
+				{
+					tinyLfuCache.get(i);
+				}
+			}
+			for (int i = 1000; i < 6000; i++)
+			{
+				tinyLfuCache.put(i, i);
+			}
+
+			int hotKeysPresent = 0;
+			for (int i = 0; i < 500; i++)
+			{
+				if (tinyLfuCache.get(i) != null)
+					hotKeysPresent++;
+			}
+			assertTrue("Scan has displaced the frequently used keys: " + hotKeysPresent, hotKeysPresent >= 450);
+		}
+		finally
+		{
+			tinyLfuCache.close();
+		}
+	}
+
+	/**
+	 * Writes the hot keys 0 to hotKeys-1, reads each of them reads times, and then writes coldWrites new keys.
+	 */
+	private static void writeHotThenColdKeys(Cache<String, Integer> cache, int hotKeys, int reads, int coldWrites)
+	{
+		for (int i = 0; i < hotKeys; i++)
+		{
+			cache.put(String.valueOf(i), i);
+		}
+		for (int round = 0; round < reads; round++)
+		{
+			for (int i = 0; i < hotKeys; i++)
+			{
+				cache.get(String.valueOf(i));
+			}
+		}
+		for (int i = hotKeys; i < hotKeys + coldWrites; i++)
+		{
+			cache.put(String.valueOf(i), i);
+		}
+	}
+
+	/**
+	 * Waits until the Cache has finished evicting, and returns how many of the hot keys 0 to hotKeys-1 are present.
+	 * The keys are looked up in the storage, so that looking them up does not count as use.
+	 */
+	private static int awaitEvictionAndCountHotKeys(Cache<String, Integer> cache, int hotKeys) throws InterruptedException
+	{
+		assertTrue("Eviction did not finish", ((CacheLimit<String, Integer>)cache).awaitEviction(10000));
+		assertTrue("Cache must evict", cache.statistics().getEvictionCount() > 0);
+		int hotKeysPresent = 0;
+		for (int i = 0; i < hotKeys; i++)
+		{
+			if (cache.objects.get(String.valueOf(i)) != null)
+				hotKeysPresent++;
+		}
+		return hotKeysPresent;
+	}
+
+	/**
+	 * Simulates a read-through cache. 70% of the requests go to 800 hot keys starting at hotKeyStart, the rest to 1 million cold keys.
+	 * 
+	 * @return The hit rate
+	 */
+	private static double hitRate(Cache<Integer, Integer> cache, Random random, int hotKeyStart, int requests)
+	{
+		int hits = 0;
+		for (int i = 0; i < requests; i++)
+		{
+			int key = random.nextInt(10) < 7 ? hotKeyStart + random.nextInt(800) : 1000000 + random.nextInt(1000000);
+			if (cache.get(key) != null)
+				hits++;
+			else
+				cache.put(key, key);
+		}
+		return (double)hits / requests;
+	}
+
+	/**
+	 * Tests that sampled eviction keeps the frequently used entries. The victim is the least used entry of the sample and
+	 * the candidate pool, so a hot key is only evicted if all of them are hot.
+	 */
+	@Test
+	public void sampledEviction() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("sampledEviction", 60, 60, 1000, null);
+		builder.setEvictionPolicy(EvictionPolicy.LFU).setEvictionSampleSize(5);
+		Cache<String, Integer> sampledCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(sampledCache, 100, 10, 2000);
+			// Only possible if the sample and the whole candidate pool are hot keys
+			int hotKeysPresent = awaitEvictionAndCountHotKeys(sampledCache, 100);
+			assertTrue("Frequently used entries were evicted: " + hotKeysPresent, hotKeysPresent >= 99);
+		}
+		finally
+		{
+			sampledCache.close();
+		}
+	}
+
+	/**
+	 * Tests that the parallel scan selects exactly like the single threaded scan: Exact LFU evicts no entry that was used.
+	 */
+	@Test
+	public void parallelEviction() throws InterruptedException
+	{
+		int size = 50000;
+		Builder<String, Integer> builder = cacheBuilder("parallelEviction", 60, 60, size, null);
+		builder.setEvictionPolicy(EvictionPolicy.LFU).setEvictionParallelism(2);
+		Cache<String, Integer> parallelCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(parallelCache, 1000, 1, 2 * size);
+			assertEquals("Frequently used entries were evicted", 1000, awaitEvictionAndCountHotKeys(parallelCache, 1000));
+		}
+		finally
+		{
+			parallelCache.close();
+		}
+	}
+
+	/**
+	 * Writers blocked by a full Cache are released after each eviction chunk. None of them must miss the notification and
+	 * stay blocked, also not a single writer that is the only one triggering eviction.
+	 */
+	@Test(timeout = 30000)
+	public void blockedWritersAreReleased() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("blockedWritersAreReleased", 60, 60, 1000, null);
+		builder.setEvictionPolicy(EvictionPolicy.LRU).setJamPolicy(JamPolicy.WAIT);
+		final Cache<String, Integer> jamCache = builder.build();
+		try
+		{
+			for (int i = 0; i < 50000; i++)
+			{
+				jamCache.put("single-" + i, i);
+			}
+
+			Thread[] writers = new Thread[4];
+			for (int t = 0; t < writers.length; t++)
+			{
+				final String prefix = "writer" + t + "-";
+				writers[t] = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						for (int i = 0; i < 50000; i++)
+						{
+							jamCache.put(prefix + i, i);
+						}
+					}
+				};
+				writers[t].start();
+			}
+			for (Thread writer : writers)
+			{
+				writer.join();
+			}
+
+			assertTrue("Cache too big: " + jamCache.size(), jamCache.size() <= 1150);
+		}
+		finally
+		{
+			jamCache.close();
+		}
+	}
+
+	/**
+	 * Tests that a blocked writer is released after the first eviction chunk, and not only at the end of the round. The
+	 * eviction class holds the round after the first chunk, until the writer has written again.
+	 */
+	@Test(timeout = 30000)
+	public void blockedWritersAreReleasedBeforeRoundEnds() throws InterruptedException
+	{
+		final PausingFifoEviction eviction = new PausingFifoEviction();
+		Builder<String, Integer> builder = cacheBuilder("blockedWritersAreReleasedBeforeRoundEnds", 60, 60, 20000, null);
+		builder.setEvictionClass(eviction).setJamPolicy(JamPolicy.WAIT);
+		final Cache<String, Integer> jamCache = builder.build();
+		try
+		{
+			Thread writer = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 30000; i++)
+					{
+						jamCache.put(String.valueOf(i), i);
+						if (eviction.writerBlocked)
+							eviction.writesAfterBlocked.countDown();
+					}
+				}
+			};
+			eviction.writer = writer;
+			writer.start();
+			writer.join();
+
+			assertTrue("Writer was not blocked", eviction.writerBlocked);
+			assertTrue("Writer was not released before the round ended", eviction.writerReleasedDuringRound);
+		}
+		finally
+		{
+			jamCache.close();
+		}
+	}
+
+	/**
+	 * Evicts in insertion order. At the start of the first round, it waits until the writer is blocked. After the first
+	 * chunk of the round has been evicted, it waits until the writer has written again. The writes are counted from the
+	 * time the writer was seen blocked, as the released writer may write before the round is held.
+	 */
+	private static class PausingFifoEviction extends FreezingEvictor<String, Integer> implements VictimSelector<String, Integer>
+	{
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK_SIZE = 1000; // CacheLimit.EVICTION_CHUNK_SIZE
+
+		private final Queue<Entry<String, TCacheHolder<Integer>>> entries = new ConcurrentLinkedQueue<>();
+		private int selected = 0;
+		volatile Thread writer;
+		private boolean roundHeld = false;
+		final CountDownLatch writesAfterBlocked = new CountDownLatch(100);
+		volatile boolean writerBlocked = false;
+		volatile boolean writerReleasedDuringRound = false;
+
+		@Override
+		public long getFreezeValue(String key, TCacheHolder<Integer> holder)
+		{
+			return 0;
+		}
+
+		@Override
+		public void claim()
+		{
+		}
+
+		@Override
+		public void recordAccess(String key)
+		{
+		}
+
+		@Override
+		public void recordInsert(String key, TCacheHolder<Integer> holder)
+		{
+			entries.add(new SimpleImmutableEntry<>(key, holder));
+		}
+
+		@Override
+		public int selectVictims(VictimBuffer<String, Integer> victims)
+		{
+			try
+			{
+				if (selected == 0)
+				{
+					long deadline = System.currentTimeMillis() + 10000;
+					while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+					{
+						Thread.sleep(1);
+					}
+					writerBlocked = writer.getState() == Thread.State.WAITING;
+				}
+				else if (selected >= CHUNK_SIZE && !roundHeld)
+				{
+					roundHeld = true;
+					writerReleasedDuringRound = writesAfterBlocked.await(10, TimeUnit.SECONDS);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			int count = 0;
+			Entry<String, TCacheHolder<Integer>> entry;
+			while (!victims.isFull() && (entry = entries.poll()) != null)
+			{
+				if (entry.getValue().isDetached())
+					continue;
+				victims.add(entry.getKey(), entry.getValue());
+				count++;
+			}
+			selected += count;
+			return count;
+		}
+	}
+
+	/**
+	 * Tests that writers with JamPolicy.ASSIST evict by the eviction policy: They sample like sampled eviction.
+	 */
+	@Test(timeout = 30000)
+	public void writersAssistEviction() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("writersAssistEviction", 60, 60, 1000, null);
+		builder.setEvictionPolicy(EvictionPolicy.LFU).setJamPolicy(JamPolicy.ASSIST);
+		final Cache<String, Integer> assistCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(assistCache, 100, 10, 0);
+
+			Thread[] writers = new Thread[4];
+			for (int t = 0; t < writers.length; t++)
+			{
+				final String prefix = "writer" + t + "-";
+				writers[t] = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						for (int i = 0; i < 20000; i++)
+						{
+							assistCache.put(prefix + i, i);
+						}
+					}
+				};
+				writers[t].start();
+			}
+			for (Thread writer : writers)
+			{
+				writer.join();
+			}
+
+			// Sampling is approximate: The cursor evicts the cold entries where it passes, and leaves runs of hot entries
+			// behind. A sample from such a run evicts a hot entry. Without the policy, no hot key would survive 80000 writes.
+			int hotKeysPresent = awaitEvictionAndCountHotKeys(assistCache, 100);
+			assertTrue("Frequently used entries were evicted: " + hotKeysPresent, hotKeysPresent >= 80);
+		}
+		finally
+		{
+			assistCache.close();
+		}
+	}
+
+	/**
+	 * Tests the second chance of CLOCK: The hot keys were read once, so the hand passes them once without evicting them.
+	 * Fewer entries are evicted than it takes the hand to come around again, so all hot keys must be present.
+	 */
+	@Test
+	public void clockEviction() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("clockEviction", 60, 60, 1000, null);
+		builder.setEvictionPolicy(EvictionPolicy.CLOCK);
+		Cache<String, Integer> clockCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(clockCache, 100, 1, 1000);
+			assertEquals("Referenced entries were evicted", 100, awaitEvictionAndCountHotKeys(clockCache, 100));
+		}
+		finally
+		{
+			clockCache.close();
+		}
+	}
+
+	/**
+	 * Tests that CLOCK evicts referenced entries when the hand comes around again without them being read: The Cache
+	 * must not keep entries forever that were read only once.
+	 */
+	@Test
+	public void clockEvictsUnreadEntriesAfterSecondPass() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("clockSecondPass", 60, 60, 1000, null);
+		builder.setEvictionPolicy(EvictionPolicy.CLOCK);
+		Cache<String, Integer> clockCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(clockCache, 100, 1, 5000);
+			assertEquals("Entries read only once were kept", 0, awaitEvictionAndCountHotKeys(clockCache, 100));
+		}
+		finally
+		{
+			clockCache.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void clockEvictionNotShared()
+	{
+		ClockEviction<String, Integer> clock = new ClockEviction<>();
+		Cache<String, Integer> first = cacheBuilder("clockShared1", 60, 60, 1000, null).setEvictionClass(clock).build();
+		try
+		{
+			cacheBuilder("clockShared2", 60, 60, 1000, null).setEvictionClass(clock).build();
+		}
+		finally
+		{
+			first.close();
+		}
+	}
+
+	@Test
+	public void clockRingDropsReplacedAndRemovedEntries()
+	{
+		ClockEviction<String, Integer> clock = new ClockEviction<>();
+		Cache<String, Integer> clockCache = cacheBuilder("clockRing", 60, 60, 1000, null).setEvictionClass(clock).build();
+		try
+		{
+			// The Cache never gets full, so the ring is never swept. Overwrites and removes must not pile up in the ring.
+			for (int round = 0; round < 100; round++)
+			{
+				for (int i = 0; i < 100; i++)
+				{
+					clockCache.put(String.valueOf(i), round);
+				}
+				clockCache.remove(String.valueOf(round));
+			}
+			assertEquals(0, clockCache.statistics().getEvictionCount());
+			assertTrue("Ring keeps detached holders: " + clock.ringSize(), clock.ringSize() <= 4 * 100);
+		}
+		finally
+		{
+			clockCache.close();
+		}
+	}
+
+	@Test
+	public void expiredEntriesAreEvictedFirst() throws InterruptedException
+	{
+		for (EvictionPolicy policy : new EvictionPolicy[] { EvictionPolicy.LFU, EvictionPolicy.CLOCK })
+		{
+			for (JamPolicy jamPolicy : new JamPolicy[] { JamPolicy.WAIT, JamPolicy.ASSIST })
+			{
+				// Long cleanup interval: Eviction must find the expired entries before the CleanupThread does
+				Builder<String, Integer> builder = cacheBuilder("expiredFirst-" + policy + "-" + jamPolicy, 60, 1, 1000, 60000);
+				builder.setEvictionPolicy(policy).setJamPolicy(jamPolicy);
+				Cache<String, Integer> expiringCache = builder.build();
+				String variant = policy + "/" + jamPolicy;
+				try
+				{
+					for (int i = 0; i < 500; i++)
+					{
+						expiringCache.put("old" + i, i);
+						for (int read = 0; read < 10; read++)
+						{
+							expiringCache.get("old" + i); // Frequently used, but expires soon
+						}
+					}
+					Thread.sleep(2500);
+
+					for (int i = 0; i < 800; i++)
+					{
+						expiringCache.put("new" + i, i);
+					}
+					assertTrue("Eviction did not finish", ((CacheLimit<String, Integer>)expiringCache).awaitEviction(10000));
+
+					int newKeysPresent = 0;
+					for (int i = 0; i < 800; i++)
+					{
+						if (expiringCache.get("new" + i) != null)
+							newKeysPresent++;
+					}
+					assertEquals(variant + ": Valid entries were evicted", 800, newKeysPresent);
+					TCacheStatistics statistics = expiringCache.statistics();
+					assertEquals(variant + ": Expired entries must not count as evictions", 0, statistics.getEvictionCount());
+					int size = expiringCache.size();
+					assertTrue(variant + ": Expired entries were not removed: " + size, size < 1000);
+					assertEquals(variant + ": Each removed entry must count as expired", 1300 - size, statistics.getExpiredCount());
+				}
+				finally
+				{
+					expiringCache.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that entries which can still be served as stale values are ranked by the eviction policy, and not removed as
+	 * expired: The old entries are read often, so LFU evicts the new ones.
+	 */
+	@Test
+	public void staleServableEntriesAreNotExpiredByEviction() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("staleServableEntries", 60, 1, 1000, 60000);
+		builder.setEvictionPolicy(EvictionPolicy.LFU).setMaxStaleness(60, TimeUnit.SECONDS);
+		builder.setLoader(new CacheLoader<String, Integer>()
+		{
+			@Override
+			public Integer load(String key)
+			{
+				return -1;
+			}
+		});
+		Cache<String, Integer> staleCache = builder.build();
+		try
+		{
+			writeHotThenColdKeys(staleCache, 500, 10, 0);
+			Thread.sleep(2500);
+
+			for (int i = 0; i < 800; i++)
+			{
+				staleCache.put("new" + i, i);
+			}
+			assertEquals("Stale entries were evicted", 500, awaitEvictionAndCountHotKeys(staleCache, 500));
+			assertEquals("Stale entries must not count as expired", 0, staleCache.statistics().getExpiredCount());
+		}
+		finally
+		{
+			staleCache.close();
+		}
+	}
+
+	/**
+	 * Tests that each maintenance phase is measured where it happens: Exact selection scans all entries, CLOCK selects
+	 * without a scan, and expiration is measured by the CleanupThread only.
+	 */
+	@Test
+	public void evictionPhasesAreMeasured() throws InterruptedException
+	{
+		for (EvictionPolicy policy : new EvictionPolicy[] { EvictionPolicy.LFU, EvictionPolicy.CLOCK })
+		{
+			Builder<String, Integer> builder = cacheBuilder("phases-" + policy, 60, 60, 1000, null);
+			builder.setEvictionPolicy(policy);
+			Cache<String, Integer> evictingCache = builder.build();
+			try
+			{
+				for (int i = 0; i < 1500; i++)
+				{
+					evictingCache.put(String.valueOf(i), i);
+				}
+				assertTrue("Eviction did not finish", ((CacheLimit<String, Integer>)evictingCache).awaitEviction(10000));
+
+				TCacheStatistics stats = evictingCache.statistics();
+				assertTrue(policy + ": Cache must evict", stats.getEvictionRounds() > 0);
+				assertTrue(policy + ": Eviction selection must be measured", stats.getEvictionSelectNanos() > 0);
+				if (policy == EvictionPolicy.CLOCK)
+					assertEquals("CLOCK selects without scanning all entries", 0, stats.getEvictionScanNanos());
+				else
+					assertTrue("Exact selection must measure its scan", stats.getEvictionScanNanos() > 0);
+				assertEquals(policy + ": Nothing expired", 0, stats.getExpiredCount());
+			}
+			finally
+			{
+				evictingCache.close();
+			}
+		}
+
+		Cache<String, Integer> expiringCache = cacheBuilder("phases-expiration", 60, 1, 1000, 50).build();
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				expiringCache.put(String.valueOf(i), i);
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			while (expiringCache.statistics().getExpiredCount() < 100 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(50);
+			}
+
+			TCacheStatistics stats = expiringCache.statistics();
+			assertEquals("CleanupThread must expire all entries", 100, stats.getExpiredCount());
+			assertTrue("Expiration must be measured", stats.getExpirationScanNanos() > 0);
+			assertEquals("Expiration is no eviction round", 0, stats.getEvictionRounds());
+			assertEquals(0, stats.getEvictionScanNanos());
+			assertEquals(0, stats.getEvictionSelectNanos());
+		}
+		finally
+		{
+			expiringCache.close();
+		}
+	}
+
+	@Test
+	public void adaptiveEvictionSpace() throws InterruptedException
+	{
+		Builder<String, Integer> builder = cacheBuilder("adaptiveEvictionSpace", 60, 60, 1000, null);
+		builder.setEvictionSpacePercentage(50).setAdaptiveEvictionSpace(true);
+		CacheLimit<String, Integer> adaptiveCache = (CacheLimit<String, Integer>)builder.build();
+		try
+		{
+			assertEquals(500, adaptiveCache.evictionSpace());
+			for (int i = 0; i < 20000; i++)
+			{
+				adaptiveCache.put(String.valueOf(i), i);
+			}
+			assertTrue("Eviction did not finish", adaptiveCache.awaitEviction(10000));
+
+			long space = adaptiveCache.evictionSpace();
+			assertTrue("Eviction space out of bounds: " + space, space >= 10 && space <= 1000);
+			assertTrue("Cache must evict", adaptiveCache.statistics().getEvictionCount() > 0);
+			assertTrue("Cache too big: " + adaptiveCache.size(), adaptiveCache.size() <= 1000 + space);
+		}
+		finally
+		{
+			adaptiveCache.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void evictionFreePercentageInvalid()
+	{
+		TCacheFactory.standardFactory().<String, Integer>builder().setEvictionFreePercentage(101);
+	}
+
 	// ----------------------------- CUSTOM EVICITON TEST FOLLOWS BEWLOW -----------------------------
 	
 	/**
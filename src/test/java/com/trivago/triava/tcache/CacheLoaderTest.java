@@ -16,24 +16,50 @@
 
 package com.trivago.triava.tcache;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.Caching;
 import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
 import javax.cache.integration.CacheLoaderException;
 import javax.cache.integration.CompletionListenerFuture;
 import javax.cache.spi.CachingProvider;
 
 import org.junit.Test;
 
+import com.trivago.triava.tcache.core.AsyncCacheLoader;
+import com.trivago.triava.tcache.core.Builder;
+
 public class CacheLoaderTest
 {
 	CacheManager cacheManager;
@@ -81,8 +107,636 @@ public class CacheLoaderTest
 		
 	}
 
-	
-	
+
+	/**
+	 * Tests that a get() of an entry that is due for refresh returns the current value, and that exactly one
+	 * asynchronous reload replaces it and notifies the listeners about the update.
+	 */
+	@Test
+	public void testRefreshAhead() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		final CountDownLatch reloadGate = new CountDownLatch(1);
+		ExecutorService loaderExecutor = Executors.newSingleThreadExecutor();
+
+		// refreshAfter is long enough that the polling below does not make the reloaded entry due again
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testRefreshAhead").setMaxIdleTime(60, TimeUnit.SECONDS);
+		builder.setRefreshAfter(1000, TimeUnit.MILLISECONDS).setLoaderExecutor(loaderExecutor).setReadThrough(true);
+		builder.setStatistics(true);
+		builder.setLoader(new GatedCacheLoader(loadCount, reloadGate, 2));
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+		final List<String> updates = new CopyOnWriteArrayList<>();
+		cache.jsr107cache().registerCacheEntryListener(new MutableCacheEntryListenerConfiguration<Integer, String>(
+				FactoryBuilder.factoryOf(new RecordingUpdatedListener(updates)), null, true, true));
+
+		try
+		{
+			assertEquals("Load 1", cache.get(1)); // Miss => synchronous load
+			Thread.sleep(1200);
+			for (int i = 0; i < 100; i++)
+			{
+				assertEquals("Due for refresh, but the reload is not yet done", "Load 1", cache.get(1));
+			}
+
+			reloadGate.countDown();
+			// The reload thread notifies the listener after it replaced the value, so wait for the notification
+			long deadline = System.currentTimeMillis() + 5000;
+			while (updates.isEmpty() && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals("Load 2", cache.get(1));
+			assertEquals("Only one reload per key may run", 2, loadCount.get());
+			assertEquals(1, cache.statistics().getRefreshCount());
+			assertEquals(1, cache.statistics().getMissCount());
+			assertEquals("The reload must notify about the update", Arrays.asList("1: Load 1 -> Load 2"), updates);
+		}
+		finally
+		{
+			reloadGate.countDown();
+			cache.close();
+			loaderExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that a reloaded entry gets the expiry for creation, like a loaded one. The expiry for update would expire it at once.
+	 */
+	@Test
+	public void testRefreshUsesExpiryForCreation() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testRefreshUsesExpiryForCreation").setReadThrough(true).setStatistics(true);
+		builder.setExpiryPolicyFactory(FactoryBuilder.factoryOf(new ExpireOnUpdatePolicy()));
+		builder.setRefreshAfter(1000, TimeUnit.MILLISECONDS);
+		builder.setLoader(new GatedCacheLoader(loadCount, new CountDownLatch(0), Integer.MAX_VALUE));
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			assertEquals("Load 1", cache.get(1));
+			Thread.sleep(1200);
+			assertEquals("Due for refresh", "Load 1", cache.get(1));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (cache.statistics().getRefreshCount() == 0 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals(1, cache.statistics().getRefreshCount());
+			assertEquals("The reloaded entry must be valid", "Load 2", cache.get(1));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	static class ExpireOnUpdatePolicy implements ExpiryPolicy, Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Duration getExpiryForCreation()
+		{
+			return new Duration(TimeUnit.SECONDS, 60);
+		}
+
+		@Override
+		public Duration getExpiryForAccess()
+		{
+			return null;
+		}
+
+		@Override
+		public Duration getExpiryForUpdate()
+		{
+			return Duration.ZERO;
+		}
+	}
+
+	static class RecordingUpdatedListener implements CacheEntryUpdatedListener<Integer, String>, Serializable
+	{
+		private static final long serialVersionUID = 1L;
+		private final List<String> updates;
+
+		RecordingUpdatedListener(List<String> updates)
+		{
+			this.updates = updates;
+		}
+
+		@Override
+		public void onUpdated(Iterable<CacheEntryEvent<? extends Integer, ? extends String>> events) throws CacheEntryListenerException
+		{
+			for (CacheEntryEvent<? extends Integer, ? extends String> event : events)
+			{
+				updates.add(event.getKey() + ": " + event.getOldValue() + " -> " + event.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Tests that a get() of an expired entry within the grace period returns the stale value while the loader is slow,
+	 * and that exactly one asynchronous reload replaces it.
+	 */
+	@Test
+	public void testStaleWhileRevalidate() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		final CountDownLatch reloadGate = new CountDownLatch(1);
+		ExecutorService loaderExecutor = Executors.newSingleThreadExecutor();
+
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testStaleWhileRevalidate").setMaxIdleTime(60, TimeUnit.SECONDS).setMaxCacheTime(1, TimeUnit.SECONDS);
+		builder.setMaxStaleness(30, TimeUnit.SECONDS).setLoaderExecutor(loaderExecutor).setReadThrough(true);
+		builder.setStatistics(true);
+		builder.setLoader(new GatedCacheLoader(loadCount, reloadGate, 2));
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			assertEquals("Load 1", cache.get(1)); // Miss => synchronous load
+			Thread.sleep(2500); // Expire, and give the cleaner time to run
+			for (int i = 0; i < 100; i++)
+			{
+				assertEquals("Expired, but within the grace period", "Load 1", cache.get(1));
+			}
+			assertEquals(100, cache.statistics().getStaleHitCount());
+			assertEquals(1, cache.statistics().getMissCount());
+
+			reloadGate.countDown();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!"Load 2".equals(cache.get(1)) && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals("Load 2", cache.get(1));
+			assertEquals("Only one reload per key may run", 2, loadCount.get());
+			assertEquals(1, cache.statistics().getRefreshCount());
+		}
+		finally
+		{
+			reloadGate.countDown();
+			cache.close();
+			loaderExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that concurrent misses of the same key share one load.
+	 */
+	@Test
+	public void testCoalescedLoad() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		final CountDownLatch loadGate = new CountDownLatch(1);
+		final com.trivago.triava.tcache.Cache<Integer, String> cache = createGatedCache("CacheLoaderTest-testCoalescedLoad", loadCount, loadGate, 0);
+
+		int threadCount = 8;
+		final AtomicInteger correctValues = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		try
+		{
+			for (int i = 0; i < threadCount; i++)
+			{
+				threads[i] = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						if ("Load 1".equals(cache.get(1)))
+							correctValues.incrementAndGet();
+					}
+				};
+				threads[i].start();
+			}
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (cache.statistics().getCoalescedLoadCount() < threadCount - 1 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals("All but the first thread should wait", threadCount - 1, cache.statistics().getCoalescedLoadCount());
+
+			loadGate.countDown();
+			for (Thread thread : threads)
+			{
+				thread.join(5000);
+			}
+			assertEquals(1, loadCount.get());
+			assertEquals(threadCount, correctValues.get());
+			assertEquals(threadCount, cache.statistics().getMissCount());
+		}
+		finally
+		{
+			loadGate.countDown();
+			cache.close();
+		}
+	}
+
+	/**
+	 * Tests that a get() that waits for the load of an EntryProcessor gets the loaded value, although the load does not
+	 * store it. The EntryProcessor stores it when it completes.
+	 */
+	@Test
+	public void testCoalescedLoadOfEntryProcessor() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		final CountDownLatch loadGate = new CountDownLatch(1);
+		final com.trivago.triava.tcache.Cache<Integer, String> cache = createGatedCache("CacheLoaderTest-testCoalescedLoadOfEntryProcessor", loadCount, loadGate, 0);
+
+		final List<String> values = new CopyOnWriteArrayList<>();
+		Thread processorThread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				values.add(cache.jsr107cache().invoke(1, (entry, args) -> entry.getValue()));
+			}
+		};
+		Thread getThread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				values.add(cache.get(1));
+			}
+		};
+		try
+		{
+			processorThread.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (loadCount.get() == 0 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			getThread.start();
+			while (cache.statistics().getCoalescedLoadCount() == 0 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertEquals("get() should wait for the load of the EntryProcessor", 1, cache.statistics().getCoalescedLoadCount());
+
+			loadGate.countDown();
+			processorThread.join(5000);
+			getThread.join(5000);
+			assertEquals(Arrays.asList("Load 1", "Load 1"), values);
+			assertEquals(1, loadCount.get());
+			assertEquals("Load 1", cache.get(1));
+		}
+		finally
+		{
+			loadGate.countDown();
+			cache.close();
+		}
+	}
+
+	/**
+	 * Tests that a thread that waits for the load of another thread gives up after the load timeout.
+	 */
+	@Test
+	public void testCoalescedLoadTimeout() throws InterruptedException
+	{
+		final AtomicInteger loadCount = new AtomicInteger();
+		final CountDownLatch loadGate = new CountDownLatch(1);
+		final com.trivago.triava.tcache.Cache<Integer, String> cache = createGatedCache("CacheLoaderTest-testCoalescedLoadTimeout", loadCount, loadGate, 100);
+
+		Thread loadingThread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				cache.get(1);
+			}
+		};
+		try
+		{
+			loadingThread.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (loadCount.get() == 0 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+
+			try
+			{
+				cache.get(1);
+				fail("Waiting for the blocked load should time out");
+			}
+			catch (CacheLoaderException expected)
+			{
+				// expected
+			}
+			assertEquals(1, loadCount.get());
+		}
+		finally
+		{
+			loadGate.countDown();
+			loadingThread.join(5000);
+			cache.close();
+		}
+	}
+
+	/**
+	 * Tests that getAsync() does not block on a miss, that concurrent misses share one asynchronous load, and that the
+	 * loaded value is put in the Cache.
+	 */
+	@Test
+	public void testGetAsync() throws Exception
+	{
+		final List<CompletableFuture<String>> loads = new CopyOnWriteArrayList<>();
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testGetAsync").setMaxIdleTime(60, TimeUnit.SECONDS).setReadThrough(true);
+		builder.setStatistics(true);
+		builder.setAsyncLoader(new AsyncCacheLoader<Integer, String>()
+		{
+			@Override
+			public CompletableFuture<String> asyncLoad(Integer key, Executor executor)
+			{
+				if (key == 1)
+				{
+					// Completed later by the test
+					CompletableFuture<String> load = new CompletableFuture<>();
+					loads.add(load);
+					return load;
+				}
+				return CompletableFuture.completedFuture("Async " + key);
+			}
+		});
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			CompletableFuture<String> first = cache.getAsync(1);
+			CompletableFuture<String> second = cache.getAsync(1);
+			assertFalse("Load is not complete", first.isDone() || second.isDone());
+			assertEquals("Concurrent misses share one load", 1, loads.size());
+			assertEquals(1, cache.statistics().getCoalescedLoadCount());
+
+			loads.get(0).complete("Async 1");
+			assertEquals("Async 1", first.get(5, TimeUnit.SECONDS));
+			assertEquals("Async 1", second.get(5, TimeUnit.SECONDS));
+			assertEquals("Loaded value is in the Cache", "Async 1", cache.get(1));
+			assertEquals(1, loads.size());
+
+			Map<Integer, String> values = cache.getAllAsync(new HashSet<>(Arrays.asList(1, 2, 3))).get(5, TimeUnit.SECONDS);
+			assertEquals(3, values.size());
+			assertEquals("Async 2", values.get(2));
+			assertEquals("Async 2", cache.get(2));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	/**
+	 * Tests that getAsync() puts the loaded value on the loader executor instead of the thread that completes the load, and
+	 * that it counts a miss and a hit like get().
+	 */
+	@Test
+	public void testGetAsyncPutsOnLoaderExecutor() throws Exception
+	{
+		final CompletableFuture<String> load = new CompletableFuture<>();
+		final AtomicInteger executions = new AtomicInteger();
+		final ExecutorService delegate = Executors.newSingleThreadExecutor();
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testGetAsyncPutsOnLoaderExecutor").setMaxIdleTime(60, TimeUnit.SECONDS).setReadThrough(true);
+		builder.setStatistics(true);
+		builder.setLoaderExecutor(command -> { executions.incrementAndGet(); delegate.execute(command); });
+		builder.setAsyncLoader((key, executor) -> load);
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			CompletableFuture<String> value = cache.getAsync(1);
+			assertEquals(0, executions.get());
+			load.complete("Async 1");
+			assertEquals("Async 1", value.get(5, TimeUnit.SECONDS));
+			assertEquals("The put must run on the loader executor", 1, executions.get());
+			assertEquals(1, cache.statistics().getMissCount());
+			assertEquals(1, cache.statistics().getHitCount());
+		}
+		finally
+		{
+			cache.close();
+			delegate.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that getAsync() fails if the loader executor rejects the put, and that the failed load is not shared with later
+	 * calls.
+	 */
+	@Test
+	public void testGetAsyncRejectedPut() throws Exception
+	{
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testGetAsyncRejectedPut").setMaxIdleTime(60, TimeUnit.SECONDS).setReadThrough(true);
+		builder.setLoaderExecutor(command -> { throw new RejectedExecutionException("saturated"); });
+		builder.setAsyncLoader((key, executor) -> CompletableFuture.completedFuture("Async " + key));
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			for (int i = 0; i < 2; i++)
+			{
+				try
+				{
+					cache.getAsync(1).get(5, TimeUnit.SECONDS);
+					fail("The rejected put should fail the load");
+				}
+				catch (ExecutionException expected)
+				{
+					assertEquals(CacheLoaderException.class, expected.getCause().getClass());
+				}
+			}
+			assertNull("Nothing was put", cache.peek(1));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	/**
+	 * Tests that loadAll() loads large key sets in parallel chunks on the loader executor, and reports completion and
+	 * failures through the CompletionListener.
+	 */
+	@Test
+	public void testLoadAllChunked() throws Exception
+	{
+		final Set<String> loaderThreads = ConcurrentHashMap.newKeySet();
+		final AtomicInteger loadAllCalls = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testLoadAllChunked").setMaxIdleTime(60, TimeUnit.SECONDS);
+		builder.setLoaderExecutor(executor).setLoadAllChunkSize(100);
+		builder.setLoader(new NumberCacheLoader()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Map<Integer, String> loadAll(Iterable<? extends Integer> keys) throws CacheLoaderException
+			{
+				loadAllCalls.incrementAndGet();
+				loaderThreads.add(Thread.currentThread().getName());
+				for (Integer key : keys)
+				{
+					if (key < 0)
+						throw new CacheLoaderException("Negative key " + key);
+				}
+				return super.loadAll(keys);
+			}
+		});
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+		Cache<Integer, String> jsr107cache = cache.jsr107cache();
+
+		try
+		{
+			Set<Integer> ints = new HashSet<>();
+			for (int i = 0; i < 5000; i++)
+			{
+				ints.add(i);
+			}
+
+			CompletionListenerFuture completionListener = new CompletionListenerFuture();
+			jsr107cache.loadAll(ints, false, completionListener);
+			completionListener.get(10, TimeUnit.SECONDS);
+			assertEquals("One loadAll() per chunk", 50, loadAllCalls.get());
+			assertFalse("Loaded on the executor", loaderThreads.contains(Thread.currentThread().getName()));
+			assertEquals(5000, cache.size());
+			assertEquals("Number 4711", cache.get(4711));
+
+			ints.add(-1);
+			CompletionListenerFuture failingListener = new CompletionListenerFuture();
+			jsr107cache.loadAll(ints, true, failingListener);
+			try
+			{
+				failingListener.get(10, TimeUnit.SECONDS);
+				fail("Failed chunk must be reported to the listener");
+			}
+			catch (ExecutionException e)
+			{
+				assertEquals(CacheLoaderException.class, e.getCause().getClass());
+			}
+		}
+		finally
+		{
+			cache.close();
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that loadAll() with an AsyncCacheLoader does not wait for the loads inside the loader executor. With a single
+	 * loader thread, the loads would otherwise wait behind the chunk that waits for them.
+	 */
+	@Test
+	public void testLoadAllAsyncLoaderOnSingleThread() throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testLoadAllAsyncLoaderOnSingleThread").setMaxIdleTime(60, TimeUnit.SECONDS);
+		builder.setLoaderExecutor(executor).setLoadAllChunkSize(10);
+		builder.setAsyncLoader((key, loaderExecutor) -> CompletableFuture.supplyAsync(() -> "Async " + key, loaderExecutor));
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			Set<Integer> ints = new HashSet<>();
+			for (int i = 0; i < 100; i++)
+			{
+				ints.add(i);
+			}
+
+			CompletionListenerFuture completionListener = new CompletionListenerFuture();
+			cache.jsr107cache().loadAll(ints, false, completionListener);
+			completionListener.get(10, TimeUnit.SECONDS);
+			assertEquals(100, cache.size());
+			assertEquals("Async 42", cache.get(42));
+		}
+		finally
+		{
+			cache.close();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that getAll() loads all missing keys by a single loadAll() call, and puts the loaded values in the Cache.
+	 */
+	@Test
+	public void testGetAllBulkLoad()
+	{
+		final AtomicInteger loadCalls = new AtomicInteger();
+		final List<Integer> loadAllSizes = new CopyOnWriteArrayList<>();
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId("CacheLoaderTest-testGetAllBulkLoad").setMaxIdleTime(60, TimeUnit.SECONDS).setReadThrough(true);
+		builder.setLoader(new NumberCacheLoader()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String load(Integer key) throws CacheLoaderException
+			{
+				loadCalls.incrementAndGet();
+				return super.load(key);
+			}
+
+			@Override
+			public Map<Integer, String> loadAll(Iterable<? extends Integer> keys) throws CacheLoaderException
+			{
+				Map<Integer, String> entries = new HashMap<>();
+				for (Integer key : keys)
+				{
+					entries.put(key, "Bulk " + key);
+				}
+				loadAllSizes.add(entries.size());
+				return entries;
+			}
+		});
+		com.trivago.triava.tcache.Cache<Integer, String> cache = builder.build();
+
+		try
+		{
+			cache.put(1, "Cached 1");
+			Set<Integer> ints = new HashSet<>();
+			for (int i = 1; i <= 200; i++)
+			{
+				ints.add(i);
+			}
+
+			Map<Integer, String> values = cache.getAll(ints);
+			assertEquals(200, values.size());
+			assertEquals("Cached 1", values.get(1));
+			assertEquals("Bulk 200", values.get(200));
+			assertEquals("One loadAll() for all misses", Arrays.asList(199), loadAllSizes);
+			assertEquals("No single loads", 0, loadCalls.get());
+			assertEquals("Loaded values are in the Cache", "Bulk 100", cache.get(100));
+
+			values = cache.jsr107cache().getAll(ints);
+			assertEquals(200, values.size());
+			assertEquals("No load for cached keys", 1, loadAllSizes.size());
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	private com.trivago.triava.tcache.Cache<Integer, String> createGatedCache(String id, AtomicInteger loadCount, CountDownLatch loadGate,
+			int loadTimeoutMillis)
+	{
+		Builder<Integer, String> builder = TCacheFactory.standardFactory().builder();
+		builder.setId(id).setMaxIdleTime(60, TimeUnit.SECONDS);
+		builder.setLoadTimeout(loadTimeoutMillis, TimeUnit.MILLISECONDS).setReadThrough(true);
+		builder.setStatistics(true);
+		builder.setLoader(new GatedCacheLoader(loadCount, loadGate, 1));
+		return builder.build();
+	}
+
 	/**
 	 * Creates a Cache via plain JSR107 API. The Cache is configured with a default MutableConfiguration.
 	 * @param cacheName Cache name
@@ -96,6 +750,41 @@ public class CacheLoaderTest
 		return cache;
 	}
 
+	/**
+	 * Returns "Load n" for the n-th load. The loads from the firstGatedLoad on wait for the gate, like a backend that became slow.
+	 */
+	static class GatedCacheLoader extends com.trivago.triava.tcache.core.CacheLoader<Integer, String>
+	{
+		private final AtomicInteger loadCount;
+		private final CountDownLatch gate;
+		private final int firstGatedLoad;
+
+		GatedCacheLoader(AtomicInteger loadCount, CountDownLatch gate, int firstGatedLoad)
+		{
+			this.loadCount = loadCount;
+			this.gate = gate;
+			this.firstGatedLoad = firstGatedLoad;
+		}
+
+		@Override
+		public String load(Integer key) throws CacheLoaderException
+		{
+			int count = loadCount.incrementAndGet();
+			if (count >= firstGatedLoad)
+			{
+				try
+				{
+					gate.await();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			return "Load " + count;
+		}
+	}
+
 	public static class NumberCacheLoader extends com.trivago.triava.tcache.core.CacheLoader<Integer, String> implements Serializable
 	{
 		private static final long serialVersionUID = -3956726199291290826L;
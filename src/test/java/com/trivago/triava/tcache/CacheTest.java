@@ -16,18 +16,32 @@
 
 package com.trivago.triava.tcache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.cache.Cache.Entry;
 import javax.cache.CacheException;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
 
 import com.trivago.triava.tcache.util.BasicCacheInterface;
 import com.trivago.triava.tcache.util.JCacheWrapper;
@@ -38,7 +52,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.trivago.triava.tcache.core.Builder;
+import com.trivago.triava.tcache.core.CacheSerializer;
+import com.trivago.triava.tcache.core.MaintenanceScheduler;
 import com.trivago.triava.tcache.statistics.TCacheStatistics;
+import com.trivago.triava.tcache.util.ChangeStatus;
+import com.trivago.triava.tcache.util.StandardSerializer;
 
 /**
  * Tests for tCache operations, and behavior like eviction
@@ -111,6 +129,187 @@ public class CacheTest {
         assertEquals(putValue, value);
     }
 
+    @Test
+    public void testOffHeap() {
+        cache = TCacheFactory.standardFactory().<String, Integer>builder().setId("testOffHeap")
+                .setCacheWriteMode(CacheWriteMode.Serialize).setHashImplementation(HashImplementation.OffHeap)
+                .setMaxElements(1000).build();
+        for (int i = 0; i < 500; i++) {
+            cache.put("key" + i, i);
+        }
+        assertEquals(500, cache.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.valueOf(i), cache.get("key" + i));
+        }
+
+        assertEquals(Integer.valueOf(7), cache.getAndPut("key7", 70));
+        assertEquals(Integer.valueOf(70), cache.get("key7"));
+        assertEquals(Integer.valueOf(8), cache.remove("key8"));
+        assertNull(cache.get("key8"));
+        assertEquals(499, cache.size());
+
+        // Iteration must deliver deserialized keys, and removal via the iterator must reach the storage
+        int iterated = 0;
+        Iterator<Entry<String, Integer>> iterator = cache.jsr107cache().iterator();
+        while (iterator.hasNext()) {
+            Entry<String, Integer> entry = iterator.next();
+            assertTrue(entry.getKey().startsWith("key"));
+            if (entry.getKey().equals("key9")) {
+                iterator.remove();
+            }
+            iterated++;
+        }
+        assertEquals(499, iterated);
+        assertNull(cache.get("key9"));
+        assertEquals(498, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put("key1", 1);
+        assertEquals(Integer.valueOf(1), cache.get("key1"));
+    }
+
+    @Test
+    public void testHolderNodeMap() throws InterruptedException {
+        cache = TCacheFactory.standardFactory().<String, Integer>builder().setId("testHolderNodeMap")
+                .setHashImplementation(HashImplementation.HolderNodeMap).setMaxElements(100).setStatistics(true).build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i);
+        }
+        // Eviction keeps the Cache size limited. The evicted entries are removed from the map by key.
+        assertTrue("Eviction did not finish", ((CacheLimit<?, ?>) cache).awaitEviction(5000));
+        assertTrue("Cache must be limited to 100 elements: " + cache.size(), cache.size() <= 100);
+        assertTrue("Cache must evict", cache.statistics().getEvictionCount() > 0);
+        cache.clear();
+
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, i);
+        }
+        assertEquals(Integer.valueOf(7), cache.get("key7"));
+        assertEquals(Integer.valueOf(7), cache.getAndPut("key7", 70));
+        assertEquals(Integer.valueOf(70), cache.getAndReplace("key7", 700));
+        assertEquals(ChangeStatus.CHANGED, cache.replace("key7", 700, 7000));
+        assertEquals(Integer.valueOf(7000), cache.get("key7"));
+        assertEquals(Integer.valueOf(8), cache.putIfAbsent("key8", 80));
+        assertEquals(Integer.valueOf(8), cache.remove("key8"));
+        assertNull(cache.get("key8"));
+        assertEquals(49, cache.size());
+        assertEquals(49, cache.keySet().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOffHeapRequiresStoreByValue() {
+        TCacheFactory.standardFactory().<String, Integer>builder().setId("testOffHeapRequiresStoreByValue")
+                .setHashImplementation(HashImplementation.OffHeap).build();
+    }
+
+    @Test
+    public void testInternMode() {
+        Cache<Integer, String> internCache = TCacheFactory.standardFactory().<Integer, String>builder().setId("testInternMode")
+                .setCacheWriteMode(CacheWriteMode.Intern).build();
+        try {
+            for (int i = 0; i < 100; i++) {
+                internCache.put(i, new String("EUR"));
+            }
+            String shared = internCache.get(0);
+            assertEquals("EUR", shared);
+            for (int i = 1; i < 100; i++) {
+                assertSame(shared, internCache.get(i));
+            }
+        } finally {
+            internCache.close();
+        }
+    }
+
+    @Test
+    public void testSerializeCompressed() {
+        Builder<String, String> builder = TCacheFactory.standardFactory().<String, String>builder().setId("testSerializeCompressed")
+                .setCacheWriteMode(CacheWriteMode.SerializeCompressed);
+        builder.setCompressionThreshold(100);
+        Cache<String, String> compressedCache = builder.build();
+        try {
+            StringBuilder json = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                json.append("{\"id\":").append(i).append(",\"name\":\"hotel\"},");
+            }
+            String bigValue = json.toString();
+            compressedCache.put("big", bigValue);
+            compressedCache.put("small", "EUR");
+            assertEquals(bigValue, compressedCache.get("big"));
+            assertEquals("EUR", compressedCache.get("small"));
+
+            TCacheStatistics statistics = compressedCache.statistics();
+            assertTrue("ratio=" + statistics.getCompressionRatio(), statistics.getCompressionRatio() > 4);
+            assertTrue(statistics.getAverageCompressNanos() > 0);
+            assertTrue(statistics.getAverageDecompressNanos() > 0);
+        } finally {
+            compressedCache.close();
+        }
+    }
+
+    @Test
+    public void testStandardSerializerRoundTrip() throws Exception {
+        CacheSerializer<Object> serializer = StandardSerializer.instance();
+        Object[] values = { "", "ascii", "\u00e4\u00f6\u00fc", "\u20ac \ud83d\ude00", 0, -1, Integer.MIN_VALUE, Long.MAX_VALUE, -2L,
+                (short) -3, (byte) -4, 'c', '\uffff', true, false, 1.5f, -0.0d, Double.NaN, new ArrayList<>(Arrays.asList(1, 2)) };
+        for (Object value : values) {
+            byte[] serialized = serializer.serialize(value);
+            assertEquals(value, serializer.deserialize(serialized));
+            // Reading in place, as done by the CompressingSerializer for uncompressed data
+            byte[] prefixed = new byte[serialized.length + 1];
+            System.arraycopy(serialized, 0, prefixed, 1, serialized.length);
+            assertEquals(value, serializer.deserialize(prefixed, 1));
+        }
+        byte[] bytes = { 1, 2, 3 };
+        assertArrayEquals(bytes, (byte[]) serializer.deserialize(serializer.serialize(bytes)));
+        // Compact format: One tag byte plus the payload
+        assertEquals(6, serializer.serialize("ascii").length);
+        assertEquals(5, serializer.serialize(42).length);
+        // All NaN values are equal, so their serialized form must be too
+        float otherFloatNaN = Float.intBitsToFloat(0x7fc00001);
+        double otherDoubleNaN = Double.longBitsToDouble(0x7ff8000000000001L);
+        assertArrayEquals(serializer.serialize(Float.NaN), serializer.serialize(otherFloatNaN));
+        assertArrayEquals(serializer.serialize(Double.NaN), serializer.serialize(otherDoubleNaN));
+    }
+
+    @Test
+    public void testCustomSerializer() {
+        CountingSerializer keySerializer = new CountingSerializer();
+        CountingSerializer valueSerializer = new CountingSerializer();
+        Builder<String, String> builder = TCacheFactory.standardFactory().<String, String>builder().setId("testCustomSerializer")
+                .setCacheWriteMode(CacheWriteMode.Serialize);
+        builder.setKeySerializer(keySerializer).setValueSerializer(valueSerializer);
+        Cache<String, String> stringCache = builder.build();
+        try {
+            stringCache.put("key", "value");
+            assertEquals("value", stringCache.get("key"));
+            assertEquals(1, valueSerializer.serialized);
+            assertEquals(1, valueSerializer.deserialized);
+            assertEquals(2, keySerializer.serialized);
+            assertTrue(stringCache.objects.get("key") instanceof ExtendedHolder);
+        } finally {
+            stringCache.close();
+        }
+    }
+
+    static class CountingSerializer implements CacheSerializer<String> {
+        private static final long serialVersionUID = 1L;
+        int serialized = 0;
+        int deserialized = 0;
+
+        @Override
+        public byte[] serialize(String object) {
+            serialized++;
+            return object.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] serialized) {
+            deserialized++;
+            return new String(serialized, StandardCharsets.UTF_8);
+        }
+    }
+
     /**
      * This is a copy from the Cache class. It is not public there, but we would like to do some unit tests on it.
      */
@@ -170,6 +369,201 @@ public class CacheTest {
         assertTrue("Cache is not empty after sleep", cache1.size() == 0);
     }
 
+    @Test
+    public void expireOnlyIdleEntries() throws InterruptedException {
+        Cache<String, Integer> cache1 = createCache("CacheTest-expireOnlyIdleEntries", 1, 60, 10000);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                cache1.put(String.valueOf(i), i);
+            }
+
+            // Keep the lower half alive. The CleanupThread must reschedule them instead of expiring them.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (cache1.size() > 1000 && System.currentTimeMillis() < deadline) {
+                for (int i = 0; i < 1000; i++) {
+                    cache1.get(String.valueOf(i));
+                }
+                Thread.sleep(100);
+            }
+            assertEquals("Only the idle entries must be expired", 1000, cache1.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("Read entry must not be expired", Integer.valueOf(i), cache1.get(String.valueOf(i)));
+            }
+
+            // A read prolongs the idle time by the time the entry has lived in the Cache so far, see AccessTimeObjectHolder.updateMaxIdleTime()
+            deadline = System.currentTimeMillis() + 30000;
+            while (cache1.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals("All entries must be expired", 0, cache1.size());
+        } finally {
+            cache1.close();
+        }
+    }
+
+    @Test
+    public void sharedMaintenanceThreads() throws InterruptedException {
+        TCacheFactory factory = new TCacheFactory();
+        try {
+            factory.setMaintenanceThreads(2);
+            List<Cache<String, Integer>> caches = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Builder<String, Integer> cacheB = factory.<String, Integer>builder().setId("sharedMaintenance-" + i)
+                        .setMaxElements(100).setMaxIdleTime(1, TimeUnit.SECONDS).setStatistics(true)
+                        .setMaintenancePriority(i % 3);
+                caches.add(cacheB.build());
+            }
+            for (Cache<String, Integer> cache1 : caches) {
+                for (int i = 0; i < 500; i++) {
+                    cache1.put(String.valueOf(i), i);
+                }
+            }
+
+            assertEquals("Caches must not start own threads", 0, countThreads("sharedMaintenance-"));
+            for (Cache<String, Integer> cache1 : caches) {
+                assertTrue("Cache must evict", cache1.statistics().getEvictionCount() > 0);
+            }
+
+            Thread.sleep(2500);
+            for (Cache<String, Integer> cache1 : caches) {
+                assertEquals("All entries must be expired", 0, cache1.size());
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Asynchronous listeners are notified by the shared workers. Writers wait for full listener queues, which must not
+     * stall the single worker.
+     */
+    @Test(timeout = 60000)
+    public void sharedListenerDispatch() throws InterruptedException {
+        TCacheFactory factory = new TCacheFactory();
+        sharedCreatedEvents.set(0);
+        try {
+            factory.setMaintenanceThreads(1);
+            int cacheCount = 20;
+            int entries = 2000; // More than fit into the queue of a listener
+            for (int c = 0; c < cacheCount; c++) {
+                javax.cache.Cache<String, Integer> cache1 = factory.<String, Integer>builder().setId("sharedListener-" + c)
+                        .build().jsr107cache();
+                cache1.registerCacheEntryListener(new MutableCacheEntryListenerConfiguration<String, Integer>(
+                        FactoryBuilder.factoryOf(new CreatedCounter()), null, false, false));
+                for (int i = 0; i < entries; i++) {
+                    cache1.put(String.valueOf(i), i);
+                }
+            }
+
+            assertEquals("Listeners must not start own threads", 0, countThreads("tCache-Notifier:sharedListener-"));
+            long deadline = System.currentTimeMillis() + 30000;
+            while (sharedCreatedEvents.get() < cacheCount * entries && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(cacheCount * entries, sharedCreatedEvents.get());
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static final AtomicInteger sharedCreatedEvents = new AtomicInteger();
+
+    public static class CreatedCounter implements CacheEntryCreatedListener<String, Integer>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends Integer>> events) {
+            for (CacheEntryEvent<? extends String, ? extends Integer> event : events) {
+                sharedCreatedEvents.incrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void ownMaintenanceThreads() {
+        TCacheFactory factory = new TCacheFactory();
+        try {
+            assertEquals("The shared scheduler must be the default", MaintenanceScheduler.RECOMMENDED_THREADS,
+                    factory.getMaintenanceThreads());
+            factory.setMaintenanceThreads(0);
+            Cache<String, Integer> cache1 = factory.<String, Integer>builder().setId("ownMaintenance").setMaxElements(10).build();
+            cache1.put("key", 1);
+            assertEquals("Cache must start its own CleanupThread", 1, countThreads("CacheCleanupThread-ownMaintenance"));
+
+            try {
+                factory.setMaintenanceThreads(2);
+                fail("Must throw IllegalStateException after a Cache was created");
+            } catch (IllegalStateException ise) {
+                // good
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * A task of a busy Cache with a high priority triggers itself again after each run. A task of a lower priority must
+     * still get its turn.
+     */
+    @Test(timeout = 30000)
+    public void maintenanceOfLowPriorityIsNotStarved() throws InterruptedException {
+        final MaintenanceScheduler scheduler = new MaintenanceScheduler(1, Cache.logger);
+        final AtomicBoolean busy = new AtomicBoolean(true);
+        try {
+            MaintenanceScheduler.Task highPriority = new MaintenanceScheduler.Task(scheduler, "busy", 10, MaintenanceScheduler.Kind.EVICTION) {
+                @Override
+                protected void runTask() {
+                    if (busy.get())
+                        trigger();
+                }
+            };
+            final CountDownLatch lowPriorityRun = new CountDownLatch(1);
+            MaintenanceScheduler.Task lowPriority = new MaintenanceScheduler.Task(scheduler, "idle", 0, MaintenanceScheduler.Kind.EXPIRATION) {
+                @Override
+                protected void runTask() {
+                    lowPriorityRun.countDown();
+                }
+            };
+
+            highPriority.trigger();
+            lowPriority.trigger();
+            assertTrue("Low priority task was starved", lowPriorityRun.await(10, TimeUnit.SECONDS));
+            assertTrue("High priority task must run first", scheduler.tasksRun() > 100);
+        } finally {
+            busy.set(false);
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Writers that wait for eviction must not hang, when the shared scheduler is shut down
+     */
+    @Test(timeout = 30000)
+    public void writersDoNotWaitForShutDownScheduler() {
+        TCacheFactory factory = new TCacheFactory();
+        try {
+            factory.setMaintenanceThreads(1);
+            Cache<String, Integer> cache1 = factory.<String, Integer>builder().setId("shutDownScheduler").setMaxElements(100)
+                    .setJamPolicy(JamPolicy.WAIT).build();
+            cache1.maintenanceScheduler().shutdown();
+            for (int i = 0; i < 1000; i++) {
+                cache1.put(String.valueOf(i), i);
+            }
+            assertTrue("Cache must not grow without limit: " + cache1.size(), cache1.size() < 1000);
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static int countThreads(String nameFragment) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().contains(nameFragment))
+                count++;
+        }
+        return count;
+    }
+
     @Test
     public void putIfAbsent() {
         assertTrue("Cache is not empty at start of test", cache.size() == 0);
@@ -0,0 +1,212 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the candidate selection of the exact eviction. The pivots of the selection are random, so each selection is
+ * repeated on several fixed inputs.
+ *
+ * @author cesken
+ */
+public class EvictionCandidatesTest {
+    private static final int ROUNDS = 50;
+
+    /**
+     * Creates candidates with the given frozen values. The key of each candidate is its frozen value, so that tests can
+     * check that keys and values are moved together.
+     */
+    private static EvictionCandidates<Long> candidates(long[] values) {
+        EvictionCandidates<Long> candidates = new EvictionCandidates<>();
+        candidates.reset(values.length);
+        for (long value : values) {
+            assertTrue(candidates.add(value, value));
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns size values from 0 to distinct-1. A small distinct count gives many duplicates, like use counts do.
+     */
+    private static long[] randomValues(long seed, int size, int distinct) {
+        Random random = new Random(seed);
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(distinct);
+        }
+        return values;
+    }
+
+    private static long[] frozenValues(EvictionCandidates<Long> candidates, int from, int to) {
+        long[] values = new long[to - from];
+        for (int i = from; i < to; i++) {
+            assertEquals("Key and frozen value were separated", candidates.frozenValue(i), candidates.key(i).longValue());
+            values[i - from] = candidates.frozenValue(i);
+        }
+        return values;
+    }
+
+    private static long[] sorted(long[] values) {
+        long[] copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Checks that the first count candidates from start on are the smallest ones, and that no candidate was lost.
+     */
+    private static void assertSmallestSelected(long[] values, int start, int count) {
+        EvictionCandidates<Long> candidates = candidates(values);
+        candidates.selectSmallest(start, count);
+
+        assertEquals(values.length, candidates.size());
+        assertArrayEquals("Candidates before start were moved", Arrays.copyOf(values, start), frozenValues(candidates, 0, start));
+        long[] expected = sorted(Arrays.copyOfRange(values, start, values.length));
+        long[] selected = sorted(frozenValues(candidates, start, start + count));
+        assertArrayEquals("Not the smallest values", Arrays.copyOf(expected, count), selected);
+        long[] rest = sorted(frozenValues(candidates, start + count, values.length));
+        assertArrayEquals("Candidates were lost", Arrays.copyOfRange(expected, count, expected.length), rest);
+    }
+
+    @Test
+    public void selectSmallestWithDuplicates() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] values = randomValues(round, 1000, 3);
+            assertSmallestSelected(values, 0, 1);
+            assertSmallestSelected(values, 0, 333);
+            assertSmallestSelected(values, 0, 999);
+        }
+    }
+
+    @Test
+    public void selectSmallestWithDistinctValues() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] values = randomValues(round, 1000, Integer.MAX_VALUE);
+            assertSmallestSelected(values, 0, 100);
+            assertSmallestSelected(values, 0, 500);
+        }
+    }
+
+    @Test
+    public void selectSmallestAllEqual() {
+        long[] values = new long[100];
+        Arrays.fill(values, 7);
+        assertSmallestSelected(values, 0, 10);
+        assertSmallestSelected(values, 0, 99);
+    }
+
+    @Test
+    public void selectSmallestFromStart() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] values = randomValues(round, 500, 10);
+            assertSmallestSelected(values, 100, 50);
+            assertSmallestSelected(values, 499, 1);
+        }
+    }
+
+    @Test
+    public void selectNone() {
+        long[] values = randomValues(1, 100, 10);
+        EvictionCandidates<Long> candidates = candidates(values);
+        candidates.selectSmallest(0, 0);
+        assertArrayEquals("Selecting nothing must not reorder", values, frozenValues(candidates, 0, values.length));
+    }
+
+    @Test
+    public void selectAll() {
+        long[] values = randomValues(2, 100, 10);
+        EvictionCandidates<Long> candidates = candidates(values);
+        candidates.selectSmallest(0, values.length);
+        assertArrayEquals("Selecting all must not reorder", values, frozenValues(candidates, 0, values.length));
+        candidates.selectSmallest(0, values.length + 10);
+        assertArrayEquals("Selecting more than all must not reorder", values, frozenValues(candidates, 0, values.length));
+
+        assertSmallestSelected(values, 0, values.length);
+        assertSmallestSelected(new long[] { 3 }, 0, 1);
+        assertSmallestSelected(new long[] { 3, 1 }, 0, 1);
+    }
+
+    @Test
+    public void partitionAtMost() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] values = randomValues(round, 1000, 5);
+            for (long threshold = -1; threshold <= 5; threshold++) {
+                EvictionCandidates<Long> candidates = candidates(values);
+                int moved = candidates.partitionAtMost(threshold);
+
+                int expectedMoved = 0;
+                for (long value : values) {
+                    if (value <= threshold)
+                        expectedMoved++;
+                }
+                assertEquals(expectedMoved, moved);
+                for (long value : frozenValues(candidates, 0, moved)) {
+                    assertTrue(value <= threshold);
+                }
+                for (long value : frozenValues(candidates, moved, values.length)) {
+                    assertTrue(value > threshold);
+                }
+                assertArrayEquals("Candidates were lost", sorted(values), sorted(frozenValues(candidates, 0, values.length)));
+            }
+        }
+    }
+
+    @Test
+    public void reuseAfterReset() {
+        long[] values = randomValues(3, 1000, 4);
+        EvictionCandidates<Long> candidates = candidates(values);
+        candidates.selectSmallest(0, 100);
+
+        candidates.reset(values.length);
+        assertEquals(0, candidates.size());
+        assertNull("Keys must be released on reset", candidates.key(0));
+
+        long[] nextValues = randomValues(4, 1000, 4);
+        for (long value : nextValues) {
+            assertTrue(candidates.add(value, value));
+        }
+        candidates.selectSmallest(0, 100);
+        assertArrayEquals(Arrays.copyOf(sorted(nextValues), 100), sorted(frozenValues(candidates, 0, 100)));
+    }
+
+    @Test
+    public void addRespectsCapacity() {
+        EvictionCandidates<Long> candidates = new EvictionCandidates<>();
+        candidates.reset(10);
+        int added = 0;
+        while (candidates.add((long) added, added)) {
+            added++;
+        }
+        assertTrue("Reset must make room for the expected size", added >= 10);
+        assertEquals(added, candidates.size());
+        assertFalse(candidates.add(-1L, -1));
+
+        candidates.append(-1L, -1);
+        assertEquals(added + 1, candidates.size());
+        assertEquals(-1, candidates.frozenValue(added));
+    }
+}
@@ -0,0 +1,106 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link ExpirationWheel} does not keep entries that the Cache no longer holds.
+ *
+ * @author cesken
+ */
+public class ExpirationWheelTest {
+    private static final long TICK_MILLIS = 100;
+    private static final long LIFETIME_MILLIS = 60_000;
+
+    private static final ExpirationWheel.Expirer<String, Integer> NO_EXPIRATION = (key, holder) -> fail("Nothing is due, but got " + key);
+
+    @BeforeClass
+    public static void setUp() {
+        // Holders read the time from the TimeSource of the caches, which is created with the first Cache
+        Cache<String, Integer> cache = TCacheFactory.standardFactory().<String, Integer>builder().setId("expirationWheelTest").build();
+        cache.close();
+    }
+
+    private static AccessTimeObjectHolder<Integer> holder(int value) {
+        AccessTimeObjectHolder<Integer> holder = new AccessTimeObjectHolder<>(value, CacheWriteMode.Identity);
+        holder.complete(LIFETIME_MILLIS, LIFETIME_MILLIS);
+        return holder;
+    }
+
+    /**
+     * Schedules a new holder for each of the keys, and marks the holders that were scheduled before as replaced.
+     */
+    private static void overwrite(ExpirationWheel<String, Integer> wheel, AccessTimeObjectHolder<Integer>[] holders) {
+        for (int key = 0; key < holders.length; key++) {
+            if (holders[key] != null)
+                holders[key].markReplaced();
+            holders[key] = holder(key);
+            wheel.schedule(String.valueOf(key), holders[key]);
+        }
+    }
+
+    @Test
+    public void overwrittenEntriesAreDroppedWhenPlaced() {
+        long now = Cache.millisEstimator.millis();
+        ExpirationWheel<String, Integer> wheel = new ExpirationWheel<>(TICK_MILLIS, 0, now);
+        @SuppressWarnings("unchecked")
+        AccessTimeObjectHolder<Integer>[] holders = new AccessTimeObjectHolder[10];
+        for (int round = 0; round < 1000; round++) {
+            overwrite(wheel, holders);
+        }
+
+        wheel.advance(now, holders.length, NO_EXPIRATION);
+        assertEquals("Only the current holders must be placed", holders.length, wheel.size());
+    }
+
+    @Test
+    public void overwrittenEntriesArePurged() {
+        long now = Cache.millisEstimator.millis();
+        ExpirationWheel<String, Integer> wheel = new ExpirationWheel<>(TICK_MILLIS, 0, now);
+        @SuppressWarnings("unchecked")
+        AccessTimeObjectHolder<Integer>[] holders = new AccessTimeObjectHolder[2000];
+        overwrite(wheel, holders);
+        wheel.advance(now, holders.length, NO_EXPIRATION);
+        assertEquals(holders.length, wheel.size());
+
+        // The placed holders are replaced after placing. Their buckets are not due, so only a purge can drop them.
+        overwrite(wheel, holders);
+        wheel.advance(now, holders.length, NO_EXPIRATION);
+        overwrite(wheel, holders);
+        wheel.advance(now, holders.length, NO_EXPIRATION);
+        assertEquals("Replaced holders must be purged", holders.length, wheel.size());
+    }
+
+    @Test
+    public void removedEntriesAreNotExpired() {
+        long now = Cache.millisEstimator.millis();
+        ExpirationWheel<String, Integer> wheel = new ExpirationWheel<>(TICK_MILLIS, 0, now);
+        for (int key = 0; key < 100; key++) {
+            AccessTimeObjectHolder<Integer> holder = holder(key);
+            wheel.schedule(String.valueOf(key), holder);
+            holder.release();
+        }
+
+        wheel.advance(now, 0, NO_EXPIRATION);
+        assertEquals("Removed holders must be dropped", 0, wheel.size());
+    }
+}
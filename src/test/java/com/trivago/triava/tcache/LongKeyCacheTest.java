@@ -0,0 +1,137 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.trivago.triava.tcache.core.LongKeyBuilder;
+import com.trivago.triava.tcache.statistics.TCacheStatistics;
+import com.trivago.triava.tcache.storage.LongKeyConcurrentMap;
+
+/**
+ * Tests for the Cache with primitive long keys, and its storage
+ *
+ * @author cesken
+ */
+public class LongKeyCacheTest {
+    private LongKeyCache<String> cache;
+
+    @After
+    public void closeCache() {
+        if (cache != null) {
+            cache.cache().close();
+        }
+    }
+
+    private LongKeyCache<String> createCache(String id, EvictionPolicy evictionPolicy, int size) {
+        LongKeyBuilder<String> builder = TCacheFactory.standardFactory().longKeyBuilder();
+        builder.setId(id).setMaxElements(size).setEvictionPolicy(evictionPolicy);
+        return builder.buildLongKeyCache();
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        cache = createCache("LongKeyCacheTest-putGetRemove", EvictionPolicy.NONE, 1000);
+        assertTrue(cache instanceof LongCache);
+
+        cache.put(0L, "zero");
+        cache.put(-1L, "minus one");
+        cache.put(Long.MAX_VALUE, "max");
+        assertEquals("zero", cache.get(0L));
+        assertEquals("minus one", cache.get(-1L));
+        assertEquals("max", cache.get(Long.MAX_VALUE));
+        assertNull(cache.get(1L));
+        assertTrue(cache.containsKey(0L));
+        assertFalse(cache.containsKey(1L));
+
+        assertEquals("zero", cache.getAndPut(0L, "null"));
+        assertEquals("null", cache.get(0L));
+        assertEquals("null", cache.remove(0L));
+        assertNull(cache.get(0L));
+        assertNull(cache.remove(0L));
+
+        // The boxed API works on the same data
+        assertEquals("max", cache.cache().get(Long.MAX_VALUE));
+        assertEquals(2, cache.cache().size());
+
+        TCacheStatistics statistics = cache.cache().statistics();
+        assertEquals(5, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        cache = createCache("LongKeyCacheTest-eviction", EvictionPolicy.LFU, 1000);
+        assertTrue(cache instanceof LongCacheLimit);
+
+        for (long key = 0; key < 10_000; key++) {
+            cache.put(key, "value" + key);
+        }
+        assertTrue("Eviction did not finish", ((CacheLimit<Long, String>) cache).awaitEviction(5000));
+        int size = cache.cache().size();
+        assertTrue("Cache not evicted, size=" + size, size <= 1000);
+        assertTrue(cache.cache().statistics().getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        LongKeyBuilder<String> builder = TCacheFactory.standardFactory().longKeyBuilder();
+        builder.setId("LongKeyCacheTest-expiration").setMaxCacheTime(1, TimeUnit.SECONDS);
+        cache = builder.buildLongKeyCache();
+
+        cache.put(42L, "value", 100, 100, TimeUnit.MILLISECONDS);
+        assertEquals("value", cache.get(42L));
+        // containsKey() does not touch the entry, so polling does not extend its idle time
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.containsKey(42L) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(cache.get(42L));
+    }
+
+    @Test
+    public void testMapWithCollisionsAndRemovals() {
+        LongKeyConcurrentMap<String> map = new LongKeyConcurrentMap<>(16, 1);
+        Random random = new Random(1);
+        long[] keys = new long[20_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            map.put(keys[i], Long.toString(keys[i]));
+        }
+        assertEquals(keys.length, map.size());
+
+        // Remove every second key. Backward shift deletion must keep the other keys reachable.
+        for (int i = 0; i < keys.length; i += 2) {
+            assertEquals(Long.toString(keys[i]), map.remove(keys[i]));
+        }
+        assertEquals(keys.length / 2, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            String expected = i % 2 == 0 ? null : Long.toString(keys[i]);
+            assertEquals(expected, map.get(keys[i]));
+        }
+        assertEquals(keys.length / 2, map.entrySet().size());
+    }
+}
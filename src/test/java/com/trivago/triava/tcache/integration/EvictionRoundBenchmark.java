@@ -0,0 +1,160 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.integration;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.trivago.triava.tcache.Cache;
+import com.trivago.triava.tcache.TCacheFactory;
+import com.trivago.triava.tcache.eviction.EvictionInterface;
+import com.trivago.triava.tcache.eviction.HolderFreezer;
+import com.trivago.triava.tcache.eviction.LRUEviction;
+
+/**
+ * DISCLAIMER: THESE TESTS ARE NOT PART OF THE REGULAR UNIT TESTS. THEY WILL NOT BE EXECUTED IN THE MAVEN TEST
+ * SCOPE. ONLY RUN THEM IF YOU KNOW THE INNER WORKINGS OF TRIAVA CACHE.
+ * <p>
+ * Measures exact eviction rounds in a big Cache: The longest write stall, and the CPU time and bytes allocated by the
+ * eviction thread. It compares selecting the victims by primitive frozen values (LRUEviction) with sorting all
+ * entries (an LRUEviction with an overridden comparator). It also compares the eviction thread alone with a parallel scan
+ * on all cores. There the duration and the write stalls matter, as the CPU time is spread over the ForkJoinPool threads.
+ * Run it with a big heap, for example -Xmx4g.
+ * 
+ * @author cesken
+ *
+ */
+public class EvictionRoundBenchmark
+{
+    private static final int ELEMENTS = 4_000_000;
+    private static final int ROUNDS = 10;
+
+    private static TCacheFactory factory = null;
+
+    /**
+     * The eviction CPU time is measured on the eviction thread, so each Cache must run its own threads
+     */
+    private static synchronized TCacheFactory factory()
+    {
+        if (factory == null)
+        {
+            factory = new TCacheFactory();
+            factory.setMaintenanceThreads(0);
+        }
+        return factory;
+    }
+
+    @Test
+    public void compareSelectionWithSorting() throws Exception
+    {
+        // Warmup both, then measure
+        run("select", new LRUEviction<Integer, Integer>(), 1, false);
+        run("sort", new SortingLRUEviction(), 1, false);
+        run("select", new LRUEviction<Integer, Integer>(), 1, true);
+        run("sort", new SortingLRUEviction(), 1, true);
+    }
+
+    @Test
+    public void compareParallelism() throws Exception
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        run("sequential", new LRUEviction<Integer, Integer>(), 1, false);
+        run("parallel", new LRUEviction<Integer, Integer>(), cores, false);
+        run("sequential", new LRUEviction<Integer, Integer>(), 1, true);
+        run("parallel", new LRUEviction<Integer, Integer>(), cores, true);
+    }
+
+    private void run(String name, EvictionInterface<Integer, Integer> evictionClass, int parallelism, boolean report) throws Exception
+    {
+        String id = "EvictionRoundBenchmark-" + name + "-" + report;
+        Cache<Integer, Integer> cache = factory().<Integer, Integer> builder()
+                .setId(id).setEvictionClass(evictionClass).setEvictionParallelism(parallelism).setStatistics(true)
+                .setMaxElements(ELEMENTS).setMaxCacheTime(10, TimeUnit.MINUTES).build();
+        // Keys are scrambled, so that the iteration order of the Cache is not the insertion order
+        int key = 0;
+        for (; key < ELEMENTS; key++)
+        {
+            cache.put(key * 0x9E3779B1, key);
+        }
+
+        Thread evictionThread = null;
+        long maxStallNanos = 0;
+        long cpuBefore = 0;
+        long allocatedBefore = 0;
+        long start = System.nanoTime();
+        while (cache.statistics().getEvictionRounds() < ROUNDS)
+        {
+            long putStart = System.nanoTime();
+            cache.put(key * 0x9E3779B1, key);
+            maxStallNanos = Math.max(maxStallNanos, System.nanoTime() - putStart);
+            key++;
+
+            if (evictionThread == null)
+            {
+                evictionThread = findThread("CacheEvictionThread-" + id);
+                if (evictionThread != null)
+                {
+                    cpuBefore = threadMXBean().getThreadCpuTime(evictionThread.getId());
+                    allocatedBefore = threadMXBean().getThreadAllocatedBytes(evictionThread.getId());
+                }
+            }
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (report)
+        {
+            long cpuMillis = TimeUnit.NANOSECONDS.toMillis(threadMXBean().getThreadCpuTime(evictionThread.getId()) - cpuBefore);
+            long allocatedMB = (threadMXBean().getThreadAllocatedBytes(evictionThread.getId()) - allocatedBefore) / 1_000_000;
+            System.out.println(name + ": parallelism=" + parallelism + ", rounds=" + ROUNDS + ", evictionCpuMillis/round=" + cpuMillis / ROUNDS
+                    + ", allocatedMB/round=" + allocatedMB / ROUNDS + ", maxStallMillis=" + TimeUnit.NANOSECONDS.toMillis(maxStallNanos)
+                    + ", durationMillis=" + durationMillis);
+        }
+        cache.close();
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean()
+    {
+        return (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    }
+
+    private static Thread findThread(String name)
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().equals(name))
+                return thread;
+        }
+        return null;
+    }
+
+    /**
+     * LRU eviction with a comparator that is not the standard one. The Cache then copies and sorts all entries.
+     */
+    static class SortingLRUEviction extends LRUEviction<Integer, Integer>
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Comparator<HolderFreezer<Integer, Integer>> evictionComparator()
+        {
+            return (o1, o2) -> compareByFreezer(o1, o2, true);
+        }
+    }
+}
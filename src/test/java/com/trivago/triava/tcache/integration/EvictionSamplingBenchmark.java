@@ -0,0 +1,113 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.integration;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.trivago.triava.tcache.Cache;
+import com.trivago.triava.tcache.EvictionPolicy;
+import com.trivago.triava.tcache.TCacheFactory;
+import com.trivago.triava.tcache.statistics.TCacheStatistics;
+
+/**
+ * DISCLAIMER: THESE TESTS ARE NOT PART OF THE REGULAR UNIT TESTS. THEY WILL NOT BE EXECUTED IN THE MAVEN TEST
+ * SCOPE. ONLY RUN THEM IF YOU KNOW THE INNER WORKINGS OF TRIAVA CACHE.
+ * <p>
+ * Compares the hit rate and the eviction time of exact eviction (sorting all entries) with sampled eviction, see
+ * Builder#setEvictionSampleSize(). The workload is a read-through cache with Zipf distributed keys, so a good eviction
+ * policy has a clear advantage over a bad one.
+ * 
+ * @author cesken
+ *
+ */
+public class EvictionSamplingBenchmark
+{
+    private static final int CACHE_SIZE = 100_000;
+    private static final int KEY_SPACE = 2_000_000;
+    private static final int REQUESTS = 20_000_000;
+    private static final double ZIPF_EXPONENT = 0.9;
+    private static final int[] SAMPLE_SIZES = { 0, 3, 5, 10 };
+
+    @Test
+    public void compareHitRates()
+    {
+        int[] keys = zipfKeys();
+        for (EvictionPolicy evictionPolicy : new EvictionPolicy[] { EvictionPolicy.LRU, EvictionPolicy.LFU, EvictionPolicy.WTINYLFU })
+        {
+            for (int sampleSize : SAMPLE_SIZES)
+            {
+                run(evictionPolicy, sampleSize, keys);
+            }
+        }
+    }
+
+    private void run(EvictionPolicy evictionPolicy, int sampleSize, int[] keys)
+    {
+        Cache<Integer, Integer> cache = TCacheFactory.standardFactory().<Integer, Integer> builder()
+                .setId("EvictionSamplingBenchmark-" + evictionPolicy + "-" + sampleSize)
+                .setEvictionPolicy(evictionPolicy).setEvictionSampleSize(sampleSize).setStatistics(true)
+                .setMaxElements(CACHE_SIZE).setMaxCacheTime(10, TimeUnit.MINUTES).build();
+
+        long hits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++)
+        {
+            Integer key = keys[i];
+            if (cache.get(key) != null)
+                hits++;
+            else
+                cache.put(key, key);
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        TCacheStatistics statistics = cache.statistics();
+        System.out.println(evictionPolicy + " sampleSize=" + sampleSize + ": hitRate=" + String.format("%.2f%%", 100.0 * hits / REQUESTS)
+                + ", durationMillis=" + durationMillis + ", evictionRounds=" + statistics.getEvictionRounds()
+                + ", evictionHalts=" + statistics.getEvictionHalts());
+        cache.close();
+    }
+
+    /**
+     * Creates the request keys. Key i is requested with a probability proportional to 1 / (i+1)^ZIPF_EXPONENT.
+     * The keys are shuffled via a multiplicative hash, so that popular keys are not neighbours in the hash map.
+     */
+    private static int[] zipfKeys()
+    {
+        double[] cumulative = new double[KEY_SPACE];
+        double sum = 0;
+        for (int i = 0; i < KEY_SPACE; i++)
+        {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+
+        Random random = new Random(42);
+        int[] keys = new int[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++)
+        {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            if (rank < 0)
+                rank = -rank - 1;
+            keys[i] = rank * 0x9E3779B1;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,99 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.integration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.trivago.triava.tcache.Cache;
+import com.trivago.triava.tcache.EvictionPolicy;
+import com.trivago.triava.tcache.HashImplementation;
+import com.trivago.triava.tcache.TCacheFactory;
+
+/**
+ * DISCLAIMER: THESE TESTS ARE NOT PART OF THE REGULAR UNIT TESTS. THEY WILL NOT BE EXECUTED IN THE MAVEN TEST
+ * SCOPE. ONLY RUN THEM IF YOU KNOW THE INNER WORKINGS OF TRIAVA CACHE.
+ * <p>
+ * Compares the HashImplementation HolderNodeMap with ConcurrentHashMap: Heap bytes per entry, and get() latency.
+ * The heap usage is measured via Runtime, so run it with a fixed heap (-Xms = -Xmx) and no other load in the JVM.
+ * 
+ * @author cesken
+ *
+ */
+public class HolderNodeMapBenchmark
+{
+    private static final int ELEMENTS = 1_000_000;
+    private static final int READS = 100_000_000;
+
+    @Test
+    public void compareStorages() throws Exception
+    {
+        // Warmup both, then measure
+        run(HashImplementation.ConcurrentHashMap, false);
+        run(HashImplementation.HolderNodeMap, false);
+        run(HashImplementation.ConcurrentHashMap, true);
+        run(HashImplementation.HolderNodeMap, true);
+    }
+
+    private void run(HashImplementation hashImplementation, boolean report) throws Exception
+    {
+        Integer[] keys = new Integer[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++)
+        {
+            keys[i] = i; // Allocate keys before measuring, so they are not counted
+        }
+
+        long heapBefore = usedHeap();
+        Cache<Integer, Integer> cache = TCacheFactory.standardFactory().<Integer, Integer> builder()
+                .setId("HolderNodeMapBenchmark-" + hashImplementation + "-" + report)
+                .setHashImplementation(hashImplementation)
+                .setEvictionPolicy(EvictionPolicy.NONE)
+                .setMaxElements(ELEMENTS).setMaxCacheTime(10, TimeUnit.MINUTES).build();
+        for (int i = 0; i < ELEMENTS; i++)
+        {
+            cache.put(keys[i], keys[i]); // The values are the keys, so they are not counted
+        }
+        long heapAfter = usedHeap();
+
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < READS; i++)
+        {
+            sum += cache.get(keys[i % ELEMENTS]);
+        }
+        long durationNanos = System.nanoTime() - start;
+
+        if (report)
+        {
+            System.out.println(hashImplementation + ": bytesPerEntry=" + (heapAfter - heapBefore) / ELEMENTS
+                    + ", getNanos=" + (double)durationNanos / READS + ", checksum=" + sum);
+        }
+        cache.close();
+    }
+
+    private static long usedHeap() throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,133 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.trivago.triava.tcache.AccessTimeObjectHolder;
+import com.trivago.triava.tcache.CacheWriteMode;
+import com.trivago.triava.tcache.util.StandardSerializer;
+
+/**
+ * Tests for the OffHeapConcurrentMap
+ *
+ * @author cesken
+ */
+public class OffHeapConcurrentMapTest {
+    private static final int KEYS = 64;
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    private static void assertValueOfKey(int key, String value) {
+        if (value != null && !value.startsWith("value-" + key + "-")) {
+            throw new AssertionError("Read value of wrong key: key=" + key + ", value=" + value);
+        }
+    }
+
+    private static AccessTimeObjectHolder<String> holder(OffHeapConcurrentMap<String> map, int key, int version) {
+        return map.createHolder("value-" + key + "-" + version, CacheWriteMode.Serialize, StandardSerializer.<String>instance(), 1);
+    }
+
+    /**
+     * Readers must never see the value of another key, while writers replace values concurrently and their blocks are freed
+     * and reused. Readers also keep holders while more than {@link OffHeapSlabAllocator#MAX_RETIRED} values are replaced,
+     * so that the blocks of these holders are freed early and reused for other keys.
+     */
+    @Test
+    public void testConcurrentReadReplace() throws InterruptedException {
+        final OffHeapConcurrentMap<String> map = new OffHeapConcurrentMap<>(new OffHeapSlabAllocator(64 * 1024, 1), KEYS, 4);
+        for (int i = 0; i < KEYS; i++) {
+            map.put(key(i), holder(map, i, 0));
+        }
+
+        final int writers = 2;
+        final int replacesPerWriter = 200_000;
+        final AtomicLong replaced = new AtomicLong();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                for (int n = 1; n <= replacesPerWriter; n++) {
+                    int i = (n * 31 + writer) % KEYS;
+                    map.replace(key(i), holder(map, i, n));
+                    replaced.incrementAndGet();
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    List<AccessTimeObjectHolder<String>> kept = new ArrayList<>();
+                    while (writing.get()) {
+                        kept.clear();
+                        for (int i = 0; i < KEYS; i++) {
+                            AccessTimeObjectHolder<String> holder = map.get(key(i));
+                            // null is allowed: The block was freed after the holder was replaced
+                            assertValueOfKey(i, holder.peek());
+                            kept.add(holder);
+                        }
+                        long mark = replaced.get();
+                        while (writing.get() && replaced.get() - mark <= OffHeapSlabAllocator.MAX_RETIRED) {
+                            Thread.yield();
+                        }
+                        for (int i = 0; i < KEYS; i++) {
+                            assertValueOfKey(i, kept.get(i).peek());
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int w = 0; w < writers; w++) {
+            threads.get(w).join(TimeUnit.SECONDS.toMillis(60));
+        }
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError("Reader failed", failure.get());
+        }
+        assertEquals(KEYS, map.size());
+        for (int i = 0; i < KEYS; i++) {
+            String value = map.get(key(i)).peek();
+            assertNotNull("Current value must be readable: key=" + i, value);
+            assertTrue(value.startsWith("value-" + i + "-"));
+        }
+    }
+}
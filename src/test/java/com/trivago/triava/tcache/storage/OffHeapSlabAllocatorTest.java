@@ -0,0 +1,127 @@
+/*********************************************************************************
+ * Copyright 2015-present trivago GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **********************************************************************************/
+
+package com.trivago.triava.tcache.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the OffHeapSlabAllocator
+ *
+ * @author cesken
+ */
+public class OffHeapSlabAllocatorTest {
+
+    private static byte[] payload(int length, int seed) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (seed + i);
+        }
+        return payload;
+    }
+
+    @Test
+    public void testStampMismatchAfterFree() {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(4096, 1);
+        byte[] data = payload(100, 1);
+        long address = allocator.store(data);
+        int stamp = allocator.stamp(address);
+        assertArrayEquals(data, allocator.read(address, stamp));
+
+        assertTrue(allocator.free(address, stamp));
+        assertNull("Freed block must not be readable", allocator.read(address, stamp));
+        assertFalse("Block must only be freed once", allocator.free(address, stamp));
+
+        // The block is reused for new data, with a new stamp. The old stamp must still not match.
+        long reused = allocator.store(payload(100, 2));
+        assertEquals(address, reused);
+        assertNotEquals(stamp, allocator.stamp(reused));
+        assertNull(allocator.read(address, stamp));
+        assertFalse(allocator.free(address, stamp));
+        assertArrayEquals(payload(100, 2), allocator.read(reused, allocator.stamp(reused)));
+    }
+
+    @Test
+    public void testRetireThenReuse() throws InterruptedException {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(4096, 1);
+        byte[] data = payload(100, 1);
+        long address = allocator.store(data);
+        int stamp = allocator.stamp(address);
+        long usedBytes = allocator.usedBytes();
+
+        allocator.retire(address, stamp);
+        assertArrayEquals("Retired block must be readable within the grace period", data, allocator.read(address, stamp));
+        long other = allocator.store(payload(100, 2));
+        assertNotEquals("Retired block must not be reused within the grace period", address, other);
+        allocator.free(other, allocator.stamp(other));
+
+        long deadline = System.currentTimeMillis() + 10 * OffHeapSlabAllocator.RETIRE_GRACE_MILLIS;
+        while (allocator.freeRetired()) {
+            assertTrue("Retired block was not freed", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+        assertNull(allocator.read(address, stamp));
+        assertEquals(usedBytes - OffHeapSlabAllocator.classSize(OffHeapSlabAllocator.sizeClass(100 + OffHeapSlabAllocator.HEADER_SIZE)),
+                allocator.usedBytes());
+
+        long reused = allocator.store(payload(100, 3));
+        assertEquals(address, reused);
+        assertNull(allocator.read(address, stamp));
+    }
+
+    @Test
+    public void testFitsBoundary() {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(4096, 1);
+        int maxPayload = 4096 - OffHeapSlabAllocator.HEADER_SIZE;
+        assertTrue(allocator.fits(0));
+        assertTrue(allocator.fits(maxPayload));
+        assertFalse(allocator.fits(maxPayload + 1));
+        assertFalse(allocator.fits(-1));
+
+        assertEquals(OffHeapSlabAllocator.NO_ADDRESS, allocator.store(new byte[maxPayload + 1]));
+        byte[] data = payload(maxPayload, 1);
+        long address = allocator.store(data);
+        assertArrayEquals(data, allocator.read(address, allocator.stamp(address)));
+        assertEquals(4096, allocator.allocatedBytes());
+    }
+
+    @Test
+    public void testRelease() {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(4096, 2);
+        long address = allocator.store(payload(100, 1));
+        int stamp = allocator.stamp(address);
+        assertTrue(allocator.allocatedBytes() > 0);
+
+        allocator.release();
+        assertEquals(0, allocator.allocatedBytes());
+        assertEquals(0, allocator.usedBytes());
+        assertNull("Released block must not be readable", allocator.read(address, stamp));
+        assertFalse(allocator.free(address, stamp));
+
+        // The allocator stays usable, and does not reuse the addresses of released slabs
+        long newAddress = allocator.store(payload(100, 2));
+        assertNotEquals(address, newAddress);
+        assertArrayEquals(payload(100, 2), allocator.read(newAddress, allocator.stamp(newAddress)));
+        assertNull(allocator.read(address, stamp));
+    }
+}